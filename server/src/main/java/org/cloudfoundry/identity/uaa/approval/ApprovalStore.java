@@ -14,12 +14,15 @@ package org.cloudfoundry.identity.uaa.approval;
 
 import org.cloudfoundry.identity.uaa.approval.Approval;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ApprovalStore {
 
     public boolean addApproval(Approval approval);
 
+    public boolean addApprovals(Collection<Approval> approvals);
+
     public boolean revokeApproval(Approval approval);
 
     public boolean revokeApprovals(String filter);
@@ -27,4 +30,6 @@ public interface ApprovalStore {
     public List<Approval> getApprovals(String filter);
 
     public List<Approval> getApprovals(String userId, String clientId);
+
+    public List<Approval> getApprovalsForUsers(Collection<String> userIds);
 }
@@ -13,6 +13,7 @@
 package org.cloudfoundry.identity.uaa.approval;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -160,8 +161,8 @@ public class ApprovalsAdminEndpoints implements InitializingBean, ApprovalsContr
             } else {
                 approval.setUserId(currentUserId);
             }
-            approvalStore.addApproval(approval);
         }
+        approvalStore.addApprovals(Arrays.asList(approvals));
         return approvalStore.getApprovals(String.format(USER_FILTER_TEMPLATE, currentUserId));
     }
 
@@ -180,8 +181,8 @@ public class ApprovalsAdminEndpoints implements InitializingBean, ApprovalsContr
             } else {
                 approval.setUserId(currentUserId);
             }
-            approvalStore.addApproval(approval);
         }
+        approvalStore.addApprovals(Arrays.asList(approvals));
         return approvalStore.getApprovals(String.format(USER_AND_CLIENT_FILTER_TEMPLATE, currentUserId, clientId));
     }
 
@@ -17,8 +17,14 @@ import static org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus.APP
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +35,7 @@ import org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter;
 import org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter.ProcessedFilter;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
@@ -41,8 +48,16 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
+/**
+ * Approvals of a user for a client, as read on the token and authorize paths,
+ * can optionally be cached. Changes made through this store drop the affected
+ * entries. Approvals removed along with a user, client or zone bypass the
+ * store and are only seen once the entry expires.
+ */
 public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublisherAware {
 
     private final JdbcTemplate jdbcTemplate;
@@ -68,6 +83,10 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
 
     private static final String GET_AUTHZ_SQL = String.format("select %s from %s", FIELDS, TABLE_NAME);
 
+    private static final String GET_USERS_AUTHZ_SQL = String.format("select %s from %s where user_id in (:userIds)", FIELDS, TABLE_NAME);
+
+    private static final int MAX_USERS_PER_QUERY = 500;
+
     private static final String DELETE_AUTHZ_SQL = String.format("delete from %s", TABLE_NAME);
 
     private static final String EXPIRE_AUTHZ_SQL = String.format("update %s set expiresAt = :expiry", TABLE_NAME);
@@ -75,6 +94,10 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
     private boolean handleRevocationsAsExpiry = false;
     private ApplicationEventPublisher applicationEventPublisher;
 
+    private TransactionTemplate transactionTemplate;
+
+    private final ConfigurableCache<String, List<Approval>> cache = new ConfigurableCache<>(false, 10000, 30);
+
     public JdbcApprovalStore(JdbcTemplate jdbcTemplate, JdbcPagingListFactory pagingListFactory,
                     SearchQueryConverter queryConverter) {
         Assert.notNull(jdbcTemplate);
@@ -84,6 +107,13 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
         this.pagingListFactory = pagingListFactory;
     }
 
+    /**
+     * The transaction manager that a batch of approvals is added with.
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     public void setHandleRevocationsAsExpiry(boolean handleRevocationsAsExpiry) {
         this.handleRevocationsAsExpiry = handleRevocationsAsExpiry;
     }
@@ -111,27 +141,107 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
     public boolean addApproval(final Approval approval) {
         logger.debug(String.format("adding approval: [%s]", approval));
         try {
-            refreshApproval(approval); // try to refresh the approval
-        } catch (DataIntegrityViolationException ex) { // could not find the
-                                                       // approval. add it.
-            int count = jdbcTemplate.update(ADD_AUTHZ_SQL, new PreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps) throws SQLException {
-                    ps.setString(1, approval.getUserId());
-                    ps.setString(2, approval.getClientId());
-                    ps.setString(3, approval.getScope());
-                    ps.setTimestamp(4, new Timestamp(approval.getExpiresAt().getTime()));
-                    ps.setString(5, (approval.getStatus() == null ? APPROVED : approval.getStatus()).toString());
-                    ps.setTimestamp(6, new Timestamp(approval.getLastUpdatedAt().getTime()));
+            try {
+                refreshApproval(approval); // try to refresh the approval
+            } catch (DataIntegrityViolationException ex) { // could not find the
+                                                           // approval. add it.
+                insertApproval(approval);
+            }
+        } finally {
+            invalidate(approval.getUserId(), approval.getClientId());
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        publish(new ApprovalModifiedEvent(approval, authentication));
+        return true;
+    }
+
+    /**
+     * Refreshes all of the given approvals with one batch and inserts the
+     * ones that did not exist yet with a second one, in a single transaction.
+     * Should the same user, client and scope appear more than once, the last
+     * of those approvals is stored.
+     */
+    @Override
+    public boolean addApprovals(final Collection<Approval> approvals) {
+        if (approvals.isEmpty()) {
+            return true;
+        }
+        logger.debug(String.format("adding approvals: %s", approvals));
+        Map<List<String>, Approval> unique = new LinkedHashMap<>();
+        for (Approval approval : approvals) {
+            List<String> key = Arrays.asList(approval.getUserId(), approval.getClientId(), approval.getScope());
+            unique.remove(key);
+            unique.put(key, approval);
+        }
+        final List<Approval> list = new ArrayList<>(unique.values());
+        try {
+            transactionTemplate.execute(status -> {
+                List<Object[]> refreshes = new ArrayList<>();
+                for (Approval approval : list) {
+                    refreshes.add(new Object[] {
+                        new Timestamp(approval.getLastUpdatedAt().getTime()),
+                        new Timestamp(approval.getExpiresAt().getTime()),
+                        (approval.getStatus() == null ? APPROVED : approval.getStatus()).toString(),
+                        approval.getUserId(),
+                        approval.getClientId(),
+                        approval.getScope()
+                    });
+                }
+                int[] refreshed = jdbcTemplate.batchUpdate(REFRESH_AUTHZ_SQL, refreshes);
+
+                List<Object[]> inserts = new ArrayList<>();
+                for (int i = 0; i < list.size(); i++) {
+                    Approval approval = list.get(i);
+                    if (refreshed[i] == Statement.SUCCESS_NO_INFO) {
+                        // the driver does not report row counts for batches
+                        try {
+                            refreshApproval(approval);
+                        } catch (DataIntegrityViolationException ex) {
+                            insertApproval(approval);
+                        }
+                    } else if (refreshed[i] == 0) {
+                        inserts.add(new Object[] {
+                            approval.getUserId(),
+                            approval.getClientId(),
+                            approval.getScope(),
+                            new Timestamp(approval.getExpiresAt().getTime()),
+                            (approval.getStatus() == null ? APPROVED : approval.getStatus()).toString(),
+                            new Timestamp(approval.getLastUpdatedAt().getTime())
+                        });
+                    }
                 }
+                if (!inserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(ADD_AUTHZ_SQL, inserts);
+                }
+                return null;
             });
-            if (count==0) throw new EmptyResultDataAccessException("Approval add failed", 1);
+        } finally {
+            for (Approval approval : list) {
+                invalidate(approval.getUserId(), approval.getClientId());
+            }
         }
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        publish(new ApprovalModifiedEvent(approval, authentication));
+        for (Approval approval : list) {
+            publish(new ApprovalModifiedEvent(approval, authentication));
+        }
         return true;
     }
 
+    protected void insertApproval(final Approval approval) {
+        int count = jdbcTemplate.update(ADD_AUTHZ_SQL, new PreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps) throws SQLException {
+                ps.setString(1, approval.getUserId());
+                ps.setString(2, approval.getClientId());
+                ps.setString(3, approval.getScope());
+                ps.setTimestamp(4, new Timestamp(approval.getExpiresAt().getTime()));
+                ps.setString(5, (approval.getStatus() == null ? APPROVED : approval.getStatus()).toString());
+                ps.setTimestamp(6, new Timestamp(approval.getLastUpdatedAt().getTime()));
+            }
+        });
+        if (count==0) throw new EmptyResultDataAccessException("Approval add failed", 1);
+    }
+
     @Override
     public boolean revokeApproval(Approval approval) {
         return revokeApprovals(String.format("user_id eq \"%s\" and client_id eq \"%s\" and scope eq \"%s\"", approval.getUserId(), approval.getClientId(), approval.getScope()));
@@ -161,6 +271,9 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
         } catch (DataAccessException ex) {
             logger.error("Error expiring approvals, possible invalid filter: " + where, ex);
             throw new IllegalArgumentException("Error revoking approvals");
+        } finally {
+            // the filter may match any number of users and clients
+            cache.invalidateAll();
         }
         return true;
     }
@@ -176,6 +289,8 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
         } catch (DataAccessException ex) {
             logger.error("Error purging expired approvals", ex);
             return false;
+        } finally {
+            cache.invalidateAll();
         }
         return true;
     }
@@ -195,7 +310,79 @@ public class JdbcApprovalStore implements ApprovalStore, ApplicationEventPublish
 
     @Override
     public List<Approval> getApprovals(String userId, String clientId) {
-        return getApprovals(String.format("user_id eq \"%s\" and client_id eq \"%s\"", userId, clientId));
+        String filter = String.format("user_id eq \"%s\" and client_id eq \"%s\"", userId, clientId);
+        if (!isCacheEnabled()) {
+            return getApprovals(filter);
+        }
+        String key = getKey(userId, clientId);
+        List<Approval> cached = cache.getIfPresent(key);
+        if (cached == null) {
+            cached = new ArrayList<>(getApprovals(filter));
+            cache.put(key, cached);
+        }
+        return copy(cached);
+    }
+
+    @Override
+    public List<Approval> getApprovalsForUsers(Collection<String> userIds) {
+        List<String> ids = new ArrayList<>(userIds);
+        List<Approval> approvals = new ArrayList<>();
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(jdbcTemplate);
+        for (int from = 0; from < ids.size(); from += MAX_USERS_PER_QUERY) {
+            List<String> chunk = ids.subList(from, Math.min(from + MAX_USERS_PER_QUERY, ids.size()));
+            approvals.addAll(template.query(GET_USERS_AUTHZ_SQL, Collections.singletonMap("userIds", chunk), rowMapper));
+        }
+        return approvals;
+    }
+
+    protected void invalidate(String userId, String clientId) {
+        cache.invalidate(getKey(userId, clientId));
+    }
+
+    public void invalidateCache() {
+        cache.invalidateAll();
+    }
+
+    protected String getKey(String userId, String clientId) {
+        return userId + ":" + clientId;
+    }
+
+    protected static List<Approval> copy(List<Approval> approvals) {
+        List<Approval> copies = new ArrayList<>(approvals.size());
+        for (Approval approval : approvals) {
+            copies.add(new Approval()
+                .setUserId(approval.getUserId())
+                .setClientId(approval.getClientId())
+                .setScope(approval.getScope())
+                .setExpiresAt(approval.getExpiresAt())
+                .setStatus(approval.getStatus())
+                .setLastUpdatedAt(approval.getLastUpdatedAt()));
+        }
+        return copies;
+    }
+
+    public boolean isCacheEnabled() {
+        return cache.isEnabled();
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        cache.setEnabled(cacheEnabled);
+    }
+
+    public int getCacheMaxEntries() {
+        return cache.getMaxEntries();
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        cache.setMaxEntries(cacheMaxEntries);
+    }
+
+    public int getCacheExpiryInSeconds() {
+        return cache.getExpiryInSeconds();
+    }
+
+    public void setCacheExpiryInSeconds(int cacheExpiryInSeconds) {
+        cache.setExpiryInSeconds(cacheExpiryInSeconds);
     }
 
     @Override
@@ -0,0 +1,307 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.audit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Counts recent failed logins per principal and zone in memory, so that lockout
+ * checks do not have to query the audit table on every attempt.
+ * <p>
+ * Failures are kept in time buckets of {@link #setBucketMillis(long)} and at most
+ * {@link #getMaxBucketsPerPrincipal()} buckets are kept per principal, which is
+ * enough to decide a lockout as long as the number of failures that triggers it
+ * is not larger. The failures of a principal are loaded from the backing audit
+ * service the first time they are needed. A success recorded on this server
+ * clears them, a failure drops them so that the next check loads them again
+ * together with the failures other servers recorded in the meantime. Entries
+ * are also dropped when idle, and reloaded after {@link #setResyncSeconds(int)}.
+ * <p>
+ * A count therefore only misses the failures that other servers recorded since
+ * it was last loaded, and the next failure on this server brings it up to date.
+ * The counter must still not decide a lockout on its own. It is off unless
+ * {@link #setEnabled(boolean)} is set.
+ */
+@ManagedResource
+public class FailedLoginCounter {
+
+    private final UaaAuditService store;
+
+    private final Striped<Lock> locks = Striped.lock(64);
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private long bucketMillis = 1000;
+
+    private int maxBucketsPerPrincipal = 64;
+
+    private long loadPeriodMillis = 2 * 3600 * 1000;
+
+    private int maxPrincipals = 100000;
+
+    private int idleSeconds = 600;
+
+    private int resyncSeconds = 60;
+
+    private boolean enabled = false;
+
+    private volatile Cache<String, FailureWindow> windows;
+
+    public FailedLoginCounter(UaaAuditService store) {
+        this.store = store;
+        buildCache();
+    }
+
+    /**
+     * Returns the failed logins of a principal after the given time, loading
+     * them from the backing audit service if they are not in memory.
+     */
+    public Failures getFailures(String principalId, String zoneId, long after) {
+        String key = getKey(principalId, zoneId);
+        FailureWindow window = windows.getIfPresent(key);
+        if (window == null) {
+            Lock lock = locks.get(key);
+            lock.lock();
+            try {
+                window = windows.getIfPresent(key);
+                if (window == null) {
+                    window = load(principalId, zoneId);
+                    windows.put(key, window);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return window.getFailures(after);
+    }
+
+    /**
+     * Records an audit event and performs the write of that event to the
+     * backing audit service as one step, so that a concurrent load of the same
+     * principal cannot keep a window that misses the event.
+     */
+    public void record(AuditEvent auditEvent, Runnable write) {
+        String key = getKey(auditEvent.getPrincipalId(), auditEvent.getIdentityZoneId());
+        Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            write.run();
+            FailureWindow window = windows.getIfPresent(key);
+            if (window == null) {
+                return;
+            }
+            switch (auditEvent.getType()) {
+                case UserAuthenticationFailure:
+                    windows.invalidate(key);
+                    break;
+                case UserAuthenticationSuccess:
+                case PasswordChangeSuccess:
+                    window.clear();
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ManagedOperation
+    public void clear() {
+        windows.invalidateAll();
+    }
+
+    protected FailureWindow load(String principalId, String zoneId) {
+        loads.incrementAndGet();
+        FailureWindow window = new FailureWindow();
+        List<AuditEvent> events = store.find(principalId, System.currentTimeMillis() - loadPeriodMillis);
+        // events are returned most recent first, count back to the last success
+        int last = 0;
+        while (last < events.size() && events.get(last).getType() != AuditEventType.UserAuthenticationSuccess) {
+            last++;
+        }
+        for (int i = last - 1; i >= 0; i--) {
+            AuditEvent event = events.get(i);
+            if (event.getType() == AuditEventType.UserAuthenticationFailure && zoneId.equals(event.getIdentityZoneId())) {
+                window.add(event.getTime());
+            }
+        }
+        return window;
+    }
+
+    private String getKey(String principalId, String zoneId) {
+        return zoneId + ":" + principalId;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Failed Login Counter Principals")
+    public long getSize() {
+        return windows.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Failed Login Counter Loads")
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public void setBucketMillis(long bucketMillis) {
+        Assert.isTrue(bucketMillis > 0, "Bucket size must be positive");
+        this.bucketMillis = bucketMillis;
+    }
+
+    public int getMaxBucketsPerPrincipal() {
+        return maxBucketsPerPrincipal;
+    }
+
+    public void setMaxBucketsPerPrincipal(int maxBucketsPerPrincipal) {
+        Assert.isTrue(maxBucketsPerPrincipal > 0, "Bucket count must be positive");
+        this.maxBucketsPerPrincipal = maxBucketsPerPrincipal;
+    }
+
+    public long getLoadPeriodMillis() {
+        return loadPeriodMillis;
+    }
+
+    /**
+     * @param loadPeriodMillis how far back failures are loaded from the backing
+     *            audit service, usually the period it keeps data for
+     */
+    public void setLoadPeriodMillis(long loadPeriodMillis) {
+        this.loadPeriodMillis = loadPeriodMillis;
+    }
+
+    public int getMaxPrincipals() {
+        return maxPrincipals;
+    }
+
+    public void setMaxPrincipals(int maxPrincipals) {
+        this.maxPrincipals = maxPrincipals;
+        buildCache();
+    }
+
+    public int getIdleSeconds() {
+        return idleSeconds;
+    }
+
+    public void setIdleSeconds(int idleSeconds) {
+        this.idleSeconds = idleSeconds;
+        buildCache();
+    }
+
+    public int getResyncSeconds() {
+        return resyncSeconds;
+    }
+
+    public void setResyncSeconds(int resyncSeconds) {
+        this.resyncSeconds = resyncSeconds;
+        buildCache();
+    }
+
+    protected void buildCache() {
+        windows = CacheBuilder.newBuilder()
+            .maximumSize(maxPrincipals)
+            .expireAfterAccess(idleSeconds, TimeUnit.SECONDS)
+            .expireAfterWrite(resyncSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    /**
+     * The failed logins of a principal within a period.
+     */
+    public static class Failures {
+        private final int count;
+        private final long mostRecent;
+
+        public Failures(int count, long mostRecent) {
+            this.count = count;
+            this.mostRecent = mostRecent;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the time of the most recent failure, or 0 if there was none
+         */
+        public long getMostRecent() {
+            return mostRecent;
+        }
+    }
+
+    /**
+     * Failure buckets of a single principal, oldest first. Each bucket holds
+     * its index, the number of failures and the time of the latest failure.
+     */
+    protected class FailureWindow {
+        private final ArrayDeque<long[]> buckets = new ArrayDeque<>();
+
+        synchronized void add(long time) {
+            long index = time / bucketMillis;
+            long[] last = buckets.peekLast();
+            if (last != null && index <= last[0]) {
+                // same bucket, or a failure that raced a later one
+                last[1]++;
+                last[2] = Math.max(last[2], time);
+                return;
+            }
+            buckets.addLast(new long[] {index, 1, time});
+            while (buckets.size() > maxBucketsPerPrincipal) {
+                buckets.removeFirst();
+            }
+        }
+
+        synchronized void clear() {
+            buckets.clear();
+        }
+
+        synchronized Failures getFailures(long after) {
+            int count = 0;
+            long mostRecent = 0;
+            for (Iterator<long[]> it = buckets.descendingIterator(); it.hasNext();) {
+                long[] bucket = it.next();
+                if (bucket[2] <= after) {
+                    break;
+                }
+                count += bucket[1];
+                mostRecent = Math.max(mostRecent, bucket[2]);
+            }
+            return new Failures(count, mostRecent);
+        }
+    }
+}
@@ -12,23 +12,75 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.audit;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.util.Assert;
 
 import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Stores audit events in the <code>sec_audit</code> table.
+ * <p>
+ * By default every event is inserted as it is logged. With write behind
+ * enabled events are put on a bounded queue instead and written in JDBC
+ * batches by a background thread, so that the caller does not wait for the
+ * database. Events that cannot be queued within the offer timeout are dropped
+ * and counted. Authentication failures are never queued: they are written
+ * before {@link #log(AuditEvent)} returns, after any queued events, because
+ * lockout decisions are counted from them. {@link #find(String, long)} writes
+ * any queued events first, so that it always sees the events logged on this
+ * node before the call. Only draining the queue is serialized, events that are
+ * not queued are written by the calling thread without a shared lock.
  *
  * @author Luke Taylor
  */
-public class JdbcAuditService implements UaaAuditService {
+@ManagedResource
+public class JdbcAuditService implements UaaAuditService, InitializingBean, DisposableBean {
+
+    private static final String INSERT_SQL = "insert into sec_audit (principal_id, event_type, origin, event_data, created, identity_zone_id) values (?,?,?,?,?,?)";
+
+    protected final Log logger = LogFactory.getLog(getClass());
 
     private final JdbcTemplate template;
 
+    private final Object writeLock = new Object();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private boolean writeBehind = false;
+
+    private int queueCapacity = 10000;
+
+    private int batchSize = 100;
+
+    private long flushIntervalMillis = 100;
+
+    private long offerTimeoutMillis = 50;
+
+    private volatile BlockingQueue<AuditEvent> queue;
+
+    private ScheduledExecutorService scheduler;
+
     public JdbcAuditService(DataSource dataSource) {
         this.template = new JdbcTemplate(dataSource);
     }
@@ -37,8 +89,49 @@ public class JdbcAuditService implements UaaAuditService {
         return template;
     }
 
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (isWriteBehind()) {
+            queue = new LinkedBlockingQueue<>(queueCapacity);
+            scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis);
+        }
+        scheduleTasks();
+    }
+
+    /**
+     * Hook for subclasses to schedule periodic work with
+     * {@link #scheduleWithFixedDelay(Runnable, long)}.
+     */
+    protected void scheduleTasks() {
+    }
+
+    /**
+     * Runs the task periodically on the audit writer thread, which is only
+     * started once something is scheduled on it.
+     */
+    protected synchronized void scheduleWithFixedDelay(Runnable task, long delayMillis) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "audit-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduler.scheduleWithFixedDelay(task, delayMillis, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        flushQuietly();
+    }
+
     @Override
     public List<AuditEvent> find(String principal, long after) {
+        flush();
         return template.query("select event_type, principal_id, origin, event_data, created, identity_zone_id from sec_audit where " +
                         "principal_id=? and created > ? order by created desc", new AuditEventRowMapper(), principal,
                         new Timestamp(after));
@@ -46,15 +139,153 @@ public class JdbcAuditService implements UaaAuditService {
 
     @Override
     public void log(AuditEvent auditEvent) {
-        String origin = auditEvent.getOrigin();
-        String data = auditEvent.getData();
-        origin = origin == null ? "" : origin;
-        origin = origin.length() > 255 ? origin.substring(0, 255) : origin;
-        data = data == null ? "" : data;
-        data = data.length() > 255 ? data.substring(0, 255) : data;
-        template.update("insert into sec_audit (principal_id, event_type, origin, event_data, identity_zone_id) values (?,?,?,?,?)",
-                        auditEvent.getPrincipalId(), auditEvent.getType().getCode(), origin,
-                        data, auditEvent.getIdentityZoneId());
+        if (!isRecorded(auditEvent)) {
+            return;
+        }
+        BlockingQueue<AuditEvent> queue = this.queue;
+        if (queue == null || isAuthenticationFailure(auditEvent)) {
+            flush();
+            write(Collections.singletonList(auditEvent));
+            return;
+        }
+        try {
+            if (!queue.offer(auditEvent, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                dropped.incrementAndGet();
+                logger.warn("Audit queue is full, dropping " + auditEvent.getType() + " event for " + auditEvent.getPrincipalId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes all queued events to the database, and waits for a batch that is
+     * being written by another thread.
+     */
+    @ManagedOperation
+    public void flush() {
+        BlockingQueue<AuditEvent> queue = this.queue;
+        if (queue == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            List<AuditEvent> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                try {
+                    write(batch);
+                } catch (RuntimeException e) {
+                    dropped.addAndGet(batch.size());
+                    throw e;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Unable to write audit events", e);
+        }
+    }
+
+    private static boolean isAuthenticationFailure(AuditEvent auditEvent) {
+        switch (auditEvent.getType()) {
+            case UserAuthenticationFailure:
+            case ClientAuthenticationFailure:
+            case PrincipalAuthenticationFailure:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return false if the event should not be stored at all
+     */
+    protected boolean isRecorded(AuditEvent auditEvent) {
+        return true;
+    }
+
+    /**
+     * Writes the events in the order they were logged. Batches drained from
+     * the queue are written one at a time, but single events are written
+     * concurrently by the threads that logged them.
+     */
+    protected void write(List<AuditEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        template.batchUpdate(INSERT_SQL, events, batchSize, (ps, auditEvent) -> {
+            ps.setString(1, auditEvent.getPrincipalId());
+            ps.setInt(2, auditEvent.getType().getCode());
+            ps.setString(3, truncate(auditEvent.getOrigin()));
+            ps.setString(4, truncate(auditEvent.getData()));
+            ps.setTimestamp(5, new Timestamp(auditEvent.getTime()));
+            ps.setString(6, auditEvent.getIdentityZoneId());
+        });
+    }
+
+    private static String truncate(String s) {
+        s = s == null ? "" : s;
+        return s.length() > 255 ? s.substring(0, 255) : s;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Audit Queue Depth")
+    public int getQueueDepth() {
+        BlockingQueue<AuditEvent> queue = this.queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Audit Events Dropped")
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "Queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "Batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        Assert.isTrue(flushIntervalMillis > 0, "Flush interval must be positive");
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public long getOfferTimeoutMillis() {
+        return offerTimeoutMillis;
+    }
+
+    public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+        this.offerTimeoutMillis = offerTimeoutMillis;
     }
 
     private class AuditEventRowMapper implements RowMapper<AuditEvent> {
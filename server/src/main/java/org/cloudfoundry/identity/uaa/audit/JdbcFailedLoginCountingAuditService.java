@@ -12,7 +12,13 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.audit;
 
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 import javax.sql.DataSource;
 
@@ -20,15 +26,25 @@ import javax.sql.DataSource;
  * An audit service that subscribes to audit events but only saves enough data
  * to answer queries about consecutive
  * failed logins.
+ * <p>
+ * Data older than the save period is removed by a periodic sweep rather than
+ * on each failed login.
  * 
  * @author Dave Syer
  */
+@ManagedResource
 public class JdbcFailedLoginCountingAuditService extends JdbcAuditService {
 
     private int saveDataPeriodMillis = 2 * 3600 * 1000; // 2hr
 
+    private long sweepIntervalMillis = 60 * 1000;
+
+    private final FailedLoginCounter failedLoginCounter;
+
     public JdbcFailedLoginCountingAuditService(DataSource dataSource) {
         super(dataSource);
+        failedLoginCounter = new FailedLoginCounter(this);
+        failedLoginCounter.setLoadPeriodMillis(saveDataPeriodMillis);
     }
 
     /**
@@ -36,24 +52,79 @@ public class JdbcFailedLoginCountingAuditService extends JdbcAuditService {
      */
     public void setSaveDataPeriodMillis(int saveDataPeriodMillis) {
         this.saveDataPeriodMillis = saveDataPeriodMillis;
+        failedLoginCounter.setLoadPeriodMillis(saveDataPeriodMillis);
+    }
+
+    /**
+     * @return an in memory count of the failed logins stored by this service
+     */
+    public FailedLoginCounter getFailedLoginCounter() {
+        return failedLoginCounter;
+    }
+
+    /**
+     * @param sweepIntervalMillis how often data older than the save period is
+     *            removed
+     */
+    public void setSweepIntervalMillis(long sweepIntervalMillis) {
+        this.sweepIntervalMillis = sweepIntervalMillis;
+    }
+
+    @Override
+    protected void scheduleTasks() {
+        scheduleWithFixedDelay(() -> {
+            try {
+                deleteExpiredEvents();
+            } catch (RuntimeException e) {
+                logger.error("Unable to delete expired audit events", e);
+            }
+        }, sweepIntervalMillis);
+    }
+
+    /**
+     * @return the number of events older than the save period that were
+     *         removed
+     */
+    @ManagedOperation
+    public int deleteExpiredEvents() {
+        return getJdbcTemplate().update("delete from sec_audit where created < ?",
+                        new Timestamp(System.currentTimeMillis()
+                                        - saveDataPeriodMillis));
     }
 
     @Override
     public void log(AuditEvent auditEvent) {
+        if (isRecorded(auditEvent)) {
+            failedLoginCounter.record(auditEvent, () -> super.log(auditEvent));
+        }
+    }
+
+    @Override
+    protected boolean isRecorded(AuditEvent auditEvent) {
         switch (auditEvent.getType()) {
             case UserAuthenticationSuccess:
             case PasswordChangeSuccess:
-                getJdbcTemplate().update("delete from sec_audit where principal_id=?", auditEvent.getPrincipalId());
-                break;
             case UserAuthenticationFailure:
-                getJdbcTemplate().update("delete from sec_audit where created < ?",
-                                new Timestamp(System.currentTimeMillis()
-                                                - saveDataPeriodMillis));
-                super.log(auditEvent);
-                break;
+                return true;
             default:
-                break;
+                return false;
+        }
+    }
+
+    @Override
+    protected void write(List<AuditEvent> events) {
+        List<AuditEvent> failures = new ArrayList<>();
+        for (AuditEvent auditEvent : events) {
+            if (auditEvent.getType() == AuditEventType.UserAuthenticationFailure) {
+                failures.add(auditEvent);
+                continue;
+            }
+            // a success resets the count, so failures of the same principal
+            // earlier in the batch need not be written at all
+            failures.removeIf(failure -> Objects.equals(failure.getPrincipalId(), auditEvent.getPrincipalId()));
+            getJdbcTemplate().update("delete from sec_audit where principal_id=?", auditEvent.getPrincipalId());
         }
+        super.write(failures);
     }
 
 }
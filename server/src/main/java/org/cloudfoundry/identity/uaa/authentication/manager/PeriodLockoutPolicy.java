@@ -16,6 +16,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.AuditEvent;
 import org.cloudfoundry.identity.uaa.audit.AuditEventType;
+import org.cloudfoundry.identity.uaa.audit.FailedLoginCounter;
+import org.cloudfoundry.identity.uaa.audit.FailedLoginCounter.Failures;
 import org.cloudfoundry.identity.uaa.audit.UaaAuditService;
 import org.cloudfoundry.identity.uaa.provider.LockoutPolicy;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
@@ -34,7 +36,13 @@ import java.util.List;
  * Locks an account out for a configured period based on the number of failed
  * logins since a specific time in the past.
  * <p>
- * Queries the audit service to obtain the relevant data for the user.
+ * Queries the audit service to obtain the relevant data for the user. If an
+ * enabled failed login counter is set, users whose failures, as last loaded by
+ * the counter from the shared audit data, are well below the limit are let
+ * through without a query. Failures recorded on other servers since that load
+ * are not counted, so with several servers each of them may let one more
+ * attempt through before its own failure makes it reload the count. Decisions
+ * close to the limit are always taken from the shared audit data.
  *
  * @author Luke Taylor
  */
@@ -44,6 +52,7 @@ public class PeriodLockoutPolicy implements AccountLoginPolicy {
     private final UaaAuditService auditService;
     private LockoutPolicy lockoutPolicy;
     private IdentityProviderProvisioning providerProvisioning;
+    private FailedLoginCounter failedLoginCounter;
 
     public PeriodLockoutPolicy(UaaAuditService auditService, IdentityProviderProvisioning providerProvisioning) {
         this.auditService = auditService;
@@ -57,6 +66,14 @@ public class PeriodLockoutPolicy implements AccountLoginPolicy {
 
         long eventsAfter = System.currentTimeMillis() - localPolicy.getCountFailuresWithin() * 1000;
 
+        if (failedLoginCounter != null && failedLoginCounter.isEnabled()
+            && localPolicy.getLockoutAfterFailures() <= failedLoginCounter.getMaxBucketsPerPrincipal()) {
+            Failures failures = failedLoginCounter.getFailures(user.getId(), IdentityZoneHolder.get().getId(), eventsAfter);
+            if (failures.getCount() < localPolicy.getLockoutAfterFailures() - 1) {
+                return true;
+            }
+        }
+
         List<AuditEvent> events = auditService.find(user.getId(), eventsAfter);
 
         final int failureCount = sequentialFailureCount(events);
@@ -115,6 +132,10 @@ public class PeriodLockoutPolicy implements AccountLoginPolicy {
         return null;
     }
 
+    public void setFailedLoginCounter(FailedLoginCounter failedLoginCounter) {
+        this.failedLoginCounter = failedLoginCounter;
+    }
+
     public LockoutPolicy getLockoutPolicy() {
         return lockoutPolicy;
     }
@@ -33,6 +33,7 @@ import org.cloudfoundry.identity.uaa.oauth.client.ClientDetailsModification;
 import org.cloudfoundry.identity.uaa.oauth.client.SecretChangeRequest;
 import org.cloudfoundry.identity.uaa.resources.ActionResult;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.QueryableResourceManager;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
@@ -458,11 +459,24 @@ public class ClientAdminEndpoints implements InitializingBean {
                     @RequestParam(required = false, defaultValue = "client_id") String sortBy,
                     @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
                     @RequestParam(required = false, defaultValue = "1") int startIndex,
-                    @RequestParam(required = false, defaultValue = "100") int count) throws Exception {
+                    @RequestParam(required = false, defaultValue = "100") int count,
+                    @RequestParam(required = false) String cursor,
+                    @RequestParam(required = false, defaultValue = "true") boolean totalResults) throws Exception {
         List<ClientDetails> result = new ArrayList<ClientDetails>();
         List<ClientDetails> clients;
+        int total;
+        String nextCursor = null;
         try {
-            clients = clientDetailsService.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder));
+            if (cursor != null) {
+                KeysetPage<ClientDetails> page = clientDetailsService.queryPage(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), cursor, count, totalResults);
+                clients = page.getResources();
+                total = page.getTotalResults();
+                nextCursor = page.getNextCursor();
+                startIndex = 1;
+            } else {
+                clients = clientDetailsService.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder));
+                total = clients.size();
+            }
             if (count > clients.size()) {
                 count = clients.size();
             }
@@ -478,14 +492,18 @@ public class ClientAdminEndpoints implements InitializingBean {
         }
 
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
-            return new SearchResults<ClientDetails>(Arrays.asList(SCIM_CLIENTS_SCHEMA_URI), result, startIndex, count,
-                            clients.size());
+            SearchResults<ClientDetails> results = new SearchResults<ClientDetails>(Arrays.asList(SCIM_CLIENTS_SCHEMA_URI), result, startIndex, count,
+                            total);
+            results.setNextCursor(nextCursor);
+            return results;
         }
 
         String[] attributes = attributesCommaSeparated.split(",");
         try {
-            return SearchResultsFactory.buildSearchResultFrom(result, startIndex, count, clients.size(), attributes,
+            SearchResults<?> results = SearchResultsFactory.buildSearchResultFrom(result, startIndex, count, total, attributes,
                             attributeNameMapper, Arrays.asList(SCIM_CLIENTS_SCHEMA_URI));
+            results.setNextCursor(nextCursor);
+            return results;
         } catch (SpelParseException e) {
             throw new UaaException("Invalid attributes: [" + attributesCommaSeparated + "]",
                             HttpStatus.BAD_REQUEST.value());
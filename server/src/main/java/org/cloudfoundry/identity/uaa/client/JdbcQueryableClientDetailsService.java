@@ -19,6 +19,7 @@ import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.QueryableResourceManager;
 import org.cloudfoundry.identity.uaa.resources.jdbc.AbstractQueryable;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
@@ -61,15 +62,31 @@ public class JdbcQueryableClientDetailsService extends AbstractQueryable<ClientD
         return CLIENT_DETAILS_TABLE;
     }
 
+    @Override
+    protected String getIdColumn() {
+        return "client_id";
+    }
+
     @Override
     public List<ClientDetails> query(String filter, String sortBy, boolean ascending) {
         //validate syntax
         getQueryConverter().convert(filter, sortBy, ascending);
+        return super.query(inCurrentZone(filter), sortBy, ascending);
+    }
+
+    @Override
+    public KeysetPage<ClientDetails> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean countTotal) {
+        //validate syntax
+        getQueryConverter().convert(filter, sortBy, ascending);
+        return super.queryPage(inCurrentZone(filter), sortBy, ascending, cursor, count, countTotal);
+    }
+
+    private String inCurrentZone(String filter) {
         if (StringUtils.hasText(filter)) {
             filter = "(" + filter + ") and ";
         }
         filter += " identity_zone_id eq \""+IdentityZoneHolder.get().getId()+"\"";
-        return super.query(filter, sortBy, ascending);
+        return filter;
     }
 
     @Override
@@ -30,7 +30,7 @@ abstract class AbstractClientAdminEvent extends AbstractUaaEvent {
         this.client = client;
     }
 
-    ClientDetails getClient() {
+    public ClientDetails getClient() {
         return client;
     }
 
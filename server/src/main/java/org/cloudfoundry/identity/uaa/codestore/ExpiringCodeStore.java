@@ -15,6 +15,7 @@ package org.cloudfoundry.identity.uaa.codestore;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 
 import java.sql.Timestamp;
+import java.util.List;
 
 public interface ExpiringCodeStore {
 
@@ -29,6 +30,17 @@ public interface ExpiringCodeStore {
      */
     ExpiringCode generateCode(String data, Timestamp expiresAt, String intent);
 
+    /**
+     * Generate and persist a one-time code for each of the given data values.
+     *
+     * @param data JSON objects to be associated with the codes
+     * @param intent An optional key (not necessarily unique) for looking up codes
+     * @return the generated codes, in the order of the data values
+     * @throws java.lang.NullPointerException if data, any data value or expiresAt is null
+     * @throws java.lang.IllegalArgumentException if expiresAt is in the past
+     */
+    List<ExpiringCode> generateCodes(List<String> data, Timestamp expiresAt, String intent);
+
     /**
      * Retrieve a code and delete it if it exists.
      * 
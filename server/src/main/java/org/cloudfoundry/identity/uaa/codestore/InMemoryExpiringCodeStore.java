@@ -17,6 +17,8 @@ import org.springframework.security.oauth2.common.util.RandomValueStringGenerato
 import org.springframework.util.Assert;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -48,6 +50,15 @@ public class InMemoryExpiringCodeStore implements ExpiringCodeStore {
         return expiringCode;
     }
 
+    @Override
+    public List<ExpiringCode> generateCodes(List<String> data, Timestamp expiresAt, String intent) {
+        List<ExpiringCode> codes = new ArrayList<>();
+        for (String value : data) {
+            codes.add(generateCode(value, expiresAt, intent));
+        }
+        return codes;
+    }
+
     @Override
     public ExpiringCode retrieveCode(String code) {
         if (code == null) {
@@ -15,20 +15,26 @@ package org.cloudfoundry.identity.uaa.codestore;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredRows;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiringRowStore;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
-public class JdbcExpiringCodeStore implements ExpiringCodeStore {
+public class JdbcExpiringCodeStore implements ExpiringCodeStore, ExpiringRowStore {
 
     public static final String tableName = "expiring_code_store";
     public static final String fields = "code, expiresat, data, intent";
@@ -36,7 +42,6 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
     public static final String insert = "insert into " + tableName + " (" + fields + ") values (?,?,?,?)";
     public static final String delete = "delete from " + tableName + " where code = ?";
     public static final String deleteIntent = "delete from " + tableName + " where intent = ?";
-    public static final String deleteExpired = "delete from " + tableName + " where expiresat < ?";
     public static final String select = "select " + fields + " from " + tableName + " where code = ?";
     public static final String SELECT_BY_EMAIL_AND_CLIENT_ID = "select " + fields + " from " + tableName +
             " where data like '%%\"email\":\"%s\"%%' and data like '%%\"client_id\":\"%s\"%%' ORDER BY expiresat DESC LIMIT 1";
@@ -47,16 +52,7 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
 
     private JdbcTemplate jdbcTemplate;
 
-    private AtomicLong lastExpired = new AtomicLong();
-    private long expirationInterval = 60 * 1000; // once a minute
-
-    public long getExpirationInterval() {
-        return expirationInterval;
-    }
-
-    public void setExpirationInterval(long expirationInterval) {
-        this.expirationInterval = expirationInterval;
-    }
+    private TransactionTemplate transactionTemplate;
 
     protected JdbcExpiringCodeStore() {
         // package protected for unit tests only
@@ -70,9 +66,16 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
         jdbcTemplate = new JdbcTemplate(dataSource);
     }
 
+    /**
+     * The transaction manager that {@link #generateCodes(List, Timestamp, String)}
+     * inserts a batch of codes with.
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     @Override
     public ExpiringCode generateCode(String data, Timestamp expiresAt, String intent) {
-        cleanExpiredEntries();
 
         if (data == null || expiresAt == null) {
             throw new NullPointerException();
@@ -104,10 +107,49 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
         return null;
     }
 
+    /**
+     * Inserts all codes with one batch in a single transaction. If a generated
+     * code collides with an existing one, the batch is rolled back and the codes
+     * are generated one at a time.
+     */
     @Override
-    public ExpiringCode retrieveCode(String code) {
-        cleanExpiredEntries();
+    public List<ExpiringCode> generateCodes(List<String> data, Timestamp expiresAt, String intent) {
+        if (data == null || expiresAt == null) {
+            throw new NullPointerException();
+        }
+
+        if (expiresAt.getTime() < System.currentTimeMillis()) {
+            throw new IllegalArgumentException();
+        }
 
+        List<ExpiringCode> codes = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (String value : data) {
+            if (value == null) {
+                throw new NullPointerException();
+            }
+            ExpiringCode code = new ExpiringCode(generator.generate(), expiresAt, value, intent);
+            codes.add(code);
+            rows.add(new Object[] {code.getCode(), expiresAt.getTime(), value, intent});
+        }
+        if (rows.isEmpty()) {
+            return codes;
+        }
+        try {
+            transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(insert, rows)
+            );
+        } catch (DataIntegrityViolationException x) {
+            logger.debug("Duplicate code generated in batch, storing codes one at a time");
+            for (int i = 0; i < codes.size(); i++) {
+                codes.set(i, generateCode(codes.get(i).getData(), expiresAt, intent));
+            }
+        }
+        return codes;
+    }
+
+    @Override
+    public ExpiringCode retrieveCode(String code) {
         if (code == null) {
             throw new NullPointerException();
         }
@@ -141,17 +183,9 @@ public class JdbcExpiringCodeStore implements ExpiringCodeStore {
         jdbcTemplate.update(deleteIntent, intent);
     }
 
-    public int cleanExpiredEntries() {
-        long now = System.currentTimeMillis();
-        long lastCheck = lastExpired.get();
-
-        if ((now - lastCheck) > expirationInterval && lastExpired.compareAndSet(lastCheck, now)) {
-            int count = jdbcTemplate.update(deleteExpired, now);
-            logger.debug("Expiring code sweeper complete, deleted " + count + " entries.");
-            return count;
-        }
-
-        return 0;
+    @Override
+    public List<ExpiredRows> getExpiredRows(long now) {
+        return Collections.singletonList(new ExpiredRows(tableName, "code", "expiresat < ?", now));
     }
 
     protected static class JdbcExpiringCodeMapper implements RowMapper<ExpiringCode> {
@@ -1,5 +1,7 @@
 package org.cloudfoundry.identity.uaa.invitations;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.codestore.ExpiringCode;
 import org.cloudfoundry.identity.uaa.codestore.ExpiringCodeStore;
 import org.cloudfoundry.identity.uaa.error.UaaException;
@@ -7,10 +9,12 @@ import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
 import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceConflictException;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.UaaUrlUtils;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -28,9 +32,15 @@ import org.springframework.web.bind.annotation.RequestParam;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.cloudfoundry.identity.uaa.codestore.ExpiringCodeType.INVITATION;
 import static org.cloudfoundry.identity.uaa.constants.OriginKeys.ORIGIN;
@@ -43,6 +53,8 @@ public class InvitationsEndpoint {
 
     public static final int INVITATION_EXPIRY_DAYS = 7;
 
+    private final Log logger = LogFactory.getLog(getClass());
+
     private ScimUserProvisioning users;
     private IdentityProviderProvisioning providers;
     private ClientDetailsService clients;
@@ -72,58 +84,133 @@ public class InvitationsEndpoint {
             }
         }
 
-        InvitationsResponse invitationsResponse = new InvitationsResponse();
-
         List<IdentityProvider> activeProviders = providers.retrieveActive(IdentityZoneHolder.get().getId());
         ClientDetails client = clients.loadClientByClientId(clientId);
-        for (String email : invitations.getEmails()) {
+
+        List<String> emails = Arrays.asList(invitations.getEmails());
+        InvitationsResponse.Invitee[] results = new InvitationsResponse.Invitee[emails.size()];
+        Map<String, Set<String>> emailsByOrigin = new LinkedHashMap<>();
+        String[] origins = new String[emails.size()];
+        for (int i = 0; i < emails.size(); i++) {
+            String email = emails.get(i);
+            List<IdentityProvider> providers = filter(activeProviders, client, email);
+            if (providers.size() == 1) {
+                origins[i] = providers.get(0).getOriginKey();
+                emailsByOrigin.computeIfAbsent(origins[i], k -> new LinkedHashSet<>()).add(normalize(email));
+            } else if (providers.size() == 0) {
+                results[i] = InvitationsResponse.failure(email, "provider.non-existent", "No authentication provider found.");
+            } else {
+                results[i] = InvitationsResponse.failure(email, "provider.ambiguous", "Multiple authentication providers found.");
+            }
+        }
+
+        Map<String, Map<String, List<ScimUser>>> usersByOrigin = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : emailsByOrigin.entrySet()) {
+            usersByOrigin.put(entry.getKey(), findOrCreateUsers(entry.getValue(), entry.getKey()));
+        }
+
+        String accountsUrl = UaaUrlUtils.getUaaUrl("/invitations/accept");
+        List<Integer> invited = new ArrayList<>();
+        List<ScimUser> invitedUsers = new ArrayList<>();
+        List<String> codeData = new ArrayList<>();
+        for (int i = 0; i < emails.size(); i++) {
+            if (origins[i] == null) {
+                continue;
+            }
+            String email = emails.get(i);
+            List<ScimUser> matches = usersByOrigin.get(origins[i]).get(normalize(email));
+            if (matches == null || matches.isEmpty()) {
+                results[i] = InvitationsResponse.failure(email, "invitation.exception", "Unable to create user.");
+            } else if (matches.size() > 1) {
+                results[i] = InvitationsResponse.failure(email, "user.ambiguous", "Multiple users with the same origin matched to the email address.");
+            } else {
+                ScimUser user = matches.get(0);
+                Map<String, String> data = new HashMap<>();
+                data.put(InvitationConstants.USER_ID, user.getId());
+                data.put(InvitationConstants.EMAIL, user.getPrimaryEmail());
+                data.put(CLIENT_ID, clientId);
+                data.put(REDIRECT_URI, redirectUri);
+                data.put(ORIGIN, user.getOrigin());
+                invited.add(i);
+                invitedUsers.add(user);
+                codeData.add(JsonUtils.writeValueAsString(data));
+            }
+        }
+
+        Timestamp expiry = new Timestamp(System.currentTimeMillis() + (INVITATION_EXPIRY_DAYS * 24 * 60 * 60 * 1000));
+        List<ExpiringCode> codes = expiringCodeStore.generateCodes(codeData, expiry, INVITATION.name());
+        for (int j = 0; j < invited.size(); j++) {
+            int i = invited.get(j);
+            ScimUser user = invitedUsers.get(j);
+            String invitationLink = accountsUrl + "?code=" + codes.get(j).getCode();
             try {
-                List<IdentityProvider> providers = filter(activeProviders, client, email);
-                if (providers.size() == 1) {
-                    ScimUser user = findOrCreateUser(email, providers.get(0).getOriginKey());
-
-                    String accountsUrl = UaaUrlUtils.getUaaUrl("/invitations/accept");
-
-                    Map<String, String> data = new HashMap<>();
-                    data.put(InvitationConstants.USER_ID, user.getId());
-                    data.put(InvitationConstants.EMAIL, user.getPrimaryEmail());
-                    data.put(CLIENT_ID, clientId);
-                    data.put(REDIRECT_URI, redirectUri);
-                    data.put(ORIGIN, user.getOrigin());
-                    Timestamp expiry = new Timestamp(System.currentTimeMillis() + (INVITATION_EXPIRY_DAYS * 24 * 60 * 60 * 1000));
-                    ExpiringCode code = expiringCodeStore.generateCode(JsonUtils.writeValueAsString(data), expiry, INVITATION.name());
-
-                    String invitationLink = accountsUrl + "?code=" + code.getCode();
-                    try {
-                        URL inviteLink = new URL(invitationLink);
-                        invitationsResponse.getNewInvites().add(InvitationsResponse.success(user.getPrimaryEmail(), user.getId(), user.getOrigin(), inviteLink));
-                    } catch (MalformedURLException mue) {
-                        invitationsResponse.getFailedInvites().add(InvitationsResponse.failure(email, "invitation.exception.url", String.format("Malformed url", invitationLink)));
-                    }
-                } else if (providers.size() == 0) {
-                    invitationsResponse.getFailedInvites().add(InvitationsResponse.failure(email, "provider.non-existent", "No authentication provider found."));
-                } else {
-                    invitationsResponse.getFailedInvites().add(InvitationsResponse.failure(email, "provider.ambiguous", "Multiple authentication providers found."));
-                }
-            } catch (ScimResourceConflictException x) {
-                invitationsResponse.getFailedInvites().add(InvitationsResponse.failure(email, "user.ambiguous", "Multiple users with the same origin matched to the email address."));
-            } catch (UaaException uaae) {
-                invitationsResponse.getFailedInvites().add(InvitationsResponse.failure(email, "invitation.exception", uaae.getMessage()));
+                URL inviteLink = new URL(invitationLink);
+                results[i] = InvitationsResponse.success(user.getPrimaryEmail(), user.getId(), user.getOrigin(), inviteLink);
+            } catch (MalformedURLException mue) {
+                results[i] = InvitationsResponse.failure(emails.get(i), "invitation.exception.url", String.format("Malformed url", invitationLink));
+            }
+        }
+
+        InvitationsResponse invitationsResponse = new InvitationsResponse();
+        for (InvitationsResponse.Invitee result : results) {
+            if (result.isSuccess()) {
+                invitationsResponse.getNewInvites().add(result);
+            } else {
+                invitationsResponse.getFailedInvites().add(result);
             }
         }
         return new ResponseEntity<>(invitationsResponse, HttpStatus.OK);
     }
 
+    /**
+     * Looks up the users for all of the given (normalized) email addresses of an
+     * origin at once and creates the missing ones in a single batch. Should the
+     * batch fail, the missing users are created one at a time instead so that a
+     * single bad address does not fail the others.
+     *
+     * @return the users matching each email address
+     */
+    protected Map<String, List<ScimUser>> findOrCreateUsers(Set<String> emails, String origin) {
+        Map<String, List<ScimUser>> result = new HashMap<>();
+        for (ScimUser user : users.retrieveByEmailsAndOrigin(emails, origin)) {
+            result.computeIfAbsent(normalize(user.getPrimaryEmail()), k -> new ArrayList<>()).add(user);
+        }
+
+        List<ScimUser> missing = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        for (String email : emails) {
+            if (!result.containsKey(email)) {
+                missing.add(newUser(email, origin));
+                passwords.add(new RandomValueStringGenerator(12).generate());
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        try {
+            for (ScimUser user : users.createUsers(missing, passwords)) {
+                result.put(normalize(user.getPrimaryEmail()), Collections.singletonList(user));
+            }
+        } catch (ScimException | DataAccessException x) {
+            logger.debug("Unable to create invited users in a batch, creating them one at a time", x);
+            for (ScimUser user : missing) {
+                try {
+                    result.put(user.getPrimaryEmail(), Collections.singletonList(findOrCreateUser(user.getPrimaryEmail(), origin)));
+                } catch (ScimResourceConflictException conflict) {
+                    result.put(user.getPrimaryEmail(), users.retrieveByEmailsAndOrigin(Collections.singleton(user.getPrimaryEmail()), origin));
+                } catch (ScimException | DataAccessException | UaaException e) {
+                    logger.debug("Unable to create invited user " + user.getPrimaryEmail(), e);
+                }
+            }
+        }
+        return result;
+    }
+
     protected ScimUser findOrCreateUser(String email, String origin) {
-        email = email.trim().toLowerCase();
+        email = normalize(email);
         List<ScimUser> results = users.query(String.format("email eq \"%s\" and origin eq \"%s\"", email, origin));
         if (results == null || results.size() == 0) {
-            ScimUser user = new ScimUser(null, email, "", "");
-            user.setPrimaryEmail(email.toLowerCase());
-            user.setOrigin(origin);
-            user.setVerified(false);
-            user.setActive(true);
-            return users.createUser(user, new RandomValueStringGenerator(12).generate());
+            return users.createUser(newUser(email, origin), new RandomValueStringGenerator(12).generate());
         } else if (results.size() == 1) {
             return results.get(0);
         } else {
@@ -131,4 +218,17 @@ public class InvitationsEndpoint {
         }
     }
 
+    private static ScimUser newUser(String email, String origin) {
+        ScimUser user = new ScimUser(null, email, "", "");
+        user.setPrimaryEmail(email);
+        user.setOrigin(origin);
+        user.setVerified(false);
+        user.setActive(true);
+        return user;
+    }
+
+    private static String normalize(String email) {
+        return email.trim().toLowerCase();
+    }
+
 }
@@ -0,0 +1,309 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.message;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends e-mail on a background thread, so that a request that triggers a
+ * message does not wait for the SMTP relay.
+ * <p>
+ * Messages are kept in a bounded in-memory queue and sent in batches of up to
+ * {@link #setBatchSize(int)} messages, which {@link JavaMailSender#send(MimeMessage[])}
+ * delivers over a single SMTP connection. A message that cannot be sent is
+ * retried with an exponential backoff, up to {@link #setMaxAttempts(int)} times.
+ * If the queue is full the message is sent on the calling thread instead.
+ * <p>
+ * The queue is in memory: messages still queued or waiting for a retry get one
+ * last attempt when the queue shuts down, and are lost if the process dies.
+ * Delivery errors of a queued message are logged, never reported to the
+ * caller.
+ */
+@ManagedResource
+public class EmailDeliveryQueue implements DisposableBean {
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong sentByCaller = new AtomicLong();
+
+    private boolean enabled = false;
+    private int capacity = 10000;
+    private int batchSize = 50;
+    private int maxAttempts = 5;
+    private long initialBackoffMillis = 1000;
+    private long maxBackoffMillis = 60 * 1000;
+
+    private volatile BlockingQueue<PendingMessage> queue;
+    private volatile ScheduledExecutorService executor;
+    private volatile boolean running;
+    private volatile boolean stopped;
+    private final Set<PendingMessage> delayed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Sends the message, or queues it if this queue is enabled.
+     */
+    public void send(JavaMailSender mailSender, MimeMessage message) {
+        if (!isEnabled() || stopped) {
+            mailSender.send(message);
+            return;
+        }
+        if (executor == null) {
+            start();
+        }
+        if (running && queue.offer(new PendingMessage(mailSender, message))) {
+            queued.incrementAndGet();
+        } else {
+            logger.warn("E-mail queue is full, sending message on the calling thread");
+            sentByCaller.incrementAndGet();
+            mailSender.send(message);
+        }
+    }
+
+    protected synchronized void start() {
+        if (executor != null || stopped) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(2, r -> {
+            Thread thread = new Thread(r, "email-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // retries still waiting at shutdown are picked up by destroy()
+        pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        running = true;
+        executor = pool;
+        executor.execute(() -> {
+            try {
+                while (running) {
+                    PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    List<PendingMessage> batch = new ArrayList<>();
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    try {
+                        deliver(batch);
+                    } catch (RuntimeException e) {
+                        failed.addAndGet(batch.size());
+                        logger.error("Unable to send " + batch.size() + " e-mail messages", e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        stopped = true;
+        if (executor == null) {
+            return;
+        }
+        // let the batch in flight finish instead of interrupting it
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("E-mail delivery did not finish within 10 seconds of shutting down");
+        }
+        executor = null;
+        List<PendingMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (PendingMessage message : delayed) {
+            if (delayed.remove(message)) {
+                remaining.add(message);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            logger.info("Sending " + remaining.size() + " queued e-mail messages before shutting down");
+            deliver(remaining);
+        }
+    }
+
+    protected void deliver(List<PendingMessage> batch) {
+        Map<JavaMailSender, List<PendingMessage>> bySender = new LinkedHashMap<>();
+        for (PendingMessage message : batch) {
+            bySender.computeIfAbsent(message.mailSender, s -> new ArrayList<>()).add(message);
+        }
+        for (Map.Entry<JavaMailSender, List<PendingMessage>> entry : bySender.entrySet()) {
+            List<PendingMessage> messages = entry.getValue();
+            MimeMessage[] mimeMessages = new MimeMessage[messages.size()];
+            for (int i = 0; i < mimeMessages.length; i++) {
+                mimeMessages[i] = messages.get(i).message;
+                messages.get(i).attempts++;
+            }
+            try {
+                entry.getKey().send(mimeMessages);
+                sent.addAndGet(mimeMessages.length);
+            } catch (MailSendException e) {
+                Map<Object, Exception> failedMessages = e.getFailedMessages();
+                for (PendingMessage message : messages) {
+                    if (failedMessages.isEmpty() || failedMessages.containsKey(message.message)) {
+                        retry(message, e);
+                    } else {
+                        sent.incrementAndGet();
+                    }
+                }
+            } catch (MailException e) {
+                for (PendingMessage message : messages) {
+                    retry(message, e);
+                }
+            }
+        }
+    }
+
+    protected void retry(PendingMessage message, MailException cause) {
+        ScheduledExecutorService current = executor;
+        if (message.attempts >= maxAttempts || current == null) {
+            failed.incrementAndGet();
+            logger.error("Unable to send e-mail message after " + message.attempts + " attempts", cause);
+            return;
+        }
+        retried.incrementAndGet();
+        logger.debug("Unable to send e-mail message, retrying", cause);
+        delayed.add(message);
+        if (!running) {
+            return;
+        }
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(message.attempts - 1, 20));
+        try {
+            current.schedule(() -> {
+                if (delayed.remove(message) && !queue.offer(message)) {
+                    failed.incrementAndGet();
+                    logger.error("E-mail queue is full, dropping a message that could not be sent", cause);
+                }
+            }, backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, destroy() makes the last attempt
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "E-mail Messages Queued")
+    public long getQueuedCount() {
+        return queued.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "E-mail Messages Sent From The Queue")
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "E-mail Message Retries")
+    public long getRetryCount() {
+        return retried.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "E-mail Messages Failed")
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "E-mail Messages Sent By The Caller With A Full Queue")
+    public long getSentByCallerCount() {
+        return sentByCaller.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "E-mail Queue Size")
+    public int getSize() {
+        BlockingQueue<PendingMessage> current = queue;
+        return current == null ? 0 : current.size();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    protected static class PendingMessage {
+        private final JavaMailSender mailSender;
+        private final MimeMessage message;
+        private int attempts;
+
+        PendingMessage(JavaMailSender mailSender, MimeMessage message) {
+            this.mailSender = mailSender;
+            this.message = message;
+        }
+    }
+}
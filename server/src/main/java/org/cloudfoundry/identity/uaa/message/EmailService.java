@@ -16,11 +16,15 @@ import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import java.io.UnsupportedEncodingException;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class EmailService implements MessageService {
     private final Log logger = LogFactory.getLog(getClass());
 
     private JavaMailSender mailSender;
+    private EmailDeliveryQueue deliveryQueue;
+    private Set<MessageType> queuedMessageTypes = EnumSet.noneOf(MessageType.class);
     private final String loginUrl;
     private final String companyName;
 
@@ -41,6 +45,34 @@ public class EmailService implements MessageService {
         this.mailSender = mailSender;
     }
 
+    public EmailDeliveryQueue getDeliveryQueue() {
+        return deliveryQueue;
+    }
+
+    /**
+     * @param deliveryQueue the queue messages of the
+     *            {@link #setQueuedMessageTypes(Set) queued types} are handed to,
+     *            if not set messages are sent on the calling thread
+     */
+    public void setDeliveryQueue(EmailDeliveryQueue deliveryQueue) {
+        this.deliveryQueue = deliveryQueue;
+    }
+
+    public Set<MessageType> getQueuedMessageTypes() {
+        return queuedMessageTypes;
+    }
+
+    /**
+     * @param queuedMessageTypes the message types handed to the delivery queue,
+     *            none by default. A queued message's delivery errors never reach
+     *            the caller, so password reset, e-mail change and account
+     *            creation, which report a failed send, are sent synchronously
+     *            unless listed here.
+     */
+    public void setQueuedMessageTypes(Set<MessageType> queuedMessageTypes) {
+        this.queuedMessageTypes = queuedMessageTypes.isEmpty() ? EnumSet.noneOf(MessageType.class) : EnumSet.copyOf(queuedMessageTypes);
+    }
+
     private Address[] getSenderAddresses() throws AddressException, UnsupportedEncodingException {
         String host = UriComponentsBuilder.fromHttpUrl(loginUrl).build().getHost();
         String name = null;
@@ -64,10 +96,16 @@ public class EmailService implements MessageService {
             message.setContent(htmlContent, "text/html");
         } catch (MessagingException e) {
             logger.error("Exception raised while sending message to " + email, e);
+            return;
         } catch (UnsupportedEncodingException e) {
             logger.error("Exception raised while sending message to " + email, e);
+            return;
         }
 
-        mailSender.send(message);
+        if (deliveryQueue != null && queuedMessageTypes.contains(messageType)) {
+            deliveryQueue.send(mailSender, message);
+        } else {
+            mailSender.send(message);
+        }
     }
 }
@@ -49,6 +49,7 @@ public class LocalUaaRestTemplate extends OAuth2RestTemplate implements Initiali
     protected String clientId;
     protected ClientDetailsService clientDetailsService;
     protected boolean verifySsl = true;
+    protected ClientHttpRequestFactory nonValidatingRequestFactory;
 
     public LocalUaaRestTemplate(OAuth2ProtectedResourceDetails resource) {
         super(resource);
@@ -120,7 +121,23 @@ public class LocalUaaRestTemplate extends OAuth2RestTemplate implements Initiali
         this.verifySsl = verifySsl;
     }
 
+    public ClientHttpRequestFactory getNonValidatingRequestFactory() {
+        return nonValidatingRequestFactory;
+    }
+
+    /**
+     * @param nonValidatingRequestFactory the request factory used when SSL
+     *            validation is turned off, a new one is created if this is not set
+     */
+    public void setNonValidatingRequestFactory(ClientHttpRequestFactory nonValidatingRequestFactory) {
+        this.nonValidatingRequestFactory = nonValidatingRequestFactory;
+    }
+
     protected void skipSslValidation() throws KeyStoreException, NoSuchAlgorithmException, KeyManagementException {
+        if (nonValidatingRequestFactory != null) {
+            this.setRequestFactory(nonValidatingRequestFactory);
+            return;
+        }
         SSLContext sslContext = new SSLContextBuilder().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build();
         CloseableHttpClient httpClient = HttpClients.custom().setSslcontext(sslContext).build();
         ClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
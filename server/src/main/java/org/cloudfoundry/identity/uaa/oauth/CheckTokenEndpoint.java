@@ -14,13 +14,11 @@ package org.cloudfoundry.identity.uaa.oauth;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
 import org.cloudfoundry.identity.uaa.oauth.token.Claims;
-import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TokenValidation;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.jwt.Jwt;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
@@ -65,7 +63,15 @@ public class CheckTokenEndpoint implements InitializingBean {
     @ResponseBody
     public Claims checkToken(@RequestParam("token") String value, @RequestParam(name = "scopes", required = false, defaultValue = "") List<String> scopes) {
 
-        OAuth2AccessToken token = resourceServerTokenServices.readAccessToken(value);
+        OAuth2AccessToken token;
+        ValidatedAccessToken validated = null;
+        if (resourceServerTokenServices instanceof UaaTokenServices) {
+            // validate once and build both views from the same result
+            validated = ((UaaTokenServices) resourceServerTokenServices).verifyAccessToken(value);
+            token = ((UaaTokenServices) resourceServerTokenServices).readAccessToken(validated);
+        } else {
+            token = resourceServerTokenServices.readAccessToken(value);
+        }
         if (token == null) {
             throw new InvalidTokenException("Token was not recognised");
         }
@@ -75,12 +81,17 @@ public class CheckTokenEndpoint implements InitializingBean {
         }
 
         try {
-            resourceServerTokenServices.loadAuthentication(value);
+            if (validated != null) {
+                ((UaaTokenServices) resourceServerTokenServices).loadAuthentication(validated);
+            } else {
+                resourceServerTokenServices.loadAuthentication(value);
+            }
         } catch (AuthenticationException x) {
             throw new InvalidTokenException((x.getMessage()));
         }
 
-        Claims response = getClaimsForToken(token.getValue());
+        TokenValidation validation = validated != null ? validated.getValidation() : TokenValidation.validate(token.getValue()).throwIfInvalid();
+        Claims response = validation.getClaimsView();
 
         List<String> claimScopes = response.getScope().stream().map(String::toLowerCase).collect(Collectors.toList());
 
@@ -98,24 +109,6 @@ public class CheckTokenEndpoint implements InitializingBean {
         return response;
     }
 
-    private Claims getClaimsForToken(String token) {
-        Jwt tokenJwt;
-        try {
-            tokenJwt = JwtHelper.decode(token);
-        } catch (Throwable t) {
-            throw new InvalidTokenException("Invalid token (could not decode): " + token);
-        }
-
-        Claims claims;
-        try {
-            claims = JsonUtils.readValue(tokenJwt.getClaims(), Claims.class);
-        } catch (JsonUtils.JsonUtilException e) {
-            throw new IllegalStateException("Cannot read token claims", e);
-        }
-
-        return claims;
-    }
-
     @ExceptionHandler(InvalidTokenException.class)
     public ResponseEntity<OAuth2Exception> handleException(Exception e) throws Exception {
         logger.info("Handling error: " + e.getClass().getSimpleName() + ", " + e.getMessage());
@@ -4,6 +4,7 @@ import org.bouncycastle.asn1.ASN1Sequence;
 import org.cloudfoundry.identity.uaa.impl.config.LegacyTokenKey;
 import org.cloudfoundry.identity.uaa.oauth.jwt.IdentifiedSigner;
 import org.cloudfoundry.identity.uaa.oauth.jwt.Signer;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneConfiguration;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
@@ -25,7 +26,7 @@ import java.security.spec.RSAPrivateCrtKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -44,29 +45,30 @@ public class KeyInfo {
     private String type = "MAC";
     private RSAPublicKey rsaPublicKey;
 
+    private static final KeyInfoRegistry registry = new KeyInfoRegistry();
+
     public static KeyInfo getKey(String keyId) {
         return getKeys().get(keyId);
     }
 
     public static Map<String, KeyInfo> getKeys() {
-        IdentityZoneConfiguration config = IdentityZoneHolder.get().getConfig();
+        IdentityZone zone = IdentityZoneHolder.get();
+        IdentityZoneConfiguration config = zone.getConfig();
         if (config == null || config.getTokenPolicy().getKeys() == null || config.getTokenPolicy().getKeys().isEmpty()) {
-            config = IdentityZoneHolder.getUaaZone().getConfig();
+            zone = IdentityZoneHolder.getUaaZone();
+            config = zone.getConfig();
         }
 
-        Map<String, KeyInfo> keys = new HashMap<>();
-        for (Map.Entry<String, String> entry : config.getTokenPolicy().getKeys().entrySet()) {
-            KeyInfo keyInfo = new KeyInfo();
-            keyInfo.setKeyId(entry.getKey());
-            keyInfo.setSigningKey(entry.getValue());
-            keys.put(entry.getKey(), keyInfo);
+        Map<String, String> definitions = config.getTokenPolicy().getKeys();
+        if (definitions == null || definitions.isEmpty()) {
+            return Collections.singletonMap(LegacyTokenKey.LEGACY_TOKEN_KEY_ID, LegacyTokenKey.getLegacyTokenKeyInfo());
         }
 
-        if(keys.isEmpty()) {
-            keys.put(LegacyTokenKey.LEGACY_TOKEN_KEY_ID, LegacyTokenKey.getLegacyTokenKeyInfo());
-        }
+        return registry.getKeys(zone.getId(), definitions);
+    }
 
-        return keys;
+    public static KeyInfoRegistry getRegistry() {
+        return registry;
     }
 
     public static KeyInfo getActiveKey() {
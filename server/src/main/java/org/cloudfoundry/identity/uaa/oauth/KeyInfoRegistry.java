@@ -0,0 +1,123 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the parsed signing and verification keys of each identity zone, so that
+ * PEM decoding and RSA key construction happen once per key instead of once
+ * per token that is issued or checked.
+ * <p>
+ * An entry is only reused while the zone's token policy still contains the key
+ * definitions it was built from, so a key rotation is picked up on the next call
+ * even if it was made on another node. Entries are dropped when a zone is
+ * modified or deleted.
+ */
+@ManagedResource
+public class KeyInfoRegistry implements ApplicationListener<AbstractUaaEvent> {
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final ConfigurableCache<String, ZoneKeys> cache = new ConfigurableCache<>(true, 10000, ConfigurableCache.NO_EXPIRY);
+
+    /**
+     * @param zoneId the zone the key definitions belong to
+     * @param definitions key id to signing key mapping, as found in the zone's token policy
+     * @return an unmodifiable key id to {@link KeyInfo} mapping
+     */
+    public Map<String, KeyInfo> getKeys(String zoneId, Map<String, String> definitions) {
+        ZoneKeys zoneKeys = cache.getIfPresent(zoneId, keys -> keys.definitions.equals(definitions));
+        if (zoneKeys != null) {
+            return zoneKeys.keys;
+        }
+        zoneKeys = new ZoneKeys(definitions);
+        cache.put(zoneId, zoneKeys);
+        return zoneKeys.keys;
+    }
+
+    public void invalidate(String zoneId) {
+        cache.invalidate(zoneId);
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof IdentityZoneModifiedEvent) {
+            invalidate(((IdentityZone) event.getSource()).getId());
+        } else if (event instanceof EntityDeletedEvent && event.getSource() instanceof IdentityZone) {
+            invalidate(((IdentityZone) event.getSource()).getId());
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Token Key Cache Hits")
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Token Key Cache Misses")
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Token Key Cache Zones")
+    public long getSize() {
+        return cache.size();
+    }
+
+    public int getMaxZones() {
+        return cache.getMaxEntries();
+    }
+
+    public void setMaxZones(int maxZones) {
+        cache.setMaxEntries(maxZones);
+    }
+
+    private class ZoneKeys {
+        private final Map<String, String> definitions;
+        private final Map<String, KeyInfo> keys;
+
+        private ZoneKeys(Map<String, String> definitions) {
+            this.definitions = new HashMap<>(definitions);
+            Map<String, KeyInfo> keys = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : definitions.entrySet()) {
+                KeyInfo keyInfo = new KeyInfo();
+                keyInfo.setKeyId(entry.getKey());
+                keyInfo.setSigningKey(entry.getValue());
+                keys.put(entry.getKey(), keyInfo);
+            }
+            this.keys = Collections.unmodifiableMap(keys);
+            logger.debug("Parsed " + keys.size() + " token key(s)");
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.cloudfoundry.identity.uaa.oauth.token.RevocableTokenProvisioning;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
+import org.cloudfoundry.identity.uaa.user.UaaUserDatabase;
 import org.cloudfoundry.identity.uaa.zone.MultitenantJdbcClientDetailsService;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.ResponseEntity;
@@ -48,6 +49,8 @@ public class TokenRevocationEndpoint {
     private final MultitenantJdbcClientDetailsService clientDetailsService;
     private final RandomValueStringGenerator generator = new RandomValueStringGenerator(8);
     private final RevocableTokenProvisioning tokenProvisioning;
+    private VerifiedTokenCache verifiedTokenCache;
+    private UaaUserDatabase userDatabase;
 
     public TokenRevocationEndpoint(MultitenantJdbcClientDetailsService clientDetailsService, ScimUserProvisioning userProvisioning, RevocableTokenProvisioning tokenProvisioning) {
         this.clientDetailsService = clientDetailsService;
@@ -55,12 +58,26 @@ public class TokenRevocationEndpoint {
         this.tokenProvisioning = tokenProvisioning;
     }
 
+    public void setVerifiedTokenCache(VerifiedTokenCache verifiedTokenCache) {
+        this.verifiedTokenCache = verifiedTokenCache;
+    }
+
+    public void setUserDatabase(UaaUserDatabase userDatabase) {
+        this.userDatabase = userDatabase;
+    }
+
     @RequestMapping("/oauth/token/revoke/user/{userId}")
     public ResponseEntity<Void> revokeTokensForUser(@PathVariable String userId) {
         logger.debug("Revoking tokens for user: " + userId);
         ScimUser user = userProvisioning.retrieve(userId);
         user.setSalt(generator.generate());
         userProvisioning.update(userId, user);
+        if (verifiedTokenCache != null) {
+            verifiedTokenCache.invalidateUser(userId);
+        }
+        if (userDatabase != null) {
+            userDatabase.invalidateValidationCache(userId);
+        }
         logger.debug("Tokens revoked for user: " + userId);
         return new ResponseEntity<>(OK);
     }
@@ -71,6 +88,9 @@ public class TokenRevocationEndpoint {
         BaseClientDetails client = (BaseClientDetails)clientDetailsService.loadClientByClientId(clientId);
         client.addAdditionalInformation(ClientConstants.TOKEN_SALT,generator.generate());
         clientDetailsService.updateClientDetails(client);
+        if (verifiedTokenCache != null) {
+            verifiedTokenCache.invalidateClient(clientId);
+        }
         logger.debug("Tokens revoked for client: " + clientId);
         return new ResponseEntity<>(OK);
     }
@@ -80,6 +100,9 @@ public class TokenRevocationEndpoint {
         logger.debug("Revoking token");
 
         tokenProvisioning.delete(tokenId, -1);
+        if (verifiedTokenCache != null) {
+            verifiedTokenCache.invalidateTokenId(tokenId);
+        }
 
         logger.debug("Revoked token with ID: " + tokenId);
         return new ResponseEntity<>(OK);
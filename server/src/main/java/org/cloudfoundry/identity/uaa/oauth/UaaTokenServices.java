@@ -132,6 +132,8 @@ import static org.cloudfoundry.identity.uaa.util.TokenValidation.validate;
 public class UaaTokenServices implements AuthorizationServerTokenServices, ResourceServerTokenServices,
                 InitializingBean, ApplicationEventPublisherAware {
 
+    private static final Pattern JWT_PATTERN = Pattern.compile("[a-zA-Z0-9_\\-\\\\=]*\\.[a-zA-Z0-9_\\-\\\\=]*\\.[a-zA-Z0-9_\\-\\\\=]*");
+
     private final Log logger = LogFactory.getLog(getClass());
 
     private UaaUserDatabase userDatabase = null;
@@ -152,6 +154,8 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
 
     private RevocableTokenProvisioning tokenProvisioning;
 
+    private VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache();
+
     private Set<String> excludedClaims = Collections.EMPTY_SET;
 
     public Set<String> getExcludedClaims() {
@@ -174,6 +178,14 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         this.tokenProvisioning = tokenProvisioning;
     }
 
+    public VerifiedTokenCache getVerifiedTokenCache() {
+        return verifiedTokenCache;
+    }
+
+    public void setVerifiedTokenCache(VerifiedTokenCache verifiedTokenCache) {
+        this.verifiedTokenCache = verifiedTokenCache;
+    }
+
     @Override
     public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
         this.applicationEventPublisher = applicationEventPublisher;
@@ -221,6 +233,7 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         // TODO: Need to add a lookup by id so that the refresh token does not
         // need to contain a name
         UaaUser user = userDatabase.retrieveUserById(userid);
+        userDatabase.invalidateValidationCache(userid);
         ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
 
         Integer refreshTokenIssuedAt = (Integer) claims.get(IAT);
@@ -558,6 +571,8 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         } else {
             userId = getUserId(authentication);
             user = userDatabase.retrieveUserById(userId);
+            // the token must not be checked against authorities that predate it
+            userDatabase.invalidateValidationCache(userId);
             if (authentication.getUserAuthentication() instanceof UaaAuthentication) {
                 userAuthenticationTime = new Date(((UaaAuthentication)authentication.getUserAuthentication()).getAuthenticatedTime());
             }
@@ -899,10 +914,28 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         if (StringUtils.isEmpty(accessToken)) {
             throw new InvalidTokenException("Invalid access token value, must be at least 30 characters:"+accessToken);
         }
+        return loadAuthentication(verifyAccessToken(accessToken));
+    }
+
+    /**
+     * Validates an access token so that both {@link #readAccessToken(ValidatedAccessToken)}
+     * and {@link #loadAuthentication(ValidatedAccessToken)} can be built from a
+     * single validation.
+     */
+    public ValidatedAccessToken verifyAccessToken(String accessToken) {
+        TokenValidation tokenValidation = verifiedTokenCache.get(accessToken);
+        if (tokenValidation != null) {
+            return new ValidatedAccessToken(tokenValidation, null, null);
+        }
+        ValidatedAccessToken validated = verifyToken(accessToken);
+        verifiedTokenCache.put(accessToken, validated.getValidation());
+        return validated;
+    }
 
-        TokenValidation tokenValidation = validateToken(accessToken);
+    public OAuth2Authentication loadAuthentication(ValidatedAccessToken validated) throws AuthenticationException {
+        TokenValidation tokenValidation = validated.getValidation();
         Map<String, Object> claims = tokenValidation.getClaims();
-        accessToken = tokenValidation.getJwt().getEncoded();
+        String accessToken = tokenValidation.getJwt().getEncoded();
 
         // Check token expiry
         Integer expiration = (Integer) claims.get(EXP);
@@ -941,7 +974,10 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
         Authentication userAuthentication = null;
         // Is this a user token?
         if (claims.containsKey(EMAIL)) {
-            UaaUser user = userDatabase.retrieveUserById((String)claims.get(USER_ID));
+            UaaUser user = validated.getUser();
+            if (user == null) {
+                user = userDatabase.retrieveUserForTokenValidation((String)claims.get(USER_ID));
+            }
             UaaPrincipal principal = new UaaPrincipal(user);
             userAuthentication = new UaaAuthentication(principal, UaaAuthority.USER_AUTHORITIES, null);
         } else {
@@ -962,9 +998,13 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
      */
     @Override
     public OAuth2AccessToken readAccessToken(String accessToken) {
-        TokenValidation tokenValidation = validateToken(accessToken);
+        return readAccessToken(verifyAccessToken(accessToken));
+    }
+
+    public OAuth2AccessToken readAccessToken(ValidatedAccessToken validated) {
+        TokenValidation tokenValidation = validated.getValidation();
         Map<String, Object> claims = tokenValidation.getClaims();
-        accessToken = tokenValidation.getJwt().getEncoded();
+        String accessToken = tokenValidation.getJwt().getEncoded();
 
         // Expiry is verified by check_token
         CompositeAccessToken token = new CompositeAccessToken(accessToken);
@@ -980,11 +1020,14 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
             token.setScope(new HashSet<String>(scopes));
         }
         String clientId = (String) claims.get(CID);
-        ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
         String email = (String) claims.get(EMAIL);
 
         // Only check user access tokens
         if (null != email) {
+            ClientDetails client = validated.getClient();
+            if (client == null) {
+                client = clientDetailsService.loadClientByClientId(clientId);
+            }
             String userId = (String)claims.get(USER_ID);
 
             @SuppressWarnings("unchecked")
@@ -1021,9 +1064,12 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
     }
 
     protected TokenValidation validateToken(String token) {
+        return verifyToken(token).getValidation();
+    }
+
+    private ValidatedAccessToken verifyToken(String token) {
         TokenValidation tokenValidation;
-        Pattern jwtPattern = Pattern.compile("[a-zA-Z0-9_\\-\\\\=]*\\.[a-zA-Z0-9_\\-\\\\=]*\\.[a-zA-Z0-9_\\-\\\\=]*");
-        if(jwtPattern.matcher(token).matches()) {
+        if(JWT_PATTERN.matcher(token).matches()) {
             tokenValidation = validate(token)
                 .checkRevocableTokenStore(tokenProvisioning)
                 .throwIfInvalid();
@@ -1077,18 +1123,17 @@ public class UaaTokenServices implements AuthorizationServerTokenServices, Resou
 
         if( UaaTokenUtils.isUserToken(claims)) {
             try {
-                user = userDatabase.retrieveUserById(userId);
+                user = userDatabase.retrieveUserForTokenValidation(userId);
                 tokenValidation.checkUser(user).throwIfInvalid();
             } catch (UsernameNotFoundException x) {
             }
         }
 
-        tokenValidation.checkRevocableTokenStore(tokenProvisioning).throwIfInvalid();
-
+        // a JWT was checked against the store above, an opaque token was just read from it
         String currentRevocationSignature = UaaTokenUtils.getRevocableTokenSignature(client, user);
         tokenValidation.checkRevocationSignature(currentRevocationSignature).throwIfInvalid();
 
-        return tokenValidation;
+        return new ValidatedAccessToken(tokenValidation, client, user);
     }
 
     /**
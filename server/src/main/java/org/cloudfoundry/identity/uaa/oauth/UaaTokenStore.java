@@ -21,6 +21,8 @@ import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.authentication.UaaAuthentication;
 import org.cloudfoundry.identity.uaa.authentication.UaaAuthenticationDetails;
 import org.cloudfoundry.identity.uaa.authentication.UaaPrincipal;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredRows;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiringRowStore;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.UaaStringUtils;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -43,14 +45,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
-public class UaaTokenStore implements AuthorizationCodeServices {
+public class UaaTokenStore implements AuthorizationCodeServices, ExpiringRowStore {
     public static final long EXPIRATION_TIME = 5*60*1000;
     public static final long LEGACY_CODE_EXPIRATION_TIME = 3*24*60*60*1000;
     public static final String USER_AUTHENTICATION_UAA_AUTHENTICATION = "userAuthentication.uaaAuthentication";
@@ -70,16 +72,12 @@ public class UaaTokenStore implements AuthorizationCodeServices {
     private static final String SQL_SELECT_STATEMENT = "select code, user_id, client_id, expiresat, created, authentication from oauth_code where code = ?";
     private static final String SQL_INSERT_STATEMENT = "insert into oauth_code (code, user_id, client_id, expiresat, authentication) values (?, ?, ?, ?, ?)";
     private static final String SQL_DELETE_STATEMENT = "delete from oauth_code where code = ?";
-    private static final String SQL_EXPIRE_STATEMENT = "delete from oauth_code where expiresat > 0 AND expiresat < ?";
-    private static final String SQL_CLEAN_STATEMENT = "delete from oauth_code where created < ? and expiresat = 0";
 
     private final DataSource dataSource;
     private final long expirationTime;
     private final RandomValueStringGenerator generator = new RandomValueStringGenerator();
     private final RowMapper rowMapper = new TokenCodeRowMapper();
 
-    private final AtomicLong lastClean = new AtomicLong(0);
-
     public UaaTokenStore(DataSource dataSource) {
         this(dataSource, EXPIRATION_TIME);
     }
@@ -92,7 +90,6 @@ public class UaaTokenStore implements AuthorizationCodeServices {
     @Override
     public String createAuthorizationCode(OAuth2Authentication authentication) {
         final int max_tries = 3;
-        performExpirationClean();
         JdbcTemplate template = new JdbcTemplate(dataSource);
         int tries = 0;
         while ((tries++)<=max_tries) {
@@ -122,7 +119,6 @@ public class UaaTokenStore implements AuthorizationCodeServices {
 
     @Override
     public OAuth2Authentication consumeAuthorizationCode(String code) throws InvalidGrantException {
-        performExpirationClean();
         JdbcTemplate template = new JdbcTemplate(dataSource);
         try {
             TokenCode tokenCode = (TokenCode) template.queryForObject(SQL_SELECT_STATEMENT, rowMapper, code);
@@ -209,21 +205,12 @@ public class UaaTokenStore implements AuthorizationCodeServices {
         return new OAuth2Authentication(request, userAuthentication);
     }
 
-    protected void performExpirationClean() {
-        long last = lastClean.get();
-        //check if we should expire again
-        if ((System.currentTimeMillis()-last) > getExpirationTime()) {
-            //avoid concurrent deletes from the same UAA - performance improvement
-            if (lastClean.compareAndSet(last, last+getExpirationTime())) {
-                JdbcTemplate template = new JdbcTemplate(dataSource);
-                int expired = template.update(SQL_EXPIRE_STATEMENT, System.currentTimeMillis());
-                logger.debug("[oauth_code] Removed "+expired+" expired entries.");
-                expired = template.update(SQL_CLEAN_STATEMENT, new Timestamp(System.currentTimeMillis()-LEGACY_CODE_EXPIRATION_TIME));
-                logger.debug("[oauth_code] Removed "+expired+" old entries.");
-            }
-        }
-
-
+    @Override
+    public List<ExpiredRows> getExpiredRows(long now) {
+        return Arrays.asList(
+            new ExpiredRows("oauth_code", "code", "expiresat > 0 AND expiresat < ?", now),
+            new ExpiredRows("oauth_code", "code", "created < ? and expiresat = 0", new Timestamp(now - LEGACY_CODE_EXPIRATION_TIME))
+        );
     }
 
     public long getExpirationTime() {
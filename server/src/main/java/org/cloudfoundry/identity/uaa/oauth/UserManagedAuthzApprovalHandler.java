@@ -15,6 +15,7 @@ package org.cloudfoundry.identity.uaa.oauth;
 import static org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus.APPROVED;
 import static org.cloudfoundry.identity.uaa.approval.Approval.ApprovalStatus.DENIED;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
@@ -124,6 +125,7 @@ public class UserManagedAuthzApprovalHandler implements UserApprovalHandler {
             if (foundUserApprovalParameter) {
                 authorizationRequest.setScope(approvedScopes);
 
+                List<Approval> approvals = new ArrayList<>();
                 for (String requestedScope : requestedScopes) {
                     if (approvedScopes.contains(requestedScope)) {
                         Approval approval = new Approval()
@@ -132,7 +134,7 @@ public class UserManagedAuthzApprovalHandler implements UserApprovalHandler {
                             .setScope(requestedScope)
                             .setExpiresAt(expiry)
                             .setStatus(APPROVED);
-                        approvalStore.addApproval(approval);
+                        approvals.add(approval);
                     }
                     else {
                         Approval approval = new Approval()
@@ -141,14 +143,16 @@ public class UserManagedAuthzApprovalHandler implements UserApprovalHandler {
                             .setScope(requestedScope)
                             .setExpiresAt(expiry)
                             .setStatus(DENIED);
-                        approvalStore.addApproval(approval);
+                        approvals.add(approval);
                     }
                 }
+                approvalStore.addApprovals(approvals);
 
             }
             else { // Deny all except auto approved scopes
                 authorizationRequest.setScope(autoApprovedScopes);
 
+                List<Approval> approvals = new ArrayList<>();
                 for (String requestedScope : requestedScopes) {
                     if (!autoApprovedScopes.contains(requestedScope)) {
                         Approval approval = new Approval()
@@ -157,9 +161,10 @@ public class UserManagedAuthzApprovalHandler implements UserApprovalHandler {
                             .setScope(requestedScope)
                             .setExpiresAt(expiry)
                             .setStatus(DENIED);
-                        approvalStore.addApproval(approval);
+                        approvals.add(approval);
                     }
                 }
+                approvalStore.addApprovals(approvals);
             }
 
             if (userAuthentication.isAuthenticated()) {
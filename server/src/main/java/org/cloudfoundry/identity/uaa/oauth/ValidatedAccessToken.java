@@ -0,0 +1,52 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.util.TokenValidation;
+import org.springframework.security.oauth2.provider.ClientDetails;
+
+/**
+ * Result of validating an access token once, from which
+ * {@link UaaTokenServices#readAccessToken(ValidatedAccessToken)} and
+ * {@link UaaTokenServices#loadAuthentication(ValidatedAccessToken)} build their
+ * views without repeating the signature, client, user and revocation checks.
+ * <p>
+ * The client and user are those loaded during validation. They are
+ * <code>null</code> when the validation was taken from the
+ * {@link VerifiedTokenCache}, or when the token does not belong to a user.
+ */
+public class ValidatedAccessToken {
+
+    private final TokenValidation validation;
+    private final ClientDetails client;
+    private final UaaUser user;
+
+    public ValidatedAccessToken(TokenValidation validation, ClientDetails client, UaaUser user) {
+        this.validation = validation;
+        this.client = client;
+        this.user = user;
+    }
+
+    public TokenValidation getValidation() {
+        return validation;
+    }
+
+    public ClientDetails getClient() {
+        return client;
+    }
+
+    public UaaUser getUser() {
+        return user;
+    }
+}
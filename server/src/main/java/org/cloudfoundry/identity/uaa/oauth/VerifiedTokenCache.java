@@ -0,0 +1,194 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth;
+
+import com.google.common.hash.Hashing;
+import org.cloudfoundry.identity.uaa.account.event.PasswordChangeEvent;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.client.event.ClientDeleteEvent;
+import org.cloudfoundry.identity.uaa.client.event.ClientUpdateEvent;
+import org.cloudfoundry.identity.uaa.client.event.SecretChangeEvent;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
+import org.cloudfoundry.identity.uaa.util.TokenValidation;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.CID;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.EXP;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.JTI;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.USER_ID;
+
+/**
+ * Optional cache of access tokens that passed {@link UaaTokenServices} validation,
+ * so that a resource server presenting the same token repeatedly does not cause
+ * the signature, client, user and revocation checks to be repeated each time.
+ * <p>
+ * Entries are keyed by zone and a hash of the token value, and are kept until the
+ * earlier of the token expiry and the configured expiry. Revoking the tokens of
+ * a user or client, or a single token, drops the matching entries.
+ * <p>
+ * The cache keeps its own copy of each validation and hands every caller a
+ * separate copy, so concurrent requests never share a claims map.
+ */
+@ManagedResource
+public class VerifiedTokenCache implements ApplicationListener<AbstractUaaEvent> {
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final ConfigurableCache<String, VerifiedToken> cache = new ConfigurableCache<>(false, 10000, 30);
+
+    public TokenValidation get(String token) {
+        if (!isEnabled() || token == null) {
+            return null;
+        }
+        VerifiedToken verified = cache.getIfPresent(getKey(token), v -> v.expiresAt > System.currentTimeMillis());
+        return verified == null ? null : verified.validation.clone();
+    }
+
+    public void put(String token, TokenValidation validation) {
+        if (!isEnabled() || token == null || !validation.isValid()) {
+            return;
+        }
+        Map<String, Object> claims = validation.getClaims();
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(getExpiryInSeconds());
+        Object exp = claims.get(EXP);
+        if (exp instanceof Number) {
+            expiresAt = Math.min(expiresAt, TimeUnit.SECONDS.toMillis(((Number) exp).longValue()));
+        }
+        cache.put(getKey(token), new VerifiedToken(validation.clone(), claims.get(JTI), claims.get(USER_ID), claims.get(CID), expiresAt));
+    }
+
+    public void invalidateUser(String userId) {
+        invalidateIf(v -> userId != null && userId.equals(v.userId));
+    }
+
+    public void invalidateClient(String clientId) {
+        invalidateIf(v -> clientId != null && clientId.equals(v.clientId));
+    }
+
+    public void invalidateTokenId(String tokenId) {
+        invalidateIf(v -> tokenId != null && tokenId.equals(v.tokenId));
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        invalidations.addAndGet(cache.size());
+        cache.invalidateAll();
+    }
+
+    protected void invalidateIf(Predicate<VerifiedToken> predicate) {
+        if (cache.size() == 0) {
+            return;
+        }
+        cache.asMap().values().removeIf(v -> {
+            boolean matches = predicate.test(v);
+            if (matches) {
+                invalidations.incrementAndGet();
+            }
+            return matches;
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof UserModifiedEvent) {
+            invalidateUser(((UserModifiedEvent) event).getUserId());
+        } else if (event instanceof PasswordChangeEvent) {
+            invalidateUser(((PasswordChangeEvent) event).getUser().getId());
+        } else if (event instanceof ClientUpdateEvent) {
+            invalidateClient(((ClientUpdateEvent) event).getClient().getClientId());
+        } else if (event instanceof SecretChangeEvent) {
+            invalidateClient(((SecretChangeEvent) event).getClient().getClientId());
+        } else if (event instanceof ClientDeleteEvent) {
+            invalidateClient(((ClientDeleteEvent) event).getClient().getClientId());
+        } else if (event instanceof EntityDeletedEvent) {
+            invalidateAll();
+        }
+    }
+
+    protected String getKey(String token) {
+        return IdentityZoneHolder.get().getId() + ":" + Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Verified Token Cache Hits")
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Verified Token Cache Misses")
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Verified Token Cache Invalidations")
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Verified Token Cache Size")
+    public long getSize() {
+        return cache.size();
+    }
+
+    public boolean isEnabled() {
+        return cache.isEnabled();
+    }
+
+    public void setEnabled(boolean enabled) {
+        cache.setEnabled(enabled);
+    }
+
+    public int getMaxEntries() {
+        return cache.getMaxEntries();
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        cache.setMaxEntries(maxEntries);
+    }
+
+    public int getExpiryInSeconds() {
+        return cache.getExpiryInSeconds();
+    }
+
+    public void setExpiryInSeconds(int expiryInSeconds) {
+        cache.setExpiryInSeconds(expiryInSeconds);
+    }
+
+    protected static class VerifiedToken {
+        private final TokenValidation validation;
+        private final Object tokenId;
+        private final Object userId;
+        private final Object clientId;
+        private final long expiresAt;
+
+        VerifiedToken(TokenValidation validation, Object tokenId, Object userId, Object clientId, long expiresAt) {
+            this.validation = validation;
+            this.tokenId = tokenId;
+            this.userId = userId;
+            this.clientId = clientId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -47,8 +47,7 @@ public class JwtHelper {
             throw new IllegalArgumentException("JWT must have 3 tokens");
         }
         CharBuffer buffer = CharBuffer.wrap(token, 0, firstPeriod);
-        // TODO: Use a Reader which supports CharBuffer
-        JwtHeader header = JwtHeaderHelper.create(buffer.toString());
+        JwtHeader header = JwtHeaderHelper.create(buffer);
 
         buffer.limit(lastPeriod).position(firstPeriod + 1);
         byte[] claims = b64UrlDecode(buffer);
@@ -67,7 +66,7 @@ public class JwtHelper {
             buffer.limit(token.length()).position(lastPeriod + 1);
             crypto = b64UrlDecode(buffer);
         }
-        return new JwtImpl(header, claims, crypto);
+        return new JwtImpl(header, claims, crypto, token, lastPeriod);
     }
 
     public static Jwt decodeAndVerify(String token, SignatureVerifier verifier) {
@@ -80,9 +79,10 @@ public class JwtHelper {
     public static Jwt encode(CharSequence content, Signer signer) {
         JwtHeader header = JwtHeaderHelper.create(signer);
         byte[] claims = utf8Encode(content);
-        byte[] crypto = signer
-                .sign(concat(b64UrlEncode(header.bytes()), PERIOD, b64UrlEncode(claims)));
-        return new JwtImpl(header, claims, crypto);
+        byte[] signingInput = concat(b64UrlEncode(header.bytes()), PERIOD, b64UrlEncode(claims));
+        byte[] crypto = signer.sign(signingInput);
+        String encoded = utf8Decode(concat(signingInput, PERIOD, b64UrlEncode(crypto)));
+        return new JwtImpl(header, claims, crypto, encoded, signingInput.length);
     }
 }
 
@@ -93,7 +93,7 @@ public class JwtHelper {
  */
 class JwtHeaderHelper {
 
-    static JwtHeader create(String header) {
+    static JwtHeader create(CharSequence header) {
         byte[] bytes = b64UrlDecode(header);
         return new JwtHeader(bytes, parseParams(bytes));
     }
@@ -114,53 +114,184 @@ class JwtHeaderHelper {
         return new HeaderParametersImpl(alg, enc, iv, kid);
     }
 
-    private static Map<String, String> parseMap(String json) {
-        if (json != null) {
-            json = json.trim();
-            if (json.startsWith("{")) {
-                return parseMapInternal(json);
-            }
-            else if (json.equals("")) {
-                return new LinkedHashMap<String, String>();
+    /**
+     * Reads the header, a flat JSON object, in a single pass. Only string
+     * values are retained, since those are the only ones the header parameters
+     * we support can have.
+     */
+    static Map<String, String> parseMap(String json) {
+        if (json == null) {
+            throw new IllegalArgumentException("Invalid JSON (null)");
+        }
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        JsonScanner scanner = new JsonScanner(json);
+        if (scanner.atEnd()) {
+            return map;
+        }
+        scanner.expect('{');
+        if (scanner.peek() == '}') {
+            scanner.expect('}');
+        }
+        else {
+            char separator;
+            do {
+                String key = scanner.readString();
+                scanner.expect(':');
+                String value = scanner.readValue();
+                if (map.containsKey(key)) {
+                    throw new IllegalArgumentException("Duplicate '" + key + "' field");
+                }
+                map.put(key, value);
+                separator = scanner.next();
+            } while (separator == ',');
+            if (separator != '}') {
+                throw new IllegalArgumentException("Invalid JSON: expected '}' but found '" + separator + "'");
             }
         }
-        throw new IllegalArgumentException("Invalid JSON (null)");
+        if (!scanner.atEnd()) {
+            throw new IllegalArgumentException("Invalid JSON: unexpected content after header object");
+        }
+        return map;
     }
 
-    private static Map<String, String> parseMapInternal(String json) {
-        Map<String, String> map = new LinkedHashMap<String, String>();
-        json = trimLeadingCharacter(trimTrailingCharacter(json, '}'), '{');
-        for (String pair : json.split(",")) {
-            String[] values = pair.split(":");
-            String key = strip(values[0], '"');
-            String value = null;
-            if (values.length > 0) {
-                value = strip(values[1], '"');
+    private static class JsonScanner {
+        private final String json;
+        private int position;
+
+        JsonScanner(String json) {
+            this.json = json;
+        }
+
+        boolean atEnd() {
+            skipWhitespace();
+            return position >= json.length();
+        }
+
+        char peek() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("Invalid JSON: unexpected end of input");
             }
-            if (map.containsKey(key)) {
-                throw new IllegalArgumentException("Duplicate '" + key + "' field");
+            return json.charAt(position);
+        }
+
+        char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        void expect(char expected) {
+            char c = next();
+            if (c != expected) {
+                throw new IllegalArgumentException("Invalid JSON: expected '" + expected + "' but found '" + c + "'");
             }
-            map.put(key, value);
         }
-        return map;
-    }
 
-    private static String strip(String string, char c) {
-        return trimLeadingCharacter(trimTrailingCharacter(string.trim(), c), c);
-    }
+        String readString() {
+            expect('"');
+            StringBuilder builder = null;
+            int start = position;
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return builder == null ? json.substring(start, position - 1) : builder.toString();
+                }
+                if (c == '\\') {
+                    if (builder == null) {
+                        builder = new StringBuilder(json.substring(start, position - 1));
+                    }
+                    builder.append(readEscape());
+                }
+                else if (builder != null) {
+                    builder.append(c);
+                }
+            }
+            throw new IllegalArgumentException("Invalid JSON: unterminated string");
+        }
 
-    private static String trimTrailingCharacter(String string, char c) {
-        if (string.length() >= 0 && string.charAt(string.length() - 1) == c) {
-            return string.substring(0, string.length() - 1);
+        private char readEscape() {
+            if (position >= json.length()) {
+                throw new IllegalArgumentException("Invalid JSON: unterminated string");
+            }
+            char c = json.charAt(position++);
+            switch (c) {
+                case 'b': return '\b';
+                case 'f': return '\f';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 't': return '\t';
+                case 'u':
+                    if (position + 4 > json.length()) {
+                        throw new IllegalArgumentException("Invalid JSON: bad unicode escape");
+                    }
+                    char unicode = (char) Integer.parseInt(json.substring(position, position + 4), 16);
+                    position += 4;
+                    return unicode;
+                default: return c;
+            }
+        }
+
+        /**
+         * @return the value if it is a string, null for any other JSON value,
+         *         including objects and arrays such as x5c or crit
+         */
+        String readValue() {
+            char first = peek();
+            if (first == '"') {
+                return readString();
+            }
+            if (first == '{' || first == '[') {
+                skipNested();
+                return null;
+            }
+            int start = position;
+            while (position < json.length() && ",}".indexOf(json.charAt(position)) < 0) {
+                char c = json.charAt(position);
+                if (c == '{' || c == '[' || c == '"') {
+                    throw new IllegalArgumentException("Invalid JSON: unexpected '" + c + "'");
+                }
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Invalid JSON: missing value");
+            }
+            return null;
+        }
+
+        /**
+         * Skips an object or array, keeping track of brackets and strings so
+         * that brackets inside string values do not end it early.
+         */
+        private void skipNested() {
+            StringBuilder open = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position);
+                if (c == '"') {
+                    readString();
+                    continue;
+                }
+                position++;
+                if (c == '{' || c == '[') {
+                    open.append(c == '{' ? '}' : ']');
+                } else if (c == '}' || c == ']') {
+                    int last = open.length() - 1;
+                    if (open.charAt(last) != c) {
+                        throw new IllegalArgumentException("Invalid JSON: unbalanced '" + c + "'");
+                    }
+                    open.setLength(last);
+                    if (last == 0) {
+                        return;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Invalid JSON: unterminated value");
         }
-        return string;
-    }
 
-    private static String trimLeadingCharacter(String string, char c) {
-        if (string.length() >= 0 && string.charAt(0) == c) {
-            return string.substring(1);
+        private void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
         }
-        return string;
     }
 
     private static byte[] serializeParams(HeaderParametersImpl params) {
@@ -280,6 +411,10 @@ class JwtImpl implements Jwt {
 
     private final byte[] crypto;
 
+    private final String encoded;
+
+    private final int signingInputLength;
+
     private String claims;
 
     /**
@@ -287,12 +422,16 @@ class JwtImpl implements Jwt {
      * @param content the base64-decoded "claims" segment (may be encrypted, depending on
      * header information).
      * @param crypto the base64-decoded "crypto" segment.
+     * @param encoded the encoded token the segments were read from
+     * @param signingInputLength the length of the encoded header and claims segments,
+     * including the period separating them
      */
-    JwtImpl(JwtHeader header, byte[] content, byte[] crypto) {
+    JwtImpl(JwtHeader header, byte[] content, byte[] crypto, String encoded, int signingInputLength) {
         this.header = header;
         this.content = content;
         this.crypto = crypto;
-        claims = utf8Decode(content);
+        this.encoded = encoded;
+        this.signingInputLength = signingInputLength;
     }
 
     /**
@@ -306,8 +445,7 @@ class JwtImpl implements Jwt {
     }
 
     private byte[] signingInput() {
-        return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD,
-                b64UrlEncode(content));
+        return utf8Encode(CharBuffer.wrap(encoded, 0, signingInputLength));
     }
 
     /**
@@ -318,23 +456,25 @@ class JwtImpl implements Jwt {
      */
     @Override
     public byte[] bytes() {
-        return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD,
-                b64UrlEncode(content), JwtHelper.PERIOD, b64UrlEncode(crypto));
+        return utf8Encode(encoded);
     }
 
     @Override
     public String getClaims() {
-        return utf8Decode(content);
+        if (claims == null) {
+            claims = utf8Decode(content);
+        }
+        return claims;
     }
 
     @Override
     public String getEncoded() {
-        return utf8Decode(bytes());
+        return encoded;
     }
 
     @Override
     public String toString() {
-        return header + " " + claims + " [" + crypto.length + " crypto bytes]";
+        return header + " " + getClaims() + " [" + crypto.length + " crypto bytes]";
     }
 
     @Override
@@ -15,18 +15,34 @@ package org.cloudfoundry.identity.uaa.oauth.token;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredRows;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiringRowStore;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
 import org.springframework.util.StringUtils;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
-public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisioning, SystemDeletable {
+/**
+ * Tokens read by ID can optionally be kept in a bounded near-cache, which also
+ * remembers IDs that were not found so that unknown or revoked tokens presented
+ * repeatedly do not reach the database either. A remembered miss is dropped
+ * when a token with that ID is created through this node.
+ */
+@ManagedResource
+public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisioning, SystemDeletable, ExpiringRowStore {
+
+    private static final CachedToken NOT_FOUND = new CachedToken(null);
 
     protected JdbcTemplate jdbcTemplate;
 
@@ -37,7 +53,6 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
     protected final static String UPDATE_QUERY = "UPDATE "+TABLE+" SET "+UPDATE_FIELDS+" WHERE token_id=? and identity_zone_id=?";
     protected final static String INSERT_QUERY = "INSERT INTO " + TABLE + " ("+FIELDS+") VALUES (?,?,?,?,?,?,?,?,?,?)";
     protected final static String DELETE_QUERY = "DELETE FROM " + TABLE + " WHERE token_id=? and identity_zone_id=?";
-    protected final static String DELETE_EXPIRED_QUERY = "DELETE FROM " + TABLE + " WHERE expires_at < ?";
     protected final static String DELETE_BY_ZONE_QUERY = "DELETE FROM " + TABLE + " WHERE identity_zone_id=?";
 
 
@@ -45,8 +60,7 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
     protected final RowMapper<RevocableToken> rowMapper;
     protected final JdbcTemplate template;
 
-    protected AtomicLong lastExpiredCheck = new AtomicLong(0);
-    protected long expirationCheckInterval = 30000; //30 seconds
+    private final ConfigurableCache<String, CachedToken> cache = new ConfigurableCache<>(false, 10000, 5);
 
     protected JdbcRevocableTokenProvisioning(JdbcTemplate jdbcTemplate) {
         this.rowMapper =  new RevocableTokenRowMapper();
@@ -60,10 +74,7 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
 
 
     public RevocableToken retrieve(String id, boolean checkExpired) {
-        if (checkExpired) {
-            checkExpired();
-        }
-        RevocableToken result = template.queryForObject(GET_QUERY, rowMapper, id, IdentityZoneHolder.get().getId());
+        RevocableToken result = load(id);
         if (checkExpired && result.getExpiresAt() < System.currentTimeMillis()) {
             delete(id, 0);
             throw new EmptyResultDataAccessException("Token expired.", 1);
@@ -76,9 +87,30 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
         return retrieve(id, true);
     }
 
+    protected RevocableToken load(String id) {
+        if (!isCacheEnabled()) {
+            return template.queryForObject(GET_QUERY, rowMapper, id, IdentityZoneHolder.get().getId());
+        }
+        String key = getKey(id);
+        CachedToken cached = cache.getIfPresent(key);
+        if (cached == null) {
+            try {
+                cached = new CachedToken(template.queryForObject(GET_QUERY, rowMapper, id, IdentityZoneHolder.get().getId()));
+            } catch (EmptyResultDataAccessException e) {
+                cached = NOT_FOUND;
+            }
+            cache.put(key, cached);
+        }
+        if (cached.token == null) {
+            throw new EmptyResultDataAccessException(1);
+        }
+        return copy(cached.token);
+    }
+
     @Override
     public RevocableToken create(RevocableToken t) {
         String zoneId = IdentityZoneHolder.get().getId();
+        invalidate(t.getTokenId());
         template.update(INSERT_QUERY,
                         t.getTokenId(),
                         t.getClientId(),
@@ -96,6 +128,7 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
     @Override
     public RevocableToken update(String id, RevocableToken t) {
         String zoneId = IdentityZoneHolder.get().getId();
+        invalidate(id);
         template.update(UPDATE_QUERY,
                         t.getClientId(),
                         t.getUserId(),
@@ -114,12 +147,15 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
     public RevocableToken delete(String id, int version) {
         RevocableToken previous = retrieve(id, false);
         template.update(DELETE_QUERY, id, IdentityZoneHolder.get().getId());
+        invalidate(id);
         return previous;
     }
 
     @Override
     public int deleteByIdentityZone(String zoneId) {
-        return template.update(DELETE_BY_ZONE_QUERY, IdentityZoneHolder.get().getId());
+        int deleted = template.update(DELETE_BY_ZONE_QUERY, IdentityZoneHolder.get().getId());
+        invalidateCache();
+        return deleted;
     }
 
     @Override
@@ -127,26 +163,88 @@ public class JdbcRevocableTokenProvisioning implements RevocableTokenProvisionin
         return 0;
     }
 
+    protected void invalidate(String id) {
+        cache.invalidate(getKey(id));
+    }
+
+    @ManagedOperation
+    public void invalidateCache() {
+        cache.invalidateAll();
+    }
+
+    protected String getKey(String id) {
+        return IdentityZoneHolder.get().getId() + ":" + id;
+    }
+
+    protected static RevocableToken copy(RevocableToken token) {
+        return new RevocableToken()
+            .setTokenId(token.getTokenId())
+            .setClientId(token.getClientId())
+            .setUserId(token.getUserId())
+            .setFormat(token.getFormat())
+            .setResponseType(token.getResponseType())
+            .setIssuedAt(token.getIssuedAt())
+            .setExpiresAt(token.getExpiresAt())
+            .setScope(token.getScope())
+            .setValue(token.getValue())
+            .setZoneId(token.getZoneId());
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Revocable Token Cache Hits")
+    public long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Revocable Token Cache Misses")
+    public long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Revocable Token Cache Size")
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    public boolean isCacheEnabled() {
+        return cache.isEnabled();
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        cache.setEnabled(cacheEnabled);
+    }
+
+    public int getCacheMaxEntries() {
+        return cache.getMaxEntries();
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        cache.setMaxEntries(cacheMaxEntries);
+    }
+
+    public int getCacheExpiryInSeconds() {
+        return cache.getExpiryInSeconds();
+    }
+
+    public void setCacheExpiryInSeconds(int cacheExpiryInSeconds) {
+        cache.setExpiryInSeconds(cacheExpiryInSeconds);
+    }
+
     @Override
     public Log getLogger() {
         return logger;
     }
 
-    public long getExpirationCheckInterval() {
-        return expirationCheckInterval;
+    @Override
+    public List<ExpiredRows> getExpiredRows(long now) {
+        return Collections.singletonList(new ExpiredRows(TABLE, "token_id", "expires_at < ?", now));
     }
 
-    public void setExpirationCheckInterval(long expirationCheckInterval) {
-        this.expirationCheckInterval = expirationCheckInterval;
-    }
+    private static final class CachedToken {
+        private final RevocableToken token;
 
-    public void checkExpired() {
-        long now = System.currentTimeMillis();
-        if ((now-lastExpiredCheck.getAndSet(now)) > getExpirationCheckInterval()) {
-            int removed = template.update(DELETE_EXPIRED_QUERY, now);
-            logger.debug("Removed "+removed+" expired revocable tokens.");
+        CachedToken(RevocableToken token) {
+            this.token = token;
         }
-
     }
 
     protected static final class RevocableTokenRowMapper implements RowMapper<RevocableToken> {
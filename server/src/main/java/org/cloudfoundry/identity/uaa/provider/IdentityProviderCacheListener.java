@@ -0,0 +1,39 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.provider;
+
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityProviderModifiedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.util.StringUtils;
+
+/**
+ * Drops the cached providers of a zone whenever one of its providers is
+ * reported as created or modified.
+ */
+public class IdentityProviderCacheListener implements ApplicationListener<IdentityProviderModifiedEvent> {
+
+    private final JdbcIdentityProviderProvisioning provisioning;
+
+    public IdentityProviderCacheListener(JdbcIdentityProviderProvisioning provisioning) {
+        this.provisioning = provisioning;
+    }
+
+    @Override
+    public void onApplicationEvent(IdentityProviderModifiedEvent event) {
+        IdentityProvider provider = (IdentityProvider) event.getSource();
+        String zoneId = provider.getIdentityZoneId();
+        provisioning.invalidate(StringUtils.hasText(zoneId) ? zoneId : IdentityZoneHolder.get().getId());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * *****************************************************************************
+ *      Cloud Foundry
+ *      Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *      This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *      You may not use this product except in compliance with the License.
+ *
+ *      This product includes a number of subcomponents with
+ *      separate copyright notices and license terms. Your use of these
+ *      subcomponents is subject to the terms and conditions of the
+ *      subcomponent's license, as noted in the LICENSE file.
+ * *****************************************************************************
+ */
+package org.cloudfoundry.identity.uaa.provider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All identity providers of one zone, active or not, as read at one point in
+ * time. The version increases every time the providers of the zone are
+ * changed through the {@link IdentityProviderProvisioning} that produced it.
+ * <p>
+ * A snapshot may be shared between callers, so every accessor returns a copy of
+ * the provider. The provider configuration is not copied and must be treated as
+ * read only.
+ */
+public class IdentityProviderSnapshot {
+
+    private final String zoneId;
+    private final long version;
+    private final List<IdentityProvider> providers;
+    private final Map<String, IdentityProvider> byOrigin = new HashMap<>();
+
+    public IdentityProviderSnapshot(String zoneId, long version, List<IdentityProvider> providers) {
+        this.zoneId = zoneId;
+        this.version = version;
+        this.providers = Collections.unmodifiableList(new ArrayList<>(providers));
+        for (IdentityProvider provider : providers) {
+            byOrigin.put(provider.getOriginKey(), provider);
+        }
+    }
+
+    public String getZoneId() {
+        return zoneId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<IdentityProvider> getProviders() {
+        return getProviders(false);
+    }
+
+    public List<IdentityProvider> getProviders(boolean activeOnly) {
+        List<IdentityProvider> result = new ArrayList<>(providers.size());
+        for (IdentityProvider provider : providers) {
+            if (!activeOnly || provider.isActive()) {
+                result.add(copy(provider));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the provider with the given origin key, or <code>null</code> if
+     *         the zone has none
+     */
+    public IdentityProvider getProvider(String origin) {
+        IdentityProvider provider = byOrigin.get(origin);
+        return provider == null ? null : copy(provider);
+    }
+
+    protected static IdentityProvider copy(IdentityProvider provider) {
+        return new IdentityProvider()
+            .setId(provider.getId())
+            .setVersion(provider.getVersion())
+            .setCreated(provider.getCreated())
+            .setLastModified(provider.getLastModified())
+            .setName(provider.getName())
+            .setOriginKey(provider.getOriginKey())
+            .setIdentityZoneId(provider.getIdentityZoneId())
+            .setConfig(provider.getConfig())
+            .setType(provider.getType())
+            .setActive(provider.isActive());
+    }
+}
@@ -17,14 +17,20 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.util.ObjectUtils;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -35,7 +41,22 @@ import java.sql.Timestamp;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The providers of a zone can optionally be kept in a bounded cache as one
+ * {@link IdentityProviderSnapshot}, which then serves {@link #retrieveActive(String)},
+ * {@link #retrieveAll(boolean, String)} and {@link #retrieveByOrigin(String, String)}
+ * without reading and deserializing the provider configuration again.
+ * <p>
+ * Each zone has a version that is increased by every change made through this
+ * node, which also drops the cached snapshot. A snapshot that was being loaded
+ * while the version changed is not kept.
+ */
+@ManagedResource
 public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisioning, SystemDeletable {
 
     private static Log logger = LogFactory.getLog(JdbcIdentityProviderProvisioning.class);
@@ -64,6 +85,13 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
 
     private final RowMapper<IdentityProvider> mapper = new IdentityProviderRowMapper();
 
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadTime = new AtomicLong();
+
+    private final ConfigurableCache<String, IdentityProviderSnapshot> cache = new ConfigurableCache<>(false, 1000, 30);
+
     public JdbcIdentityProviderProvisioning(JdbcTemplate jdbcTemplate) {
         Assert.notNull(jdbcTemplate);
         this.jdbcTemplate = jdbcTemplate;
@@ -77,6 +105,9 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
 
     @Override
     public List<IdentityProvider> retrieveActive(String zoneId) {
+        if (isCacheEnabled()) {
+            return retrieveSnapshot(zoneId).getProviders(true);
+        }
         return jdbcTemplate.query(IDENTITY_ACTIVE_PROVIDERS_QUERY, mapper, zoneId);
     }
 
@@ -84,13 +115,50 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
     public List<IdentityProvider> retrieveAll(boolean activeOnly, String zoneId) {
         if (activeOnly) {
             return retrieveActive(zoneId);
+        } else if (isCacheEnabled()) {
+            return retrieveSnapshot(zoneId).getProviders();
         } else {
             return jdbcTemplate.query(IDENTITY_PROVIDERS_QUERY, mapper, zoneId);
         }
     }
 
+    @Override
+    public IdentityProviderSnapshot retrieveSnapshot(String zoneId) {
+        if (!isCacheEnabled()) {
+            return loadSnapshot(zoneId, getVersion(zoneId).get());
+        }
+        IdentityProviderSnapshot snapshot = cache.getIfPresent(zoneId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        AtomicLong version = getVersion(zoneId);
+        long loadedVersion = version.get();
+        snapshot = loadSnapshot(zoneId, loadedVersion);
+        cache.put(zoneId, snapshot);
+        if (version.get() != loadedVersion) {
+            //the zone changed while we were reading it
+            cache.invalidate(zoneId);
+        }
+        return snapshot;
+    }
+
+    protected IdentityProviderSnapshot loadSnapshot(String zoneId, long version) {
+        long start = System.nanoTime();
+        List<IdentityProvider> providers = jdbcTemplate.query(IDENTITY_PROVIDERS_QUERY, mapper, zoneId);
+        loadTime.addAndGet(System.nanoTime() - start);
+        loads.incrementAndGet();
+        return new IdentityProviderSnapshot(zoneId, version, providers);
+    }
+
     @Override
     public IdentityProvider retrieveByOrigin(String origin, String zoneId) {
+        if (isCacheEnabled()) {
+            IdentityProvider identityProvider = retrieveSnapshot(zoneId).getProvider(origin);
+            if (identityProvider == null) {
+                throw new EmptyResultDataAccessException(1);
+            }
+            return identityProvider;
+        }
         IdentityProvider identityProvider = jdbcTemplate.queryForObject(IDENTITY_PROVIDER_BY_ORIGIN_QUERY, mapper, origin, zoneId);
         return identityProvider;
     }
@@ -119,6 +187,7 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
         } catch (DuplicateKeyException e) {
             throw new IdpAlreadyExistsException(e.getMostSpecificCause().getMessage());
         }
+        invalidate(identityProvider.getIdentityZoneId());
         return retrieve(id);
     }
 
@@ -140,6 +209,7 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
             ps.setString(pos++, zoneId);
             }
         });
+        invalidate(zoneId);
         return retrieve(identityProvider.getId());
     }
 
@@ -161,12 +231,92 @@ public class JdbcIdentityProviderProvisioning implements IdentityProviderProvisi
 
     @Override
     public int deleteByIdentityZone(String zoneId) {
-        return jdbcTemplate.update(DELETE_IDENTITY_PROVIDER_BY_ZONE_SQL, zoneId);
+        int deleted = jdbcTemplate.update(DELETE_IDENTITY_PROVIDER_BY_ZONE_SQL, zoneId);
+        invalidate(zoneId);
+        return deleted;
     }
 
     @Override
     public int deleteByOrigin(String origin, String zoneId) {
-        return jdbcTemplate.update(DELETE_IDENTITY_PROVIDER_BY_ORIGIN_SQL, zoneId, origin);
+        int deleted = jdbcTemplate.update(DELETE_IDENTITY_PROVIDER_BY_ORIGIN_SQL, zoneId, origin);
+        invalidate(zoneId);
+        return deleted;
+    }
+
+    /**
+     * Increases the version of the zone and drops its cached providers.
+     */
+    public void invalidate(String zoneId) {
+        getVersion(zoneId).incrementAndGet();
+        cache.invalidate(zoneId);
+    }
+
+    @ManagedOperation
+    public void invalidateCache() {
+        for (AtomicLong version : versions.values()) {
+            version.incrementAndGet();
+        }
+        cache.invalidateAll();
+    }
+
+    protected AtomicLong getVersion(String zoneId) {
+        return versions.computeIfAbsent(zoneId, k -> new AtomicLong());
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Provider Cache Hits")
+    public long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Provider Cache Misses")
+    public long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Identity Provider Cache Size")
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Provider Snapshot Loads")
+    public long getSnapshotLoadCount() {
+        return loads.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Provider Snapshot Load Time (ms)")
+    public long getSnapshotLoadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(loadTime.get());
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Identity Provider Snapshot Average Load Time (ms)")
+    public double getSnapshotAverageLoadTime() {
+        long count = loads.get();
+        return count == 0 ? 0 : loadTime.get() / 1000000.0 / count;
+    }
+
+    public boolean isCacheEnabled() {
+        return cache.isEnabled();
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        cache.setEnabled(cacheEnabled);
+        invalidateCache();
+    }
+
+    public int getCacheMaxEntries() {
+        return cache.getMaxEntries();
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        cache.setMaxEntries(cacheMaxEntries);
+    }
+
+    public int getCacheExpiryInSeconds() {
+        return cache.getExpiryInSeconds();
+    }
+
+    public void setCacheExpiryInSeconds(int cacheExpiryInSeconds) {
+        cache.setExpiryInSeconds(cacheExpiryInSeconds);
     }
 
     @Override
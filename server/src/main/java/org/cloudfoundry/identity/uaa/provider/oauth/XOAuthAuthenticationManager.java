@@ -38,6 +38,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
@@ -59,6 +61,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import static org.cloudfoundry.identity.uaa.oauth.token.CompositeAccessToken.ID_TOKEN;
 import static org.cloudfoundry.identity.uaa.provider.ExternalIdentityProviderDefinition.GROUP_ATTRIBUTE_NAME;
@@ -69,6 +72,8 @@ import static org.cloudfoundry.identity.uaa.util.UaaHttpRequestUtils.getNoValida
 public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationManager {
 
     private RestTemplate restTemplate = new RestTemplate();
+    private RestTemplate nonValidatingRestTemplate;
+    private XOAuthTokenKeyCache tokenKeyCache = new XOAuthTokenKeyCache();
     private IdentityProviderProvisioning providerProvisioning;
 
     public XOAuthAuthenticationManager(IdentityProviderProvisioning providerProvisioning) {
@@ -208,6 +213,37 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
         return restTemplate;
     }
 
+    public void setRestTemplate(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    public synchronized RestTemplate getNonValidatingRestTemplate() {
+        if (nonValidatingRestTemplate == null) {
+            nonValidatingRestTemplate = new RestTemplate(getNoValidatingClientHttpRequestFactory());
+        }
+        return nonValidatingRestTemplate;
+    }
+
+    /**
+     * @param nonValidatingRestTemplate the template used for providers configured
+     *            to skip SSL validation
+     */
+    public synchronized void setNonValidatingRestTemplate(RestTemplate nonValidatingRestTemplate) {
+        this.nonValidatingRestTemplate = nonValidatingRestTemplate;
+    }
+
+    protected RestTemplate getRestTemplate(AbstractXOAuthIdentityProviderDefinition config) {
+        return config.isSkipSslValidation() ? getNonValidatingRestTemplate() : getRestTemplate();
+    }
+
+    public XOAuthTokenKeyCache getTokenKeyCache() {
+        return tokenKeyCache;
+    }
+
+    public void setTokenKeyCache(XOAuthTokenKeyCache tokenKeyCache) {
+        this.tokenKeyCache = tokenKeyCache;
+    }
+
     private String getResponseType(AbstractXOAuthIdentityProviderDefinition config) {
         if (RawXOAuthIdentityProviderDefinition.class.isAssignableFrom(config.getClass())) {
             return "token";
@@ -226,12 +262,29 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
 
         String tokenKey = config.getTokenKey();
         URL tokenKeyUrl = config.getTokenKeyUrl();
+        TokenValidation validation = validate(idToken);
         if(!StringUtils.hasText(tokenKey) && tokenKeyUrl != null && StringUtils.hasText(tokenKeyUrl.toString())) {
-            tokenKey = getTokenKeyFromOAuth(config, tokenKeyUrl.toString());
+            String keyId = validation.getJwt() == null ? null : validation.getJwt().getHeader().getKid();
+            String cacheKey = IdentityZoneHolder.get().getId() + ":" + config.getRelyingPartyId() + ":" + tokenKeyUrl;
+            Supplier<Map<String, Object>> fetcher = () -> getTokenKeyFromOAuth(config, tokenKeyUrl.toString());
+            SignatureVerifier verifier = tokenKeyCache.getVerifier(cacheKey, keyId, fetcher);
+            if (verifier == null) {
+                throw new InvalidTokenException("Unable to find a token key for key id:" + keyId);
+            }
+            boolean decoded = validation.isValid();
+            validation.checkSignature(verifier);
+            if (decoded && !validation.isValid()) {
+                // the provider may have rotated a key that tokens do not name
+                SignatureVerifier refreshed = tokenKeyCache.refreshVerifier(cacheKey, keyId, fetcher);
+                if (refreshed != null) {
+                    validation = validate(idToken).checkSignature(refreshed);
+                }
+            }
+        } else {
+            validation.checkSignature(new CommonSignatureVerifier(tokenKey));
         }
 
-        TokenValidation validation = validate(idToken)
-            .checkSignature(new CommonSignatureVerifier(tokenKey))
+        validation = validation
             .checkIssuer(config.getTokenUrl().toString())
             .checkAudience(config.getRelyingPartyId())
             .checkExpiry()
@@ -241,13 +294,13 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
         return JsonUtils.readValue(decodeIdToken.getClaims(), new TypeReference<Map<String, Object>>(){});
     }
 
-    private String getTokenKeyFromOAuth(AbstractXOAuthIdentityProviderDefinition config, String tokenKeyUrl) {
+    private Map<String, Object> getTokenKeyFromOAuth(AbstractXOAuthIdentityProviderDefinition config, String tokenKeyUrl) {
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         headers.add("Authorization", getClientAuthHeader(config));
         headers.add("Accept", "application/json");
         HttpEntity tokenKeyRequest = new HttpEntity<>(null, headers);
-        ResponseEntity<Map<String, Object>> responseEntity = restTemplate.exchange(tokenKeyUrl, HttpMethod.GET, tokenKeyRequest, new ParameterizedTypeReference<Map<String, Object>>() {});
-        return (String) responseEntity.getBody().get("value");
+        ResponseEntity<Map<String, Object>> responseEntity = getRestTemplate(config).exchange(tokenKeyUrl, HttpMethod.GET, tokenKeyRequest, new ParameterizedTypeReference<Map<String, Object>>() {});
+        return responseEntity.getBody();
     }
 
     private String getTokenFromCode(XOAuthCodeToken codeToken, AbstractXOAuthIdentityProviderDefinition config) {
@@ -271,10 +324,7 @@ public class XOAuthAuthenticationManager extends ExternalLoginAuthenticationMana
         }
 
         try {
-            if (config.isSkipSslValidation()) {
-                restTemplate.setRequestFactory(getNoValidatingClientHttpRequestFactory());
-            }
-            ResponseEntity<Map<String, String>> responseEntity = restTemplate.exchange(requestUri, HttpMethod.POST, requestEntity, new ParameterizedTypeReference<Map<String, String>>() {});
+            ResponseEntity<Map<String, String>> responseEntity = getRestTemplate(config).exchange(requestUri, HttpMethod.POST, requestEntity, new ParameterizedTypeReference<Map<String, String>>() {});
             return responseEntity.getBody().get(ID_TOKEN);
         } catch (HttpServerErrorException|HttpClientErrorException ex) {
             throw ex;
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.provider.oauth;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.oauth.CommonSignatureVerifier;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Holds the verification keys that external OAuth/OIDC providers publish at their
+ * token key URL, so that a login does not have to fetch and parse the provider's
+ * key each time an id token is validated.
+ * <p>
+ * Keys are refreshed on a background thread before they get old, and on demand
+ * when a token names a key id that is not known yet or its signature does not
+ * verify with the cached key, at most once per
+ * {@link #setMinRefreshIntervalInSeconds(int)}. If a refresh fails the keys that
+ * were last fetched keep being used. Entries that are not used for
+ * {@link #setExpiryInSeconds(int)} are dropped.
+ */
+@ManagedResource
+public class XOAuthTokenKeyCache implements DisposableBean {
+
+    private static final String NO_KEY_ID = "";
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private final ConfigurableCache<String, ProviderKeys> cache = new ConfigurableCache<>(false, 1000, 3600);
+    private int refreshIntervalInSeconds = 300;
+    private int minRefreshIntervalInSeconds = 30;
+
+    private ScheduledExecutorService scheduler;
+
+    public XOAuthTokenKeyCache() {
+        cache.setExpireAfterAccess(true);
+    }
+
+    /**
+     * @param cacheKey identifies the provider, that is its token key URL and the
+     *            credentials the keys are fetched with
+     * @param keyId the key id named in the token header, may be null
+     * @param fetcher fetches the token key response of the provider
+     * @return the verifier for the key, or null if the provider does not publish
+     *         a key with that id
+     */
+    public SignatureVerifier getVerifier(String cacheKey, String keyId, Supplier<Map<String, Object>> fetcher) {
+        if (!isEnabled()) {
+            fetches.incrementAndGet();
+            ProviderKeys keys = new ProviderKeys(null);
+            keys.verifiers = parseKeyResponse(fetcher.get());
+            return keys.find(keyId, false);
+        }
+        ProviderKeys keys = cache.getIfPresent(cacheKey);
+        if (keys == null) {
+            keys = new ProviderKeys(fetcher);
+            keys.refresh(true);
+            cache.put(cacheKey, keys);
+            startRefresh();
+            return keys.find(keyId, false);
+        }
+        keys.fetcher = fetcher;
+        SignatureVerifier verifier = keys.find(keyId, true);
+        if (verifier != null) {
+            return verifier;
+        }
+        if (keyId != null && keys.refreshIfAllowed()) {
+            logger.debug("Refreshed keys for " + cacheKey + " after a token with the unknown key id " + keyId);
+        }
+        return keys.find(keyId, false);
+    }
+
+    /**
+     * Refreshes the keys of a provider after a token did not verify with the
+     * cached key, which happens when a provider that publishes a single key,
+     * or tokens without a key id, rotates it.
+     *
+     * @return the verifier for the key after the refresh, or null if the keys
+     *         were not refreshed because they were fetched too recently
+     */
+    public SignatureVerifier refreshVerifier(String cacheKey, String keyId, Supplier<Map<String, Object>> fetcher) {
+        ProviderKeys keys = isEnabled() ? cache.getIfPresent(cacheKey) : null;
+        if (keys == null) {
+            // not cached, so the verifier was fetched for this token
+            return null;
+        }
+        keys.fetcher = fetcher;
+        if (!keys.refreshIfAllowed()) {
+            return null;
+        }
+        logger.debug("Refreshed keys for " + cacheKey + " after a token that did not verify");
+        return keys.find(keyId, false);
+    }
+
+    /**
+     * Refreshes every cached entry, keeping the previous keys of the providers
+     * that could not be reached.
+     */
+    @ManagedOperation
+    public void refreshAll() {
+        for (ProviderKeys keys : cache.asMap().values()) {
+            keys.refresh(false);
+        }
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    protected synchronized void startRefresh() {
+        if (scheduler != null || refreshIntervalInSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "xoauth-token-key-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refreshAll();
+            } catch (RuntimeException e) {
+                logger.error("Unable to refresh external provider token keys", e);
+            }
+        }, refreshIntervalInSeconds, refreshIntervalInSeconds, TimeUnit.SECONDS);
+    }
+
+    protected Map<String, SignatureVerifier> parseKeyResponse(Map<String, Object> response) {
+        Map<String, SignatureVerifier> verifiers = new LinkedHashMap<>();
+        if (response == null) {
+            return verifiers;
+        }
+        if (response.get("keys") instanceof List) {
+            // token_keys format, a list of keys with their ids
+            for (Object key : (List<?>) response.get("keys")) {
+                if (key instanceof Map) {
+                    addKey(verifiers, (Map<?, ?>) key);
+                }
+            }
+        } else {
+            addKey(verifiers, response);
+        }
+        return verifiers;
+    }
+
+    private void addKey(Map<String, SignatureVerifier> verifiers, Map<?, ?> key) {
+        Object value = key.get("value");
+        if (value instanceof String && StringUtils.hasText((String) value)) {
+            Object kid = key.get("kid");
+            verifiers.put(kid == null ? NO_KEY_ID : kid.toString(), new CommonSignatureVerifier((String) value));
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "External Token Key Cache Hits")
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "External Token Key Fetches")
+    public long getFetchCount() {
+        return fetches.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "External Token Key Fetch Failures")
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "External Token Key Cache Size")
+    public long getSize() {
+        return cache.size();
+    }
+
+    public boolean isEnabled() {
+        return cache.isEnabled();
+    }
+
+    public void setEnabled(boolean enabled) {
+        cache.setEnabled(enabled);
+    }
+
+    public int getMaxEntries() {
+        return cache.getMaxEntries();
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        cache.setMaxEntries(maxEntries);
+    }
+
+    public int getExpiryInSeconds() {
+        return cache.getExpiryInSeconds();
+    }
+
+    public void setExpiryInSeconds(int expiryInSeconds) {
+        cache.setExpiryInSeconds(expiryInSeconds);
+    }
+
+    public int getRefreshIntervalInSeconds() {
+        return refreshIntervalInSeconds;
+    }
+
+    public void setRefreshIntervalInSeconds(int refreshIntervalInSeconds) {
+        this.refreshIntervalInSeconds = refreshIntervalInSeconds;
+    }
+
+    public int getMinRefreshIntervalInSeconds() {
+        return minRefreshIntervalInSeconds;
+    }
+
+    public void setMinRefreshIntervalInSeconds(int minRefreshIntervalInSeconds) {
+        this.minRefreshIntervalInSeconds = minRefreshIntervalInSeconds;
+    }
+
+    protected class ProviderKeys {
+        private volatile Supplier<Map<String, Object>> fetcher;
+        private volatile Map<String, SignatureVerifier> verifiers = Collections.emptyMap();
+        private volatile long lastAttempt;
+
+        ProviderKeys(Supplier<Map<String, Object>> fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        /**
+         * @param propagate whether a failed fetch is thrown, otherwise the
+         *            previous keys are kept
+         */
+        synchronized void refresh(boolean propagate) {
+            lastAttempt = System.currentTimeMillis();
+            fetches.incrementAndGet();
+            try {
+                verifiers = parseKeyResponse(fetcher.get());
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                if (propagate) {
+                    throw e;
+                }
+                logger.warn("Unable to refresh external provider token keys, keeping the previous keys", e);
+            }
+        }
+
+        synchronized boolean refreshIfAllowed() {
+            if (System.currentTimeMillis() - lastAttempt < TimeUnit.SECONDS.toMillis(minRefreshIntervalInSeconds)) {
+                return false;
+            }
+            refresh(false);
+            return true;
+        }
+
+        /**
+         * @param exact whether only a key with the given id is returned, otherwise
+         *            the key of a provider that publishes a single key is used
+         *            for any key id, as such providers need not name it
+         */
+        SignatureVerifier find(String keyId, boolean exact) {
+            Map<String, SignatureVerifier> current = verifiers;
+            SignatureVerifier verifier = current.get(keyId == null ? NO_KEY_ID : keyId);
+            if (verifier == null && !exact && current.size() == 1) {
+                verifier = current.values().iterator().next();
+            }
+            return verifier;
+        }
+    }
+}
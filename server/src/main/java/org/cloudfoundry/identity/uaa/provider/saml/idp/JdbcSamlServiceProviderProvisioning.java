@@ -65,6 +65,9 @@ public class JdbcSamlServiceProviderProvisioning implements SamlServiceProviderP
     public static final String SERVICE_PROVIDER_BY_ID_QUERY = "select " + SERVICE_PROVIDER_FIELDS
             + " from service_provider " + "where id=? and identity_zone_id=?";
 
+    public static final String SERVICE_PROVIDERS_MODIFIED_SINCE_QUERY = "select " + SERVICE_PROVIDER_FIELDS
+            + " from service_provider where lastmodified > ?";
+
     public static final String SERVICE_PROVIDER_BY_ENTITY_ID_QUERY = "select " + SERVICE_PROVIDER_FIELDS
             + " from service_provider " + "where entity_id=? and identity_zone_id=? ";
 
@@ -113,6 +116,11 @@ public class JdbcSamlServiceProviderProvisioning implements SamlServiceProviderP
         }
     }
 
+    @Override
+    public List<SamlServiceProvider> retrieveModifiedSince(Date since) {
+        return jdbcTemplate.query(SERVICE_PROVIDERS_MODIFIED_SINCE_QUERY, mapper, new Timestamp(since.getTime()));
+    }
+
     @Override
     public SamlServiceProvider retrieveByEntityId(String entityId, String zoneId) {
         SamlServiceProvider serviceProvider = jdbcTemplate.queryForObject(SERVICE_PROVIDER_BY_ENTITY_ID_QUERY, mapper,
@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.provider.saml.idp;
 
+import java.util.Date;
 import java.util.List;
 
 public interface SamlServiceProviderProvisioning {
@@ -28,5 +29,11 @@ public interface SamlServiceProviderProvisioning {
 
     List<SamlServiceProvider> retrieveAll(boolean activeOnly, String zoneId);
 
+    /**
+     * @return the service providers of all zones that were created or updated
+     *         after the given time
+     */
+    List<SamlServiceProvider> retrieveModifiedSince(Date since);
+
     SamlServiceProvider retrieveByEntityId(String entityId, String zoneId);
 }
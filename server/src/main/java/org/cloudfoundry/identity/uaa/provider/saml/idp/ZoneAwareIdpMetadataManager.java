@@ -21,6 +21,7 @@ import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneProvisioning;
+import org.cloudfoundry.identity.uaa.zone.ZoneDoesNotExistsException;
 import org.opensaml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml2.metadata.RoleDescriptor;
@@ -44,8 +45,11 @@ import org.springframework.security.saml.trust.httpclient.TLSProtocolConfigurer;
 import javax.annotation.PostConstruct;
 import javax.xml.namespace.QName;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -61,7 +65,10 @@ public class ZoneAwareIdpMetadataManager extends IdpMetadataManager implements E
     private SamlServiceProviderConfigurator configurator;
     private Map<IdentityZone,ExtensionMetadataManager> metadataManagers;
     private long refreshInterval = 30000l;
+    private long fullRefreshInterval = 600000l;
     private long lastRefresh = 0;
+    private long lastFullRefresh = 0;
+    private final Map<String, Long> refreshedVersions = new ConcurrentHashMap<>();
     private Timer timer;
     private String beanName = ZoneAwareIdpMetadataManager.class.getName()+"-"+System.identityHashCode(this);
 
@@ -86,7 +93,11 @@ public class ZoneAwareIdpMetadataManager extends IdpMetadataManager implements E
         @Override
         public void run() {
             try {
-                refreshAllProviders(false);
+                if (System.currentTimeMillis() - lastFullRefresh >= fullRefreshInterval) {
+                    refreshAllProviders(false);
+                } else {
+                    refreshChangedProviders();
+                }
             }catch (Exception x) {
                 log.error("Unable to run SAML provider refresh task:", x);
             }
@@ -116,8 +127,16 @@ public class ZoneAwareIdpMetadataManager extends IdpMetadataManager implements E
         return Thread.currentThread().getName()+"-"+System.identityHashCode(Thread.currentThread());
     }
 
+    /**
+     * Reconciles the service providers of every zone with the database. This is
+     * what picks up providers deleted on other nodes, so it only runs every
+     * {@link #setFullRefreshInterval(long) full refresh interval}; the timer
+     * runs {@link #refreshChangedProviders()} in between.
+     */
     protected void refreshAllProviders(boolean ignoreTimestamp) throws MetadataProviderException {
         logger.debug("Running SAML SP refresh[" + getThreadNameAndId() + "] - ignoreTimestamp=" + ignoreTimestamp);
+        long started = System.currentTimeMillis();
+        Set<String> persistedIds = new HashSet<>();
         for (IdentityZone zone : zoneDao.retrieveAll()) {
             ExtensionMetadataManager manager = getManager(zone);
             boolean hasChanges = false;
@@ -125,28 +144,9 @@ public class ZoneAwareIdpMetadataManager extends IdpMetadataManager implements E
                     new HashMap<String, SamlServiceProviderHolder>(configurator.getSamlServiceProviderMapForZone(zone));
             for (SamlServiceProvider provider : providerDao.retrieveAll(false, zone.getId())) {
                 zoneProviderMap.remove(provider.getEntityId());
-                if (ignoreTimestamp || lastRefresh < provider.getLastModified().getTime()) {
-                    try {
-                        try {
-                            if (provider.isActive()) {
-                                log.info("Adding SAML SP zone[" + zone.getId() + "] entityId["
-                                        + provider.getEntityId() + "]");
-                                ExtendedMetadataDelegate[] delegates = configurator
-                                        .addSamlServiceProvider(provider);
-                                if (delegates[1] != null) {
-                                    manager.removeMetadataProvider(delegates[1]);
-                                }
-                                manager.addMetadataProvider(delegates[0]);
-                            } else {
-                                removeSamlServiceProvider(zone, manager, provider);
-                            }
-                            hasChanges = true;
-                        } catch (MetadataProviderException e) {
-                            logger.error("Unable to refresh SAML Service Provider: " + provider, e);
-                        }
-                    } catch (JsonUtils.JsonUtilException x) {
-                        logger.error("Unable to load SAML Service Provider:" + provider, x);
-                    }
+                persistedIds.add(provider.getId());
+                if (ignoreTimestamp || isModified(provider)) {
+                    hasChanges |= refreshSamlServiceProvider(zone, manager, provider);
                 }
             }
             // Remove anything that we did not find in persistent storage.
@@ -158,7 +158,80 @@ public class ZoneAwareIdpMetadataManager extends IdpMetadataManager implements E
                 refreshZoneManager(manager);
             }
         }
-        lastRefresh = System.currentTimeMillis();
+        refreshedVersions.keySet().retainAll(persistedIds);
+        lastRefresh = started;
+        lastFullRefresh = started;
+    }
+
+    /**
+     * Applies the service providers that were created or updated since the last
+     * refresh, loading only those rows. The window reaches back a little further
+     * than the last refresh to cover clock differences between nodes and late
+     * commits; providers whose version was already applied are skipped.
+     */
+    protected void refreshChangedProviders() throws MetadataProviderException {
+        long started = System.currentTimeMillis();
+        Map<String, List<SamlServiceProvider>> changedByZone = new LinkedHashMap<>();
+        for (SamlServiceProvider provider : providerDao.retrieveModifiedSince(new Date(lastRefresh - getModificationWindow()))) {
+            if (isModified(provider)) {
+                changedByZone.computeIfAbsent(provider.getIdentityZoneId(), k -> new LinkedList<>()).add(provider);
+            }
+        }
+        logger.debug("Running SAML SP delta refresh[" + getThreadNameAndId() + "] - zones=" + changedByZone.keySet());
+        for (Map.Entry<String, List<SamlServiceProvider>> entry : changedByZone.entrySet()) {
+            IdentityZone zone;
+            try {
+                zone = zoneDao.retrieve(entry.getKey());
+            } catch (ZoneDoesNotExistsException x) {
+                continue;
+            }
+            ExtensionMetadataManager manager = getManager(zone);
+            boolean hasChanges = false;
+            for (SamlServiceProvider provider : entry.getValue()) {
+                hasChanges |= refreshSamlServiceProvider(zone, manager, provider);
+            }
+            if (hasChanges) {
+                refreshZoneManager(manager);
+            }
+        }
+        lastRefresh = started;
+    }
+
+    protected long getModificationWindow() {
+        return Math.max(refreshInterval, 60000l);
+    }
+
+    protected boolean isModified(SamlServiceProvider provider) {
+        Long refreshed = provider.getId() == null ? null : refreshedVersions.get(provider.getId());
+        return refreshed == null || provider.getLastModified() == null || refreshed != provider.getLastModified().getTime();
+    }
+
+    protected boolean refreshSamlServiceProvider(IdentityZone zone, ExtensionMetadataManager manager, SamlServiceProvider provider) {
+        try {
+            try {
+                if (provider.isActive()) {
+                    log.info("Adding SAML SP zone[" + zone.getId() + "] entityId["
+                            + provider.getEntityId() + "]");
+                    ExtendedMetadataDelegate[] delegates = configurator
+                            .addSamlServiceProvider(provider);
+                    if (delegates[1] != null) {
+                        manager.removeMetadataProvider(delegates[1]);
+                    }
+                    manager.addMetadataProvider(delegates[0]);
+                } else {
+                    removeSamlServiceProvider(zone, manager, provider);
+                }
+                if (provider.getId() != null && provider.getLastModified() != null) {
+                    refreshedVersions.put(provider.getId(), provider.getLastModified().getTime());
+                }
+                return true;
+            } catch (MetadataProviderException e) {
+                logger.error("Unable to refresh SAML Service Provider: " + provider, e);
+            }
+        } catch (JsonUtils.JsonUtilException x) {
+            logger.error("Unable to load SAML Service Provider:" + provider, x);
+        }
+        return false;
     }
 
     protected void removeSamlServiceProvider(IdentityZone zone, ExtensionMetadataManager manager,
@@ -336,6 +409,14 @@ public class ZoneAwareIdpMetadataManager extends IdpMetadataManager implements E
         this.refreshInterval = refreshCheckInterval;
     }
 
+    /**
+     * @param fullRefreshInterval how often all zones are reconciled with the
+     *            database, in milliseconds
+     */
+    public void setFullRefreshInterval(long fullRefreshInterval) {
+        this.fullRefreshInterval = fullRefreshInterval;
+    }
+
     @Override
     public void setKeyManager(KeyManager keyManager) {
         getManager().setKeyManager(keyManager);
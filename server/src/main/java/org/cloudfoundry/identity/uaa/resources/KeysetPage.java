@@ -0,0 +1,53 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources;
+
+import java.util.List;
+
+/**
+ * One page of a cursor based query, see
+ * {@link Queryable#queryPage(String, String, boolean, String, int, boolean)}.
+ */
+public class KeysetPage<T> {
+
+    public static final int NOT_COUNTED = -1;
+
+    private final List<T> resources;
+    private final String nextCursor;
+    private final int totalResults;
+
+    public KeysetPage(List<T> resources, String nextCursor, int totalResults) {
+        this.resources = resources;
+        this.nextCursor = nextCursor;
+        this.totalResults = totalResults;
+    }
+
+    public List<T> getResources() {
+        return resources;
+    }
+
+    /**
+     * @return the cursor of the following page, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return the number of results matching the filter, or {@link #NOT_COUNTED}
+     *         if the count was not requested
+     */
+    public int getTotalResults() {
+        return totalResults;
+    }
+}
@@ -20,6 +20,22 @@ public interface Queryable<T> {
 
     List<T> query(String filter, String sortBy, boolean ascending);
 
+    /**
+     * Retrieves one page of results by seeking past the last result of the
+     * previous page on the sort attribute and the id, instead of skipping an
+     * offset. The sort attribute must have a value on every matching row.
+     *
+     * @param filter
+     * @param sortBy a single sort attribute, the id is used if empty
+     * @param ascending
+     * @param cursor the next cursor of the previous page, or an empty string
+     *            for the first page
+     * @param count the maximum number of results on the page
+     * @param countTotal whether to count all results matching the filter
+     * @return
+     */
+    KeysetPage<T> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean countTotal);
+
     int delete(String filter);
 
 }
@@ -12,12 +12,16 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.resources.jdbc;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.Queryable;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -105,6 +109,60 @@ public abstract class AbstractQueryable<T> implements Queryable<T> {
         }
     }
 
+    @Override
+    public KeysetPage<T> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean countTotal) {
+        final String sortColumn = StringUtils.hasText(sortBy) ? queryConverter.map(sortBy) : getIdColumn();
+        if (!sortColumn.matches("[A-Za-z_]+")) {
+            throw new IllegalArgumentException("Cursor paging requires a single sort field:" + sortBy);
+        }
+        validateOrderBy(sortColumn);
+        KeysetCursor position = KeysetCursor.decode(cursor, sortColumn, ascending);
+        SearchQueryConverter.ProcessedFilter where = queryConverter.convert(filter, null, ascending);
+        String completeSql = getQuerySQL(filter, where);
+        Map<String, Object> params = new HashMap<>(where.getParams());
+        try {
+            int total = countTotal ? pagingListFactory.count(completeSql, params) : KeysetPage.NOT_COUNTED;
+            if (count <= 0) {
+                return new KeysetPage<>(Collections.<T>emptyList(), null, total);
+            }
+            String direction = ascending ? " ASC" : " DESC";
+            if (position != null) {
+                String comparator = ascending ? " > " : " < ";
+                completeSql += (completeSql.contains(" where ") ? " and " : " where ") +
+                    "(" + sortColumn + comparator + ":__seek_value or (" + sortColumn + " = :__seek_value and " +
+                    getIdColumn() + comparator + ":__seek_id))";
+                params.put("__seek_value", position.getValue());
+                params.put("__seek_id", position.getId());
+            }
+            completeSql += " ORDER BY " + sortColumn + direction + ", " + getIdColumn() + direction;
+            logger.debug("keyset sql: " + completeSql + ", params: " + params);
+
+            final KeysetCursor[] last = new KeysetCursor[1];
+            // one row more than requested tells whether there is a following page
+            List<T> rows = pagingListFactory.queryFirstRows(completeSql, params, (rs, rowNum) -> {
+                if (rowNum == count - 1) {
+                    last[0] = new KeysetCursor(sortColumn, ascending, rs.getObject(sortColumn), rs.getString(getIdColumn()).trim());
+                }
+                return rowMapper.mapRow(rs, rowNum);
+            }, count + 1);
+            if (rows.size() <= count) {
+                return new KeysetPage<>(rows, null, total);
+            }
+            return new KeysetPage<>(rows.subList(0, count), last[0].encode(), total);
+        } catch (DataAccessException e) {
+            logger.debug("Filter '" + filter + "' generated invalid SQL", e);
+            throw new IllegalArgumentException("Invalid filter: " + filter);
+        }
+    }
+
+    /**
+     * @return the column that uniquely identifies a row within the query results,
+     *         used to order rows with the same sort value
+     */
+    protected String getIdColumn() {
+        return "id";
+    }
+
     protected String getQuerySQL(String filter, SearchQueryConverter.ProcessedFilter where) {
         if (filter == null || filter.trim().length()==0) {
             return getBaseSqlQuery();
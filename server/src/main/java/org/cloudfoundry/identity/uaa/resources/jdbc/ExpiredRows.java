@@ -0,0 +1,61 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+/**
+ * The rows of a table that have expired, described by a condition on the
+ * table and the column that identifies a row, so that they can be deleted a
+ * chunk at a time by the {@link ExpiredRowsSweeper}.
+ */
+public class ExpiredRows {
+
+    private final String table;
+    private final String keyColumn;
+    private final String condition;
+    private final Object[] args;
+
+    /**
+     * @param table the table to delete from
+     * @param keyColumn a column that identifies the rows to delete
+     * @param condition the where clause matching the expired rows, with
+     *            <code>?</code> placeholders for the arguments
+     * @param args the arguments of the condition
+     */
+    public ExpiredRows(String table, String keyColumn, String condition, Object... args) {
+        this.table = table;
+        this.keyColumn = keyColumn;
+        this.condition = condition;
+        this.args = args;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getKeyColumn() {
+        return keyColumn;
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public String toString() {
+        return table + " where " + condition;
+    }
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes the expired rows of a number of stores on a background thread.
+ * <p>
+ * Rows are deleted in chunks of at most {@link #setChunkSize(int)} rows with a
+ * pause between chunks, so that no single statement holds locks on a large
+ * part of a table. Only one server sweeps at a time: a server must hold the
+ * lease row in <code>sweeper_lease</code> to sweep, and holds it for one
+ * interval.
+ */
+@ManagedResource
+public class ExpiredRowsSweeper implements InitializingBean, DisposableBean {
+
+    private static final String ACQUIRE_LEASE_SQL = "update sweeper_lease set owner=?, expires_at=? where lease_name=? and (expires_at < ? or owner=?)";
+    private static final String INSERT_LEASE_SQL = "insert into sweeper_lease (lease_name, owner, expires_at) values (?,?,?)";
+    private static final String RENEW_LEASE_SQL = "update sweeper_lease set expires_at=? where lease_name=? and owner=?";
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LimitSqlAdapter limitSqlAdapter;
+    private final List<ExpiringRowStore> stores;
+    private final String owner = UUID.randomUUID().toString();
+
+    private final AtomicLong rowsSwept = new AtomicLong();
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong leasesMissed = new AtomicLong();
+    private volatile long lastSweepDuration;
+    private volatile long lastSweepRows;
+
+    private String leaseName = "expired-rows";
+    private int chunkSize = 500;
+    private long pauseMillis = 100;
+    private long intervalMillis = 60 * 1000;
+
+    private ScheduledExecutorService scheduler;
+
+    public ExpiredRowsSweeper(JdbcTemplate jdbcTemplate, LimitSqlAdapter limitSqlAdapter, List<ExpiringRowStore> stores) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.limitSqlAdapter = limitSqlAdapter;
+        this.stores = stores;
+    }
+
+    public ExpiredRowsSweeper(JdbcTemplate jdbcTemplate, LimitSqlAdapter limitSqlAdapter, ExpiringRowStore... stores) {
+        this(jdbcTemplate, limitSqlAdapter, Arrays.asList(stores));
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "expired-rows-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                logger.error("Unable to remove expired rows", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Removes the expired rows of all stores if this server holds the lease.
+     *
+     * @return the number of rows removed
+     */
+    @ManagedOperation
+    public int sweep() {
+        if (!acquireLease()) {
+            leasesMissed.incrementAndGet();
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int total = 0;
+        try {
+            for (ExpiringRowStore store : stores) {
+                for (ExpiredRows rows : store.getExpiredRows(System.currentTimeMillis())) {
+                    int count = sweep(rows);
+                    logger.debug("Removed " + count + " expired rows from " + rows.getTable());
+                    total += count;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lastSweepDuration = System.currentTimeMillis() - start;
+            lastSweepRows = total;
+            sweeps.incrementAndGet();
+        }
+        return total;
+    }
+
+    /**
+     * Removes the given rows a chunk at a time, stopping early if the lease is
+     * lost.
+     */
+    protected int sweep(ExpiredRows rows) throws InterruptedException {
+        String select = limitSqlAdapter.getLimitSql(
+            "select " + rows.getKeyColumn() + " from " + rows.getTable() + " where " + rows.getCondition(), 0, chunkSize);
+        int total = 0;
+        while (true) {
+            List<Object> keys = jdbcTemplate.query(select, new SingleColumnRowMapper<>(), rows.getArgs());
+            if (keys.isEmpty()) {
+                break;
+            }
+            // repeat the condition in case a row was updated since it was selected
+            String delete = "delete from " + rows.getTable() +
+                " where " + rows.getKeyColumn() + " in (" + StringUtils.collectionToCommaDelimitedString(Collections.nCopies(keys.size(), "?")) + ")" +
+                " and (" + rows.getCondition() + ")";
+            List<Object> args = new ArrayList<>(keys);
+            args.addAll(Arrays.asList(rows.getArgs()));
+            int count = jdbcTemplate.update(delete, args.toArray());
+            total += count;
+            rowsSwept.addAndGet(count);
+            if (count == 0 || keys.size() < chunkSize || !renewLease()) {
+                break;
+            }
+            Thread.sleep(pauseMillis);
+        }
+        return total;
+    }
+
+    protected boolean acquireLease() {
+        long now = System.currentTimeMillis();
+        if (jdbcTemplate.update(ACQUIRE_LEASE_SQL, owner, now + intervalMillis, leaseName, now, owner) > 0) {
+            return true;
+        }
+        try {
+            return jdbcTemplate.update(INSERT_LEASE_SQL, leaseName, owner, now + intervalMillis) > 0;
+        } catch (DuplicateKeyException e) {
+            // another server holds the lease
+            return false;
+        }
+    }
+
+    protected boolean renewLease() {
+        return jdbcTemplate.update(RENEW_LEASE_SQL, System.currentTimeMillis() + intervalMillis, leaseName, owner) > 0;
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Expired Rows Swept")
+    public long getRowsSwept() {
+        return rowsSwept.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Expired Row Sweeps")
+    public long getSweepCount() {
+        return sweeps.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Expired Row Sweeps Skipped Without Lease")
+    public long getLeasesMissed() {
+        return leasesMissed.get();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Last Expired Row Sweep Duration")
+    public long getLastSweepDuration() {
+        return lastSweepDuration;
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Last Expired Row Sweep Rows")
+    public long getLastSweepRows() {
+        return lastSweepRows;
+    }
+
+    public String getLeaseName() {
+        return leaseName;
+    }
+
+    public void setLeaseName(String leaseName) {
+        this.leaseName = leaseName;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        Assert.isTrue(chunkSize > 0, "Chunk size must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    public long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    public void setPauseMillis(long pauseMillis) {
+        this.pauseMillis = pauseMillis;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        Assert.isTrue(intervalMillis > 0, "Interval must be positive");
+        this.intervalMillis = intervalMillis;
+    }
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import java.util.List;
+
+/**
+ * A store whose expired rows are removed by the {@link ExpiredRowsSweeper}
+ * rather than by the store itself.
+ */
+public interface ExpiringRowStore {
+
+    /**
+     * @param now the current time in milliseconds
+     * @return the rows of this store that have expired at that time
+     */
+    List<ExpiredRows> getExpiredRows(long now);
+
+}
@@ -103,7 +103,7 @@ public class JdbcPagingList<E> extends AbstractList<E> {
         return new SafeIteratorList<E>(super.subList(fromIndex, toIndex));
     }
 
-    private String getCountSql(String sql) {
+    static String getCountSql(String sql) {
         String result = sql.replaceAll("(?i)select (.*?) from (.*)", "select count(*) from $2");
         int orderByPos = result.toLowerCase().lastIndexOf("order by");
         if (orderByPos >= 0) {
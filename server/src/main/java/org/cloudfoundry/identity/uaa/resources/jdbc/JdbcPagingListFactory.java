@@ -38,4 +38,12 @@ public class JdbcPagingListFactory {
     public <T> List<T> createJdbcPagingList(String sql, Map<String, ?> args, RowMapper<T> mapper, int pageSize) {
         return new JdbcPagingList<T>(jdbcTemplate, limitSqlAdapter, sql, args, mapper, pageSize);
     }
+
+    public <T> List<T> queryFirstRows(String sql, Map<String, ?> args, RowMapper<T> mapper, int rows) {
+        return jdbcTemplate.query(limitSqlAdapter.getLimitSql(sql, 0, rows), args, mapper);
+    }
+
+    public int count(String sql, Map<String, ?> args) {
+        return jdbcTemplate.queryForObject(JdbcPagingList.getCountSql(sql), args, Integer.class);
+    }
 }
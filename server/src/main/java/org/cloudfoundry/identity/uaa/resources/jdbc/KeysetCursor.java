@@ -0,0 +1,130 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The position of the last row of a page in a keyset paged query: the value of
+ * the sort column and the id of that row. It is handed to clients as an opaque
+ * URL safe string, together with the sort it was created for so that it cannot
+ * be replayed against a different ordering.
+ */
+final class KeysetCursor {
+
+    private static final String STRING = "s";
+    private static final String TIMESTAMP = "t";
+    private static final String NUMBER = "n";
+    private static final String BOOLEAN = "b";
+
+    private final String sortColumn;
+    private final boolean ascending;
+    private final Object value;
+    private final String id;
+
+    KeysetCursor(String sortColumn, boolean ascending, Object value, String id) {
+        this.sortColumn = sortColumn;
+        this.ascending = ascending;
+        this.value = value;
+        this.id = id;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String encode() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("sortBy", sortColumn.toLowerCase());
+        fields.put("ascending", ascending);
+        if (value instanceof Date) {
+            Timestamp timestamp = value instanceof Timestamp ? (Timestamp) value : new Timestamp(((Date) value).getTime());
+            fields.put("type", TIMESTAMP);
+            fields.put("value", timestamp.toString());
+        } else if (value instanceof Number) {
+            fields.put("type", NUMBER);
+            fields.put("value", new BigDecimal(value.toString()).toPlainString());
+        } else if (value instanceof Boolean) {
+            fields.put("type", BOOLEAN);
+            fields.put("value", value.toString());
+        } else if (value != null) {
+            fields.put("type", STRING);
+            fields.put("value", value.toString());
+        } else {
+            throw new IllegalArgumentException("Cursor paging requires a sort attribute that is set on every row:" + sortColumn);
+        }
+        fields.put("id", id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(JsonUtils.writeValueAsBytes(fields));
+    }
+
+    /**
+     * @return the decoded cursor, or null if the cursor is empty, which stands
+     *         for the first page
+     * @throws IllegalArgumentException if the cursor is malformed or was created
+     *             for a different sort
+     */
+    static KeysetCursor decode(String cursor, String sortColumn, boolean ascending) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+        Map<String, Object> fields;
+        try {
+            fields = JsonUtils.readValue(Base64.getUrlDecoder().decode(cursor.trim()), new TypeReference<Map<String, Object>>() {});
+        } catch (IllegalArgumentException | JsonUtils.JsonUtilException e) {
+            throw new IllegalArgumentException("Invalid cursor:" + cursor);
+        }
+        if (fields == null
+            || !sortColumn.toLowerCase().equals(fields.get("sortBy"))
+            || !Boolean.valueOf(ascending).equals(fields.get("ascending"))
+            || !(fields.get("value") instanceof String)
+            || !(fields.get("id") instanceof String)) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort:" + cursor);
+        }
+        String value = (String) fields.get("value");
+        Object parsed;
+        try {
+            switch (String.valueOf(fields.get("type"))) {
+                case TIMESTAMP:
+                    parsed = Timestamp.valueOf(value);
+                    break;
+                case NUMBER:
+                    parsed = new BigDecimal(value);
+                    break;
+                case BOOLEAN:
+                    parsed = Boolean.valueOf(value);
+                    break;
+                case STRING:
+                    parsed = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid cursor:" + cursor);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor:" + cursor);
+        }
+        return new KeysetCursor(sortColumn, ascending, parsed, (String) fields.get("id"));
+    }
+}
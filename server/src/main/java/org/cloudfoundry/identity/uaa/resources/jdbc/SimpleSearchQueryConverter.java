@@ -19,6 +19,7 @@ import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMFilter;
@@ -26,28 +27,60 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 import org.springframework.util.StringUtils;
 
 import static org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter.ProcessedFilter.ORDER_BY;
 
+/**
+ * Converts SCIM filters into SQL. Converted filters are kept in a bounded cache
+ * so that repeated filters are parsed only once. Parameter names only depend on
+ * the structure of the filter, so filters of the same shape produce the same
+ * SQL text and can share prepared statements.
+ */
 public class SimpleSearchQueryConverter implements SearchQueryConverter {
 
     private static Log logger = LogFactory.getLog(SimpleSearchQueryConverter.class);
+
+    private static final String DEFAULT_PARAMETER_PREFIX = "__value_";
+
+    private static final RandomValueStringGenerator PREFIX_GENERATOR = new RandomValueStringGenerator();
+
     private AttributeNameMapper mapper = new SimpleAttributeNameMapper(Collections.<String, String> emptyMap());
 
     private boolean dbCaseInsensitive = false;
 
+    private final ConfigurableCache<FilterKey, ProcessedFilter> cache = new ConfigurableCache<>(true, 1000, ConfigurableCache.NO_EXPIRY);
+
     public boolean isDbCaseInsensitive() {
         return dbCaseInsensitive;
     }
 
     public void setDbCaseInsensitive(boolean caseInsensitive) {
         this.dbCaseInsensitive = caseInsensitive;
+        cache.invalidateAll();
     }
 
     public void setAttributeNameMapper(AttributeNameMapper mapper) {
         this.mapper = mapper;
+        cache.invalidateAll();
+    }
+
+    public boolean isCacheEnabled() {
+        return cache.isEnabled();
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        cache.setEnabled(cacheEnabled);
+    }
+
+    public int getCacheMaxEntries() {
+        return cache.getMaxEntries();
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        cache.setMaxEntries(cacheMaxEntries);
     }
 
     @Override
@@ -57,6 +90,22 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
 
     @Override
     public ProcessedFilter convert(String filter, String sortBy, boolean ascending, AttributeNameMapper mapper) {
+        if (!isCacheEnabled() || filter == null) {
+            return doConvert(filter, sortBy, ascending, mapper);
+        }
+        FilterKey key = new FilterKey(filter, sortBy, ascending, mapper);
+        ProcessedFilter converted = cache.getIfPresent(key);
+        if (converted == null) {
+            converted = doConvert(filter, sortBy, ascending, mapper);
+            cache.put(key, converted);
+        }
+        // callers may add parameters of their own
+        ProcessedFilter pf = new ProcessedFilter(converted.getSql(), new HashMap<>(converted.getParams()), converted.hasOrderBy());
+        pf.setParamPrefix(converted.getParamPrefix());
+        return pf;
+    }
+
+    protected ProcessedFilter doConvert(String filter, String sortBy, boolean ascending, AttributeNameMapper mapper) {
         String paramPrefix = generateParameterPrefix(filter);
         Map<String, Object> values = new HashMap<>();
         String where = StringUtils.hasText(filter) ? getWhereClause(filter, sortBy, ascending, values, mapper, paramPrefix) : null;
@@ -66,8 +115,11 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
     }
 
     protected String generateParameterPrefix(String filter) {
+        if (filter == null || !filter.contains(DEFAULT_PARAMETER_PREFIX)) {
+            return DEFAULT_PARAMETER_PREFIX;
+        }
         while (true) {
-            String s = new RandomValueStringGenerator().generate().toLowerCase();
+            String s = PREFIX_GENERATOR.generate().toLowerCase();
             if (!filter.contains(s)) {
                 return "__"+s+"_";
             }
@@ -201,4 +253,38 @@ public class SimpleSearchQueryConverter implements SearchQueryConverter {
     public String map(String attribute) {
         return StringUtils.hasText(attribute) ? mapper.mapToInternal(attribute) : attribute;
     }
+
+    private static final class FilterKey {
+        private final String filter;
+        private final String sortBy;
+        private final boolean ascending;
+        private final AttributeNameMapper mapper;
+
+        FilterKey(String filter, String sortBy, boolean ascending, AttributeNameMapper mapper) {
+            this.filter = filter;
+            this.sortBy = sortBy;
+            this.ascending = ascending;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FilterKey)) {
+                return false;
+            }
+            FilterKey other = (FilterKey) o;
+            return ascending == other.ascending
+                && mapper == other.mapper
+                && filter.equals(other.filter)
+                && Objects.equals(sortBy, other.sortBy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, sortBy, ascending, System.identityHashCode(mapper));
+        }
+    }
 }
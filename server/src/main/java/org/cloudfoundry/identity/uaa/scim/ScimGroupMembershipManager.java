@@ -12,7 +12,9 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.cloudfoundry.identity.uaa.resources.Queryable;
@@ -67,6 +69,32 @@ public interface ScimGroupMembershipManager extends Queryable<ScimGroupMember> {
      */
     Set<ScimGroup> getGroupsWithMember(String memberId, boolean transitive) throws ScimResourceNotFoundException;
 
+    /**
+     * Retrieve all groups that each of the given members belongs to, using a
+     * bounded number of queries regardless of the number of members
+     *
+     * @param memberIds
+     * @param transitive true means indirect/transitive membership is also
+     *            processed (nested groups)
+     * @return the groups of each member, keyed by member id, with an entry
+     *         for every requested member
+     */
+    Map<String, Set<ScimGroup>> getGroupsWithMembers(Collection<String> memberIds, boolean transitive);
+
+    /**
+     * Make the memberships a user holds through an external origin match the
+     * named groups: memberships of that origin in groups that are not named are
+     * revoked, and the user is added to the named groups it is not yet a member
+     * of. Memberships of other origins are left alone, and none are revoked for
+     * the uaa origin.
+     *
+     * @param memberId id of the user
+     * @param origin the origin the memberships are granted through
+     * @param groupNames display names of the groups, matched case insensitively
+     * @param addGroups true if named groups that do not exist should be created
+     */
+    void updateExternalMemberships(String memberId, String origin, Collection<String> groupNames, boolean addGroups);
+
     /**
      * Retrieve a particular member's membership details
      *
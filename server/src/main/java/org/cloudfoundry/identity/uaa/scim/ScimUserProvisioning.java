@@ -18,6 +18,9 @@ import org.cloudfoundry.identity.uaa.scim.exception.InvalidPasswordException;
 import org.cloudfoundry.identity.uaa.scim.exception.InvalidScimResourceException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * @author Luke Taylor
  * @author Dave Syer
@@ -33,7 +36,19 @@ public interface ScimUserProvisioning extends ResourceManager<ScimUser>, Queryab
     public ScimUser verifyUser(String id, int version) throws ScimResourceNotFoundException,
         InvalidScimResourceException;
 
+    /**
+     * Creates all of the given users, each with the password at the same
+     * position, as a single unit.
+     */
+    public List<ScimUser> createUsers(List<ScimUser> users, List<String> passwords) throws InvalidPasswordException, InvalidScimResourceException;
+
     public boolean checkPasswordMatches(String id, String password) throws ScimResourceNotFoundException;
 
+    /**
+     * Retrieves the users of the current zone that have one of the given email
+     * addresses, compared ignoring case, and the given origin.
+     */
+    public List<ScimUser> retrieveByEmailsAndOrigin(Collection<String> emails, String origin);
+
 }
 
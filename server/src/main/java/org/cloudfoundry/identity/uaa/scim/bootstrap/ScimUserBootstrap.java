@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim.bootstrap;
 
+import com.google.common.hash.Hashing;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.authentication.manager.AuthEvent;
@@ -29,6 +30,8 @@ import org.cloudfoundry.identity.uaa.scim.exception.MemberAlreadyExistsException
 import org.cloudfoundry.identity.uaa.scim.exception.MemberNotFoundException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
 import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.user.UaaUserDatabase;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationListener;
@@ -36,12 +39,15 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Convenience class for provisioning user accounts from {@link UaaUser}
@@ -64,6 +70,10 @@ public class ScimUserBootstrap implements InitializingBean, ApplicationListener<
 
     private final Collection<UaaUser> users;
 
+    private UaaUserDatabase userDatabase;
+
+    private final ConfigurableCache<String, String> synchronizedGroups = new ConfigurableCache<>(true, 100000, 0);
+
     /**
      * Flag to indicate that user accounts can be updated as well as created.
      *
@@ -77,6 +87,14 @@ public class ScimUserBootstrap implements InitializingBean, ApplicationListener<
         return override;
     }
 
+    /**
+     * @param userDatabase if set, told to drop what it caches for token
+     *            validation whenever a login changes a user or its memberships
+     */
+    public void setUserDatabase(UaaUserDatabase userDatabase) {
+        this.userDatabase = userDatabase;
+    }
+
     public ScimUserBootstrap(ScimUserProvisioning scimUserProvisioning, ScimGroupProvisioning scimGroupProvisioning,
                     ScimGroupMembershipManager membershipManager, Collection<UaaUser> users) {
         Assert.notNull(scimUserProvisioning, "scimUserProvisioning cannot be null");
@@ -176,25 +194,20 @@ public class ScimUserBootstrap implements InitializingBean, ApplicationListener<
         if (event instanceof InvitedUserAuthenticatedEvent) {
             ScimUser user = getScimUser(event.getUser());
             updateUser(user, event.getUser(), false);
+            invalidateValidationCache(event.getUser());
             return;
         }
 
         if (event instanceof ExternalGroupAuthorizationEvent) {
             ExternalGroupAuthorizationEvent exEvent = (ExternalGroupAuthorizationEvent)event;
-            //delete previous membership relation ships
-            String origin = exEvent.getUser().getOrigin();
-            if (!OriginKeys.UAA.equals(origin)) {//only delete non UAA relationships
-                membershipManager.delete("member_id eq \""+event.getUser().getId()+"\" and origin eq \""+origin+"\"");
-            }
-            for (GrantedAuthority authority : exEvent.getExternalAuthorities()) {
-                addToGroup(exEvent.getUser().getId(), authority.getAuthority(), exEvent.getUser().getOrigin(), exEvent.isAddGroups());
-            }
+            updateExternalGroups(exEvent);
             //update the user itself
             if(event.isUserModified()) {
                 //update the user itself
                 ScimUser user = getScimUser(event.getUser());
                 updateUser(user, event.getUser(), false);
             }
+            invalidateValidationCache(event.getUser());
             return;
         }
 
@@ -204,6 +217,56 @@ public class ScimUserBootstrap implements InitializingBean, ApplicationListener<
         }
     }
 
+    private void invalidateValidationCache(UaaUser user) {
+        if (userDatabase != null && user != null) {
+            userDatabase.invalidateValidationCache(user.getId());
+        }
+    }
+
+    /**
+     * Brings the memberships the user holds through its origin in line with the
+     * external groups of the event. Unless the synchronized group sets expire
+     * immediately, the sync is skipped when the user logs in again with the
+     * same external groups; memberships changed on another node or through the
+     * SCIM endpoints meanwhile are then only corrected once the entry expires.
+     */
+    protected void updateExternalGroups(ExternalGroupAuthorizationEvent event) {
+        UaaUser user = event.getUser();
+        Set<String> names = new TreeSet<>();
+        for (GrantedAuthority authority : event.getExternalAuthorities()) {
+            if (StringUtils.hasText(authority.getAuthority())) {
+                names.add(authority.getAuthority().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        String key = IdentityZoneHolder.get().getId() + ":" + user.getId() + ":" + user.getOrigin();
+        String hash = Hashing.sha256()
+            .hashString(event.isAddGroups() + "\n" + StringUtils.collectionToDelimitedString(names, "\n"), StandardCharsets.UTF_8)
+            .toString();
+        if (hash.equals(synchronizedGroups.getIfPresent(key))) {
+            logger.debug("External groups of " + user.getId() + " are unchanged, skipping membership update");
+            return;
+        }
+        List<String> groupNames = new ArrayList<>();
+        for (GrantedAuthority authority : event.getExternalAuthorities()) {
+            groupNames.add(authority.getAuthority());
+        }
+        membershipManager.updateExternalMemberships(user.getId(), user.getOrigin(), groupNames, event.isAddGroups());
+        synchronizedGroups.put(key, hash);
+    }
+
+    public int getExternalGroupsExpiryInSeconds() {
+        return synchronizedGroups.getExpiryInSeconds();
+    }
+
+    /**
+     * @param externalGroupsExpiryInSeconds how long the external groups a user
+     *            logged in with are remembered, so that a login with the same
+     *            groups does not touch the memberships (default 0, never skip)
+     */
+    public void setExternalGroupsExpiryInSeconds(int externalGroupsExpiryInSeconds) {
+        synchronizedGroups.setExpiryInSeconds(externalGroupsExpiryInSeconds);
+    }
+
     private void addToGroup(String scimUserId, String gName) {
         addToGroup(scimUserId,gName, OriginKeys.UAA, true);
     }
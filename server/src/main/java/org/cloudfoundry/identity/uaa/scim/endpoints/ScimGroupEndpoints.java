@@ -14,6 +14,7 @@ package org.cloudfoundry.identity.uaa.scim.endpoints;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SearchResultsFactory;
 import org.cloudfoundry.identity.uaa.scim.ScimCore;
@@ -148,26 +149,41 @@ public class ScimGroupEndpoints {
         @RequestParam(required = false, defaultValue = "created") String sortBy,
         @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
         @RequestParam(required = false, defaultValue = "1") int startIndex,
-        @RequestParam(required = false, defaultValue = "100") int count) {
+        @RequestParam(required = false, defaultValue = "100") int count,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(required = false, defaultValue = "true") boolean totalResults) {
 
-        List<ScimGroup> result;
+        List<ScimGroup> input;
+        int total;
+        String nextCursor = null;
         try {
-            result = dao.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder));
+            if (cursor != null) {
+                KeysetPage<ScimGroup> page = dao.queryPage(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder), cursor, count, totalResults);
+                input = filterForCurrentUser(page.getResources(), 1, count);
+                total = page.getTotalResults();
+                nextCursor = page.getNextCursor();
+                startIndex = 1;
+            } else {
+                List<ScimGroup> result = dao.query(filter, sortBy, "ascending".equalsIgnoreCase(sortOrder));
+                input = filterForCurrentUser(result, startIndex, count);
+                total = result.size();
+            }
         } catch (IllegalArgumentException e) {
             throw new ScimException("Invalid filter expression: [" + filter + "]", HttpStatus.BAD_REQUEST);
         }
 
-        List<ScimGroup> input = filterForCurrentUser(result, startIndex, count);
-
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
-            return new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count,
-                                       result.size());
+            SearchResults<ScimGroup> results = new SearchResults<>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, total);
+            results.setNextCursor(nextCursor);
+            return results;
         }
 
         String[] attributes = attributesCommaSeparated.split(",");
         try {
-            return SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, result.size(), attributes,
-                                                              Arrays.asList(ScimCore.SCHEMAS));
+            SearchResults<?> results = SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, total, attributes,
+                                                                                 Arrays.asList(ScimCore.SCHEMAS));
+            results.setNextCursor(nextCursor);
+            return results;
         } catch (ExpressionException e) {
             throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
         }
@@ -35,6 +35,7 @@ import org.cloudfoundry.identity.uaa.codestore.ExpiringCode;
 import org.cloudfoundry.identity.uaa.codestore.ExpiringCodeStore;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.SearchResults;
 import org.cloudfoundry.identity.uaa.resources.SearchResultsFactory;
@@ -117,7 +118,6 @@ import static org.springframework.util.StringUtils.isEmpty;
 @Controller
 @ManagedResource
 public class ScimUserEndpoints implements InitializingBean {
-    private static final String USER_APPROVALS_FILTER_TEMPLATE = "user_id eq \"%s\"";
 
     private static Log logger = LogFactory.getLog(ScimUserEndpoints.class);
 
@@ -226,8 +226,8 @@ public class ScimUserEndpoints implements InitializingBean {
         if (user.getApprovals()!=null) {
             for (Approval approval : user.getApprovals()) {
                 approval.setUserId(scimUser.getId());
-                approvalStore.addApproval(approval);
             }
+            approvalStore.addApprovals(user.getApprovals());
         }
         scimUser = syncApprovals(syncGroups(scimUser));
         addETagHeader(response, scimUser);
@@ -339,24 +339,34 @@ public class ScimUserEndpoints implements InitializingBean {
                     @RequestParam(required = false, defaultValue = "created") String sortBy,
                     @RequestParam(required = false, defaultValue = "ascending") String sortOrder,
                     @RequestParam(required = false, defaultValue = "1") int startIndex,
-                    @RequestParam(required = false, defaultValue = "100") int count) {
+                    @RequestParam(required = false, defaultValue = "100") int count,
+                    @RequestParam(required = false) String cursor,
+                    @RequestParam(required = false, defaultValue = "true") boolean totalResults) {
 
         if (startIndex < 1) {
             startIndex = 1;
         }
 
         List<ScimUser> input = new ArrayList<ScimUser>();
-        List<ScimUser> result;
+        int total;
+        String nextCursor = null;
         try {
-            result = dao.query(filter, sortBy, sortOrder.equals("ascending"));
-            for (ScimUser user : UaaPagingUtils.subList(result, startIndex, count)) {
-                if(attributesCommaSeparated == null || attributesCommaSeparated.matches("(?i)groups") || attributesCommaSeparated.isEmpty()) {
-                    syncGroups(user);
-                }
-                if(attributesCommaSeparated == null || attributesCommaSeparated.matches("(?i)approvals") || attributesCommaSeparated.isEmpty()) {
-                    syncApprovals(user);
-                }
-                input.add(user);
+            if (cursor != null) {
+                KeysetPage<ScimUser> page = dao.queryPage(filter, sortBy, sortOrder.equals("ascending"), cursor, count, totalResults);
+                input.addAll(page.getResources());
+                total = page.getTotalResults();
+                nextCursor = page.getNextCursor();
+                startIndex = 1;
+            } else {
+                List<ScimUser> result = dao.query(filter, sortBy, sortOrder.equals("ascending"));
+                input.addAll(UaaPagingUtils.subList(result, startIndex, count));
+                total = result.size();
+            }
+            if(attributesCommaSeparated == null || attributesCommaSeparated.matches("(?i)groups") || attributesCommaSeparated.isEmpty()) {
+                syncGroups(input);
+            }
+            if(attributesCommaSeparated == null || attributesCommaSeparated.matches("(?i)approvals") || attributesCommaSeparated.isEmpty()) {
+                syncApprovals(input);
             }
         } catch (IllegalArgumentException e) {
             String msg = "Invalid filter expression: [" + filter + "]";
@@ -368,15 +378,19 @@ public class ScimUserEndpoints implements InitializingBean {
 
         if (!StringUtils.hasLength(attributesCommaSeparated)) {
             // Return all user data
-            return new SearchResults<ScimUser>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, result.size());
+            SearchResults<ScimUser> results = new SearchResults<ScimUser>(Arrays.asList(ScimCore.SCHEMAS), input, startIndex, count, total);
+            results.setNextCursor(nextCursor);
+            return results;
         }
 
         AttributeNameMapper mapper = new SimpleAttributeNameMapper(Collections.<String, String> singletonMap(
                         "emails\\.(.*)", "emails.![$1]"));
         String[] attributes = attributesCommaSeparated.split(",");
         try {
-            return SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, result.size(), attributes,
+            SearchResults<?> results = SearchResultsFactory.buildSearchResultFrom(input, startIndex, count, total, attributes,
                             mapper, Arrays.asList(ScimCore.SCHEMAS));
+            results.setNextCursor(nextCursor);
+            return results;
         } catch (SpelParseException e) {
             throw new ScimException("Invalid attributes: [" + attributesCommaSeparated + "]", HttpStatus.BAD_REQUEST);
         } catch (SpelEvaluationException e) {
@@ -388,36 +402,61 @@ public class ScimUserEndpoints implements InitializingBean {
         if (user == null) {
             return user;
         }
+        syncGroups(Collections.singletonList(user));
+        return user;
+    }
 
-        Set<ScimGroup> directGroups = membershipManager.getGroupsWithMember(user.getId(), false);
-        Set<ScimGroup> indirectGroups = membershipManager.getGroupsWithMember(user.getId(),true);
-        indirectGroups.removeAll(directGroups);
-        Set<ScimUser.Group> groups = new HashSet<ScimUser.Group>();
-        for (ScimGroup group : directGroups) {
-            groups.add(new ScimUser.Group(group.getId(), group.getDisplayName(), ScimUser.Group.Type.DIRECT));
+    private void syncGroups(List<ScimUser> users) {
+        if (users.isEmpty()) {
+            return;
         }
-        for (ScimGroup group : indirectGroups) {
-            groups.add(new ScimUser.Group(group.getId(), group.getDisplayName(), ScimUser.Group.Type.INDIRECT));
+        List<String> userIds = getIds(users);
+        Map<String, Set<ScimGroup>> directGroups = membershipManager.getGroupsWithMembers(userIds, false);
+        Map<String, Set<ScimGroup>> indirectGroups = membershipManager.getGroupsWithMembers(userIds, true);
+        for (ScimUser user : users) {
+            Set<ScimGroup> direct = directGroups.getOrDefault(user.getId(), Collections.<ScimGroup>emptySet());
+            Set<ScimGroup> indirect = new HashSet<>(indirectGroups.getOrDefault(user.getId(), Collections.<ScimGroup>emptySet()));
+            indirect.removeAll(direct);
+            Set<ScimUser.Group> groups = new HashSet<ScimUser.Group>();
+            for (ScimGroup group : direct) {
+                groups.add(new ScimUser.Group(group.getId(), group.getDisplayName(), ScimUser.Group.Type.DIRECT));
+            }
+            for (ScimGroup group : indirect) {
+                groups.add(new ScimUser.Group(group.getId(), group.getDisplayName(), ScimUser.Group.Type.INDIRECT));
+            }
+            user.setGroups(groups);
         }
-
-        user.setGroups(groups);
-        return user;
     }
 
     private ScimUser syncApprovals(ScimUser user) {
-        if (user == null || approvalStore == null) {
+        if (user == null) {
             return user;
         }
-        Set<Approval> approvals = new HashSet<Approval>(
-            approvalStore.getApprovals(String.format(USER_APPROVALS_FILTER_TEMPLATE, user.getId())));
-        Set<Approval> active = new HashSet<Approval>(approvals);
-        for (Approval approval : approvals) {
-            if (!approval.isCurrentlyActive()) {
-                active.remove(approval);
+        syncApprovals(Collections.singletonList(user));
+        return user;
+    }
+
+    private void syncApprovals(List<ScimUser> users) {
+        if (users.isEmpty() || approvalStore == null) {
+            return;
+        }
+        Map<String, Set<Approval>> active = new HashMap<>();
+        for (Approval approval : approvalStore.getApprovalsForUsers(getIds(users))) {
+            if (approval.isCurrentlyActive()) {
+                active.computeIfAbsent(approval.getUserId(), k -> new HashSet<>()).add(approval);
             }
         }
-        user.setApprovals(active);
-        return user;
+        for (ScimUser user : users) {
+            user.setApprovals(active.getOrDefault(user.getId(), new HashSet<>()));
+        }
+    }
+
+    private List<String> getIds(List<ScimUser> users) {
+        List<String> ids = new ArrayList<>();
+        for (ScimUser user : users) {
+            ids.add(user.getId());
+        }
+        return ids;
     }
 
     @ExceptionHandler
@@ -114,7 +114,7 @@ public class UserIdConversionEndpoints implements InitializingBean {
             filter += " AND (" + originFilter + " )";
         }
 
-        return scimUserEndpoints.findUsers("id,userName,origin", filter, "userName", sortOrder, startIndex, count);
+        return scimUserEndpoints.findUsers("id,userName,origin", filter, "userName", sortOrder, startIndex, count, null, true);
     }
 
     @ExceptionHandler
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.scim.jdbc;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maintains <code>group_membership_closure</code>, which holds a row for every
+ * group a member belongs to, directly or through nested groups, so that the
+ * effective groups of a member can be read with a single indexed lookup.
+ * <p>
+ * When the memberships of some members change, the closure of those members
+ * and of every member below them is computed again from
+ * <code>group_membership</code> and replaced. Concurrent changes to the same
+ * part of the hierarchy can leave the closure out of date; {@link #verify(String)}
+ * reports such members and {@link #rebuild(String)} recomputes a whole zone.
+ * On startup, if it is enabled, the closure of every zone is verified and the
+ * zones that are out of date are rebuilt, since changes made while it was
+ * disabled are not reflected in it.
+ */
+@ManagedResource
+public class JdbcGroupMembershipClosure implements InitializingBean {
+
+    public static final String CLOSURE_TABLE = "group_membership_closure";
+
+    public static final String GET_PARENTS_SQL = "select m.member_id,m.group_id from group_membership m, groups g where g.id = m.group_id and m.member_id in (:memberIds) and g.identity_zone_id=:zoneId";
+
+    public static final String GET_DESCENDANTS_SQL = String.format("select member_id from %s where group_id in (:groupIds) and identity_zone_id=:zoneId", CLOSURE_TABLE);
+
+    public static final String GET_CLOSURE_SQL = String.format("select member_id,group_id from %s where identity_zone_id=?", CLOSURE_TABLE);
+
+    public static final String GET_ALL_MEMBERS_SQL = "select distinct m.member_id from group_membership m, groups g where g.id = m.group_id and g.identity_zone_id=?";
+
+    public static final String GET_MEMBERS_OF_MISSING_GROUPS_SQL = String.format("select distinct member_id from %s where identity_zone_id=? and group_id not in (select id from groups where identity_zone_id=?)", CLOSURE_TABLE);
+
+    public static final String GET_ZONE_IDS_SQL = "select id from identity_zone";
+
+    public static final String INSERT_SQL = String.format("insert into %s (member_id,group_id,identity_zone_id) values (?,?,?)", CLOSURE_TABLE);
+
+    public static final String DELETE_MEMBERS_SQL = String.format("delete from %s where member_id in (:memberIds) and identity_zone_id=:zoneId", CLOSURE_TABLE);
+
+    public static final String DELETE_ZONE_SQL = String.format("delete from %s where identity_zone_id=?", CLOSURE_TABLE);
+
+    public static final String DELETE_ORPHANS_SQL = String.format("delete from %s where identity_zone_id=? and member_id not in (select id from users where identity_zone_id=?) and member_id not in (select id from groups where identity_zone_id=?)", CLOSURE_TABLE);
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private boolean enabled = false;
+
+    private int maxMembersPerQuery = 500;
+
+    public JdbcGroupMembershipClosure(JdbcTemplate jdbcTemplate) {
+        Assert.notNull(jdbcTemplate);
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * The transaction manager that closure rows are replaced with.
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) {
+            return;
+        }
+        for (String zoneId : jdbcTemplate.queryForList(GET_ZONE_IDS_SQL, String.class)) {
+            try {
+                Set<String> mismatched = verify(zoneId);
+                if (!mismatched.isEmpty()) {
+                    logger.info("Group membership closure of zone " + zoneId + " is out of date for " + mismatched.size() + " members, rebuilding it");
+                    rebuild(zoneId);
+                }
+            } catch (DataAccessException e) {
+                // another server may be rebuilding the same zone
+                logger.warn("Unable to rebuild the group membership closure of zone " + zoneId, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled whether the closure is maintained and read. Reading a
+     *                closure that was not maintained for a while gives wrong
+     *                results, so it is verified on startup and
+     *                {@link #rebuildAll()} must be run when it is enabled
+     *                again at runtime.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxMembersPerQuery() {
+        return maxMembersPerQuery;
+    }
+
+    public void setMaxMembersPerQuery(int maxMembersPerQuery) {
+        Assert.isTrue(maxMembersPerQuery > 0, "maxMembersPerQuery must be positive");
+        this.maxMembersPerQuery = maxMembersPerQuery;
+    }
+
+    /**
+     * Computes the closure of the given members, and of every member below
+     * them, again. To be called after their direct memberships changed.
+     */
+    public void refresh(Collection<String> memberIds, final String zoneId) {
+        if (!enabled || memberIds.isEmpty()) {
+            return;
+        }
+        final Set<String> affected = new LinkedHashSet<>(memberIds);
+        for (List<String> chunk : chunk(memberIds)) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("groupIds", chunk)
+                .addValue("zoneId", zoneId);
+            affected.addAll(namedParameterJdbcTemplate.queryForList(GET_DESCENDANTS_SQL, params, String.class));
+        }
+        final Map<String, Set<String>> closure = compute(affected, zoneId);
+        transactionTemplate.execute(status -> {
+            for (List<String> chunk : chunk(affected)) {
+                MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("memberIds", chunk)
+                    .addValue("zoneId", zoneId);
+                namedParameterJdbcTemplate.update(DELETE_MEMBERS_SQL, params);
+            }
+            insert(closure, zoneId);
+            return null;
+        });
+    }
+
+    public void refresh(String memberId, String zoneId) {
+        refresh(Collections.singleton(memberId), zoneId);
+    }
+
+    /**
+     * Computes the closure of members that still point at groups which have
+     * been removed, and drops the rows of members that no longer exist.
+     */
+    public void refreshRemoved(String zoneId) {
+        if (!enabled) {
+            return;
+        }
+        refresh(jdbcTemplate.queryForList(GET_MEMBERS_OF_MISSING_GROUPS_SQL, String.class, zoneId, zoneId), zoneId);
+        jdbcTemplate.update(DELETE_ORPHANS_SQL, zoneId, zoneId, zoneId);
+    }
+
+    public void deleteByIdentityZone(String zoneId) {
+        if (enabled) {
+            jdbcTemplate.update(DELETE_ZONE_SQL, zoneId);
+        }
+    }
+
+    /**
+     * Replaces the closure of a zone with one computed from its memberships.
+     *
+     * @return the number of closure rows of the zone
+     */
+    @ManagedOperation
+    public int rebuild(final String zoneId) {
+        final Map<String, Set<String>> closure = compute(jdbcTemplate.queryForList(GET_ALL_MEMBERS_SQL, String.class, zoneId), zoneId);
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.update(DELETE_ZONE_SQL, zoneId);
+            insert(closure, zoneId);
+            return null;
+        });
+        int rows = 0;
+        for (Set<String> groupIds : closure.values()) {
+            rows += groupIds.size();
+        }
+        logger.debug("Rebuilt group membership closure of zone " + zoneId + " with " + rows + " rows");
+        return rows;
+    }
+
+    @ManagedOperation
+    public int rebuildAll() {
+        int rows = 0;
+        for (String zoneId : jdbcTemplate.queryForList(GET_ZONE_IDS_SQL, String.class)) {
+            rows += rebuild(zoneId);
+        }
+        return rows;
+    }
+
+    /**
+     * @return the members of the zone whose stored closure differs from the one
+     *         computed from the memberships
+     */
+    @ManagedOperation
+    public Set<String> verify(String zoneId) {
+        Map<String, Set<String>> expected = compute(jdbcTemplate.queryForList(GET_ALL_MEMBERS_SQL, String.class, zoneId), zoneId);
+        final Map<String, Set<String>> actual = new HashMap<>();
+        jdbcTemplate.query(GET_CLOSURE_SQL, rs -> {
+            actual.computeIfAbsent(rs.getString(1), k -> new HashSet<>()).add(rs.getString(2));
+        }, zoneId);
+        Set<String> mismatched = new TreeSet<>();
+        for (Map.Entry<String, Set<String>> entry : expected.entrySet()) {
+            if (!entry.getValue().equals(actual.getOrDefault(entry.getKey(), Collections.<String>emptySet()))) {
+                mismatched.add(entry.getKey());
+            }
+        }
+        for (String memberId : actual.keySet()) {
+            if (!expected.containsKey(memberId)) {
+                mismatched.add(memberId);
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * Walks the memberships of the given members one level at a time and
+     * collects all groups reachable from each of them.
+     */
+    protected Map<String, Set<String>> compute(Collection<String> memberIds, String zoneId) {
+        Map<String, Set<String>> parents = new HashMap<>();
+        Set<String> pending = new LinkedHashSet<>(memberIds);
+        while (!pending.isEmpty()) {
+            for (String id : pending) {
+                parents.put(id, new HashSet<>());
+            }
+            Set<String> next = new LinkedHashSet<>();
+            for (List<String> chunk : chunk(pending)) {
+                MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("memberIds", chunk)
+                    .addValue("zoneId", zoneId);
+                namedParameterJdbcTemplate.query(GET_PARENTS_SQL, params, rs -> {
+                    String groupId = rs.getString(2);
+                    parents.get(rs.getString(1)).add(groupId);
+                    if (!parents.containsKey(groupId)) {
+                        next.add(groupId);
+                    }
+                });
+            }
+            pending = next;
+        }
+
+        Map<String, Set<String>> closure = new HashMap<>();
+        for (String memberId : memberIds) {
+            Set<String> groupIds = new HashSet<>();
+            Deque<String> queue = new ArrayDeque<>(parents.get(memberId));
+            while (!queue.isEmpty()) {
+                String groupId = queue.poll();
+                if (groupIds.add(groupId)) {
+                    queue.addAll(parents.getOrDefault(groupId, Collections.<String>emptySet()));
+                }
+            }
+            if (!groupIds.isEmpty()) {
+                closure.put(memberId, groupIds);
+            }
+        }
+        return closure;
+    }
+
+    private void insert(Map<String, Set<String>> closure, String zoneId) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Map.Entry<String, Set<String>> entry : closure.entrySet()) {
+            for (String groupId : entry.getValue()) {
+                rows.add(new Object[] {entry.getKey(), groupId, zoneId});
+            }
+        }
+        for (int from = 0; from < rows.size(); from += maxMembersPerQuery) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows.subList(from, Math.min(from + maxMembersPerQuery, rows.size())));
+        }
+    }
+
+    private List<List<String>> chunk(Collection<String> ids) {
+        List<String> list = new ArrayList<>(ids);
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += maxMembersPerQuery) {
+            chunks.add(list.subList(from, Math.min(from + maxMembersPerQuery, list.size())));
+        }
+        return chunks;
+    }
+}
@@ -16,17 +16,25 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.resources.jdbc.AbstractQueryable;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter;
@@ -34,11 +42,13 @@ import org.cloudfoundry.identity.uaa.scim.ScimGroup;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupMember;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupMembershipManager;
 import org.cloudfoundry.identity.uaa.scim.ScimGroupProvisioning;
+import org.cloudfoundry.identity.uaa.scim.ScimMeta;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.scim.exception.InvalidScimResourceException;
 import org.cloudfoundry.identity.uaa.scim.exception.MemberAlreadyExistsException;
 import org.cloudfoundry.identity.uaa.scim.exception.MemberNotFoundException;
+import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceAlreadyExistsException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceConstraintFailedException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
@@ -47,11 +57,14 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -59,6 +72,16 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
 
     private JdbcTemplate jdbcTemplate;
 
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private int maxMembersPerQuery = 500;
+
+    private volatile boolean useRecursiveQueries = true;
+
+    private JdbcGroupMembershipClosure membershipClosure;
+
     private final Log logger = LogFactory.getLog(getClass());
 
     public static final String MEMBERSHIP_FIELDS = "group_id,member_id,member_type,authorities,added,origin";
@@ -71,7 +94,23 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
 
     public static final String GET_MEMBERS_FILTER_SQL = String.format("select %s from %s where group_id in (select id from groups where identity_zone_id=%s)", MEMBERSHIP_FIELDS, MEMBERSHIP_TABLE, "'%s'");
 
-    public static final String GET_GROUPS_BY_MEMBER_SQL = String.format("select distinct(group_id) from %s where member_id=? and group_id in (select id from groups where identity_zone_id=?)", MEMBERSHIP_TABLE);
+    public static final String GET_GROUPS_BY_MEMBERS_SQL = String.format("select m.member_id,g.id,g.displayName,g.description,g.created,g.lastModified,g.version,g.identity_zone_id from %s m, groups g where g.id = m.group_id and m.member_id in (:memberIds) and g.identity_zone_id=:zoneId", MEMBERSHIP_TABLE);
+
+    public static final String GET_TRANSITIVE_GROUPS_BY_MEMBERS_SQL = String.format(
+        "with recursive member_groups (member_id, group_id) as (" +
+            "select m.member_id, m.group_id from %1$s m, groups g where g.id = m.group_id and m.member_id in (:memberIds) and g.identity_zone_id=:zoneId " +
+            "union " +
+            "select mg.member_id, m.group_id from member_groups mg, %1$s m, groups g where m.member_id = mg.group_id and g.id = m.group_id and g.identity_zone_id=:zoneId" +
+        ") select mg.member_id,g.id,g.displayName,g.description,g.created,g.lastModified,g.version,g.identity_zone_id from member_groups mg, groups g where g.id = mg.group_id",
+        MEMBERSHIP_TABLE);
+
+    public static final String GET_GROUPS_FROM_CLOSURE_SQL = String.format("select c.member_id,g.id,g.displayName,g.description,g.created,g.lastModified,g.version,g.identity_zone_id from %s c, groups g where g.id = c.group_id and c.member_id in (:memberIds) and c.identity_zone_id=:zoneId", JdbcGroupMembershipClosure.CLOSURE_TABLE);
+
+    public static final String GET_USER_IDS_SQL = "select id from users where id in (:memberIds) and identity_zone_id=:zoneId";
+
+    public static final String GET_GROUPS_BY_NAMES_SQL = "select id,displayName,description,created,lastModified,version,identity_zone_id from groups where lower(displayName) in (:names) and identity_zone_id=:zoneId";
+
+    public static final String GET_MEMBERSHIP_ORIGINS_SQL = String.format("select m.group_id,m.origin from %s m, groups g where g.id = m.group_id and m.member_id=? and g.identity_zone_id=?", MEMBERSHIP_TABLE);
 
     public static final String GET_MEMBERS_WITH_AUTHORITY_SQL = String.format("select %s from %s where group_id=? and lower(authorities) like ?", MEMBERSHIP_FIELDS,MEMBERSHIP_TABLE);
 
@@ -126,6 +165,68 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         super(jdbcTemplate,pagingListFactory,new ScimGroupMemberRowMapper());
         Assert.notNull(jdbcTemplate);
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * The transaction manager that membership changes and the matching
+     * closure updates are made with.
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public JdbcGroupMembershipClosure getMembershipClosure() {
+        return membershipClosure;
+    }
+
+    /**
+     * @param membershipClosure if set and enabled, it is kept up to date on
+     *                          membership changes and transitive groups are
+     *                          read from it
+     */
+    public void setMembershipClosure(JdbcGroupMembershipClosure membershipClosure) {
+        this.membershipClosure = membershipClosure;
+    }
+
+    private boolean isClosureEnabled() {
+        return membershipClosure != null && membershipClosure.isEnabled();
+    }
+
+    private void refreshClosure(Collection<String> memberIds) {
+        if (isClosureEnabled()) {
+            membershipClosure.refresh(memberIds, IdentityZoneHolder.get().getId());
+        }
+    }
+
+    private void refreshClosure(String memberId) {
+        refreshClosure(Collections.singleton(memberId));
+    }
+
+    public boolean isUseRecursiveQueries() {
+        return useRecursiveQueries;
+    }
+
+    /**
+     * @param useRecursiveQueries whether transitive groups are loaded with a
+     *                            recursive common table expression. This is turned
+     *                            off by itself if the database rejects the query.
+     */
+    public void setUseRecursiveQueries(boolean useRecursiveQueries) {
+        this.useRecursiveQueries = useRecursiveQueries;
+    }
+
+    public int getMaxMembersPerQuery() {
+        return maxMembersPerQuery;
+    }
+
+    /**
+     * @param maxMembersPerQuery the largest number of member IDs bound to a single
+     *                           query when looking up the groups of several members
+     */
+    public void setMaxMembersPerQuery(int maxMembersPerQuery) {
+        Assert.isTrue(maxMembersPerQuery > 0, "maxMembersPerQuery must be positive");
+        this.maxMembersPerQuery = maxMembersPerQuery;
     }
 
     @Override
@@ -145,7 +246,14 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         try {
             String completeSql = "DELETE FROM "+getTableName() + " WHERE group_id IN (SELECT id FROM groups WHERE identity_zone_id='"+IdentityZoneHolder.get().getId()+"') AND  " + where.getSql();
             logger.debug("delete sql: " + completeSql + ", params: " + where.getParams());
-            return new NamedParameterJdbcTemplate(jdbcTemplate).update(completeSql, where.getParams());
+            return transactionTemplate.execute(status -> {
+                int deleted = new NamedParameterJdbcTemplate(jdbcTemplate).update(completeSql, where.getParams());
+                if (deleted > 0 && isClosureEnabled()) {
+                    // the filter may match any memberships of the zone
+                    membershipClosure.rebuild(IdentityZoneHolder.get().getId());
+                }
+                return deleted;
+            });
         } catch (DataAccessException e) {
             logger.debug("Filter '" + filter + "' generated invalid SQL", e);
             throw new IllegalArgumentException("Invalid delete filter: " + filter);
@@ -172,7 +280,15 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     @Override
     public ScimGroupMember addMember(final String groupId, final ScimGroupMember member)
                     throws ScimResourceNotFoundException, MemberAlreadyExistsException {
+        transactionTemplate.execute(status -> {
+            insertMember(groupId, member);
+            refreshClosure(member.getMemberId());
+            return null;
+        });
+        return getMemberById(groupId, member.getMemberId());
+    }
 
+    private void insertMember(final String groupId, final ScimGroupMember member) throws MemberAlreadyExistsException {
         if (isDefaultGroup(groupId)) {
             throw new MemberAlreadyExistsException("Trying to add member to default group");
         }
@@ -196,7 +312,6 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         } catch (DuplicateKeyException e) {
             throw new MemberAlreadyExistsException(member.getMemberId() + " is already part of the group: " + groupId);
         }
-        return getMemberById(groupId, member.getMemberId());
     }
 
     @Override
@@ -230,48 +345,265 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     @Override
     public Set<ScimGroup> getGroupsWithMember(final String memberId, boolean transitive)
                     throws ScimResourceNotFoundException {
-        List<ScimGroup> results = new ArrayList<>();
-        getGroupsWithMember(results, memberId, transitive);
-        if (isUser(memberId)) {
-            results.addAll(getDefaultUserGroups(IdentityZoneHolder.get()));
+        return getGroupsWithMembers(Collections.singleton(memberId), transitive).get(memberId);
+    }
+
+    /**
+     * Loads the transitive groups of all members with one recursive query where
+     * the database supports it. Otherwise the direct groups of all members are
+     * loaded with one query and nested groups are walked one level at a time, so
+     * the number of queries follows the nesting depth instead of the number of
+     * members and groups. Either way a group that has already been visited is
+     * not expanded again, which keeps circular memberships from looping.
+     */
+    @Override
+    public Map<String, Set<ScimGroup>> getGroupsWithMembers(Collection<String> memberIds, boolean transitive) {
+        String zoneId = IdentityZoneHolder.get().getId();
+        Map<String, Set<ScimGroup>> memberGroups = null;
+        if (transitive && isClosureEnabled()) {
+            memberGroups = getGroupsFromClosure(memberIds, zoneId);
+        } else if (transitive && useRecursiveQueries) {
+            memberGroups = getTransitiveGroupsByMember(memberIds, zoneId);
+        }
+        if (memberGroups == null) {
+            memberGroups = walkGroupsByMember(memberIds, zoneId, transitive);
+        }
+
+        Set<String> userIds = getUserIds(memberIds, zoneId);
+        Set<ScimGroup> defaultGroups = getDefaultUserGroups(IdentityZoneHolder.get());
+        Map<String, Set<ScimGroup>> results = new LinkedHashMap<>();
+        for (String memberId : memberIds) {
+            Set<ScimGroup> groups = new HashSet<>(memberGroups.getOrDefault(memberId, Collections.<ScimGroup>emptySet()));
+            if (userIds.contains(memberId)) {
+                groups.addAll(defaultGroups);
+            }
+            results.put(memberId, groups);
         }
-        return new HashSet<>(results);
+        return results;
     }
 
-    private void getGroupsWithMember(List<ScimGroup> results, final String memberId, boolean transitive) {
-        if (results == null) {
-            return;
+    private Map<String, Set<ScimGroup>> getGroupsFromClosure(Collection<String> memberIds, String zoneId) {
+        final Map<String, Set<ScimGroup>> groups = new HashMap<>();
+        for (List<String> chunk : chunk(memberIds)) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("memberIds", chunk)
+                .addValue("zoneId", zoneId);
+            namedParameterJdbcTemplate.query(GET_GROUPS_FROM_CLOSURE_SQL, params, rs -> {
+                groups.computeIfAbsent(rs.getString(1), k -> new HashSet<>()).add(mapGroup(rs, 2));
+            });
         }
-        List<String> groupIds;
+        return groups;
+    }
+
+    /**
+     * @return the transitive groups of each member, or null if the database
+     *         does not support recursive queries
+     */
+    private Map<String, Set<ScimGroup>> getTransitiveGroupsByMember(Collection<String> memberIds, String zoneId) {
+        final Map<String, Set<ScimGroup>> groups = new HashMap<>();
         try {
-            groupIds = jdbcTemplate.query(GET_GROUPS_BY_MEMBER_SQL, new PreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps) throws SQLException {
-                    ps.setString(1, memberId);
-                    ps.setString(2, IdentityZoneHolder.get().getId());
+            for (List<String> chunk : chunk(memberIds)) {
+                MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("memberIds", chunk)
+                    .addValue("zoneId", zoneId);
+                namedParameterJdbcTemplate.query(GET_TRANSITIVE_GROUPS_BY_MEMBERS_SQL, params, rs -> {
+                    groups.computeIfAbsent(rs.getString(1), k -> new HashSet<>()).add(mapGroup(rs, 2));
+                });
+            }
+        } catch (BadSqlGrammarException x) {
+            logger.info("Recursive queries are not supported by the database, walking group memberships level by level instead", x);
+            useRecursiveQueries = false;
+            return null;
+        }
+        return groups;
+    }
+
+    private Map<String, Set<ScimGroup>> walkGroupsByMember(Collection<String> memberIds, String zoneId, boolean transitive) {
+        Map<String, List<ScimGroup>> directGroups = getGroupsByMember(memberIds, zoneId);
+        Map<String, List<ScimGroup>> parentGroups = new HashMap<>();
+        if (transitive) {
+            Set<String> groupIds = getGroupIds(directGroups.values());
+            while (!groupIds.isEmpty()) {
+                for (String groupId : groupIds) {
+                    parentGroups.put(groupId, Collections.<ScimGroup>emptyList());
+                }
+                Map<String, List<ScimGroup>> level = getGroupsByMember(groupIds, zoneId);
+                parentGroups.putAll(level);
+                groupIds = getGroupIds(level.values());
+                groupIds.removeAll(parentGroups.keySet());
+            }
+        }
+
+        Map<String, Set<ScimGroup>> results = new HashMap<>();
+        for (String memberId : memberIds) {
+            Set<ScimGroup> groups = new HashSet<>();
+            Deque<ScimGroup> pending = new ArrayDeque<>(directGroups.getOrDefault(memberId, Collections.<ScimGroup>emptyList()));
+            while (!pending.isEmpty()) {
+                ScimGroup group = pending.poll();
+                if (groups.add(group) && transitive) {
+                    pending.addAll(parentGroups.getOrDefault(group.getId(), Collections.<ScimGroup>emptyList()));
                 }
-            }, new SingleColumnRowMapper<>(String.class));
-        } catch (EmptyResultDataAccessException ex) {
-            groupIds = Collections.EMPTY_LIST;
+            }
+            results.put(memberId, groups);
+        }
+        return results;
+    }
+
+    private Map<String, List<ScimGroup>> getGroupsByMember(Collection<String> memberIds, String zoneId) {
+        final Map<String, List<ScimGroup>> groups = new HashMap<>();
+        for (List<String> chunk : chunk(memberIds)) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("memberIds", chunk)
+                .addValue("zoneId", zoneId);
+            namedParameterJdbcTemplate.query(GET_GROUPS_BY_MEMBERS_SQL, params, rs -> {
+                groups.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(mapGroup(rs, 2));
+            });
+        }
+        return groups;
+    }
+
+    private static ScimGroup mapGroup(ResultSet rs, int pos) throws SQLException {
+        String id = rs.getString(pos++);
+        String name = rs.getString(pos++);
+        String description = rs.getString(pos++);
+        Date created = rs.getTimestamp(pos++);
+        Date modified = rs.getTimestamp(pos++);
+        int version = rs.getInt(pos++);
+        ScimGroup group = new ScimGroup(id, name, rs.getString(pos++));
+        group.setDescription(description);
+        group.setMeta(new ScimMeta(created, modified, version));
+        return group;
+    }
+
+    private Set<String> getUserIds(Collection<String> memberIds, String zoneId) {
+        Set<String> userIds = new HashSet<>();
+        for (List<String> chunk : chunk(memberIds)) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("memberIds", chunk)
+                .addValue("zoneId", zoneId);
+            // users.id is a fixed width column on some databases, so the values come back padded
+            for (String id : namedParameterJdbcTemplate.queryForList(GET_USER_IDS_SQL, params, String.class)) {
+                userIds.add(id.trim());
+            }
         }
+        return userIds;
+    }
 
-        for (String groupId : groupIds) {
-            ScimGroup group;
-            try {
-                group = groupProvisioning.retrieve(groupId);
-            } catch (ScimResourceNotFoundException ex) {
-                continue;
+    private Set<String> getGroupIds(Collection<List<ScimGroup>> groups) {
+        Set<String> groupIds = new LinkedHashSet<>();
+        for (List<ScimGroup> list : groups) {
+            for (ScimGroup group : list) {
+                groupIds.add(group.getId());
             }
-            if (!results.contains(group)) { // to ensure we don't go into
-                                            // infinite recursion caused by
-                                            // nested group cycles
-                results.add(group);
-                if (transitive) {
-                    getGroupsWithMember(results, groupId, transitive);
+        }
+        return groupIds;
+    }
+
+    private List<List<String>> chunk(Collection<String> ids) {
+        List<String> list = new ArrayList<>(ids);
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += maxMembersPerQuery) {
+            chunks.add(list.subList(from, Math.min(from + maxMembersPerQuery, list.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Loads the current memberships of the user and the named groups with one
+     * query each, then inserts and deletes only the memberships that differ,
+     * in batches and within one transaction. If another login of the same user
+     * adds a membership concurrently the update is computed again.
+     */
+    @Override
+    public void updateExternalMemberships(String memberId, String origin, Collection<String> groupNames, boolean addGroups) {
+        Assert.hasText(memberId, "memberId must not be empty");
+        Assert.hasText(origin, "origin must not be empty");
+        Map<String, String> names = new LinkedHashMap<>();
+        for (String name : groupNames) {
+            if (StringUtils.hasText(name)) {
+                names.putIfAbsent(name.toLowerCase(Locale.ENGLISH), name);
+            }
+        }
+        String zoneId = IdentityZoneHolder.get().getId();
+        Map<String, ScimGroup> groups = getGroupsByName(names.keySet(), zoneId);
+        if (addGroups) {
+            for (Map.Entry<String, String> name : names.entrySet()) {
+                if (!groups.containsKey(name.getKey())) {
+                    try {
+                        groups.put(name.getKey(), groupProvisioning.create(new ScimGroup(null, name.getValue(), zoneId)));
+                    } catch (ScimResourceAlreadyExistsException e) {
+                        groups.putAll(getGroupsByName(Collections.singleton(name.getKey()), zoneId));
+                    }
                 }
             }
         }
+        Set<String> groupIds = new HashSet<>();
+        for (ScimGroup group : groups.values()) {
+            groupIds.add(group.getId());
+        }
+        for (ScimGroup group : getDefaultUserGroups(IdentityZoneHolder.get())) {
+            groupIds.remove(group.getId());
+        }
+        try {
+            updateMemberships(memberId, origin, groupIds, zoneId);
+        } catch (DuplicateKeyException e) {
+            logger.debug("Memberships of " + memberId + " changed concurrently, retrying");
+            updateMemberships(memberId, origin, groupIds, zoneId);
+        }
+    }
 
+    private void updateMemberships(final String memberId, final String origin, final Set<String> groupIds, final String zoneId) {
+        transactionTemplate.execute(status -> {
+            final Set<String> added = new LinkedHashSet<>(groupIds);
+            final List<String> removed = new ArrayList<>();
+            jdbcTemplate.query(GET_MEMBERSHIP_ORIGINS_SQL, rs -> {
+                String groupId = rs.getString(1);
+                added.remove(groupId);
+                // only memberships granted through this origin are managed here
+                if (!OriginKeys.UAA.equals(origin) && origin.equals(rs.getString(2)) && !groupIds.contains(groupId)) {
+                    removed.add(groupId);
+                }
+            }, memberId, zoneId);
+            if (!removed.isEmpty()) {
+                logger.debug("Removing " + memberId + " from groups:" + removed);
+                jdbcTemplate.batchUpdate(DELETE_MEMBER_SQL, removed, removed.size(), (ps, groupId) -> {
+                    ps.setString(1, memberId);
+                    ps.setString(2, groupId);
+                    ps.setString(3, zoneId);
+                });
+            }
+            if (!added.isEmpty()) {
+                logger.debug("Adding " + memberId + " to groups:" + added);
+                final String authorities = StringUtils.collectionToCommaDelimitedString(ScimGroupMember.GROUP_MEMBER);
+                final Timestamp now = new Timestamp(System.currentTimeMillis());
+                jdbcTemplate.batchUpdate(ADD_MEMBER_SQL, added, added.size(), (ps, groupId) -> {
+                    ps.setString(1, groupId);
+                    ps.setString(2, memberId);
+                    ps.setString(3, ScimGroupMember.Type.USER.toString());
+                    ps.setString(4, authorities);
+                    ps.setTimestamp(5, now);
+                    ps.setString(6, origin);
+                });
+            }
+            if (!removed.isEmpty() || !added.isEmpty()) {
+                refreshClosure(memberId);
+            }
+            return null;
+        });
+    }
+
+    private Map<String, ScimGroup> getGroupsByName(Collection<String> lowerCaseNames, String zoneId) {
+        final Map<String, ScimGroup> groups = new HashMap<>();
+        for (List<String> chunk : chunk(lowerCaseNames)) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("names", chunk)
+                .addValue("zoneId", zoneId);
+            namedParameterJdbcTemplate.query(GET_GROUPS_BY_NAMES_SQL, params, rs -> {
+                ScimGroup group = mapGroup(rs, 1);
+                groups.put(group.getDisplayName().toLowerCase(Locale.ENGLISH), group);
+            });
+        }
+        return groups;
     }
 
     @Override
@@ -335,16 +667,23 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         List<ScimGroupMember> currentMembersToRemove = new ArrayList<>(currentMembers);
         currentMembersToRemove.removeAll(members);
         logger.debug("removing members: " + currentMembersToRemove);
-        for (ScimGroupMember member : currentMembersToRemove) {
-            removeMemberById(groupId, member.getMemberId());
-        }
-
         List<ScimGroupMember> newMembersToAdd = new ArrayList<>(members);
         newMembersToAdd.removeAll(currentMembers);
         logger.debug("adding new members: " + newMembersToAdd);
-        for (ScimGroupMember member : newMembersToAdd) {
-            addMember(groupId, member);
-        }
+        transactionTemplate.execute(status -> {
+            // the closure is computed once for all changed members
+            Set<String> changedMemberIds = new LinkedHashSet<>();
+            for (ScimGroupMember member : currentMembersToRemove) {
+                deleteMember(groupId, member.getMemberId());
+                changedMemberIds.add(member.getMemberId());
+            }
+            for (ScimGroupMember member : newMembersToAdd) {
+                insertMember(groupId, member);
+                changedMemberIds.add(member.getMemberId());
+            }
+            refreshClosure(changedMemberIds);
+            return null;
+        });
 
         List<ScimGroupMember> membersToUpdate = new ArrayList<>(members);
         membersToUpdate.retainAll(currentMembers);
@@ -360,6 +699,15 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     public ScimGroupMember removeMemberById(final String groupId, final String memberId)
                     throws ScimResourceNotFoundException, MemberNotFoundException {
         ScimGroupMember member = getMemberById(groupId, memberId);
+        transactionTemplate.execute(status -> {
+            deleteMember(groupId, memberId);
+            refreshClosure(memberId);
+            return null;
+        });
+        return member;
+    }
+
+    private void deleteMember(final String groupId, final String memberId) {
         int deleted = jdbcTemplate.update(DELETE_MEMBER_SQL, new PreparedStatementSetter() {
             @Override
             public void setValues(PreparedStatement ps) throws SQLException {
@@ -372,7 +720,6 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         if (deleted != 1) {
             throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", 1, deleted);
         }
-        return member;
     }
 
     @Override
@@ -380,17 +727,25 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
         List<ScimGroupMember> members = getMembers(groupId, null, false);
         logger.debug("removing " + members + " members from group: " + groupId);
 
-        int deleted = jdbcTemplate.update(DELETE_MEMBERS_IN_GROUP_SQL, new PreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps) throws SQLException {
-            ps.setString(1, groupId);
-            ps.setString(2, IdentityZoneHolder.get().getId());
+        transactionTemplate.execute(status -> {
+            int deleted = jdbcTemplate.update(DELETE_MEMBERS_IN_GROUP_SQL, new PreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps) throws SQLException {
+                ps.setString(1, groupId);
+                ps.setString(2, IdentityZoneHolder.get().getId());
+                }
+            });
+            if (deleted != members.size()) {
+                throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", members.size(),
+                                deleted);
+            }
+            List<String> memberIds = new ArrayList<>();
+            for (ScimGroupMember member : members) {
+                memberIds.add(member.getMemberId());
             }
+            refreshClosure(memberIds);
+            return null;
         });
-        if (deleted != members.size()) {
-            throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", members.size(),
-                            deleted);
-        }
 
         return members;
     }
@@ -399,25 +754,25 @@ public class JdbcScimGroupMembershipManager extends AbstractQueryable<ScimGroupM
     public Set<ScimGroup> removeMembersByMemberId(final String memberId) throws ScimResourceNotFoundException {
         Set<ScimGroup> groups = getGroupsWithMember(memberId, false);
         logger.debug("removing " + memberId + " from groups: " + groups);
-        int deleted = 0;
-        String sql = DELETE_MEMBER_IN_GROUPS_SQL_GROUP;
-        if (isUser(memberId)) {
-               sql = DELETE_MEMBER_IN_GROUPS_SQL_USER;
-        }
-        deleted = jdbcTemplate.update(sql, new PreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps) throws SQLException {
-            ps.setString(1, memberId);
-            ps.setString(2, IdentityZoneHolder.get().getId());
+        String sql = isUser(memberId) ? DELETE_MEMBER_IN_GROUPS_SQL_USER : DELETE_MEMBER_IN_GROUPS_SQL_GROUP;
+        transactionTemplate.execute(status -> {
+            int deleted = jdbcTemplate.update(sql, new PreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps) throws SQLException {
+                ps.setString(1, memberId);
+                ps.setString(2, IdentityZoneHolder.get().getId());
+                }
+            });
+
+            int expectedDelete = isUser(memberId) ? groups.size() - getDefaultUserGroups(IdentityZoneHolder.get()).size() : groups.size();
+            if (deleted != expectedDelete) {
+                throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", expectedDelete,
+                                deleted);
             }
+            refreshClosure(memberId);
+            return null;
         });
 
-        int expectedDelete = isUser(memberId) ? groups.size() - getDefaultUserGroups(IdentityZoneHolder.get()).size() : groups.size();
-        if (deleted != expectedDelete) {
-            throw new IncorrectResultSizeDataAccessException("unexpected number of members removed", expectedDelete,
-                            deleted);
-        }
-
         return groups;
     }
 
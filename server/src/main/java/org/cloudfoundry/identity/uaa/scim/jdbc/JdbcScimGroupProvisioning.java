@@ -16,6 +16,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -24,6 +25,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.jdbc.AbstractQueryable;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.scim.ScimGroup;
@@ -42,6 +44,7 @@ import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -52,6 +55,8 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
     private JdbcTemplate jdbcTemplate;
     private JdbcScimGroupMembershipManager membershipManager;
 
+    private JdbcGroupMembershipClosure membershipClosure;
+
     private final Log logger = LogFactory.getLog(getClass());
 
     @Override
@@ -85,6 +90,7 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
     public static final String DELETE_ZONE_ADMIN_MEMBERSHIP_BY_ZONE = String.format("delete from %s where group_id in (select id from %s where identity_zone_id=? and displayName like ?)", GROUP_MEMBERSHIP_TABLE, GROUP_TABLE);
     public static final String DELETE_ZONE_ADMIN_GROUPS_BY_ZONE = String.format("delete from %s where identity_zone_id=? and displayName like ?", GROUP_TABLE);
 
+    public static final String GET_GROUP_MEMBERS_BY_PROVIDER = String.format("select member_id from %s where group_id in (select id from %s where identity_zone_id = ?) and origin = ?", GROUP_MEMBERSHIP_TABLE, GROUP_TABLE);
     public static final String DELETE_GROUP_MEMBERSHIP_BY_PROVIDER = String.format("delete from %s where group_id in (select id from %s where identity_zone_id = ?) and origin = ?", GROUP_MEMBERSHIP_TABLE, GROUP_TABLE);
     public static final String DELETE_EXTERNAL_GROUP_BY_PROVIDER = String.format("delete from %s where group_id in (select id from %s where identity_zone_id = ?) and origin = ?", EXTERNAL_GROUP_TABLE, GROUP_TABLE);
 
@@ -103,6 +109,19 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         setQueryConverter(new ScimSearchQueryConverter());
     }
 
+    public void setMembershipClosure(JdbcGroupMembershipClosure membershipClosure) {
+        this.membershipClosure = membershipClosure;
+        this.membershipManager.setMembershipClosure(membershipClosure);
+    }
+
+    /**
+     * The transaction manager that the members of a deleted group are removed
+     * with.
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.membershipManager.setTransactionManager(transactionManager);
+    }
+
     @Override
     protected String getBaseSqlQuery() {
         return ALL_GROUPS;
@@ -120,6 +139,18 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         return super.query(filter, sortBy, ascending);
     }
 
+    @Override
+    public KeysetPage<ScimGroup> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean countTotal) {
+        //validate syntax
+        getQueryConverter().convert(filter, sortBy, ascending);
+
+        if (StringUtils.hasText(filter)) {
+            filter = "("+ filter+ ") and";
+        }
+        filter += " identity_zone_id eq \""+IdentityZoneHolder.get().getId()+"\"";
+        return super.queryPage(filter, sortBy, ascending, cursor, count, countTotal);
+    }
+
     @Override
     protected String getTableName() {
         return GROUP_TABLE;
@@ -219,12 +250,24 @@ public class JdbcScimGroupProvisioning extends AbstractQueryable<ScimGroup>
         jdbcTemplate.update(DELETE_ZONE_ADMIN_GROUPS_BY_ZONE, IdentityZone.getUaa().getId(), "zones." + zoneId + ".%");
         jdbcTemplate.update(DELETE_EXTERNAL_GROUP_BY_ZONE, zoneId);
         jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_ZONE, zoneId);
-        return jdbcTemplate.update(DELETE_GROUP_BY_ZONE, zoneId);
+        int deleted = jdbcTemplate.update(DELETE_GROUP_BY_ZONE, zoneId);
+        if (membershipClosure != null) {
+            membershipClosure.deleteByIdentityZone(zoneId);
+            membershipClosure.refreshRemoved(IdentityZone.getUaa().getId());
+        }
+        return deleted;
     }
 
     public int deleteByOrigin(String origin, String zoneId) {
         jdbcTemplate.update(DELETE_EXTERNAL_GROUP_BY_PROVIDER, zoneId, origin);
-        return jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_PROVIDER, zoneId, origin);
+        List<String> memberIds = membershipClosure != null && membershipClosure.isEnabled() ?
+            jdbcTemplate.queryForList(GET_GROUP_MEMBERS_BY_PROVIDER, String.class, zoneId, origin) :
+            Collections.<String>emptyList();
+        int deleted = jdbcTemplate.update(DELETE_GROUP_MEMBERSHIP_BY_PROVIDER, zoneId, origin);
+        if (!memberIds.isEmpty()) {
+            membershipClosure.refresh(memberIds, zoneId);
+        }
+        return deleted;
     }
 
     protected void validateGroup(ScimGroup group) throws ScimResourceConstraintFailedException {
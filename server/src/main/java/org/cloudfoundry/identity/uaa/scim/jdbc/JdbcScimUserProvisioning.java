@@ -16,12 +16,16 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
 
@@ -29,9 +33,11 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
 import org.cloudfoundry.identity.uaa.resources.jdbc.AbstractQueryable;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
+import org.cloudfoundry.identity.uaa.resources.jdbc.SimpleSearchQueryConverter;
 import org.cloudfoundry.identity.uaa.scim.ScimMeta;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.ScimUser.Name;
@@ -49,9 +55,13 @@ import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
@@ -92,6 +102,8 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
 
     public static final String ALL_USERS = "select " + USER_FIELDS + " from users";
 
+    public static final String USERS_BY_EMAILS_QUERY = "select " + USER_FIELDS + " from users where %s in (:emails) and origin=:origin and identity_zone_id=:zoneId";
+
     public static final String HARD_DELETE_OF_GROUP_MEMBERS_BY_ZONE = "delete from group_membership where member_type='USER' and member_id in (select id from users where identity_zone_id = ?)";
 
     public static final String HARD_DELETE_OF_GROUP_MEMBERS_BY_PROVIDER = "delete from group_membership where member_type='USER' and member_id in (select id from users where identity_zone_id = ? and origin = ?)";
@@ -114,6 +126,12 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
 
     private Pattern usernamePattern = Pattern.compile("[\\p{L}+0-9+\\-_.@'!]+");
 
+    private int maxEmailsPerQuery = 500;
+
+    private JdbcGroupMembershipClosure membershipClosure;
+
+    private TransactionTemplate transactionTemplate;
+
     public JdbcScimUserProvisioning(JdbcTemplate jdbcTemplate, JdbcPagingListFactory pagingListFactory) {
         super(jdbcTemplate, pagingListFactory, new ScimUserRowMapper());
         Assert.notNull(jdbcTemplate);
@@ -121,6 +139,31 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         setQueryConverter(new ScimSearchQueryConverter());
     }
 
+    @Override
+    public List<ScimUser> retrieveByEmailsAndOrigin(Collection<String> emails, String origin) {
+        List<ScimUser> result = new ArrayList<>();
+        if (emails == null || emails.isEmpty()) {
+            return result;
+        }
+        Set<String> lowerCaseEmails = new LinkedHashSet<>();
+        for (String email : emails) {
+            lowerCaseEmails.add(email.toLowerCase());
+        }
+        boolean dbCaseInsensitive = getQueryConverter() instanceof SimpleSearchQueryConverter &&
+            ((SimpleSearchQueryConverter) getQueryConverter()).isDbCaseInsensitive();
+        String sql = String.format(USERS_BY_EMAILS_QUERY, dbCaseInsensitive ? "email" : "LOWER(email)");
+        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        List<String> list = new ArrayList<>(lowerCaseEmails);
+        for (int from = 0; from < list.size(); from += maxEmailsPerQuery) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("emails", list.subList(from, Math.min(from + maxEmailsPerQuery, list.size())))
+                .addValue("origin", origin)
+                .addValue("zoneId", IdentityZoneHolder.get().getId());
+            result.addAll(namedParameterJdbcTemplate.query(sql, parameters, mapper));
+        }
+        return result;
+    }
+
     @Override
     public ScimUser retrieve(String id) {
         try {
@@ -158,6 +201,18 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         return super.query(filter, sortBy, ascending);
     }
 
+    @Override
+    public KeysetPage<ScimUser> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean countTotal) {
+        //validate syntax
+        getQueryConverter().convert(filter, sortBy, ascending);
+
+        if (StringUtils.hasText(filter)) {
+            filter = "("+ filter+ ") and";
+        }
+        filter += " identity_zone_id eq \""+IdentityZoneHolder.get().getId()+"\"";
+        return super.queryPage(filter, sortBy, ascending, cursor, count, countTotal);
+    }
+
     @Override
     public ScimUser create(final ScimUser user) {
         validate(user);
@@ -223,6 +278,57 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         return create(user);
     }
 
+    /**
+     * Inserts all users with one batch in a single transaction, so either all
+     * of them are created or none is. A duplicate username fails the whole
+     * batch with the {@link DuplicateKeyException} of the insert.
+     */
+    @Override
+    public List<ScimUser> createUsers(final List<ScimUser> users, final List<String> passwords) throws InvalidPasswordException,
+                    InvalidScimResourceException {
+        Assert.isTrue(users.size() == passwords.size(), "A password must be provided for each user");
+        final String identityZoneId = IdentityZoneHolder.get().getId();
+        final Timestamp t = new Timestamp(new Date().getTime());
+        final Timestamp passwordLastModified = getPasswordLastModifiedTimestamp(t);
+        final List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            ScimUser user = users.get(i);
+            validate(user);
+            String origin = StringUtils.hasText(user.getOrigin()) ? user.getOrigin() : OriginKeys.UAA;
+            user.setId(UUID.randomUUID().toString());
+            user.setOrigin(origin);
+            user.setZoneId(identityZoneId);
+            user.setMeta(new ScimMeta(t, t, user.getVersion()));
+            user.setPasswordLastModified(passwordLastModified);
+            rows.add(new Object[] {
+                user.getId(),
+                user.getVersion(),
+                t,
+                t,
+                user.getUserName(),
+                user.getPrimaryEmail(),
+                user.getName() == null ? null : user.getName().getGivenName(),
+                user.getName() == null ? null : user.getName().getFamilyName(),
+                user.isActive(),
+                extractPhoneNumber(user),
+                user.isVerified(),
+                origin,
+                StringUtils.hasText(user.getExternalId()) ? user.getExternalId() : null,
+                identityZoneId,
+                user.getSalt(),
+                passwordLastModified,
+                passwordEncoder.encode(passwords.get(i))
+            });
+        }
+        if (!rows.isEmpty()) {
+            logger.debug("Creating " + rows.size() + " new users");
+            transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(CREATE_USER_SQL, rows)
+            );
+        }
+        return users;
+    }
+
     private void validate(final ScimUser user) throws InvalidScimResourceException {
         if (!usernamePattern.matcher(user.getUserName()).matches()) {
             throw new InvalidScimResourceException("Username must match pattern: " + usernamePattern.pattern());
@@ -411,6 +517,26 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
         this.passwordEncoder = passwordEncoder;
     }
 
+    /**
+     * @param maxEmailsPerQuery the largest number of email addresses bound to a
+     *            single query by {@link #retrieveByEmailsAndOrigin(Collection, String)}
+     */
+    public void setMaxEmailsPerQuery(int maxEmailsPerQuery) {
+        this.maxEmailsPerQuery = maxEmailsPerQuery;
+    }
+
+    public void setMembershipClosure(JdbcGroupMembershipClosure membershipClosure) {
+        this.membershipClosure = membershipClosure;
+    }
+
+    /**
+     * The transaction manager that {@link #createUsers(List, List)} inserts a
+     * batch of users with.
+     */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     /**
      * Sets the regular expression which will be used to validate the username.
      */
@@ -422,13 +548,21 @@ public class JdbcScimUserProvisioning extends AbstractQueryable<ScimUser>
     public int deleteByIdentityZone(String zoneId) {
         jdbcTemplate.update(HARD_DELETE_OF_GROUP_MEMBERS_BY_ZONE, zoneId);
         jdbcTemplate.update(HARD_DELETE_OF_USER_APPROVALS_BY_ZONE, zoneId);
-        return jdbcTemplate.update(HARD_DELETE_BY_ZONE, zoneId);
+        int deleted = jdbcTemplate.update(HARD_DELETE_BY_ZONE, zoneId);
+        if (membershipClosure != null) {
+            membershipClosure.deleteByIdentityZone(zoneId);
+        }
+        return deleted;
     }
 
     public int deleteByOrigin(String origin, String zoneId) {
         jdbcTemplate.update(HARD_DELETE_OF_GROUP_MEMBERS_BY_PROVIDER, zoneId, origin);
         jdbcTemplate.update(HARD_DELETE_OF_USER_APPROVALS_BY_PROVIDER, zoneId, origin);
-        return jdbcTemplate.update(HARD_DELETE_BY_PROVIDER, zoneId, origin);
+        int deleted = jdbcTemplate.update(HARD_DELETE_BY_PROVIDER, zoneId, origin);
+        if (membershipClosure != null) {
+            membershipClosure.refreshRemoved(zoneId);
+        }
+        return deleted;
     }
 
     private static final class ScimUserRowMapper implements RowMapper<ScimUser> {
@@ -14,18 +14,24 @@
 package org.cloudfoundry.identity.uaa.scim.remote;
 
 import org.cloudfoundry.identity.uaa.account.PasswordChangeRequest;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.scim.exception.InvalidPasswordException;
 import org.cloudfoundry.identity.uaa.scim.exception.InvalidScimResourceException;
 import org.cloudfoundry.identity.uaa.scim.exception.ScimResourceNotFoundException;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestOperations;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Remote implementation of
@@ -81,6 +87,53 @@ public class RemoteScimUserProvisioning implements ScimUserProvisioning {
                         filter, sortBy);
     }
 
+    /**
+     * Pages through the remote /Users endpoint by start index. The cursor is the
+     * start index of the next page.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public KeysetPage<ScimUser> queryPage(String filter, String sortBy, boolean ascending, String cursor, int count, boolean countTotal) {
+        int startIndex = StringUtils.hasText(cursor) ? Integer.parseInt(cursor) : 1;
+        String order = ascending ? "ascending" : "descending";
+        Map<String, Object> results = restTemplate.getForObject(
+                        baseUrl + "/Users?filter={filter}&sortBy={sortBy}&sortOrder={sortOrder}&startIndex={startIndex}&count={count}",
+                        Map.class, filter, sortBy, order, startIndex, count);
+        List<ScimUser> users = new ArrayList<>();
+        for (Object resource : (List<Object>) results.get("resources")) {
+            users.add(JsonUtils.convertValue(resource, ScimUser.class));
+        }
+        int total = ((Number) results.get("totalResults")).intValue();
+        String nextCursor = startIndex - 1 + users.size() < total ? String.valueOf(startIndex + users.size()) : null;
+        return new KeysetPage<>(users, nextCursor, countTotal ? total : KeysetPage.NOT_COUNTED);
+    }
+
+    @Override
+    public List<ScimUser> retrieveByEmailsAndOrigin(Collection<String> emails, String origin) {
+        if (emails.isEmpty()) {
+            return new ArrayList<>();
+        }
+        StringBuilder filter = new StringBuilder("origin eq \"").append(origin).append("\" and (");
+        boolean first = true;
+        for (String email : emails) {
+            if (!first) {
+                filter.append(" or ");
+            }
+            filter.append("email eq \"").append(email).append("\"");
+            first = false;
+        }
+        return query(filter.append(")").toString());
+    }
+
+    @Override
+    public List<ScimUser> createUsers(List<ScimUser> users, List<String> passwords) {
+        List<ScimUser> created = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            created.add(createUser(users.get(i), passwords.get(i)));
+        }
+        return created;
+    }
+
     @Override
     public ScimUser create(ScimUser user) {
         return restTemplate.postForObject(baseUrl + "/User", user, ScimUser.class);
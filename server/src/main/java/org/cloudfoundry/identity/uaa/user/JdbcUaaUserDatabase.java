@@ -13,11 +13,21 @@
 package org.cloudfoundry.identity.uaa.user;
 
 
+import org.cloudfoundry.identity.uaa.account.event.PasswordChangeEvent;
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.scim.event.GroupModifiedEvent;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
+import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcGroupMembershipClosure;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.springframework.context.ApplicationListener;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -27,6 +37,7 @@ import org.springframework.util.StringUtils;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -34,11 +45,16 @@ import java.util.Map;
 import java.util.Set;
 
 /**
+ * Users loaded for token validation can optionally be cached per zone for a
+ * short time. Cached users are dropped when this node publishes a change to
+ * them, to their password or to any group, and when the token services or an
+ * external login call {@link #invalidateValidationCache(String)}.
+ *
  * @author Luke Taylor
  * @author Dave Syer
  * @author Vidya Valmikinathan
  */
-public class JdbcUaaUserDatabase implements UaaUserDatabase {
+public class JdbcUaaUserDatabase implements UaaUserDatabase, ApplicationListener<AbstractUaaEvent> {
 
     public static final String USER_FIELDS = "id,username,password,email,givenName,familyName,created,lastModified,authorities,origin,external_id,verified,identity_zone_id,salt,passwd_lastmodified,phoneNumber,legacy_verification_behavior ";
 
@@ -53,20 +69,58 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
 
     public static final String DEFAULT_USER_BY_ID_QUERY = "select " + USER_FIELDS + "from users where id = ? and active=? and identity_zone_id=?";
 
+    public static final String VALIDATION_USER_FIELDS = "id,username,password,email,origin,external_id,identity_zone_id,salt,passwd_lastmodified ";
+
+    public static final String VALIDATION_USER_BY_ID_QUERY = "select " + VALIDATION_USER_FIELDS + "from users where id = ? and active=? and identity_zone_id=?";
+
 
-    private String AUTHORITIES_QUERY = "select g.id,g.displayName from groups g, group_membership m where g.id = m.group_id and m.member_id = ? and g.identity_zone_id=?";
+    private String AUTHORITIES_QUERY = "select g.id,g.displayName from groups g, group_membership m where g.id = m.group_id and m.member_id in (:memberIds) and g.identity_zone_id=:zoneId";
+
+    private String CLOSURE_AUTHORITIES_QUERY = "select g.id,g.displayName from groups g, group_membership_closure c where g.id = c.group_id and c.member_id = ? and c.identity_zone_id = ?";
 
     private JdbcTemplate jdbcTemplate;
 
+    private JdbcGroupMembershipClosure membershipClosure;
+
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private int maxMembersPerQuery = 500;
+
     private final RowMapper<UaaUser> mapper = new UaaUserRowMapper();
 
+    private final RowMapper<UaaUser> validationMapper = new ValidationUserRowMapper();
+
     private Set<String> defaultAuthorities = new HashSet<String>();
 
     private boolean caseInsensitive = false;
 
+    private final ConfigurableCache<String, UaaUser> validationCache = new ConfigurableCache<>(false, 10000, 10);
+
 
     public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    public int getMaxMembersPerQuery() {
+        return maxMembersPerQuery;
+    }
+
+    /**
+     * @param maxMembersPerQuery the largest number of member IDs bound to a single
+     *                           authorities query when expanding nested groups
+     */
+    public void setMaxMembersPerQuery(int maxMembersPerQuery) {
+        Assert.isTrue(maxMembersPerQuery > 0, "maxMembersPerQuery must be positive");
+        this.maxMembersPerQuery = maxMembersPerQuery;
+    }
+
+    /**
+     * @param membershipClosure if set and enabled, the authorities of a user are
+     *                          read from it with one query
+     */
+    public void setMembershipClosure(JdbcGroupMembershipClosure membershipClosure) {
+        this.membershipClosure = membershipClosure;
     }
 
     public boolean isCaseInsensitive() {
@@ -85,9 +139,40 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         this.defaultAuthorities = defaultAuthorities;
     }
 
+    public boolean isValidationCacheEnabled() {
+        return validationCache.isEnabled();
+    }
+
+    /**
+     * @param validationCacheEnabled whether {@link #retrieveUserForTokenValidation(String)}
+     *            keeps its results for up to the configured expiry. Entries are
+     *            only dropped by events published on this node, so with several
+     *            nodes a change made on another one can take that long to be seen
+     *            by token validation here. Off by default.
+     */
+    public void setValidationCacheEnabled(boolean validationCacheEnabled) {
+        validationCache.setEnabled(validationCacheEnabled);
+    }
+
+    public int getValidationCacheMaxEntries() {
+        return validationCache.getMaxEntries();
+    }
+
+    public void setValidationCacheMaxEntries(int validationCacheMaxEntries) {
+        validationCache.setMaxEntries(validationCacheMaxEntries);
+    }
+
+    public int getValidationCacheExpiryInSeconds() {
+        return validationCache.getExpiryInSeconds();
+    }
+
+    public void setValidationCacheExpiryInSeconds(int validationCacheExpiryInSeconds) {
+        validationCache.setExpiryInSeconds(validationCacheExpiryInSeconds);
+    }
+
     public JdbcUaaUserDatabase(JdbcTemplate jdbcTemplate) {
         Assert.notNull(jdbcTemplate);
-        this.jdbcTemplate = jdbcTemplate;
+        setJdbcTemplate(jdbcTemplate);
     }
 
     @Override
@@ -109,6 +194,56 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         }
     }
 
+    @Override
+    public UaaUser retrieveUserForTokenValidation(String id) throws UsernameNotFoundException {
+        if (!isValidationCacheEnabled()) {
+            return loadUserForTokenValidation(id);
+        }
+        String key = getValidationCacheKey(id);
+        UaaUser user = validationCache.getIfPresent(key);
+        if (user == null) {
+            user = loadUserForTokenValidation(id);
+            validationCache.put(key, user);
+        }
+        return user;
+    }
+
+    protected UaaUser loadUserForTokenValidation(String id) throws UsernameNotFoundException {
+        try {
+            return jdbcTemplate.queryForObject(VALIDATION_USER_BY_ID_QUERY, validationMapper, id, true, IdentityZoneHolder.get().getId());
+        } catch (EmptyResultDataAccessException e) {
+            throw new UsernameNotFoundException(id);
+        }
+    }
+
+    @Override
+    public void invalidateValidationCache(String id) {
+        if (isValidationCacheEnabled() && id != null) {
+            validationCache.invalidate(getValidationCacheKey(id));
+        }
+    }
+
+    public void invalidateValidationCache() {
+        validationCache.invalidateAll();
+    }
+
+    protected String getValidationCacheKey(String id) {
+        return IdentityZoneHolder.get().getId() + ":" + id;
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof UserModifiedEvent) {
+            invalidateValidationCache(((UserModifiedEvent) event).getUserId());
+        } else if (event instanceof PasswordChangeEvent) {
+            UaaUser user = ((PasswordChangeEvent) event).getUser();
+            invalidateValidationCache(user == null ? null : user.getId());
+        } else if (event instanceof GroupModifiedEvent || event instanceof EntityDeletedEvent) {
+            // nested memberships make it impractical to find every affected user
+            invalidateValidationCache();
+        }
+    }
+
     @Override
     public UaaUser retrieveUserByEmail(String email, String origin) throws UsernameNotFoundException {
         String sql = isCaseInsensitive() ? DEFAULT_CASE_INSENSITIVE_USER_BY_EMAIL_AND_ORIGIN_QUERY : DEFAULT_CASE_SENSITIVE_USER_BY_EMAIL_AND_ORIGIN_QUERY;
@@ -124,6 +259,64 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
         }
     }
 
+    private String getAuthorities(final String userId) {
+        Set<String> authorities = new HashSet<>();
+        getAuthorities(authorities, userId);
+        authorities.addAll(defaultAuthorities);
+        return StringUtils.collectionToCommaDelimitedString(new HashSet<>(authorities));
+    }
+
+    /**
+     * Expands the groups the member belongs to, directly or through nested groups,
+     * one nesting level at a time so that the number of queries is bounded by the
+     * depth of the hierarchy rather than by the number of groups.
+     * A group whose name has already been collected is not expanded again, which
+     * keeps circular memberships from looping.
+     */
+    protected void getAuthorities(Set<String> authorities, final String memberId) {
+        String zoneId = IdentityZoneHolder.get().getId();
+        if (membershipClosure != null && membershipClosure.isEnabled()) {
+            for (Map<String, Object> record : jdbcTemplate.queryForList(CLOSURE_AUTHORITIES_QUERY, memberId, zoneId)) {
+                authorities.add((String) record.get("displayName"));
+            }
+            return;
+        }
+        List<String> memberIds = Collections.singletonList(memberId);
+        while (!memberIds.isEmpty()) {
+            List<String> nextMemberIds = new ArrayList<>();
+            for (int from = 0; from < memberIds.size(); from += maxMembersPerQuery) {
+                MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("memberIds", memberIds.subList(from, Math.min(from + maxMembersPerQuery, memberIds.size())))
+                    .addValue("zoneId", zoneId);
+                for (Map<String, Object> record : namedParameterJdbcTemplate.queryForList(AUTHORITIES_QUERY, params)) {
+                    String displayName = (String) record.get("displayName");
+                    String groupId = (String) record.get("id");
+                    if (authorities.add(displayName)) {
+                        nextMemberIds.add(groupId);
+                    }
+                }
+            }
+            memberIds = nextMemberIds;
+        }
+    }
+
+    private final class ValidationUserRowMapper implements RowMapper<UaaUser> {
+        @Override
+        public UaaUser mapRow(ResultSet rs, int rowNum) throws SQLException {
+            String id = rs.getString(1);
+            return new UaaUser(new UaaUserPrototype().withId(id)
+                    .withUsername(rs.getString(2))
+                    .withPassword(rs.getString(3))
+                    .withEmail(rs.getString(4))
+                    .withOrigin(rs.getString(5))
+                    .withExternalId(rs.getString(6))
+                    .withZoneId(rs.getString(7))
+                    .withSalt(rs.getString(8))
+                    .withPasswordLastModified(rs.getTimestamp(9))
+                    .withAuthorities(AuthorityUtils.commaSeparatedStringToAuthorityList(getAuthorities(id))));
+        }
+    }
+
     private final class UaaUserRowMapper implements RowMapper<UaaUser> {
         @Override
         public UaaUser mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -159,28 +352,5 @@ public class JdbcUaaUserDatabase implements UaaUserDatabase {
             String authsString = StringUtils.collectionToCommaDelimitedString(new HashSet<String>(authorities));
             return AuthorityUtils.commaSeparatedStringToAuthorityList(authsString);
         }
-
-        private String getAuthorities(final String userId) {
-            Set<String> authorities = new HashSet<>();
-            getAuthorities(authorities, userId);
-            authorities.addAll(defaultAuthorities);
-            return StringUtils.collectionToCommaDelimitedString(new HashSet<>(authorities));
-        }
-
-        protected void getAuthorities(Set<String> authorities, final String memberId) {
-            List<Map<String, Object>> results;
-            try {
-                results = jdbcTemplate.queryForList(AUTHORITIES_QUERY, memberId, IdentityZoneHolder.get().getId());
-                for (Map<String,Object> record : results) {
-                    String displayName = (String)record.get("displayName");
-                    String groupId = (String)record.get("id");
-                    if (!authorities.contains(displayName)) {
-                        authorities.add(displayName);
-                        getAuthorities(authorities, groupId);
-                    }
-                }
-            } catch (EmptyResultDataAccessException ex) {
-            }
-        }
     }
 }
@@ -22,5 +22,21 @@ public interface UaaUserDatabase {
 
     UaaUser retrieveUserById(String id) throws UsernameNotFoundException;
 
+    /**
+     * Loads what token validation needs to know about a user: id, username,
+     * password, email, origin, external id, zone, salt, password modification
+     * time and effective authorities. Other attributes may be missing, and the
+     * result may be up to a few seconds old.
+     */
+    UaaUser retrieveUserForTokenValidation(String id) throws UsernameNotFoundException;
+
+    /**
+     * Drops whatever {@link #retrieveUserForTokenValidation(String)} may hold
+     * for the user in the current zone, so that the next call reflects its
+     * current state.
+     */
+    default void invalidateValidationCache(String id) {
+    }
+
     UaaUser retrieveUserByEmail(String email, String origin) throws UsernameNotFoundException;
 }
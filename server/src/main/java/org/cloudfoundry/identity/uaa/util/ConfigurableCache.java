@@ -0,0 +1,163 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A bounded cache together with the settings it is built from and a count of
+ * its hits and misses.
+ * <p>
+ * Changing the size or the expiry rebuilds the cache, and enabling or disabling
+ * it drops all entries. While disabled, lookups return null without being
+ * counted and nothing is stored.
+ * <p>
+ * The cache is local to the node. Owners drop entries when they change the
+ * underlying data themselves, but a change made on another node is only seen
+ * once the entry expires, so caches of data that other nodes may write should
+ * keep a short expiry.
+ */
+public class ConfigurableCache<K, V> {
+
+    public static final int NO_EXPIRY = -1;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private boolean enabled;
+    private int maxEntries;
+    private int expiryInSeconds;
+    private boolean expireAfterAccess = false;
+
+    private volatile Cache<K, V> cache;
+
+    /**
+     * @param expiryInSeconds how long an entry is kept after it was stored, or
+     *            {@link #NO_EXPIRY} to keep it until it is evicted for space
+     */
+    public ConfigurableCache(boolean enabled, int maxEntries, int expiryInSeconds) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.expiryInSeconds = expiryInSeconds;
+        buildCache();
+    }
+
+    public V getIfPresent(K key) {
+        return getIfPresent(key, value -> true);
+    }
+
+    /**
+     * @param usable whether a cached value may still be used; values that may
+     *            not are dropped and counted as a miss
+     */
+    public V getIfPresent(K key, Predicate<? super V> usable) {
+        if (!isEnabled()) {
+            return null;
+        }
+        V value = cache.getIfPresent(key);
+        if (value != null && !usable.test(value)) {
+            cache.invalidate(key);
+            value = null;
+        }
+        (value == null ? misses : hits).incrementAndGet();
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (isEnabled()) {
+            cache.put(key, value);
+        }
+    }
+
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public ConcurrentMap<K, V> asMap() {
+        return cache.asMap();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        cache.invalidateAll();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        buildCache();
+    }
+
+    public int getExpiryInSeconds() {
+        return expiryInSeconds;
+    }
+
+    public void setExpiryInSeconds(int expiryInSeconds) {
+        this.expiryInSeconds = expiryInSeconds;
+        buildCache();
+    }
+
+    public boolean isExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    /**
+     * @param expireAfterAccess whether the expiry counts from the last read of
+     *            an entry rather than from when it was stored
+     */
+    public void setExpireAfterAccess(boolean expireAfterAccess) {
+        this.expireAfterAccess = expireAfterAccess;
+        buildCache();
+    }
+
+    protected void buildCache() {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxEntries);
+        if (expiryInSeconds != NO_EXPIRY) {
+            if (expireAfterAccess) {
+                builder.expireAfterAccess(expiryInSeconds, TimeUnit.SECONDS);
+            } else {
+                builder.expireAfterWrite(expiryInSeconds, TimeUnit.SECONDS);
+            }
+        }
+        cache = builder.build();
+    }
+}
@@ -0,0 +1,336 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.util;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContextBuilder;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request factory for outbound calls that keeps connections to each destination
+ * open in a shared pool instead of opening a new connection per request.
+ * <p>
+ * At most {@link #setMaxConnectionsPerRoute(int)} requests run against one
+ * destination at a time; further requests wait up to
+ * {@link #setConnectionRequestTimeoutInMillis(int)} for a pooled connection. The
+ * number of requests, failed requests and the time spent are recorded for each
+ * destination. A request fails if it cannot be sent or the destination answers
+ * with a server error.
+ */
+@ManagedResource
+public class PooledClientHttpRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+    static final String OTHER_DESTINATIONS = "other";
+
+    private final ConcurrentMap<String, DestinationStatistics> statistics = new ConcurrentHashMap<>();
+
+    private int maxConnections = 200;
+    private int maxConnectionsPerRoute = 20;
+    private int connectTimeoutInMillis = 10000;
+    private int readTimeoutInMillis = 10000;
+    private int connectionRequestTimeoutInMillis = 5000;
+    private int connectionTimeToLiveInSeconds = 60;
+    private int maxDestinations = 1000;
+    private boolean skipSslValidation = false;
+
+    private volatile PoolingHttpClientConnectionManager connectionManager;
+    private volatile HttpComponentsClientHttpRequestFactory delegate;
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new MeasuredRequest(getDelegate().createRequest(uri, httpMethod), getStatistics(uri));
+    }
+
+    protected HttpComponentsClientHttpRequestFactory getDelegate() {
+        HttpComponentsClientHttpRequestFactory result = delegate;
+        if (result == null) {
+            synchronized (this) {
+                if (delegate == null) {
+                    delegate = createDelegate();
+                }
+                result = delegate;
+            }
+        }
+        return result;
+    }
+
+    protected HttpComponentsClientHttpRequestFactory createDelegate() {
+        SSLConnectionSocketFactory sslSocketFactory;
+        if (skipSslValidation) {
+            try {
+                SSLContext sslContext = new SSLContextBuilder().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build();
+                sslSocketFactory = new SSLConnectionSocketFactory(sslContext);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            sslSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
+        }
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", sslSocketFactory)
+            .build();
+        connectionManager = new PoolingHttpClientConnectionManager(registry, null, null, null, connectionTimeToLiveInSeconds, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutInMillis)
+            .setSocketTimeout(readTimeoutInMillis)
+            .setConnectionRequestTimeout(connectionRequestTimeoutInMillis)
+            .build();
+        CloseableHttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setRedirectStrategy(new DefaultRedirectStrategy())
+            .build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        if (delegate != null) {
+            delegate.destroy();
+            delegate = null;
+            connectionManager = null;
+        }
+    }
+
+    protected DestinationStatistics getStatistics(URI uri) {
+        String destination = uri.getScheme() + "://" + uri.getHost() + (uri.getPort() < 0 ? "" : ":" + uri.getPort());
+        DestinationStatistics result = statistics.get(destination);
+        if (result == null) {
+            if (statistics.size() >= maxDestinations) {
+                destination = OTHER_DESTINATIONS;
+            }
+            result = statistics.computeIfAbsent(destination, d -> new DestinationStatistics());
+        }
+        return result;
+    }
+
+    @ManagedAttribute
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        statistics.forEach((destination, s) -> result.put(destination, s.requests.get()));
+        return result;
+    }
+
+    @ManagedAttribute
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        statistics.forEach((destination, s) -> result.put(destination, s.errors.get()));
+        return result;
+    }
+
+    /**
+     * @return the mean time in milliseconds from sending a request to receiving
+     *         the response headers, by destination
+     */
+    @ManagedAttribute
+    public Map<String, Double> getAverageLatencies() {
+        Map<String, Double> result = new TreeMap<>();
+        statistics.forEach((destination, s) -> result.put(destination, s.getAverageLatency()));
+        return result;
+    }
+
+    @ManagedOperation
+    public void resetStatistics() {
+        statistics.clear();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Outbound HTTP Requests")
+    public long getRequestCount() {
+        return statistics.values().stream().mapToLong(s -> s.requests.get()).sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Outbound HTTP Request Errors")
+    public long getErrorCount() {
+        return statistics.values().stream().mapToLong(s -> s.errors.get()).sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Outbound HTTP Connections Leased")
+    public int getLeasedConnections() {
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        return manager == null ? 0 : manager.getTotalStats().getLeased();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Outbound HTTP Connections Available")
+    public int getAvailableConnections() {
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        return manager == null ? 0 : manager.getTotalStats().getAvailable();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Outbound HTTP Requests Waiting For A Connection")
+    public int getPendingConnections() {
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        return manager == null ? 0 : manager.getTotalStats().getPending();
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getConnectTimeoutInMillis() {
+        return connectTimeoutInMillis;
+    }
+
+    public void setConnectTimeoutInMillis(int connectTimeoutInMillis) {
+        this.connectTimeoutInMillis = connectTimeoutInMillis;
+    }
+
+    public int getReadTimeoutInMillis() {
+        return readTimeoutInMillis;
+    }
+
+    public void setReadTimeoutInMillis(int readTimeoutInMillis) {
+        this.readTimeoutInMillis = readTimeoutInMillis;
+    }
+
+    public int getConnectionRequestTimeoutInMillis() {
+        return connectionRequestTimeoutInMillis;
+    }
+
+    public void setConnectionRequestTimeoutInMillis(int connectionRequestTimeoutInMillis) {
+        this.connectionRequestTimeoutInMillis = connectionRequestTimeoutInMillis;
+    }
+
+    public int getConnectionTimeToLiveInSeconds() {
+        return connectionTimeToLiveInSeconds;
+    }
+
+    public void setConnectionTimeToLiveInSeconds(int connectionTimeToLiveInSeconds) {
+        this.connectionTimeToLiveInSeconds = connectionTimeToLiveInSeconds;
+    }
+
+    public int getMaxDestinations() {
+        return maxDestinations;
+    }
+
+    public void setMaxDestinations(int maxDestinations) {
+        this.maxDestinations = maxDestinations;
+    }
+
+    public boolean isSkipSslValidation() {
+        return skipSslValidation;
+    }
+
+    public void setSkipSslValidation(boolean skipSslValidation) {
+        this.skipSslValidation = skipSslValidation;
+    }
+
+    protected static class DestinationStatistics {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+
+        void record(long millis, boolean error) {
+            requests.incrementAndGet();
+            totalMillis.addAndGet(millis);
+            if (error) {
+                errors.incrementAndGet();
+            }
+        }
+
+        double getAverageLatency() {
+            long count = requests.get();
+            return count == 0 ? 0 : (double) totalMillis.get() / count;
+        }
+    }
+
+    private static class MeasuredRequest implements ClientHttpRequest {
+        private final ClientHttpRequest request;
+        private final DestinationStatistics statistics;
+
+        MeasuredRequest(ClientHttpRequest request, DestinationStatistics statistics) {
+            this.request = request;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            long start = System.currentTimeMillis();
+            boolean error = true;
+            try {
+                ClientHttpResponse response = request.execute();
+                error = response.getRawStatusCode() >= 500;
+                return response;
+            } finally {
+                statistics.record(System.currentTimeMillis() - start, error);
+            }
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return request.getBody();
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return request.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+    }
+}
@@ -19,6 +19,7 @@ import org.cloudfoundry.identity.uaa.oauth.TokenRevokedException;
 import org.cloudfoundry.identity.uaa.oauth.jwt.Jwt;
 import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
 import org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants;
+import org.cloudfoundry.identity.uaa.oauth.token.Claims;
 import org.cloudfoundry.identity.uaa.oauth.token.RevocableToken;
 import org.cloudfoundry.identity.uaa.oauth.token.RevocableTokenProvisioning;
 import org.cloudfoundry.identity.uaa.user.UaaUser;
@@ -67,6 +68,7 @@ public class TokenValidation {
     private final String token;
     private final boolean decoded; // this is used to avoid checking claims on tokens that had errors when decoding
     private final List<RuntimeException> validationErrors = new ArrayList<>();
+    private Claims claimsView;
 
     public static TokenValidation validate(String tokenJwtValue) {
         return new TokenValidation(tokenJwtValue);
@@ -118,7 +120,7 @@ public class TokenValidation {
 
 
     private TokenValidation(TokenValidation source) {
-        this.claims = source.claims == null ? null : new HashMap<>(source.claims);
+        this.claims = source.claims == null ? null : copyClaims(source.claims);
         this.tokenJwt = source.tokenJwt;
         this.token = source.token;
         this.decoded = source.decoded;
@@ -126,6 +128,18 @@ public class TokenValidation {
     }
 
 
+    @SuppressWarnings("unchecked")
+    private static <T> T copyClaims(T value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new HashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> copy.put(k, copyClaims(v)));
+            return (T) copy;
+        } else if (value instanceof List) {
+            return (T) ((List<?>) value).stream().map(TokenValidation::copyClaims).collect(Collectors.toCollection(ArrayList::new));
+        }
+        return value;
+    }
+
     public TokenValidation checkSignature(SignatureVerifier verifier) {
         if(!decoded) { return this; }
         try {
@@ -463,4 +477,19 @@ public class TokenValidation {
     public Map<String, Object> getClaims() {
         return claims;
     }
+
+    /**
+     * @return the claims as {@link Claims}, converted from the claims parsed
+     *         when this validation was created rather than decoding the token again
+     */
+    public Claims getClaimsView() {
+        if (claimsView == null && claims != null) {
+            try {
+                claimsView = JsonUtils.convertValue(claims, Claims.class);
+            } catch (JsonUtils.JsonUtilException ex) {
+                throw new InvalidTokenException("Invalid token (cannot read token claims): " + token, ex);
+            }
+        }
+        return claimsView;
+    }
 }
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.zone;
+
+import org.cloudfoundry.identity.uaa.audit.event.AbstractUaaEvent;
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
+
+/**
+ * Caches identity zones by subdomain and by id, so that resolving the zone of a
+ * request does not need a query and a parse of the zone configuration each
+ * time.
+ * <p>
+ * Subdomains and ids that do not exist are remembered for a shorter period in
+ * a separate cache, so that requests for random host names neither reach the
+ * database nor push out known zones. All entries are dropped when a zone is
+ * created, modified or deleted on this server.
+ * <p>
+ * The cached zones are shared between requests and must not be modified.
+ */
+@ManagedResource
+public class IdentityZoneCache implements ApplicationListener<AbstractUaaEvent> {
+
+    private static final String SUBDOMAIN = "subdomain:";
+    private static final String ID = "id:";
+
+    private final IdentityZoneProvisioning provisioning;
+
+    private final ConfigurableCache<String, IdentityZone> zones = new ConfigurableCache<>(true, 10000, 30);
+    private final ConfigurableCache<String, Boolean> missing = new ConfigurableCache<>(true, 10000, 5);
+
+    public IdentityZoneCache(IdentityZoneProvisioning provisioning) {
+        this.provisioning = provisioning;
+    }
+
+    /**
+     * @throws EmptyResultDataAccessException if there is no zone with this
+     *             subdomain
+     */
+    public IdentityZone retrieveBySubdomain(String subdomain) {
+        if (subdomain == null) {
+            throw new EmptyResultDataAccessException("Subdomain cannot be null", 1);
+        }
+        String key = SUBDOMAIN + subdomain.toLowerCase();
+        IdentityZone zone = zones.getIfPresent(key);
+        if (zone != null) {
+            return zone;
+        }
+        if (missing.getIfPresent(key) != null) {
+            throw new EmptyResultDataAccessException("Zone not found for subdomain:" + subdomain, 1);
+        }
+        try {
+            zone = provisioning.retrieveBySubdomain(subdomain);
+        } catch (EmptyResultDataAccessException e) {
+            missing.put(key, Boolean.TRUE);
+            throw e;
+        }
+        put(zone);
+        return zone;
+    }
+
+    /**
+     * @throws ZoneDoesNotExistsException if there is no zone with this id
+     */
+    public IdentityZone retrieve(String id) {
+        String key = ID + id;
+        IdentityZone zone = zones.getIfPresent(key);
+        if (zone != null) {
+            return zone;
+        }
+        if (missing.getIfPresent(key) != null) {
+            throw new ZoneDoesNotExistsException("Zone[" + id + "] not found.");
+        }
+        try {
+            zone = provisioning.retrieve(id);
+        } catch (ZoneDoesNotExistsException e) {
+            missing.put(key, Boolean.TRUE);
+            throw e;
+        }
+        put(zone);
+        return zone;
+    }
+
+    private void put(IdentityZone zone) {
+        zones.put(ID + zone.getId(), zone);
+        if (zone.getSubdomain() != null) {
+            zones.put(SUBDOMAIN + zone.getSubdomain().toLowerCase(), zone);
+        }
+    }
+
+    @ManagedOperation
+    public void invalidateAll() {
+        zones.invalidateAll();
+        missing.invalidateAll();
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractUaaEvent event) {
+        if (event instanceof IdentityZoneModifiedEvent) {
+            invalidateAll();
+        } else if (event instanceof EntityDeletedEvent && event.getSource() instanceof IdentityZone) {
+            invalidateAll();
+        }
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Zone Cache Hits")
+    public long getHitCount() {
+        return zones.getHitCount() + missing.getHitCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Identity Zone Cache Misses")
+    public long getMissCount() {
+        // lookups that miss the zones are only misses if they miss the unknown entries too
+        return missing.getMissCount();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Identity Zone Cache Size")
+    public long getSize() {
+        return zones.size();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Identity Zone Cache Unknown Entries")
+    public long getMissingSize() {
+        return missing.size();
+    }
+
+    public int getMaxEntries() {
+        return zones.getMaxEntries();
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        zones.setMaxEntries(maxEntries);
+        missing.setMaxEntries(maxEntries);
+    }
+
+    public int getExpiryInSeconds() {
+        return zones.getExpiryInSeconds();
+    }
+
+    public void setExpiryInSeconds(int expiryInSeconds) {
+        zones.setExpiryInSeconds(expiryInSeconds);
+    }
+
+    public int getNegativeExpiryInSeconds() {
+        return missing.getExpiryInSeconds();
+    }
+
+    public void setNegativeExpiryInSeconds(int negativeExpiryInSeconds) {
+        missing.setExpiryInSeconds(negativeExpiryInSeconds);
+    }
+}
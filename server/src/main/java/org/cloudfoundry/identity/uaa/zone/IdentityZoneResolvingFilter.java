@@ -24,6 +24,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -36,7 +37,8 @@ import java.util.Set;
 public class IdentityZoneResolvingFilter extends OncePerRequestFilter implements InitializingBean {
 
     private IdentityZoneProvisioning dao;
-    private Set<String> defaultZoneHostnames = new HashSet<>();
+    private IdentityZoneCache cache;
+    private volatile Set<String> defaultZoneHostnames = Collections.emptySet();
     private Log logger = LogFactory.getLog(getClass());
 
     @Override
@@ -47,7 +49,7 @@ public class IdentityZoneResolvingFilter extends OncePerRequestFilter implements
         String subdomain = getSubdomain(hostname);
         if (subdomain != null) {
             try {
-                identityZone = dao.retrieveBySubdomain(subdomain);
+                identityZone = cache != null ? cache.retrieveBySubdomain(subdomain) : dao.retrieveBySubdomain(subdomain);
             } catch (EmptyResultDataAccessException ex) {
                 logger.debug("Cannot find identity zone for subdomain " + subdomain);
             } catch (Exception ex) {
@@ -70,12 +72,14 @@ public class IdentityZoneResolvingFilter extends OncePerRequestFilter implements
     }
 
     private String getSubdomain(String hostname) {
+        Set<String> defaultZoneHostnames = this.defaultZoneHostnames;
         if (defaultZoneHostnames.contains(hostname)) {
             return "";
         }
-        for (String internalHostname : defaultZoneHostnames) {
-            if (hostname.endsWith("." + internalHostname)) {
-                return hostname.substring(0, hostname.length() - internalHostname.length() - 1);
+        // look up each suffix of the host name, longest first
+        for (int dot = hostname.indexOf('.'); dot >= 0; dot = hostname.indexOf('.', dot + 1)) {
+            if (defaultZoneHostnames.contains(hostname.substring(dot + 1))) {
+                return hostname.substring(0, dot);
             }
         }
         //UAA is catch all if we haven't configured anything
@@ -91,19 +95,27 @@ public class IdentityZoneResolvingFilter extends OncePerRequestFilter implements
         this.dao = dao;
     }
 
-    public void setAdditionalInternalHostnames(Set<String> hostnames) {
+    /**
+     * @param cache used instead of the zone provisioning to look up zones
+     */
+    public void setIdentityZoneCache(IdentityZoneCache cache) {
+        this.cache = cache;
+    }
+
+    public synchronized void setAdditionalInternalHostnames(Set<String> hostnames) {
         if (hostnames!=null) {
-            this.defaultZoneHostnames.addAll(hostnames);
+            Set<String> updated = new HashSet<>(defaultZoneHostnames);
+            updated.addAll(hostnames);
+            this.defaultZoneHostnames = Collections.unmodifiableSet(updated);
         }
     }
 
     public void setDefaultInternalHostnames(Set<String> hostnames) {
-        this.defaultZoneHostnames.addAll(hostnames);
+        setAdditionalInternalHostnames(hostnames);
     }
 
     public synchronized void restoreDefaultHostnames(Set<String> hostnames) {
-        this.defaultZoneHostnames.clear();
-        this.defaultZoneHostnames.addAll(hostnames);
+        this.defaultZoneHostnames = Collections.unmodifiableSet(new HashSet<>(hostnames));
     }
 
     public Set<String> getDefaultZoneHostnames() {
@@ -16,6 +16,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.cloudfoundry.identity.uaa.audit.event.SystemDeletable;
 import org.cloudfoundry.identity.uaa.resources.ResourceMonitor;
+import org.cloudfoundry.identity.uaa.util.ConfigurableCache;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -23,6 +24,11 @@ import org.springframework.dao.InvalidDataAccessResourceUsageException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.jmx.support.MetricType;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.common.exceptions.InvalidClientException;
@@ -44,13 +50,23 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A copy of JdbcClientDetailsService but with IdentityZone awareness
+ * <p>
+ * Loaded clients can optionally be cached per zone, with hit ratios kept per
+ * zone. Adding, updating or removing a client drops its entry. Callers get
+ * their own copy of a cached client and may modify it.
  */
+@ManagedResource
 public class MultitenantJdbcClientDetailsService extends JdbcClientDetailsService implements ClientDetailsService,
     ClientRegistrationService, ResourceMonitor<ClientDetails>, SystemDeletable {
 
@@ -103,6 +119,10 @@ public class MultitenantJdbcClientDetailsService extends JdbcClientDetailsServic
 
     private JdbcListFactory listFactory;
 
+    private final ConfigurableCache<String, BaseClientDetails> cache = new ConfigurableCache<>(false, 10000, 30);
+
+    private final ConcurrentMap<String, CacheStatistics> statistics = new ConcurrentHashMap<>();
+
     public MultitenantJdbcClientDetailsService(DataSource dataSource) {
         super(dataSource);
         Assert.notNull(dataSource, "DataSource required");
@@ -119,13 +139,25 @@ public class MultitenantJdbcClientDetailsService extends JdbcClientDetailsServic
     }
 
     public ClientDetails loadClientByClientId(String clientId) throws InvalidClientException {
+        String zoneId = IdentityZoneHolder.get().getId();
+        if (isCacheEnabled()) {
+            BaseClientDetails cached = cache.getIfPresent(getKey(zoneId, clientId));
+            CacheStatistics zoneStatistics = getStatistics(zoneId);
+            if (cached != null) {
+                zoneStatistics.hits.incrementAndGet();
+                return copy(cached);
+            }
+            zoneStatistics.misses.incrementAndGet();
+        }
         ClientDetails details;
         try {
-            details = jdbcTemplate.queryForObject(selectClientDetailsSql, new ClientDetailsRowMapper(), clientId, IdentityZoneHolder.get().getId());
+            details = jdbcTemplate.queryForObject(selectClientDetailsSql, new ClientDetailsRowMapper(), clientId, zoneId);
         } catch (EmptyResultDataAccessException e) {
             throw new NoSuchClientException("No client with requested id: " + clientId);
         }
-
+        if (details instanceof BaseClientDetails) {
+            cache.put(getKey(zoneId, clientId), copy((BaseClientDetails) details));
+        }
         return details;
     }
 
@@ -134,25 +166,42 @@ public class MultitenantJdbcClientDetailsService extends JdbcClientDetailsServic
             jdbcTemplate.update(insertClientDetailsSql, getFields(clientDetails));
         } catch (DuplicateKeyException e) {
             throw new ClientAlreadyExistsException("Client already exists: " + clientDetails.getClientId(), e);
+        } finally {
+            invalidate(clientDetails.getClientId());
         }
     }
 
     public void updateClientDetails(ClientDetails clientDetails) throws NoSuchClientException {
-        int count = jdbcTemplate.update(updateClientDetailsSql, getFieldsForUpdate(clientDetails));
+        int count;
+        try {
+            count = jdbcTemplate.update(updateClientDetailsSql, getFieldsForUpdate(clientDetails));
+        } finally {
+            invalidate(clientDetails.getClientId());
+        }
         if (count != 1) {
             throw new NoSuchClientException("No client found with id = " + clientDetails.getClientId() + " in identity zone "+IdentityZoneHolder.get().getName());
         }
     }
 
     public void updateClientSecret(String clientId, String secret) throws NoSuchClientException {
-        int count = jdbcTemplate.update(updateClientSecretSql, passwordEncoder.encode(secret), clientId, IdentityZoneHolder.get().getId());
+        int count;
+        try {
+            count = jdbcTemplate.update(updateClientSecretSql, passwordEncoder.encode(secret), clientId, IdentityZoneHolder.get().getId());
+        } finally {
+            invalidate(clientId);
+        }
         if (count != 1) {
             throw new NoSuchClientException("No client found with id = " + clientId);
         }
     }
 
     public void removeClientDetails(String clientId) throws NoSuchClientException {
-        int count = jdbcTemplate.update(deleteClientDetailsSql, clientId, IdentityZoneHolder.get().getId());
+        int count;
+        try {
+            count = jdbcTemplate.update(deleteClientDetailsSql, clientId, IdentityZoneHolder.get().getId());
+        } finally {
+            invalidate(clientId);
+        }
         if (count != 1) {
             throw new NoSuchClientException("No client found with id = " + clientId);
         }
@@ -250,8 +299,14 @@ public class MultitenantJdbcClientDetailsService extends JdbcClientDetailsServic
 
     @Override
     public int deleteByIdentityZone(String zoneId) {
-        jdbcTemplate.update(DELETE_CLIENT_APPROVALS_BY_ZONE, zoneId);
-        return jdbcTemplate.update(DELETE_CLIENTS_BY_ZONE, zoneId);
+        try {
+            jdbcTemplate.update(DELETE_CLIENT_APPROVALS_BY_ZONE, zoneId);
+            return jdbcTemplate.update(DELETE_CLIENTS_BY_ZONE, zoneId);
+        } finally {
+            String prefix = getKey(zoneId, "");
+            cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+            statistics.remove(zoneId);
+        }
     }
 
     @Override
@@ -264,6 +319,102 @@ public class MultitenantJdbcClientDetailsService extends JdbcClientDetailsServic
         return logger;
     }
 
+    protected void invalidate(String clientId) {
+        cache.invalidate(getKey(IdentityZoneHolder.get().getId(), clientId));
+    }
+
+    @ManagedOperation
+    public void invalidateCache() {
+        cache.invalidateAll();
+    }
+
+    protected String getKey(String zoneId, String clientId) {
+        return zoneId + ":" + clientId;
+    }
+
+    protected CacheStatistics getStatistics(String zoneId) {
+        return statistics.computeIfAbsent(zoneId, id -> new CacheStatistics());
+    }
+
+    protected static BaseClientDetails copy(BaseClientDetails details) {
+        BaseClientDetails copy = new BaseClientDetails(details);
+        copy.setAutoApproveScopes(details.getAutoApproveScopes() == null ? null : new HashSet<>(details.getAutoApproveScopes()));
+        copy.setAdditionalInformation(new LinkedHashMap<>(details.getAdditionalInformation()));
+        return copy;
+    }
+
+    /**
+     * @return the cache hit ratio of the given zone, or -1 if no client of that
+     *         zone was loaded since the statistics were last reset
+     */
+    @ManagedOperation
+    public double getCacheHitRatio(String zoneId) {
+        CacheStatistics zoneStatistics = statistics.get(zoneId);
+        return zoneStatistics == null ? -1 : zoneStatistics.getHitRatio();
+    }
+
+    @ManagedAttribute(description = "Client cache hit ratio per identity zone")
+    public Map<String, Double> getCacheHitRatios() {
+        Map<String, Double> result = new TreeMap<>();
+        statistics.forEach((zoneId, zoneStatistics) -> result.put(zoneId, zoneStatistics.getHitRatio()));
+        return result;
+    }
+
+    @ManagedOperation
+    public void resetCacheStatistics() {
+        statistics.clear();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Client Cache Hits")
+    public long getCacheHitCount() {
+        return statistics.values().stream().mapToLong(s -> s.hits.get()).sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.COUNTER, displayName = "Client Cache Misses")
+    public long getCacheMissCount() {
+        return statistics.values().stream().mapToLong(s -> s.misses.get()).sum();
+    }
+
+    @ManagedMetric(metricType = MetricType.GAUGE, displayName = "Client Cache Size")
+    public long getCacheSize() {
+        return cache.size();
+    }
+
+    public boolean isCacheEnabled() {
+        return cache.isEnabled();
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        cache.setEnabled(cacheEnabled);
+    }
+
+    public int getCacheMaxEntries() {
+        return cache.getMaxEntries();
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        cache.setMaxEntries(cacheMaxEntries);
+    }
+
+    public int getCacheExpiryInSeconds() {
+        return cache.getExpiryInSeconds();
+    }
+
+    public void setCacheExpiryInSeconds(int cacheExpiryInSeconds) {
+        cache.setExpiryInSeconds(cacheExpiryInSeconds);
+    }
+
+    protected static class CacheStatistics {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        double getHitRatio() {
+            long hitCount = hits.get();
+            long total = hitCount + misses.get();
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+    }
+
     /**
      * Row mapper for ClientDetails.
      *
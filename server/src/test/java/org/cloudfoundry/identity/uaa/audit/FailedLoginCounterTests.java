@@ -0,0 +1,130 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.audit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.PasswordChangeSuccess;
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationFailure;
+import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationSuccess;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FailedLoginCounterTests {
+
+    private UaaAuditService store;
+    private FailedLoginCounter counter;
+    private long now;
+    private int writes;
+
+    @Before
+    public void setUp() {
+        now = System.currentTimeMillis();
+        store = mock(UaaAuditService.class);
+        when(store.find(eq("1"), anyLong())).thenReturn(Collections.emptyList());
+        counter = new FailedLoginCounter(store);
+    }
+
+    @Test
+    public void failures_are_loaded_again_after_a_failure() {
+        counter.setBucketMillis(100);
+        when(store.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
+            event(UserAuthenticationFailure, now - 1000, "uaa"),
+            event(UserAuthenticationFailure, now - 2000, "other"),
+            event(UserAuthenticationSuccess, now - 3000, "uaa"),
+            event(UserAuthenticationFailure, now - 4000, "uaa")
+        ));
+        assertEquals(1, counter.getFailures("1", "uaa", 0).getCount());
+        assertEquals(now - 1000, counter.getFailures("1", "uaa", 0).getMostRecent());
+
+        verify(store, times(1)).find(eq("1"), anyLong());
+
+        // the failure is written, and another server recorded one meanwhile
+        counter.record(event(UserAuthenticationFailure, now, "uaa"), this::write);
+        when(store.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
+            event(UserAuthenticationFailure, now, "uaa"),
+            event(UserAuthenticationFailure, now - 500, "uaa"),
+            event(UserAuthenticationFailure, now - 1000, "uaa"),
+            event(UserAuthenticationSuccess, now - 3000, "uaa")
+        ));
+        FailedLoginCounter.Failures failures = counter.getFailures("1", "uaa", 0);
+        assertEquals(3, failures.getCount());
+        assertEquals(now, failures.getMostRecent());
+        assertEquals(2, counter.getFailures("1", "uaa", now - 750).getCount());
+
+        verify(store, times(2)).find(eq("1"), anyLong());
+        assertEquals(2, counter.getLoadCount());
+        assertEquals(1, writes);
+    }
+
+    @Test
+    public void events_for_principals_not_in_memory_are_only_written() {
+        counter.record(event(UserAuthenticationFailure, now, "uaa"), this::write);
+        assertEquals(1, writes);
+        assertEquals(0, counter.getSize());
+    }
+
+    @Test
+    public void success_resets_the_count() {
+        when(store.find(eq("1"), anyLong())).thenReturn(Collections.singletonList(
+            event(UserAuthenticationFailure, now, "uaa")
+        ));
+        assertEquals(1, counter.getFailures("1", "uaa", 0).getCount());
+        counter.record(event(PasswordChangeSuccess, now, "uaa"), this::write);
+        assertEquals(0, counter.getFailures("1", "uaa", 0).getCount());
+        assertEquals(0, counter.getFailures("1", "uaa", 0).getMostRecent());
+        verify(store, times(1)).find(eq("1"), anyLong());
+    }
+
+    @Test
+    public void failures_are_bucketed_and_bounded() {
+        counter.setBucketMillis(1000);
+        counter.setMaxBucketsPerPrincipal(3);
+        long start = (now / 1000) * 1000;
+        List<AuditEvent> events = new ArrayList<>();
+        for (int i = 4; i >= 0; i--) {
+            events.add(event(UserAuthenticationFailure, start + i * 1000 + 1, "uaa"));
+            events.add(event(UserAuthenticationFailure, start + i * 1000, "uaa"));
+        }
+        when(store.find(eq("1"), anyLong())).thenReturn(events);
+        assertEquals(6, counter.getFailures("1", "uaa", 0).getCount());
+        assertEquals(2, counter.getFailures("1", "uaa", start + 3500).getCount());
+    }
+
+    @Test
+    public void clear_forces_a_reload() {
+        counter.getFailures("1", "uaa", 0);
+        counter.clear();
+        counter.getFailures("1", "uaa", 0);
+        verify(store, times(2)).find(eq("1"), anyLong());
+    }
+
+    private void write() {
+        writes++;
+    }
+
+    private AuditEvent event(AuditEventType type, long time, String zoneId) {
+        return new AuditEvent(type, "1", "origin", null, time, zoneId);
+    }
+}
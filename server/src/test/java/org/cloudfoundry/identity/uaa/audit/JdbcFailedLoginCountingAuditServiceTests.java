@@ -60,6 +60,7 @@ public class JdbcFailedLoginCountingAuditServiceTests extends JdbcTestBase {
         // Set the created column to 3 hours past
         jdbcTemplate.update("update sec_audit set created=?", new Timestamp(now - 3 * 3600 * 1000));
         auditService.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
+        assertThat(auditService.deleteExpiredEvents(), is(1));
         assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='1'", Integer.class), is(1));
     }
 
@@ -92,6 +93,66 @@ public class JdbcFailedLoginCountingAuditServiceTests extends JdbcTestBase {
         assertEquals(1, events.size());
     }
 
+    @Test
+    public void writeBehindQueuesEventsUntilFlushed() throws Exception {
+        JdbcFailedLoginCountingAuditService writeBehind = createWriteBehindService(10);
+        try {
+            writeBehind.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
+            writeBehind.log(getAuditEvent(UserAuthenticationSuccess, "1", "joe"));
+            assertThat(writeBehind.getQueueDepth(), is(1));
+            assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='1'", Integer.class), is(1));
+            // lockout checks see the queued success
+            assertEquals(0, writeBehind.find("1", 0).size());
+            assertThat(writeBehind.getQueueDepth(), is(0));
+        } finally {
+            writeBehind.destroy();
+        }
+    }
+
+    @Test
+    public void writeBehindWritesFailuresImmediatelyAfterQueuedEvents() throws Exception {
+        JdbcFailedLoginCountingAuditService writeBehind = createWriteBehindService(10);
+        try {
+            writeBehind.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
+            writeBehind.log(getAuditEvent(UserAuthenticationFailure, "clientA", "joe"));
+            assertThat(writeBehind.getQueueDepth(), is(0));
+            writeBehind.log(getAuditEvent(UserAuthenticationSuccess, "1", "joe"));
+            assertThat(writeBehind.getQueueDepth(), is(1));
+            writeBehind.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
+            assertThat(writeBehind.getQueueDepth(), is(0));
+            assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='1'", Integer.class), is(1));
+            assertThat(jdbcTemplate.queryForObject("select count(*) from sec_audit where principal_id='clientA'", Integer.class), is(1));
+        } finally {
+            writeBehind.destroy();
+        }
+    }
+
+    @Test
+    public void writeBehindNeverDropsFailures() throws Exception {
+        JdbcFailedLoginCountingAuditService writeBehind = createWriteBehindService(1);
+        try {
+            writeBehind.log(getAuditEvent(UserAuthenticationSuccess, "clientA", "joe"));
+            writeBehind.log(getAuditEvent(UserAuthenticationSuccess, "clientB", "joe"));
+            assertThat(writeBehind.getDroppedCount(), is(1L));
+            writeBehind.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
+            writeBehind.log(getAuditEvent(UserAuthenticationFailure, "1", "joe"));
+            assertThat(writeBehind.getDroppedCount(), is(1L));
+            assertEquals(2, writeBehind.find("1", 0).size());
+        } finally {
+            writeBehind.destroy();
+        }
+    }
+
+    private JdbcFailedLoginCountingAuditService createWriteBehindService(int queueCapacity) throws Exception {
+        JdbcFailedLoginCountingAuditService writeBehind = new JdbcFailedLoginCountingAuditService(dataSource);
+        writeBehind.setWriteBehind(true);
+        writeBehind.setQueueCapacity(queueCapacity);
+        writeBehind.setOfferTimeoutMillis(0);
+        writeBehind.setFlushIntervalMillis(3600 * 1000);
+        writeBehind.afterPropertiesSet();
+        return writeBehind;
+    }
+
     private AuditEvent getAuditEvent(AuditEventType type, String principal, String data) {
         return new AuditEvent(type, principal, authDetails, data, System.currentTimeMillis(), IdentityZone.getUaa().getId());
     }
@@ -13,6 +13,7 @@
 package org.cloudfoundry.identity.uaa.authentication.manager;
 
 import org.cloudfoundry.identity.uaa.audit.AuditEvent;
+import org.cloudfoundry.identity.uaa.audit.FailedLoginCounter;
 import org.cloudfoundry.identity.uaa.audit.UaaAuditService;
 import org.cloudfoundry.identity.uaa.provider.LockoutPolicy;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
@@ -30,12 +31,15 @@ import java.util.Arrays;
 
 import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationFailure;
 import static org.cloudfoundry.identity.uaa.audit.AuditEventType.UserAuthenticationSuccess;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -76,6 +80,43 @@ public class PeriodLockoutPolicyTests {
         assertFalse(policy.isAllowed(joe, mock(Authentication.class)));
     }
 
+    @Test
+    public void failedLoginCounterIsOnlyTrustedBelowTheLimit() {
+        when(as.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
+                        new AuditEvent(UserAuthenticationFailure, "1", "", "", now - 1, IdentityZone.getUaa().getId())
+                        ));
+        FailedLoginCounter counter = new FailedLoginCounter(as);
+        counter.setEnabled(true);
+        policy.setFailedLoginCounter(counter);
+        policy.getLockoutPolicy().setLockoutAfterFailures(3);
+        assertTrue(policy.isAllowed(joe, mock(Authentication.class)));
+        assertTrue(policy.isAllowed(joe, mock(Authentication.class)));
+        verify(as, times(1)).find(eq("1"), anyLong());
+
+        // a failure makes the counter reload, one short of the limit the
+        // shared audit data decides
+        counter.record(new AuditEvent(UserAuthenticationFailure, "1", "", "", now, IdentityZone.getUaa().getId()), () -> {});
+        when(as.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
+                        new AuditEvent(UserAuthenticationFailure, "1", "", "", now, IdentityZone.getUaa().getId()),
+                        new AuditEvent(UserAuthenticationFailure, "1", "", "", now - 1, IdentityZone.getUaa().getId()),
+                        new AuditEvent(UserAuthenticationFailure, "1", "", "", now - 2, IdentityZone.getUaa().getId())
+                        ));
+        assertFalse(policy.isAllowed(joe, mock(Authentication.class)));
+        verify(as, times(3)).find(eq("1"), anyLong());
+        assertEquals(2, counter.getLoadCount());
+    }
+
+    @Test
+    public void disabledFailedLoginCounterIsNotUsed() {
+        FailedLoginCounter counter = new FailedLoginCounter(as);
+        policy.setFailedLoginCounter(counter);
+        policy.getLockoutPolicy().setLockoutAfterFailures(3);
+        assertTrue(policy.isAllowed(joe, mock(Authentication.class)));
+        assertTrue(policy.isAllowed(joe, mock(Authentication.class)));
+        verify(as, times(2)).find(eq("1"), anyLong());
+        assertEquals(0, counter.getLoadCount());
+    }
+
     @Test
     public void loginIsAllowedIfSuccessfulLoginIntercedesExcessiveFailures() {
         when(as.find(eq("1"), anyLong())).thenReturn(Arrays.asList(
@@ -69,6 +69,7 @@ public class LdapGroupMappingAuthorizationManagerTests extends JdbcTestBase {
     public void initLdapGroupMappingAuthorizationManagerTests() throws Exception {
         JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter);
         gDB = new JdbcScimGroupProvisioning(jdbcTemplate, pagingListFactory);
+        gDB.setTransactionManager(transactionManager);
         eDB = new JdbcScimGroupExternalMembershipManager(jdbcTemplate, pagingListFactory);
         ((JdbcScimGroupExternalMembershipManager) eDB).setScimGroupProvisioning(gDB);
         assertEquals(0, gDB.retrieveAll().size());
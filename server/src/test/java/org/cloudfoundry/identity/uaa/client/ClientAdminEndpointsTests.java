@@ -344,18 +344,18 @@ public class ClientAdminEndpointsTests {
     public void testFindClientDetails() throws Exception {
         Mockito.when(clientDetailsService.query("filter", "sortBy", true)).thenReturn(
             Arrays.<ClientDetails> asList(detail));
-        SearchResults<?> result = endpoints.listClientDetails("client_id", "filter", "sortBy", "ascending", 1, 100);
+        SearchResults<?> result = endpoints.listClientDetails("client_id", "filter", "sortBy", "ascending", 1, 100, null, true);
         assertEquals(1, result.getResources().size());
         Mockito.verify(clientDetailsService).query("filter", "sortBy", true);
 
-        result = endpoints.listClientDetails("", "filter", "sortBy", "ascending", 1, 100);
+        result = endpoints.listClientDetails("", "filter", "sortBy", "ascending", 1, 100, null, true);
         assertEquals(1, result.getResources().size());
     }
 
     @Test(expected = UaaException.class)
     public void testFindClientDetailsInvalidFilter() throws Exception {
         Mockito.when(clientDetailsService.query("filter", "sortBy", true)).thenThrow(new IllegalArgumentException());
-        endpoints.listClientDetails("client_id", "filter", "sortBy", "ascending", 1, 100);
+        endpoints.listClientDetails("client_id", "filter", "sortBy", "ascending", 1, 100, null, true);
     }
 
     @Test(expected = InvalidClientDetailsException.class)
@@ -14,6 +14,7 @@ package org.cloudfoundry.identity.uaa.codestore;
 
 import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
 import org.cloudfoundry.identity.uaa.test.TestUtils;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredRowsSweeper;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -30,6 +31,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 @RunWith(Parameterized.class)
 public class ExpiringCodeStoreTests extends JdbcTestBase {
@@ -59,6 +61,7 @@ public class ExpiringCodeStoreTests extends JdbcTestBase {
             TestUtils.deleteFrom(jdbcTemplate.getDataSource(), JdbcExpiringCodeStore.tableName);
             if (expiringCodeStore instanceof JdbcExpiringCodeStore) {
                 ((JdbcExpiringCodeStore) expiringCodeStore).setDataSource(jdbcTemplate.getDataSource());
+                ((JdbcExpiringCodeStore) expiringCodeStore).setTransactionManager(transactionManager);
             }
         }
     }
@@ -112,6 +115,47 @@ public class ExpiringCodeStoreTests extends JdbcTestBase {
         expiringCodeStore.generateCode(data, expiresAt, null);
     }
 
+    @Test
+    public void testGenerateCodes() throws Exception {
+        List<String> data = Arrays.asList("{\"n\":1}", "{\"n\":2}", "{\"n\":3}");
+        Timestamp expiresAt = new Timestamp(System.currentTimeMillis() + 60000);
+        List<ExpiringCode> codes = expiringCodeStore.generateCodes(data, expiresAt, "Test Intent");
+
+        Assert.assertEquals(3, codes.size());
+        for (int i = 0; i < data.size(); i++) {
+            Assert.assertEquals(data.get(i), codes.get(i).getData());
+            Assert.assertEquals(expiresAt, codes.get(i).getExpiresAt());
+            Assert.assertEquals(codes.get(i), expiringCodeStore.retrieveCode(codes.get(i).getCode()));
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testGenerateCodesWithNullDataValue() throws Exception {
+        Timestamp expiresAt = new Timestamp(System.currentTimeMillis() + 60000);
+        expiringCodeStore.generateCodes(Arrays.asList("{}", null), expiresAt, null);
+    }
+
+    @Test
+    public void testGenerateCodesFallsBackToSingleInsertsOnDuplicateCode() throws Exception {
+        if (JdbcExpiringCodeStore.class == expiringCodeStoreClass) {
+            RandomValueStringGenerator generator = Mockito.mock(RandomValueStringGenerator.class);
+            Mockito.when(generator.generate()).thenReturn("taken", "taken", "rolled-back", "first", "second");
+            expiringCodeStore.setGenerator(generator);
+            Timestamp expiresAt = new Timestamp(System.currentTimeMillis() + 60000);
+            expiringCodeStore.generateCode("{}", expiresAt, null);
+
+            List<ExpiringCode> codes = expiringCodeStore.generateCodes(Arrays.asList("{\"n\":1}", "{\"n\":2}"), expiresAt, null);
+
+            Assert.assertEquals("first", codes.get(0).getCode());
+            Assert.assertEquals("{\"n\":1}", codes.get(0).getData());
+            Assert.assertEquals("second", codes.get(1).getCode());
+            Assert.assertEquals("{\"n\":2}", codes.get(1).getData());
+            Assert.assertEquals(codes.get(0), expiringCodeStore.retrieveCode("first"));
+            Assert.assertEquals(codes.get(1), expiringCodeStore.retrieveCode("second"));
+            Assert.assertNull(expiringCodeStore.retrieveCode("rolled-back"));
+        }
+    }
+
     @Test
     public void testRetrieveCode() throws Exception {
         String data = "{}";
@@ -193,7 +237,7 @@ public class ExpiringCodeStoreTests extends JdbcTestBase {
     public void testExpirationCleaner() throws Exception {
         if (JdbcExpiringCodeStore.class == expiringCodeStoreClass) {
             jdbcTemplate.update(JdbcExpiringCodeStore.insert, "test", System.currentTimeMillis() - 1000, "{}", null);
-            ((JdbcExpiringCodeStore) expiringCodeStore).cleanExpiredEntries();
+            new ExpiredRowsSweeper(jdbcTemplate, limitSqlAdapter, (JdbcExpiringCodeStore) expiringCodeStore).sweep();
             jdbcTemplate.queryForObject(JdbcExpiringCodeStore.select,
                             new JdbcExpiringCodeStore.JdbcExpiringCodeMapper(), "test");
         } else {
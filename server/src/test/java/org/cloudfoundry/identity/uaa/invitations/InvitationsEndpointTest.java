@@ -0,0 +1,142 @@
+package org.cloudfoundry.identity.uaa.invitations;
+
+import org.cloudfoundry.identity.uaa.codestore.InMemoryExpiringCodeStore;
+import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
+import org.cloudfoundry.identity.uaa.provider.IdentityProviderProvisioning;
+import org.cloudfoundry.identity.uaa.provider.SamlIdentityProviderDefinition;
+import org.cloudfoundry.identity.uaa.scim.ScimUser;
+import org.cloudfoundry.identity.uaa.scim.ScimUserProvisioning;
+import org.cloudfoundry.identity.uaa.scim.exception.InvalidScimResourceException;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InvitationsEndpointTest {
+
+    private static final String SAML_ORIGIN = "saml-idp";
+
+    private ScimUserProvisioning users;
+    private IdentityProviderProvisioning providers;
+    private InvitationsEndpoint endpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        users = mock(ScimUserProvisioning.class);
+        providers = mock(IdentityProviderProvisioning.class);
+        ClientDetailsService clients = mock(ClientDetailsService.class);
+        when(clients.loadClientByClientId("client")).thenReturn(new BaseClientDetails("client", null, null, null, null));
+
+        IdentityProvider uaa = new IdentityProvider();
+        uaa.setOriginKey(OriginKeys.UAA);
+        uaa.setType(OriginKeys.UAA);
+        IdentityProvider saml = new IdentityProvider();
+        SamlIdentityProviderDefinition definition = new SamlIdentityProviderDefinition();
+        definition.setEmailDomain(Collections.singletonList("example.org"));
+        saml.setConfig(definition);
+        saml.setOriginKey(SAML_ORIGIN);
+        when(providers.retrieveActive(IdentityZoneHolder.get().getId())).thenReturn(Arrays.asList(uaa, saml));
+
+        endpoint = new InvitationsEndpoint(users, providers, clients, new InMemoryExpiringCodeStore());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void failed_batch_falls_back_to_creating_users_one_at_a_time() throws Exception {
+        when(users.retrieveByEmailsAndOrigin(anyCollection(), eq(OriginKeys.UAA))).thenReturn(Collections.emptyList());
+        when(users.createUsers(anyList(), anyList())).thenThrow(new InvalidScimResourceException("invalid user in batch"));
+        when(users.query(anyString())).thenReturn(Collections.emptyList());
+        doAnswer(invocation -> {
+            ScimUser user = (ScimUser) invocation.getArguments()[0];
+            if (user.getPrimaryEmail().startsWith("bad")) {
+                throw new InvalidScimResourceException("invalid user");
+            }
+            return withId(user);
+        }).when(users).createUser(any(ScimUser.class), anyString());
+
+        InvitationsResponse response = invite("good@example.com", "bad@example.com").getBody();
+
+        verify(users, times(2)).createUser(any(ScimUser.class), anyString());
+        assertEquals(1, response.getNewInvites().size());
+        assertEquals("good@example.com", response.getNewInvites().get(0).getEmail());
+        assertEquals(1, response.getFailedInvites().size());
+        assertEquals("bad@example.com", response.getFailedInvites().get(0).getEmail());
+        assertEquals("invitation.exception", response.getFailedInvites().get(0).getErrorCode());
+    }
+
+    @Test
+    public void invitations_keep_the_request_order_across_origins() throws Exception {
+        when(users.retrieveByEmailsAndOrigin(anyCollection(), eq(SAML_ORIGIN))).thenReturn(Arrays.asList(
+            user("existing-2", "b@example.org", SAML_ORIGIN),
+            user("existing-1", "d@example.org", SAML_ORIGIN)
+        ));
+        when(users.retrieveByEmailsAndOrigin(anyCollection(), eq(OriginKeys.UAA))).thenReturn(Collections.emptyList());
+        doAnswer(invocation -> {
+            List<ScimUser> created = new ArrayList<>();
+            for (Object user : (List<?>) invocation.getArguments()[0]) {
+                created.add(withId((ScimUser) user));
+            }
+            return created;
+        }).when(users).createUsers(anyList(), anyList());
+
+        InvitationsResponse response = invite("a@example.com", "b@example.org", "c@example.com", "d@example.org").getBody();
+
+        assertEquals(0, response.getFailedInvites().size());
+        List<InvitationsResponse.Invitee> invites = response.getNewInvites();
+        assertEquals(4, invites.size());
+        assertEquals("a@example.com", invites.get(0).getEmail());
+        assertEquals(OriginKeys.UAA, invites.get(0).getOrigin());
+        assertEquals("b@example.org", invites.get(1).getEmail());
+        assertEquals(SAML_ORIGIN, invites.get(1).getOrigin());
+        assertEquals("existing-2", invites.get(1).getUserId());
+        assertEquals("c@example.com", invites.get(2).getEmail());
+        assertEquals(OriginKeys.UAA, invites.get(2).getOrigin());
+        assertEquals("d@example.org", invites.get(3).getEmail());
+        assertEquals("existing-1", invites.get(3).getUserId());
+        verify(users, times(1)).createUsers(anyList(), anyList());
+    }
+
+    private ResponseEntity<InvitationsResponse> invite(String... emails) {
+        return endpoint.inviteUsers(new InvitationsRequest(emails), "client", "http://example.com/redirect");
+    }
+
+    private static ScimUser user(String id, String email, String origin) {
+        ScimUser user = new ScimUser(id, email, "", "");
+        user.setPrimaryEmail(email);
+        user.setOrigin(origin);
+        return user;
+    }
+
+    private static ScimUser withId(ScimUser user) {
+        return user(user.getPrimaryEmail() + "-id", user.getPrimaryEmail(), user.getOrigin());
+    }
+}
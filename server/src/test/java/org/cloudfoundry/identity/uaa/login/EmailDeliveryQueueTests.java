@@ -0,0 +1,208 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.login;
+
+import org.cloudfoundry.identity.uaa.message.EmailDeliveryQueue;
+import org.cloudfoundry.identity.uaa.message.util.FakeJavaMailSender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mail.MailSendException;
+
+import javax.mail.internet.MimeMessage;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EmailDeliveryQueueTests {
+
+    private EmailDeliveryQueue queue;
+    private FakeJavaMailSender mailSender;
+
+    @Before
+    public void setUp() {
+        queue = new EmailDeliveryQueue();
+        queue.setEnabled(true);
+        queue.setInitialBackoffMillis(10);
+        mailSender = new FakeJavaMailSender();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.destroy();
+    }
+
+    @Test
+    public void disabled_queue_sends_on_the_calling_thread() {
+        queue.setEnabled(false);
+        queue.send(mailSender, mailSender.createMimeMessage());
+        assertEquals(1, mailSender.getSentMessages().size());
+        assertEquals(0, queue.getQueuedCount());
+    }
+
+    @Test
+    public void messages_are_sent_in_batches() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger batches = new AtomicInteger();
+        FakeJavaMailSender blockingSender = new FakeJavaMailSender() {
+            @Override
+            public void send(MimeMessage[] mimeMessages) {
+                batches.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(mimeMessages);
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            queue.send(blockingSender, blockingSender.createMimeMessage());
+        }
+        release.countDown();
+        waitFor(() -> queue.getSentCount() == 10);
+
+        assertEquals(10, blockingSender.getSentMessages().size());
+        assertTrue("messages queued while sending should share a batch", batches.get() < 10);
+        assertEquals(10, queue.getQueuedCount());
+    }
+
+    @Test
+    public void failed_messages_are_retried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        FakeJavaMailSender flakySender = new FakeJavaMailSender() {
+            @Override
+            public void send(MimeMessage[] mimeMessages) {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new MailSendException("relay unavailable");
+                }
+                super.send(mimeMessages);
+            }
+        };
+        queue.send(flakySender, flakySender.createMimeMessage());
+        waitFor(() -> queue.getSentCount() == 1);
+
+        assertEquals(1, flakySender.getSentMessages().size());
+        assertEquals(2, queue.getRetryCount());
+        assertEquals(0, queue.getFailedCount());
+    }
+
+    @Test
+    public void only_rejected_messages_are_retried() throws Exception {
+        MimeMessage rejected = mailSender.createMimeMessage();
+        AtomicInteger attempts = new AtomicInteger();
+        FakeJavaMailSender partialSender = new FakeJavaMailSender() {
+            @Override
+            public void send(MimeMessage[] mimeMessages) {
+                attempts.incrementAndGet();
+                throw new MailSendException(Collections.singletonMap(rejected, new Exception("rejected")));
+            }
+        };
+        queue.setMaxAttempts(2);
+        queue.send(partialSender, rejected);
+        waitFor(() -> queue.getFailedCount() == 1);
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, queue.getRetryCount());
+    }
+
+    @Test
+    public void full_queue_sends_on_the_calling_thread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FakeJavaMailSender blockingSender = new FakeJavaMailSender() {
+            @Override
+            public void send(MimeMessage[] mimeMessages) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(mimeMessages);
+            }
+        };
+        queue.setCapacity(1);
+        queue.setBatchSize(1);
+        queue.send(blockingSender, blockingSender.createMimeMessage());
+        waitFor(() -> queue.getSize() == 0);
+        queue.send(blockingSender, blockingSender.createMimeMessage());
+        queue.send(blockingSender, blockingSender.createMimeMessage());
+
+        assertEquals(1, queue.getSentByCallerCount());
+        assertEquals(1, blockingSender.getSentMessages().size());
+        release.countDown();
+    }
+
+    @Test
+    public void queued_messages_are_sent_on_shutdown() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FakeJavaMailSender blockingSender = new FakeJavaMailSender() {
+            @Override
+            public void send(MimeMessage[] mimeMessages) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(mimeMessages);
+            }
+        };
+        queue.setBatchSize(1);
+        for (int i = 0; i < 3; i++) {
+            queue.send(blockingSender, blockingSender.createMimeMessage());
+        }
+        queue.destroy();
+        assertEquals(3, blockingSender.getSentMessages().size());
+    }
+
+    @Test
+    public void retries_waiting_at_shutdown_get_a_last_attempt() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        FakeJavaMailSender flakySender = new FakeJavaMailSender() {
+            @Override
+            public void send(MimeMessage[] mimeMessages) {
+                if (attempts.incrementAndGet() < 2) {
+                    throw new MailSendException("relay unavailable");
+                }
+                super.send(mimeMessages);
+            }
+        };
+        queue.setInitialBackoffMillis(60000);
+        queue.send(flakySender, flakySender.createMimeMessage());
+        waitFor(() -> queue.getRetryCount() == 1);
+        queue.destroy();
+
+        assertEquals(1, flakySender.getSentMessages().size());
+        assertEquals(0, queue.getFailedCount());
+    }
+
+    @Test
+    public void messages_are_sent_on_the_calling_thread_after_shutdown() throws Exception {
+        queue.destroy();
+        queue.send(mailSender, mailSender.createMimeMessage());
+        assertEquals(1, mailSender.getSentMessages().size());
+        assertEquals(0, queue.getQueuedCount());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
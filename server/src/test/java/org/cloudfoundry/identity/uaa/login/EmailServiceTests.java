@@ -1,14 +1,18 @@
 package org.cloudfoundry.identity.uaa.login;
 
+import org.cloudfoundry.identity.uaa.message.EmailDeliveryQueue;
 import org.cloudfoundry.identity.uaa.message.util.FakeJavaMailSender;
 import org.cloudfoundry.identity.uaa.message.EmailService;
 import org.cloudfoundry.identity.uaa.message.MessageType;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.mail.MailSendException;
 
 import javax.mail.Address;
 import javax.mail.Message;
 import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.EnumSet;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
@@ -52,4 +56,39 @@ public class EmailServiceTests {
         assertThat(fromAddress.getAddress(), equalTo("admin@login.example.com"));
         assertThat(fromAddress.getPersonal(), equalTo("Best Company"));
     }
+
+    @Test(expected = MailSendException.class)
+    public void testSendFailureReachesCallerForMessageTypesThatAreNotQueued() throws Exception {
+        FakeJavaMailSender failingSender = new FakeJavaMailSender() {
+            @Override
+            public synchronized void send(MimeMessage mimeMessage) {
+                throw new MailSendException("relay unavailable");
+            }
+        };
+        EmailDeliveryQueue deliveryQueue = new EmailDeliveryQueue();
+        deliveryQueue.setEnabled(true);
+        EmailService emailService = new EmailService(failingSender, "http://login.example.com/login", "");
+        emailService.setDeliveryQueue(deliveryQueue);
+        emailService.setQueuedMessageTypes(EnumSet.of(MessageType.INVITATION));
+
+        try {
+            emailService.sendMessage("user@example.com", MessageType.PASSWORD_RESET, "Test Message", "<html><body>hi</body></html>");
+        } finally {
+            deliveryQueue.destroy();
+        }
+    }
+
+    @Test
+    public void testQueuedMessageTypesAreHandedToTheDeliveryQueue() throws Exception {
+        EmailDeliveryQueue deliveryQueue = new EmailDeliveryQueue();
+        deliveryQueue.setEnabled(true);
+        EmailService emailService = new EmailService(mailSender, "http://login.example.com/login", "");
+        emailService.setDeliveryQueue(deliveryQueue);
+        emailService.setQueuedMessageTypes(EnumSet.of(MessageType.INVITATION));
+
+        emailService.sendMessage("user@example.com", MessageType.INVITATION, "Test Message", "<html><body>hi</body></html>");
+        assertThat(deliveryQueue.getQueuedCount(), equalTo(1L));
+        deliveryQueue.destroy();
+        assertThat(mailSender.getSentMessages(), hasSize(1));
+    }
 }
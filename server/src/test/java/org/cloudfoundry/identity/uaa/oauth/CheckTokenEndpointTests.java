@@ -46,6 +46,7 @@ import org.springframework.security.oauth2.common.exceptions.InvalidScopeExcepti
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.client.BaseClientDetails;
 import org.springframework.security.oauth2.provider.client.InMemoryClientDetailsService;
@@ -69,6 +70,9 @@ import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(Parameterized.class)
@@ -289,6 +293,8 @@ public class CheckTokenEndpointTests {
         userDatabase = mock(UaaUserDatabase.class);
         when(userDatabase.retrieveUserById(eq(userId))).thenReturn(user);
         when(userDatabase.retrieveUserById(AdditionalMatchers.not(eq(userId)))).thenThrow(new UsernameNotFoundException("mock"));
+        when(userDatabase.retrieveUserForTokenValidation(eq(userId))).thenReturn(user);
+        when(userDatabase.retrieveUserForTokenValidation(AdditionalMatchers.not(eq(userId)))).thenThrow(new UsernameNotFoundException("mock"));
         tokenServices.setUserDatabase(userDatabase);
     }
 
@@ -312,6 +318,20 @@ public class CheckTokenEndpointTests {
         endpoint.checkToken(getAccessToken(), Collections.emptyList());
     }
 
+    @Test
+    public void testTokenIsValidatedOnlyOnce() throws Exception {
+        setAccessToken(tokenServices.createAccessToken(authentication));
+        mockUserDatabase(userId, user);
+        ClientDetailsService clientDetailsSpy = spy(clientDetailsService);
+        tokenServices.setClientDetailsService(clientDetailsSpy);
+
+        endpoint.checkToken(getAccessToken(), Collections.emptyList());
+
+        verify(userDatabase, times(1)).retrieveUserForTokenValidation(userId);
+        verify(clientDetailsSpy, times(1)).loadClientByClientId("client");
+        verify(tokenProvisioning, times(useOpaque ? 1 : 0)).retrieve(anyString());
+    }
+
     private String getAccessToken() {
         return accessToken.getValue();
     }
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.zone.IdentityZone;
+import org.cloudfoundry.identity.uaa.zone.MultitenancyFixture;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.Authentication;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class KeyInfoRegistryTests {
+
+    private KeyInfoRegistry registry;
+    private Map<String, String> definitions;
+
+    @Before
+    public void setUp() {
+        registry = new KeyInfoRegistry();
+        definitions = new HashMap<>();
+        definitions.put("key1", "signing-key-1");
+        definitions.put("key2", "signing-key-2");
+    }
+
+    @Test
+    public void keys_are_parsed_once_per_zone() {
+        Map<String, KeyInfo> keys = registry.getKeys("zone1", definitions);
+        assertEquals(2, keys.size());
+        assertEquals("signing-key-1", keys.get("key1").getSigningKey());
+        assertEquals("key2", keys.get("key2").getKeyId());
+
+        assertSame(keys.get("key1"), registry.getKeys("zone1", definitions).get("key1"));
+        assertEquals(1, registry.getMissCount());
+        assertEquals(1, registry.getHitCount());
+
+        registry.getKeys("zone2", definitions);
+        assertEquals(2, registry.getMissCount());
+        assertEquals(2, registry.getSize());
+    }
+
+    @Test
+    public void changed_definitions_are_reparsed() {
+        KeyInfo key1 = registry.getKeys("zone1", definitions).get("key1");
+
+        definitions.put("key1", "rotated-key");
+        KeyInfo rotated = registry.getKeys("zone1", definitions).get("key1");
+        assertNotSame(key1, rotated);
+        assertEquals("rotated-key", rotated.getSigningKey());
+        assertEquals(2, registry.getMissCount());
+    }
+
+    @Test
+    public void zone_events_invalidate_entries() {
+        IdentityZone zone = MultitenancyFixture.identityZone("zone1", "zone1");
+        KeyInfo key1 = registry.getKeys(zone.getId(), definitions).get("key1");
+
+        registry.onApplicationEvent(IdentityZoneModifiedEvent.identityZoneModified(zone));
+        assertEquals(0, registry.getSize());
+        assertNotSame(key1, registry.getKeys(zone.getId(), definitions).get("key1"));
+
+        registry.onApplicationEvent(new EntityDeletedEvent<>(zone, mock(Authentication.class)));
+        assertEquals(0, registry.getSize());
+    }
+}
@@ -20,6 +20,7 @@ import org.cloudfoundry.identity.uaa.authentication.UaaPrincipal;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.oauth.UaaTokenStore;
 import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredRowsSweeper;
 import org.cloudfoundry.identity.uaa.util.UaaStringUtils;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.junit.Before;
@@ -224,6 +225,7 @@ public class UaaTokenStoreTests extends JdbcTestBase {
             fail();
         } catch (InvalidGrantException e) {
         }
+        new ExpiredRowsSweeper(jdbcTemplate, limitSqlAdapter, store).sweep();
         assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM oauth_code", Integer.class), is(0));
 
     }
@@ -235,18 +237,21 @@ public class UaaTokenStoreTests extends JdbcTestBase {
         for (int i=0; i<count; i++) {
             legacyCodeServices.createAuthorizationCode(clientAuthentication);
         }
+        ExpiredRowsSweeper sweeper = new ExpiredRowsSweeper(jdbcTemplate, limitSqlAdapter, store);
         assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM oauth_code", Integer.class), is(count));
         jdbcTemplate.update("UPDATE oauth_code SET created = ?", new Timestamp(System.currentTimeMillis() - (2 * oneday)));
         try {
             store.consumeAuthorizationCode("non-existent");
             fail();
         } catch (InvalidGrantException e) {}
+        sweeper.sweep();
         assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM oauth_code", Integer.class), is(count));
         jdbcTemplate.update("UPDATE oauth_code SET created = ?", new Timestamp(System.currentTimeMillis() - (4 * oneday)));
         try {
             store.consumeAuthorizationCode("non-existent");
             fail();
         } catch (InvalidGrantException e) {}
+        sweeper.sweep();
         assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM oauth_code", Integer.class), is(0));
     }
 
@@ -66,6 +66,7 @@ public class UserManagedAuthzApprovalHandlerTests extends JdbcTestBase {
             new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter),
             new SimpleSearchQueryConverter()
         );
+        approvalStore.setTransactionManager(transactionManager);
         handler.setApprovalStore(approvalStore);
         handler.setClientDetailsService(
             mockClientDetailsService(
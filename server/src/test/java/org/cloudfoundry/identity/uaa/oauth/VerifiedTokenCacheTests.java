@@ -0,0 +1,146 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.oauth;
+
+import org.cloudfoundry.identity.uaa.oauth.jwt.IdentifiedSigner;
+import org.cloudfoundry.identity.uaa.oauth.jwt.JwtHelper;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
+import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.util.TokenValidation;
+import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
+import org.cloudfoundry.identity.uaa.zone.MultitenancyFixture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.CID;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.EXP;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.JTI;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.SCOPE;
+import static org.cloudfoundry.identity.uaa.oauth.token.ClaimConstants.USER_ID;
+import static org.cloudfoundry.identity.uaa.util.TokenValidation.validate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+
+public class VerifiedTokenCacheTests {
+
+    private VerifiedTokenCache cache;
+    private String token;
+    private TokenValidation validation;
+
+    @Before
+    public void setUp() {
+        cache = new VerifiedTokenCache();
+        cache.setEnabled(true);
+        token = createToken("token-id", "user-id", "client-id", System.currentTimeMillis() / 1000 + 3600);
+        validation = validate(token);
+    }
+
+    @After
+    public void clearZone() {
+        IdentityZoneHolder.clear();
+    }
+
+    @Test
+    public void disabled_cache_never_returns_entries() {
+        cache.setEnabled(false);
+        cache.put(token, validation);
+        assertNull(cache.get(token));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void verified_token_is_returned() {
+        assertNull(cache.get(token));
+        cache.put(token, validation);
+        assertEquals(validation.getClaims(), cache.get(token).getClaims());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void callers_get_their_own_copy() {
+        cache.put(token, validation);
+        TokenValidation first = cache.get(token);
+        TokenValidation second = cache.get(token);
+        assertNotSame(first, second);
+        assertNotSame(validation, first);
+
+        first.getClaims().put(USER_ID, "changed");
+        ((List<String>) first.getClaims().get(SCOPE)).add("changed");
+        validation.getClaims().remove(CID);
+
+        TokenValidation third = cache.get(token);
+        assertEquals("user-id", third.getClaims().get(USER_ID));
+        assertEquals(Arrays.asList("openid"), third.getClaims().get(SCOPE));
+        assertEquals("client-id", third.getClaims().get(CID));
+    }
+
+    @Test
+    public void entries_are_zone_specific() {
+        cache.put(token, validation);
+        IdentityZoneHolder.set(MultitenancyFixture.identityZone("other", "other"));
+        assertNull(cache.get(token));
+    }
+
+    @Test
+    public void expired_tokens_are_not_returned() {
+        String expired = createToken("token-id", "user-id", "client-id", System.currentTimeMillis() / 1000 - 10);
+        cache.put(expired, validate(expired));
+        assertNull(cache.get(expired));
+    }
+
+    @Test
+    public void revocations_invalidate_entries() {
+        cache.put(token, validation);
+        cache.invalidateClient("other-client");
+        assertEquals(validation.getClaims(), cache.get(token).getClaims());
+
+        cache.invalidateUser("user-id");
+        assertNull(cache.get(token));
+
+        cache.put(token, validation);
+        cache.invalidateClient("client-id");
+        assertNull(cache.get(token));
+
+        cache.put(token, validation);
+        cache.invalidateTokenId("token-id");
+        assertNull(cache.get(token));
+        assertEquals(3, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void user_modification_invalidates_entries() {
+        cache.put(token, validation);
+        cache.onApplicationEvent(UserModifiedEvent.userModified("user-id", "marissa"));
+        assertNull(cache.get(token));
+    }
+
+    private String createToken(String tokenId, String userId, String clientId, long exp) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JTI, tokenId);
+        claims.put(USER_ID, userId);
+        claims.put(CID, clientId);
+        claims.put(EXP, exp);
+        claims.put(SCOPE, Arrays.asList("openid"));
+        return JwtHelper.encode(JsonUtils.writeValueAsString(claims), new IdentifiedSigner("kid", new MacSigner("key"))).getEncoded();
+    }
+}
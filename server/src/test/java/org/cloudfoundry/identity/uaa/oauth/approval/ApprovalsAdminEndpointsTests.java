@@ -74,6 +74,7 @@ public class ApprovalsAdminEndpointsTests extends JdbcTestBase {
 
         dao = new JdbcApprovalStore(jdbcTemplate, new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter),
                         new SimpleSearchQueryConverter());
+        dao.setTransactionManager(transactionManager);
         endpoints = new ApprovalsAdminEndpoints();
         endpoints.setApprovalStore(dao);
         endpoints.setUaaUserDatabase(userDao);
@@ -16,6 +16,7 @@ import org.cloudfoundry.identity.uaa.approval.Approval;
 import org.cloudfoundry.identity.uaa.approval.ApprovalStore;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -32,6 +33,11 @@ public class InMemoryApprovalStore implements ApprovalStore {
         return store.add(approval);
     }
 
+    @Override
+    public boolean addApprovals(Collection<Approval> approvals) {
+        return store.addAll(approvals);
+    }
+
     @Override
     public boolean revokeApproval(Approval approval) {
         for (Approval a : store) {
@@ -65,4 +71,16 @@ public class InMemoryApprovalStore implements ApprovalStore {
         return returnList;
     }
 
+    @Override
+    public List<Approval> getApprovalsForUsers(Collection<String> userIds) {
+        ArrayList<Approval> returnList = new ArrayList<Approval>();
+
+        for (Approval a : store) {
+            if (userIds.contains(a.getUserId())) {
+                returnList.add(a);
+            }
+        }
+        return returnList;
+    }
+
 }
@@ -13,6 +13,8 @@
 package org.cloudfoundry.identity.uaa.oauth.approval;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -52,6 +54,7 @@ public class JdbcApprovalStoreTests extends JdbcTestBase {
 
         dao = new JdbcApprovalStore(jdbcTemplate, new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter),
                         new SimpleSearchQueryConverter());
+        dao.setTransactionManager(transactionManager);
 
         eventPublisher = TestApplicationEventPublisher.forEventClass(ApprovalModifiedEvent.class);
         dao.setApplicationEventPublisher(eventPublisher);
@@ -117,6 +120,74 @@ public class JdbcApprovalStoreTests extends JdbcTestBase {
         assertEquals(1, dao.getApprovals("u1", "c1").size());
     }
 
+    @Test
+    public void canGetApprovalsForSeveralUsers() {
+        assertEquals(3, dao.getApprovalsForUsers(Arrays.asList("u1", "u2")).size());
+        assertEquals(1, dao.getApprovalsForUsers(Arrays.asList("u2", "u3")).size());
+        assertEquals(0, dao.getApprovalsForUsers(Collections.<String>emptyList()).size());
+    }
+
+    @Test
+    public void canAddSeveralApprovalsAtOnce() {
+        eventPublisher.clearEvents();
+        assertTrue(dao.addApprovals(Arrays.asList(
+            new Approval()
+                .setUserId("u1")
+                .setClientId("c1")
+                .setScope("uaa.user")
+                .setExpiresAt(Approval.timeFromNow(12000))
+                .setStatus(DENIED),
+            new Approval()
+                .setUserId("u1")
+                .setClientId("c1")
+                .setScope("openid")
+                .setExpiresAt(Approval.timeFromNow(12000))
+                .setStatus(APPROVED))));
+        List<Approval> apps = dao.getApprovals("u1", "c1");
+        assertEquals(2, apps.size());
+        for (Approval app : apps) {
+            assertEquals("openid".equals(app.getScope()) ? APPROVED : DENIED, app.getStatus());
+        }
+        assertEquals(2, eventPublisher.getEventCount());
+    }
+
+    @Test
+    public void repeatedApprovalsInOneBatchKeepTheLast() {
+        eventPublisher.clearEvents();
+        assertTrue(dao.addApprovals(Arrays.asList(
+            new Approval()
+                .setUserId("u2")
+                .setClientId("c2")
+                .setScope("openid")
+                .setExpiresAt(Approval.timeFromNow(12000))
+                .setStatus(APPROVED),
+            new Approval()
+                .setUserId("u2")
+                .setClientId("c2")
+                .setScope("openid")
+                .setExpiresAt(Approval.timeFromNow(12000))
+                .setStatus(DENIED))));
+        List<Approval> apps = dao.getApprovals("u2", "c2");
+        assertEquals(1, apps.size());
+        assertEquals(DENIED, apps.get(0).getStatus());
+        assertEquals(1, eventPublisher.getEventCount());
+    }
+
+    @Test
+    public void cachedApprovalsAreDroppedOnChange() {
+        dao.setCacheEnabled(true);
+        assertEquals(1, dao.getApprovals("u1", "c1").size());
+        jdbcTemplate.update("delete from authz_approvals where user_id='u1' and client_id='c1'");
+        assertEquals(1, dao.getApprovals("u1", "c1").size());
+
+        addApproval("u1", "c1", "openid", 6000, APPROVED);
+        assertEquals(1, dao.getApprovals("u1", "c1").size());
+        assertEquals("openid", dao.getApprovals("u1", "c1").get(0).getScope());
+
+        dao.revokeApprovals("client_id eq \"c1\"");
+        assertEquals(0, dao.getApprovals("u1", "c1").size());
+    }
+
     @Test
     public void canAddApproval() {
         assertTrue(dao.addApproval(new Approval()
@@ -3,7 +3,12 @@ package org.cloudfoundry.identity.uaa.oauth.jwt;
 import org.junit.Test;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
 
+import java.util.Map;
+
 import static org.junit.Assert.*;
+import static org.springframework.security.jwt.codec.Codecs.b64UrlEncode;
+import static org.springframework.security.jwt.codec.Codecs.utf8Decode;
+import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
 
 public class JwtHelperTest {
 
@@ -17,4 +22,68 @@ public class JwtHelperTest {
         assertEquals("testKid", jwt.getHeader().getKid());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testDecodeKeepsEncodedTokenAndVerifies() {
+        MacSigner macSigner = new MacSigner("symmetricKey");
+        Jwt encoded = JwtHelper.encode("{\"sub\":\"marissa\"}", new IdentifiedSigner("testKid", macSigner));
+
+        Jwt decoded = JwtHelper.decode(encoded.getEncoded());
+        assertEquals(encoded.getEncoded(), decoded.getEncoded());
+        assertEquals("{\"sub\":\"marissa\"}", decoded.getClaims());
+        decoded.verifySignature(macSigner);
+    }
+
+    @Test
+    public void testHeaderValuesWithSeparators() {
+        String header = "{ \"alg\" : \"HS256\", \"kid\":\"key,with:separators \\\"quoted\\\"\", \"jku\":\"https://uaa.example.com:8443/token_keys\", \"x\": 5 }";
+        String token = utf8Decode(b64UrlEncode(utf8Encode(header))) + "." + utf8Decode(b64UrlEncode(utf8Encode("{}"))) + ".c2ln";
+
+        Jwt jwt = JwtHelper.decode(token);
+        assertEquals("HS256", jwt.getHeader().getAlg());
+        assertEquals("key,with:separators \"quoted\"", jwt.getHeader().getKid());
+    }
+
+    @Test
+    public void testParseHeaderMap() {
+        Map<String, String> map = JwtHeaderHelper.parseMap("{\"alg\":\"RS256\",\"kid\":\"a\\u0062c\",\"nothing\":null}");
+        assertEquals("RS256", map.get("alg"));
+        assertEquals("abc", map.get("kid"));
+        assertTrue(map.containsKey("nothing"));
+        assertNull(map.get("nothing"));
+        assertTrue(JwtHeaderHelper.parseMap("  ").isEmpty());
+        assertTrue(JwtHeaderHelper.parseMap("{}").isEmpty());
+    }
+
+    @Test
+    public void testHeaderWithX5cAndCrit() {
+        String header = "{\"alg\":\"RS256\",\"x5c\":[\"MIIC]x\\\"y\",\"MIID\"],\"crit\":[\"exp\"],"
+            + "\"jwk\":{\"kty\":\"RSA\",\"n\":\"}{\"},\"kid\":\"key-1\"}";
+        String token = utf8Decode(b64UrlEncode(utf8Encode(header))) + "." + utf8Decode(b64UrlEncode(utf8Encode("{}"))) + ".c2ln";
+
+        Jwt jwt = JwtHelper.decode(token);
+        assertEquals("RS256", jwt.getHeader().getAlg());
+        assertEquals("key-1", jwt.getHeader().getKid());
+
+        Map<String, String> map = JwtHeaderHelper.parseMap(header);
+        assertTrue(map.containsKey("x5c"));
+        assertNull(map.get("x5c"));
+        assertTrue(map.containsKey("crit"));
+        assertNull(map.get("crit"));
+        assertNull(map.get("jwk"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnbalancedNestedHeaderValue() {
+        JwtHeaderHelper.parseMap("{\"alg\":\"HS256\",\"crit\":[\"exp\"}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateHeaderField() {
+        JwtHeaderHelper.parseMap("{\"alg\":\"HS256\",\"alg\":\"none\"}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnterminatedHeader() {
+        JwtHeaderHelper.parseMap("{\"alg\":\"HS256\"");
+    }
+}
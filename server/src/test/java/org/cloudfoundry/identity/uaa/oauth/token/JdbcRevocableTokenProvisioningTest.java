@@ -14,6 +14,7 @@ package org.cloudfoundry.identity.uaa.oauth.token;
 
 import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.cloudfoundry.identity.uaa.resources.jdbc.ExpiredRowsSweeper;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.cloudfoundry.identity.uaa.zone.MultitenancyFixture;
@@ -197,6 +198,8 @@ public class JdbcRevocableTokenProvisioningTest extends JdbcTestBase {
             dao.retrieve(tokenId);
             fail("Token should have been deleted");
         } catch (EmptyResultDataAccessException x) {}
+        assertEquals(1, (int)jdbcTemplate.queryForObject("select count(1) from revocable_tokens", Integer.class));
+        assertEquals(1, new ExpiredRowsSweeper(jdbcTemplate, limitSqlAdapter, dao).sweep());
         assertEquals(0, (int)jdbcTemplate.queryForObject("select count(1) from revocable_tokens", Integer.class));
     }
 
@@ -214,6 +217,47 @@ public class JdbcRevocableTokenProvisioningTest extends JdbcTestBase {
         } catch (EmptyResultDataAccessException x) {}
     }
 
+    @Test
+    public void cachedTokensAreDroppedOnChange() throws Exception {
+        dao.setCacheEnabled(true);
+        try {
+            dao.retrieve(tokenId);
+            fail("Token should not exist yet");
+        } catch (EmptyResultDataAccessException x) {}
+        try {
+            dao.retrieve(tokenId);
+            fail("Missing token should be remembered");
+        } catch (EmptyResultDataAccessException x) {}
+        assertEquals(1, dao.getCacheMissCount());
+        assertEquals(1, dao.getCacheHitCount());
+
+        insertToken();
+        RevocableToken cached = dao.retrieve(tokenId);
+        cached.setScope("modified");
+        assertEquals(scope, dao.retrieve(tokenId).getScope());
+
+        jdbcTemplate.update("UPDATE revocable_tokens SET scope=? WHERE token_id=?", "changed-elsewhere", tokenId);
+        assertEquals(scope, dao.retrieve(tokenId).getScope());
+        dao.update(tokenId, cached);
+        assertEquals("modified", dao.retrieve(tokenId).getScope());
+
+        dao.delete(tokenId, 0);
+        try {
+            dao.retrieve(tokenId);
+            fail("Token should have been deleted");
+        } catch (EmptyResultDataAccessException x) {}
+
+        IdentityZone zone = MultitenancyFixture.identityZone("test-zone","test-zone");
+        IdentityZoneHolder.set(zone);
+        insertToken();
+        dao.retrieve(tokenId);
+        dao.onApplicationEvent(new EntityDeletedEvent<>(zone, null));
+        try {
+            dao.retrieve(tokenId);
+            fail("Token should have been deleted");
+        } catch (EmptyResultDataAccessException x) {}
+    }
+
     @Test
     public void testDeleteByOrigin() throws Exception {
         //no op - doesn't affect tokens
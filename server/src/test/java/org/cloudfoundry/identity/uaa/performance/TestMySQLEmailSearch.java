@@ -235,7 +235,7 @@ public class TestMySQLEmailSearch extends JdbcTestBase {
 
     protected void time100UserFilter(String filter) {
         long start = System.currentTimeMillis();
-        SearchResults<?> results = endpoint.findUsers("id,userName,emails", filter.toString(), null, "ascending", 1, RESULT_COUNT);
+        SearchResults<?> results = endpoint.findUsers("id,userName,emails", filter.toString(), null, "ascending", 1, RESULT_COUNT, null, true);
         assertEquals(RESULT_COUNT, results.getTotalResults());
         long stop = System.currentTimeMillis();
         System.err.println("Time to query:"+(stop-start)+" ms.");
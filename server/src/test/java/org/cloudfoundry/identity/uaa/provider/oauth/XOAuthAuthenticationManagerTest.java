@@ -73,7 +73,9 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -395,6 +397,16 @@ public class XOAuthAuthenticationManagerTest {
         xoAuthAuthenticationManager.authenticate(xCodeToken);
     }
 
+    @Test
+    public void skipSslValidationDoesNotChangeTheDefaultTemplate() {
+        config.setSkipSslValidation(true);
+        assertSame(xoAuthAuthenticationManager.getNonValidatingRestTemplate(), xoAuthAuthenticationManager.getRestTemplate(config));
+        assertNotSame(xoAuthAuthenticationManager.getRestTemplate(), xoAuthAuthenticationManager.getRestTemplate(config));
+
+        config.setSkipSslValidation(false);
+        assertSame(xoAuthAuthenticationManager.getRestTemplate(), xoAuthAuthenticationManager.getRestTemplate(config));
+    }
+
     @Test
     public void authenticatedUser_hasAuthoritiesFromListOfIDTokenRoles() throws MalformedURLException {
         claims.put("scope", Arrays.asList("openid", "some.other.scope", "closedid"));
@@ -0,0 +1,186 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.provider.oauth;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class XOAuthTokenKeyCacheTest {
+
+    private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private volatile String keyResponse;
+    private volatile int status = 200;
+    private final AtomicInteger requests = new AtomicInteger();
+    private XOAuthTokenKeyCache cache;
+    private Supplier<Map<String, Object>> fetcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/token_keys", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = keyResponse.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        String url = "http://localhost:" + server.getAddress().getPort() + "/token_keys";
+        RestTemplate restTemplate = new RestTemplate();
+        fetcher = () -> restTemplate.exchange(url, HttpMethod.GET, null, new ParameterizedTypeReference<Map<String, Object>>() {}).getBody();
+
+        keyResponse = keys("key-1", "secret-1");
+        cache = new XOAuthTokenKeyCache();
+        cache.setEnabled(true);
+        cache.setRefreshIntervalInSeconds(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void keys_are_fetched_once() {
+        SignatureVerifier verifier = cache.getVerifier("provider", "key-1", fetcher);
+        assertTrue(verifies(verifier, "secret-1"));
+        assertSame(verifier, cache.getVerifier("provider", "key-1", fetcher));
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void disabled_cache_fetches_every_time() {
+        cache.setEnabled(false);
+        cache.getVerifier("provider", "key-1", fetcher);
+        cache.getVerifier("provider", "key-1", fetcher);
+        assertEquals(2, requests.get());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void unknown_key_id_refreshes_at_most_once_per_interval() {
+        cache.setMinRefreshIntervalInSeconds(0);
+        cache.getVerifier("provider", "key-1", fetcher);
+
+        keyResponse = keys("key-1", "secret-1", "key-2", "secret-2");
+        assertTrue(verifies(cache.getVerifier("provider", "key-2", fetcher), "secret-2"));
+        assertEquals(2, requests.get());
+
+        cache.setMinRefreshIntervalInSeconds(60);
+        assertNull(cache.getVerifier("provider", "key-3", fetcher));
+        assertNull(cache.getVerifier("provider", "key-3", fetcher));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void single_key_is_used_for_any_key_id() {
+        keyResponse = "{\"value\":\"secret-1\"}";
+        assertTrue(verifies(cache.getVerifier("provider", "unnamed", fetcher), "secret-1"));
+        assertTrue(verifies(cache.getVerifier("provider", null, fetcher), "secret-1"));
+    }
+
+    @Test
+    public void rotated_single_key_is_picked_up_after_a_failed_verification() {
+        keyResponse = "{\"value\":\"secret-1\"}";
+        cache.setMinRefreshIntervalInSeconds(0);
+        cache.getVerifier("provider", null, fetcher);
+
+        keyResponse = "{\"value\":\"rotated-secret\"}";
+        assertFalse(verifies(cache.getVerifier("provider", null, fetcher), "rotated-secret"));
+        assertTrue(verifies(cache.refreshVerifier("provider", null, fetcher), "rotated-secret"));
+        assertTrue(verifies(cache.getVerifier("provider", null, fetcher), "rotated-secret"));
+        assertEquals(2, requests.get());
+
+        cache.setMinRefreshIntervalInSeconds(60);
+        assertNull(cache.refreshVerifier("provider", null, fetcher));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void previous_keys_are_served_when_refresh_fails() {
+        cache.getVerifier("provider", "key-1", fetcher);
+
+        status = 500;
+        cache.refreshAll();
+        assertEquals(1, cache.getFailureCount());
+        assertTrue(verifies(cache.getVerifier("provider", "key-1", fetcher), "secret-1"));
+    }
+
+    @Test(expected = HttpServerErrorException.class)
+    public void first_fetch_failure_is_thrown() {
+        status = 500;
+        cache.getVerifier("provider", "key-1", fetcher);
+    }
+
+    @Test
+    public void keys_are_refreshed_in_the_background() throws Exception {
+        cache.setRefreshIntervalInSeconds(1);
+        cache.getVerifier("provider", "key-1", fetcher);
+
+        keyResponse = keys("key-1", "rotated-secret");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (requests.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(100);
+        assertTrue(verifies(cache.getVerifier("provider", "key-1", fetcher), "rotated-secret"));
+        assertFalse(verifies(cache.getVerifier("provider", "key-1", fetcher), "secret-1"));
+    }
+
+    private static String keys(String... kidsAndSecrets) {
+        StringBuilder builder = new StringBuilder("{\"keys\":[");
+        for (int i = 0; i < kidsAndSecrets.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"kid\":\"").append(kidsAndSecrets[i]).append("\",\"value\":\"").append(kidsAndSecrets[i + 1]).append("\"}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    private static boolean verifies(SignatureVerifier verifier, String secret) {
+        try {
+            verifier.verify(CONTENT, new MacSigner(secret).sign(CONTENT));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -3,10 +3,14 @@ package org.cloudfoundry.identity.uaa.provider.saml.idp;
 import static org.cloudfoundry.identity.uaa.provider.saml.idp.SamlTestUtils.mockSamlServiceProvider;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.Date;
 
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
@@ -91,4 +95,25 @@ public class ZoneAwareIdpMetadataManagerTest {
         assertEquals(0, configurator.getSamlServiceProvidersForZone(IdentityZoneHolder.get()).size());
         assertEquals(0, this.metadataManager.getManager(IdentityZoneHolder.get()).getAvailableProviders().size());
     }
+
+    @Test
+    public void testRefreshChangedProvidersOnlyAppliesNewVersions() throws Exception {
+        SamlServiceProvider provider = mockSamlServiceProvider().setId("sp-id").setLastModified(new Date(1000));
+        when(providerDao.retrieveModifiedSince(any(Date.class))).thenReturn(Arrays.asList(provider));
+        when(zoneDao.retrieve(IdentityZone.getUaa().getId())).thenReturn(IdentityZone.getUaa());
+        this.metadataManager.refreshChangedProviders();
+
+        assertEquals(1, configurator.getSamlServiceProvidersForZone(IdentityZoneHolder.get()).size());
+        assertEquals(1, this.metadataManager.getManager(IdentityZoneHolder.get()).getAvailableProviders().size());
+
+        provider.setActive(false);
+        this.metadataManager.refreshChangedProviders();
+        assertEquals(1, configurator.getSamlServiceProvidersForZone(IdentityZoneHolder.get()).size());
+
+        provider.setLastModified(new Date(2000));
+        this.metadataManager.refreshChangedProviders();
+        assertEquals(0, configurator.getSamlServiceProvidersForZone(IdentityZoneHolder.get()).size());
+        assertEquals(0, this.metadataManager.getManager(IdentityZoneHolder.get()).getAvailableProviders().size());
+        verify(zoneDao, never()).retrieveAll();
+    }
 }
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.resources.jdbc;
+
+import org.cloudfoundry.identity.uaa.codestore.JdbcExpiringCodeStore;
+import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExpiredRowsSweeperTests extends JdbcTestBase {
+
+    private JdbcExpiringCodeStore store;
+
+    @Before
+    public void createStore() {
+        store = new JdbcExpiringCodeStore(dataSource);
+        jdbcTemplate.update("delete from expiring_code_store");
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            jdbcTemplate.update(JdbcExpiringCodeStore.insert, "expired-" + i, now - 1000, "{}", null);
+        }
+        jdbcTemplate.update(JdbcExpiringCodeStore.insert, "valid", now + 60000, "{}", null);
+    }
+
+    @Test
+    public void expired_rows_are_deleted_in_chunks() {
+        ExpiredRowsSweeper sweeper = new ExpiredRowsSweeper(jdbcTemplate, limitSqlAdapter, store);
+        sweeper.setChunkSize(2);
+        sweeper.setPauseMillis(0);
+        assertEquals(5, sweeper.sweep());
+        assertEquals(1, (int) jdbcTemplate.queryForObject("select count(*) from expiring_code_store", Integer.class));
+        assertEquals(5, sweeper.getRowsSwept());
+        assertEquals(5, sweeper.getLastSweepRows());
+        assertEquals(1, sweeper.getSweepCount());
+    }
+
+    @Test
+    public void only_the_lease_holder_sweeps() {
+        ExpiredRowsSweeper first = new ExpiredRowsSweeper(jdbcTemplate, limitSqlAdapter, store);
+        ExpiredRowsSweeper second = new ExpiredRowsSweeper(jdbcTemplate, limitSqlAdapter, store);
+        assertEquals(5, first.sweep());
+
+        jdbcTemplate.update(JdbcExpiringCodeStore.insert, "expired-again", System.currentTimeMillis() - 1000, "{}", null);
+        assertEquals(0, second.sweep());
+        assertEquals(1, second.getLeasesMissed());
+        // the holder keeps the lease for the next interval
+        assertEquals(1, first.sweep());
+
+        jdbcTemplate.update("update sweeper_lease set expires_at=0");
+        jdbcTemplate.update(JdbcExpiringCodeStore.insert, "expired-later", System.currentTimeMillis() - 1000, "{}", null);
+        assertEquals(1, second.sweep());
+        assertEquals(0, first.sweep());
+    }
+}
@@ -44,6 +44,7 @@ public class ScimExternalGroupBootstrapTests extends JdbcTestBase {
     public void initScimExternalGroupBootstrapTests() {
         JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter);
         gDB = new JdbcScimGroupProvisioning(jdbcTemplate, pagingListFactory);
+        gDB.setTransactionManager(transactionManager);
         eDB = new JdbcScimGroupExternalMembershipManager(jdbcTemplate, pagingListFactory);
         ((JdbcScimGroupExternalMembershipManager) eDB).setScimGroupProvisioning(gDB);
         assertEquals(0, gDB.retrieveAll().size());
@@ -55,8 +55,10 @@ public class ScimGroupBootstrapTests extends JdbcTestBase {
         JdbcTemplate template = jdbcTemplate;
         JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(template, limitSqlAdapter);
         gDB = new JdbcScimGroupProvisioning(template, pagingListFactory);
+        gDB.setTransactionManager(transactionManager);
         uDB = new JdbcScimUserProvisioning(template, pagingListFactory);
         mDB = new JdbcScimGroupMembershipManager(template, pagingListFactory);
+        mDB.setTransactionManager(transactionManager);
         mDB.setScimGroupProvisioning(gDB);
         mDB.setScimUserProvisioning(uDB);
 
@@ -24,6 +24,7 @@ import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimGroupMembershipManager;
 import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimGroupProvisioning;
 import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcScimUserProvisioning;
 import org.cloudfoundry.identity.uaa.user.UaaUser;
+import org.cloudfoundry.identity.uaa.user.UaaUserDatabase;
 import org.cloudfoundry.identity.uaa.zone.IdentityZoneHolder;
 import org.flywaydb.core.Flyway;
 import org.flywaydb.core.api.MigrationVersion;
@@ -32,6 +33,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.mock.web.MockHttpServletResponse;
@@ -53,6 +55,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 public class ScimUserBootstrapTests {
 
@@ -82,7 +86,9 @@ public class ScimUserBootstrapTests {
         JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(jdbcTemplate, new DefaultLimitSqlAdapter());
         db = new JdbcScimUserProvisioning(jdbcTemplate, pagingListFactory);
         gdb = new JdbcScimGroupProvisioning(jdbcTemplate, pagingListFactory);
+        gdb.setTransactionManager(new DataSourceTransactionManager(database));
         mdb = new JdbcScimGroupMembershipManager(jdbcTemplate, pagingListFactory);
+        mdb.setTransactionManager(new DataSourceTransactionManager(database));
         mdb.setScimUserProvisioning(db);
         mdb.setScimGroupProvisioning(gdb);
         userEndpoints = new ScimUserEndpoints();
@@ -130,7 +136,7 @@ public class ScimUserBootstrapTests {
         bootstrap.afterPropertiesSet();
         @SuppressWarnings("unchecked")
         Collection<Map<String, Object>> users = (Collection<Map<String, Object>>) userEndpoints.findUsers("id",
-                        "id pr", "id", "ascending", 1, 100).getResources();
+                        "id pr", "id", "ascending", 1, 100, null, true).getResources();
         assertEquals(1, users.size());
 
         String id = (String) users.iterator().next().get("id");
@@ -150,7 +156,7 @@ public class ScimUserBootstrapTests {
         bootstrap.afterPropertiesSet();
         @SuppressWarnings("unchecked")
         Collection<Map<String, Object>> users = (Collection<Map<String, Object>>) userEndpoints.findUsers("id",
-                        "id pr", "id", "ascending", 1, 100).getResources();
+                        "id pr", "id", "ascending", 1, 100, null, true).getResources();
         assertEquals(1, users.size());
 
         String id = (String) users.iterator().next().get("id");
@@ -171,7 +177,7 @@ public class ScimUserBootstrapTests {
         bootstrap.afterPropertiesSet();
         @SuppressWarnings("unchecked")
         Collection<Map<String, Object>> users = (Collection<Map<String, Object>>) userEndpoints.findUsers("id",
-                        "id pr", "id", "ascending", 1, 100).getResources();
+                        "id pr", "id", "ascending", 1, 100, null, true).getResources();
         assertEquals(1, users.size());
 
         String id = (String) users.iterator().next().get("id");
@@ -192,7 +198,7 @@ public class ScimUserBootstrapTests {
         bootstrap.afterPropertiesSet();
         @SuppressWarnings("unchecked")
         Collection<Map<String, Object>> users = (Collection<Map<String, Object>>) userEndpoints.findUsers("id",
-                        "id pr", "id", "ascending", 1, 100).getResources();
+                        "id pr", "id", "ascending", 1, 100, null, true).getResources();
         assertEquals(1, users.size());
 
         String id = (String) users.iterator().next().get("id");
@@ -215,7 +221,7 @@ public class ScimUserBootstrapTests {
         bootstrap.afterPropertiesSet();
         @SuppressWarnings("unchecked")
         Collection<Map<String, Object>> users = (Collection<Map<String, Object>>) userEndpoints.findUsers("id",
-                        "id pr", "id", "ascending", 1, 100).getResources();
+                        "id pr", "id", "ascending", 1, 100, null, true).getResources();
         assertEquals(1, users.size());
 
         String id = (String) users.iterator().next().get("id");
@@ -298,6 +304,49 @@ public class ScimUserBootstrapTests {
         validateAuthoritiesCreated(add?externalAuthorities:new String[0], userAuthorities, origin, created);
     }
 
+    @Test
+    public void unchangedExternalGroupsAreNotSynchronizedAgain() throws Exception {
+        String[] externalAuthorities = new String[] {"extTest1","extTest2"};
+        String[] userAuthorities = new String[] {"usrTest1"};
+        String origin = "testOrigin";
+        addIdentityProvider(jdbcTemplate,origin);
+        String username = new RandomValueStringGenerator().generate();
+        UaaUser user = getUaaUser(userAuthorities, origin, "test@test.org", "FirstName", "LastName", "", null, new RandomValueStringGenerator().generate(), username);
+        ScimUserBootstrap bootstrap = new ScimUserBootstrap(db, gdb, mdb, Arrays.asList(user));
+        bootstrap.setExternalGroupsExpiryInSeconds(60);
+        bootstrap.afterPropertiesSet();
+        ScimUser created = db.query("userName eq \""+username +"\" and origin eq \""+origin+"\"").get(0);
+        user = getUaaUser(userAuthorities, origin, "test@test.org", "FirstName", "LastName", "", null, created.getId(), username);
+
+        bootstrap.onApplicationEvent(new ExternalGroupAuthorizationEvent(user, false, getAuthorities(externalAuthorities), true));
+        validateAuthoritiesCreated(externalAuthorities, userAuthorities, origin, created);
+
+        String groupId = gdb.query("displayName eq \"extTest2\"").get(0).getId();
+        mdb.removeMemberById(groupId, created.getId());
+        bootstrap.onApplicationEvent(new ExternalGroupAuthorizationEvent(user, false, getAuthorities(new String[] {"EXTTEST2","extTest1"}), true));
+        validateAuthoritiesCreated(new String[] {"extTest1"}, userAuthorities, origin, created);
+
+        bootstrap.onApplicationEvent(new ExternalGroupAuthorizationEvent(user, false, getAuthorities(externalAuthorities), false));
+        validateAuthoritiesCreated(externalAuthorities, userAuthorities, origin, created);
+    }
+
+    @Test
+    public void externalLoginDropsTheUserValidationCacheEntry() throws Exception {
+        String origin = "testOrigin";
+        addIdentityProvider(jdbcTemplate,origin);
+        String username = new RandomValueStringGenerator().generate();
+        UaaUser user = getUaaUser(new String[0], origin, "test@test.org", "FirstName", "LastName", "", null, new RandomValueStringGenerator().generate(), username);
+        ScimUserBootstrap bootstrap = new ScimUserBootstrap(db, gdb, mdb, Arrays.asList(user));
+        UaaUserDatabase userDatabase = mock(UaaUserDatabase.class);
+        bootstrap.setUserDatabase(userDatabase);
+        bootstrap.afterPropertiesSet();
+        ScimUser created = db.query("userName eq \""+username +"\" and origin eq \""+origin+"\"").get(0);
+        user = getUaaUser(new String[0], origin, "test@test.org", "FirstName", "LastName", "", null, created.getId(), username);
+
+        bootstrap.onApplicationEvent(new ExternalGroupAuthorizationEvent(user, false, getAuthorities(new String[] {"extTest1"}), true));
+        verify(userDatabase).invalidateValidationCache(created.getId());
+    }
+
     @Test
     public void doNotAddNonExistentUsers() throws Exception {
         nonExistentGroupThroughEvent(false);
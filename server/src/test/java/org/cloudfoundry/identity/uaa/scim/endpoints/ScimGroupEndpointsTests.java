@@ -101,8 +101,10 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
         JdbcTemplate template = jdbcTemplate;
         JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(template, new DefaultLimitSqlAdapter());
         dao = new JdbcScimGroupProvisioning(template, pagingListFactory);
+        dao.setTransactionManager(transactionManager);
         udao = new JdbcScimUserProvisioning(template, pagingListFactory);
         mm = new JdbcScimGroupMembershipManager(template, pagingListFactory);
+        mm.setTransactionManager(transactionManager);
         mm.setScimGroupProvisioning(dao);
         mm.setScimUserProvisioning(udao);
         mm.setDefaultUserGroups(Collections.singleton("uaa.user"));
@@ -209,7 +211,7 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
 
     @Test
     public void testListGroups() throws Exception {
-        validateSearchResults(endpoints.listGroups("id,displayName", "id pr", "created", "ascending", 1, 100), 11);
+        validateSearchResults(endpoints.listGroups("id,displayName", "id pr", "created", "ascending", 1, 100, null, true), 11);
     }
 
     @Test
@@ -254,7 +256,7 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
 
     @Test
     public void testFindPageOfIds() {
-        SearchResults<?> results = endpoints.listGroups("id", "id pr", null, "ascending", 1, 1);
+        SearchResults<?> results = endpoints.listGroups("id", "id pr", null, "ascending", 1, 1, null, true);
         assertEquals(11, results.getTotalResults());
         assertEquals(1, results.getResources().size());
     }
@@ -264,7 +266,7 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
         int pageSize = dao.getPageSize();
         dao.setPageSize(1);
         try {
-            SearchResults<?> results = endpoints.listGroups("id", "id pr", null, "ascending", 1, 100);
+            SearchResults<?> results = endpoints.listGroups("id", "id pr", null, "ascending", 1, 100, null, true);
             assertEquals(11, results.getTotalResults());
             assertEquals(11, results.getResources().size());
         } finally {
@@ -275,32 +277,32 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
     @Test
     public void testListGroupsWithNameEqFilter() {
         validateSearchResults(endpoints.listGroups("id,displayName", "displayName eq \"uaa.user\"", "created",
-                        "ascending", 1, 100), 1);
+                        "ascending", 1, 100, null, true), 1);
     }
 
     @Test
     public void testListGroupsWithNameCoFilter() {
         validateSearchResults(endpoints.listGroups("id,displayName", "displayName co \"admin\"", "created", "ascending",
-                        1, 100), 1);
+                        1, 100, null, true), 1);
     }
 
     @Test
     public void testListGroupsWithInvalidFilterFails() {
         expectedEx.expect(ScimException.class);
         expectedEx.expectMessage("Invalid filter expression");
-        endpoints.listGroups("id,displayName", "displayName cr \"admin\"", "created", "ascending", 1, 100);
+        endpoints.listGroups("id,displayName", "displayName cr \"admin\"", "created", "ascending", 1, 100, null, true);
     }
 
     @Test
     public void testListGroupsWithInvalidAttributesFails() {
         expectedEx.expect(ScimException.class);
         expectedEx.expectMessage("Invalid attributes");
-        endpoints.listGroups("id,display", "displayName co \"admin\"", "created", "ascending", 1, 100);
+        endpoints.listGroups("id,display", "displayName co \"admin\"", "created", "ascending", 1, 100, null, true);
     }
 
     @Test
     public void testListGroupsWithNullAttributes() {
-        validateSearchResults(endpoints.listGroups(null, "displayName co \"admin\"", "created", "ascending", 1, 100), 1);
+        validateSearchResults(endpoints.listGroups(null, "displayName co \"admin\"", "created", "ascending", 1, 100, null, true), 1);
     }
 
     @Test
@@ -308,38 +310,38 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
         expectedEx.expect(ScimException.class);
         expectedEx.expectMessage("Invalid filter expression");
         endpoints.listGroups("id,display", "displayName='something'; select " + SQL_INJECTION_FIELDS
-                        + " from groups where displayName='something'", "created", "ascending", 1, 100);
+                        + " from groups where displayName='something'", "created", "ascending", 1, 100, null, true);
     }
 
     @Test
     public void legacyTestListGroupsWithNameEqFilter() {
         validateSearchResults(endpoints.listGroups("id,displayName", "displayName eq 'uaa.user'", "created",
-                "ascending", 1, 100), 1);
+                "ascending", 1, 100, null, true), 1);
     }
 
     @Test
     public void legacyTestListGroupsWithNameCoFilter() {
         validateSearchResults(endpoints.listGroups("id,displayName", "displayName co 'admin'", "created", "ascending",
-                1, 100), 1);
+                1, 100, null, true), 1);
     }
 
     @Test
     public void legacyTestListGroupsWithInvalidFilterFails() {
         expectedEx.expect(ScimException.class);
         expectedEx.expectMessage("Invalid filter expression");
-        endpoints.listGroups("id,displayName", "displayName cr 'admin'", "created", "ascending", 1, 100);
+        endpoints.listGroups("id,displayName", "displayName cr 'admin'", "created", "ascending", 1, 100, null, true);
     }
 
     @Test
     public void legacyTestListGroupsWithInvalidAttributesFails() {
         expectedEx.expect(ScimException.class);
         expectedEx.expectMessage("Invalid attributes");
-        endpoints.listGroups("id,display", "displayName co 'admin'", "created", "ascending", 1, 100);
+        endpoints.listGroups("id,display", "displayName co 'admin'", "created", "ascending", 1, 100, null, true);
     }
 
     @Test
     public void legacyTestListGroupsWithNullAttributes() {
-        validateSearchResults(endpoints.listGroups(null, "displayName co 'admin'", "created", "ascending", 1, 100), 1);
+        validateSearchResults(endpoints.listGroups(null, "displayName co 'admin'", "created", "ascending", 1, 100, null, true), 1);
     }
 
     @Test
@@ -379,7 +381,7 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
             endpoints.createGroup(g, new MockHttpServletResponse());
             fail("must have thrown exception");
         } catch (ScimResourceAlreadyExistsException ex) {
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100), 1);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100, null, true), 1);
         }
 
         deleteGroup("clients.read");
@@ -395,7 +397,7 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
             fail("must have thrown exception");
         } catch (InvalidScimResourceException ex) {
             // ensure that the group was not created
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100), 0);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100, null, true), 0);
         }
     }
 
@@ -505,8 +507,8 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
             endpoints.updateGroup(g1, g1.getId(), "*", new MockHttpServletResponse());
             fail("must have thrown exception");
         } catch (InvalidScimResourceException ex) {
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100), 1);
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100), 1);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100, null, true), 1);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100, null, true), 1);
         }
 
         deleteGroup("clients.read");
@@ -533,7 +535,7 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
             // ensure that displayName was not updated
             g1 = endpoints.getGroup(g1.getId(), new MockHttpServletResponse());
             validateGroup(g1, "clients.read", 0);
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100), 0);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100, null, true), 0);
         }
 
         deleteGroup("clients.read");
@@ -551,8 +553,8 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
             endpoints.updateGroup(g1, g1.getId(), "version", new MockHttpServletResponse());
         } catch (ScimException ex) {
             assertTrue("Wrong exception message", ex.getMessage().contains("Invalid version"));
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100), 0);
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100), 1);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100, null, true), 0);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100, null, true), 1);
         }
 
         deleteGroup("clients.read");
@@ -570,8 +572,8 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
             endpoints.updateGroup(g1, g1.getId(), null, new MockHttpServletResponse());
         } catch (ScimException ex) {
             assertTrue("Wrong exception message", ex.getMessage().contains("Missing If-Match"));
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100), 0);
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100), 1);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100, null, true), 0);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100, null, true), 1);
         }
 
         deleteGroup("clients.read");
@@ -587,8 +589,8 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
 
         endpoints.updateGroup(g1, g1.getId(), "\"*", new MockHttpServletResponse());
         endpoints.updateGroup(g1, g1.getId(), "*\"", new MockHttpServletResponse());
-        validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100), 1);
-        validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100), 0);
+        validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100, null, true), 1);
+        validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100, null, true), 0);
 
         deleteGroup("clients.write");
     }
@@ -604,8 +606,8 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
         try {
             endpoints.updateGroup(g1, g1.getId(), String.valueOf(g1.getVersion() + 23), new MockHttpServletResponse());
         } catch (ScimException ex) {
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100), 0);
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100), 1);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.write\"", "id", "ASC", 1, 100, null, true), 0);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100, null, true), 1);
         }
 
         deleteGroup("clients.read");
@@ -651,7 +653,7 @@ public class ScimGroupEndpointsTests extends JdbcTestBase {
         try {
             endpoints.deleteGroup(g.getId(), String.valueOf(g.getVersion() + 3), new MockHttpServletResponse());
         } catch (ScimException ex) {
-            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100), 1);
+            validateSearchResults(endpoints.listGroups("id", "displayName eq \"clients.read\"", "id", "ASC", 1, 100, null, true), 1);
         }
 
         deleteGroup("clients.read");
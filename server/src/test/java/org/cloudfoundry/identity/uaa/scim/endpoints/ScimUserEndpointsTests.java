@@ -67,6 +67,7 @@ import org.springframework.http.converter.HttpMessageConversionException;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -85,6 +86,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
@@ -156,8 +158,10 @@ public class ScimUserEndpointsTests {
         endpoints.setPasswordValidator(mockPasswordValidator);
 
         mm = new JdbcScimGroupMembershipManager(jdbcTemplate, pagingListFactory);
+        mm.setTransactionManager(new DataSourceTransactionManager(database));
         mm.setScimUserProvisioning(dao);
         JdbcScimGroupProvisioning gdao = new JdbcScimGroupProvisioning(jdbcTemplate, pagingListFactory);
+        gdao.setTransactionManager(new DataSourceTransactionManager(database));
         mm.setScimGroupProvisioning(gdao);
         mm.setDefaultUserGroups(Collections.singleton("uaa.user"));
         endpoints.setScimGroupMembershipManager(mm);
@@ -180,6 +184,7 @@ public class ScimUserEndpointsTests {
         endpoints.setStatuses(map);
 
         am = new JdbcApprovalStore(jdbcTemplate, pagingListFactory, new ScimSearchQueryConverter());
+        am.setTransactionManager(new DataSourceTransactionManager(database));
         endpoints.setApprovalStore(am);
     }
 
@@ -520,13 +525,13 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void testFindAllIds() {
-        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getTotalResults());
     }
 
     @Test
     public void testFindPageOfIds() {
-        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 1, 1);
+        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 1, 1, null, true);
         assertEquals(2, results.getTotalResults());
         assertEquals(1, results.getResources().size());
     }
@@ -534,40 +539,53 @@ public class ScimUserEndpointsTests {
     @Test
     public void testFindMultiplePagesOfIds() {
         dao.setPageSize(1);
-        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getTotalResults());
         assertEquals(2, results.getResources().size());
     }
 
+    @Test
+    public void testFindPagesOfIdsWithCursor() {
+        SearchResults<?> results = endpoints.findUsers("id", "id pr", "userName", "ascending", 1, 1, "", true);
+        assertEquals(2, results.getTotalResults());
+        assertEquals(1, results.getResources().size());
+        assertNotNull(results.getNextCursor());
+
+        results = endpoints.findUsers("id", "id pr", "userName", "ascending", 1, 1, results.getNextCursor(), false);
+        assertEquals(-1, results.getTotalResults());
+        assertEquals(1, results.getResources().size());
+        assertNull(results.getNextCursor());
+    }
+
     @Test
     public void testFindWhenStartGreaterThanTotal() {
-        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 3, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "id pr", null, "ascending", 3, 100, null, true);
         assertEquals(2, results.getTotalResults());
         assertEquals(0, results.getResources().size());
     }
 
     @Test
     public void testFindAllNames() {
-        SearchResults<?> results = endpoints.findUsers("userName", "id pr", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("userName", "id pr", null, "ascending", 1, 100, null, true);
         Collection<Object> values = getSetFromMaps(results.getResources(), "userName");
         assertTrue(values.contains("olds"));
     }
 
     @Test
     public void testFindAllNamesWithStartIndex() {
-        SearchResults<?> results = endpoints.findUsers("name", "id pr", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("name", "id pr", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getResources().size());
 
-        results = endpoints.findUsers("name", "id pr", null, "ascending", 2, 100);
+        results = endpoints.findUsers("name", "id pr", null, "ascending", 2, 100, null, true);
         assertEquals(1, results.getResources().size());
 
-        results = endpoints.findUsers("name", "id pr", null, "ascending", 3, 100);
+        results = endpoints.findUsers("name", "id pr", null, "ascending", 3, 100, null, true);
         assertEquals(0, results.getResources().size());
     }
 
     @Test
     public void testFindAllEmails() {
-        SearchResults<?> results = endpoints.findUsers("emails.value", "id pr", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("emails.value", "id pr", null, "ascending", 1, 100, null, true);
         Collection<Object> values = getSetFromMaps(results.getResources(), "emails.value");
         assertTrue(values.contains(Arrays.asList("olds@vmware.com")));
     }
@@ -577,8 +595,8 @@ public class ScimUserEndpointsTests {
         ScimGroupMembershipManager mockgroupMembershipManager = mock(ScimGroupMembershipManager.class);
         endpoints.setScimGroupMembershipManager(mockgroupMembershipManager);
 
-        endpoints.findUsers("", "id pr", null, "ascending", 1, 100);
-        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithMember(anyString(), anyBoolean());
+        endpoints.findUsers("", "id pr", null, "ascending", 1, 100, null, true);
+        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithMembers(anyCollection(), anyBoolean());
 
         endpoints.setScimGroupMembershipManager(mm);
     }
@@ -588,8 +606,8 @@ public class ScimUserEndpointsTests {
         ScimGroupMembershipManager mockgroupMembershipManager = mock(ScimGroupMembershipManager.class);
         endpoints.setScimGroupMembershipManager(mockgroupMembershipManager);
 
-        endpoints.findUsers("groups", "id pr", null, "ascending", 1, 100);
-        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithMember(anyString(), anyBoolean());
+        endpoints.findUsers("groups", "id pr", null, "ascending", 1, 100, null, true);
+        verify(mockgroupMembershipManager, atLeastOnce()).getGroupsWithMembers(anyCollection(), anyBoolean());
 
         endpoints.setScimGroupMembershipManager(mm);
     }
@@ -599,7 +617,7 @@ public class ScimUserEndpointsTests {
         ScimGroupMembershipManager mockgroupMembershipManager = mock(ScimGroupMembershipManager.class);
         endpoints.setScimGroupMembershipManager(mockgroupMembershipManager);
 
-        endpoints.findUsers("emails.value", "id pr", null, "ascending", 1, 100);
+        endpoints.findUsers("emails.value", "id pr", null, "ascending", 1, 100, null, true);
         verifyZeroInteractions(mockgroupMembershipManager);
 
         endpoints.setScimGroupMembershipManager(mm);
@@ -610,8 +628,8 @@ public class ScimUserEndpointsTests {
         ApprovalStore mockApprovalStore = mock(ApprovalStore.class);
         endpoints.setApprovalStore(mockApprovalStore);
 
-        endpoints.findUsers("", "id pr", null, "ascending", 1, 100);
-        verify(mockApprovalStore, atLeastOnce()).getApprovals(anyString());
+        endpoints.findUsers("", "id pr", null, "ascending", 1, 100, null, true);
+        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUsers(anyCollection());
 
         endpoints.setApprovalStore(am);
     }
@@ -621,8 +639,8 @@ public class ScimUserEndpointsTests {
         ApprovalStore mockApprovalStore = mock(ApprovalStore.class);
         endpoints.setApprovalStore(mockApprovalStore);
 
-        endpoints.findUsers("approvals", "id pr", null, "ascending", 1, 100);
-        verify(mockApprovalStore, atLeastOnce()).getApprovals(anyString());
+        endpoints.findUsers("approvals", "id pr", null, "ascending", 1, 100, null, true);
+        verify(mockApprovalStore, atLeastOnce()).getApprovalsForUsers(anyCollection());
 
         endpoints.setApprovalStore(am);
     }
@@ -632,7 +650,7 @@ public class ScimUserEndpointsTests {
         ApprovalStore mockApprovalStore = mock(ApprovalStore.class);
         endpoints.setApprovalStore(mockApprovalStore);
 
-        endpoints.findUsers("emails.value", "id pr", null, "ascending", 1, 100);
+        endpoints.findUsers("emails.value", "id pr", null, "ascending", 1, 100, null, true);
         verifyZeroInteractions(mockApprovalStore);
 
         endpoints.setApprovalStore(am);
@@ -642,13 +660,13 @@ public class ScimUserEndpointsTests {
     public void testInvalidFilterExpression() {
         expected.expect(ScimException.class);
         expected.expectMessage(containsString("Invalid filter"));
-        SearchResults<?> results = endpoints.findUsers("id", "userName qq 'd'", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName qq 'd'", null, "ascending", 1, 100, null, true);
         assertEquals(0, results.getTotalResults());
     }
 
     @Test
     public void testValidFilterExpression() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName eq \"d\"", "created", "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName eq \"d\"", "created", "ascending", 1, 100, null, true);
         assertEquals(0, results.getTotalResults());
     }
 
@@ -656,21 +674,21 @@ public class ScimUserEndpointsTests {
     public void testInvalidOrderByExpression() {
         expected.expect(ScimException.class);
         expected.expectMessage(containsString("Invalid filter"));
-        SearchResults<?> results = endpoints.findUsers("id", "userName eq \"d\"", "created,unknown", "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName eq \"d\"", "created,unknown", "ascending", 1, 100, null, true);
         assertEquals(0, results.getTotalResults());
     }
 
     @Test
     public void testValidOrderByExpression() {
-        endpoints.findUsers("id", "userName eq \"d\"", "1,created", "ascending", 1, 100);
-        endpoints.findUsers("id", "userName eq \"d\"", "1,2", "ascending", 1, 100);
-        endpoints.findUsers("id", "userName eq \"d\"", "username,created", "ascending", 1, 100);
+        endpoints.findUsers("id", "userName eq \"d\"", "1,created", "ascending", 1, 100, null, true);
+        endpoints.findUsers("id", "userName eq \"d\"", "1,2", "ascending", 1, 100, null, true);
+        endpoints.findUsers("id", "userName eq \"d\"", "username,created", "ascending", 1, 100, null, true);
     }
 
     @SuppressWarnings("unchecked")
     @Test
     public void testFindIdsByUserName() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName eq \"jdsa\"", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName eq \"jdsa\"", null, "ascending", 1, 100, null, true);
         assertEquals(1, results.getTotalResults());
         assertEquals(1, results.getSchemas().size()); // System.err.println(results.getValues());
         assertEquals(joel.getId(), ((Map<String, Object>) results.getResources().iterator().next()).get("id"));
@@ -679,7 +697,7 @@ public class ScimUserEndpointsTests {
     @SuppressWarnings("unchecked")
     @Test
     public void testFindIdsByEmailApostrophe() {
-        SearchResults<?> results = endpoints.findUsers("id", "emails.value eq \"" + JDSA_VMWARE_COM + "\"", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "emails.value eq \"" + JDSA_VMWARE_COM + "\"", null, "ascending", 1, 100, null, true);
         assertEquals(1, results.getTotalResults());
         assertEquals(1, results.getSchemas().size()); // System.err.println(results.getValues());
         assertEquals(joel.getId(), ((Map<String, Object>) results.getResources().iterator().next()).get("id"));
@@ -687,7 +705,7 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void testFindIdsByUserNameContains() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName co \"d\"", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName co \"d\"", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -695,7 +713,7 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void testFindIdsByUserNameStartWith() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName sw \"j\"", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName sw \"j\"", null, "ascending", 1, 100, null, true);
         assertEquals(1, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -703,7 +721,7 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void testFindIdsByEmailContains() {
-        SearchResults<?> results = endpoints.findUsers("id", "emails.value sw \"j\"", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "emails.value sw \"j\"", null, "ascending", 1, 100, null, true);
         assertEquals(1, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -711,13 +729,13 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void testFindIdsByEmailContainsWithEmptyResult() {
-        SearchResults<?> results = endpoints.findUsers("id", "emails.value sw \"z\"", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "emails.value sw \"z\"", null, "ascending", 1, 100, null, true);
         assertEquals(0, results.getTotalResults());
     }
 
     @Test
     public void testFindIdsWithBooleanExpression() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName co \"d\" and id pr", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName co \"d\" and id pr", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -726,7 +744,7 @@ public class ScimUserEndpointsTests {
     @Test
     public void testFindIdsWithBooleanExpressionIvolvingEmails() {
         SearchResults<?> results = endpoints.findUsers("id",
-                "userName co \"d\" and emails.value co \"vmware\"", null, "ascending", 1, 100);
+                "userName co \"d\" and emails.value co \"vmware\"", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -794,7 +812,7 @@ public class ScimUserEndpointsTests {
     @SuppressWarnings("unchecked")
     @Test
     public void legacyTestFindIdsByUserName() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName eq 'jdsa'", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName eq 'jdsa'", null, "ascending", 1, 100, null, true);
         assertEquals(1, results.getTotalResults());
         assertEquals(1, results.getSchemas().size()); // System.err.println(results.getValues());
         assertEquals(joel.getId(), ((Map<String, Object>) results.getResources().iterator().next()).get("id"));
@@ -802,7 +820,7 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void legacyTestFindIdsByUserNameContains() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName co 'd'", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName co 'd'", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -810,7 +828,7 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void legacyTestFindIdsByUserNameStartWith() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName sw 'j'", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName sw 'j'", null, "ascending", 1, 100, null, true);
         assertEquals(1, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -818,7 +836,7 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void legacyTestFindIdsByEmailContains() {
-        SearchResults<?> results = endpoints.findUsers("id", "emails.value sw 'j'", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "emails.value sw 'j'", null, "ascending", 1, 100, null, true);
         assertEquals(1, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -826,13 +844,13 @@ public class ScimUserEndpointsTests {
 
     @Test
     public void legacyTestFindIdsByEmailContainsWithEmptyResult() {
-        SearchResults<?> results = endpoints.findUsers("id", "emails.value sw 'z'", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "emails.value sw 'z'", null, "ascending", 1, 100, null, true);
         assertEquals(0, results.getTotalResults());
     }
 
     @Test
     public void legacyTestFindIdsWithBooleanExpression() {
-        SearchResults<?> results = endpoints.findUsers("id", "userName co 'd' and id pr", null, "ascending", 1, 100);
+        SearchResults<?> results = endpoints.findUsers("id", "userName co 'd' and id pr", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -841,7 +859,7 @@ public class ScimUserEndpointsTests {
     @Test
     public void legacyTestFindIdsWithBooleanExpressionIvolvingEmails() {
         SearchResults<?> results = endpoints.findUsers("id",
-                "userName co 'd' and emails.value co 'vmware'", null, "ascending", 1, 100);
+                "userName co 'd' and emails.value co 'vmware'", null, "ascending", 1, 100, null, true);
         assertEquals(2, results.getTotalResults());
         assertTrue("Couldn't find id: " + results.getResources(), getSetFromMaps(results.getResources(), "id")
                 .contains(joel.getId()));
@@ -856,7 +874,7 @@ public class ScimUserEndpointsTests {
         zone.setDescription("not-uaa");
         IdentityZoneHolder.set(zone);
         SearchResults<?> results = endpoints.findUsers("id",
-                "id pr", null, "ascending", 1, 100);
+                "id pr", null, "ascending", 1, 100, null, true);
         assertEquals(0, results.getTotalResults());
     }
 
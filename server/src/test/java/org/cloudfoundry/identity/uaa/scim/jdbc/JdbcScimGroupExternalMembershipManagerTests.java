@@ -60,6 +60,7 @@ public class JdbcScimGroupExternalMembershipManagerTests extends JdbcTestBase {
 
         JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(template, limitSqlAdapter);
         gdao = new JdbcScimGroupProvisioning(template, pagingListFactory);
+        gdao.setTransactionManager(transactionManager);
 
         edao = new JdbcScimGroupExternalMembershipManager(template, pagingListFactory);
         edao.setScimGroupProvisioning(gdao);
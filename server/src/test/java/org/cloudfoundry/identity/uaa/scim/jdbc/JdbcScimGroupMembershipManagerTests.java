@@ -18,6 +18,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
@@ -79,8 +80,10 @@ public class JdbcScimGroupMembershipManagerTests extends JdbcTestBase {
         JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(template, limitSqlAdapter);
         udao = new JdbcScimUserProvisioning(template, pagingListFactory);
         gdao = new JdbcScimGroupProvisioning(template, pagingListFactory);
+        gdao.setTransactionManager(transactionManager);
 
         dao = new JdbcScimGroupMembershipManager(template, pagingListFactory);
+        dao.setTransactionManager(transactionManager);
         dao.setScimGroupProvisioning(gdao);
         dao.setScimUserProvisioning(udao);
         dao.setDefaultUserGroups(Collections.singleton("uaa.user"));
@@ -159,6 +162,7 @@ public class JdbcScimGroupMembershipManagerTests extends JdbcTestBase {
     @After
     public void cleanupDataSource() throws Exception {
         IdentityZoneHolder.clear();
+        TestUtils.deleteFrom(dataSource, JdbcGroupMembershipClosure.CLOSURE_TABLE);
         TestUtils.deleteFrom(dataSource, "group_membership");
         TestUtils.deleteFrom(dataSource, "groups");
         TestUtils.deleteFrom(dataSource, "users");
@@ -339,6 +343,200 @@ public class JdbcScimGroupMembershipManagerTests extends JdbcTestBase {
         assertEquals(4, groups.size());
     }
 
+    @Test
+    public void canGetGroupsForSeveralMembersAtOnce() {
+        addMember("g1", "m1", "USER", "READER");
+        addMember("g2", "m2", "USER", "READER");
+        addMember("g1", "g2", "GROUP", "READER");
+        addMember("g2", "g3", "GROUP", "READER");
+        addMember("g3", "g1", "GROUP", "READER");
+        dao.setMaxMembersPerQuery(1);
+
+        Map<String, Set<ScimGroup>> direct = dao.getGroupsWithMembers(Arrays.asList("m1", "m2", "m3", "g3"), false);
+        assertEquals(Arrays.asList("m1", "m2", "m3", "g3"), new ArrayList<>(direct.keySet()));
+        assertEquals(new HashSet<>(Arrays.asList("test1", "uaa.user")), getDisplayNames(direct.get("m1")));
+        assertEquals(new HashSet<>(Arrays.asList("test2", "uaa.user")), getDisplayNames(direct.get("m2")));
+        assertEquals(Collections.singleton("uaa.user"), getDisplayNames(direct.get("m3")));
+        assertEquals(Collections.singleton("test2"), getDisplayNames(direct.get("g3")));
+
+        Map<String, Set<ScimGroup>> transitive = dao.getGroupsWithMembers(Arrays.asList("m1", "m2", "m3"), true);
+        for (String memberId : Arrays.asList("m1", "m2")) {
+            assertEquals(dao.getGroupsWithMember(memberId, true), transitive.get(memberId));
+            assertEquals(new HashSet<>(Arrays.asList("test1", "test2", "test3", "uaa.user")), getDisplayNames(transitive.get(memberId)));
+        }
+        assertEquals(Collections.singleton("uaa.user"), getDisplayNames(transitive.get("m3")));
+    }
+
+    @Test
+    public void recursiveQueryAndLevelWalkFindTheSameGroups() {
+        addMember("g1", "m1", "USER", "READER");
+        addMember("g2", "m2", "USER", "READER");
+        addMember("g1", "g2", "GROUP", "READER");
+        addMember("g2", "g3", "GROUP", "READER");
+        addMember("g3", "g1", "GROUP", "READER");
+        List<String> memberIds = Arrays.asList("m1", "m2", "m3", "g1");
+
+        assertTrue(dao.isUseRecursiveQueries());
+        Map<String, Set<ScimGroup>> recursive = dao.getGroupsWithMembers(memberIds, true);
+        assertTrue(dao.isUseRecursiveQueries());
+
+        dao.setUseRecursiveQueries(false);
+        Map<String, Set<ScimGroup>> walked = dao.getGroupsWithMembers(memberIds, true);
+        assertEquals(walked, recursive);
+        assertEquals(new HashSet<>(Arrays.asList("test1", "test2", "test3", "uaa.user")), getDisplayNames(recursive.get("m1")));
+        assertEquals(new HashSet<>(Arrays.asList("test1", "test2", "test3")), getDisplayNames(recursive.get("g1")));
+    }
+
+    @Test
+    public void closureMatchesMembershipsAfterEachChange() {
+        String zoneId = IdentityZone.getUaa().getId();
+        JdbcGroupMembershipClosure closure = new JdbcGroupMembershipClosure(jdbcTemplate);
+        closure.setTransactionManager(transactionManager);
+        closure.setEnabled(true);
+        closure.setMaxMembersPerQuery(1);
+        dao.setMembershipClosure(closure);
+
+        dao.addMember("g1", new ScimGroupMember("m1", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember("g1", new ScimGroupMember("g2", ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember("g2", new ScimGroupMember("g3", ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember("g3", new ScimGroupMember("m2", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER));
+        assertEquals(Collections.emptySet(), closure.verify(zoneId));
+        validateUserGroups("m2", "test3", "test2.i", "test1.i");
+
+        dao.updateOrAddMembers("g2", Collections.singletonList(new ScimGroupMember("m3", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER)));
+        assertEquals(Collections.emptySet(), closure.verify(zoneId));
+        validateUserGroups("m2", "test3");
+        validateUserGroups("m3", "test2", "test1.i");
+
+        dao.addMember("g3", new ScimGroupMember("g1", ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER));
+        dao.removeMemberById("g1", "g2");
+        assertEquals(Collections.emptySet(), closure.verify(zoneId));
+        validateUserGroups("m1", "test1", "test3.i");
+
+        List<String> memberIds = Arrays.asList("m1", "m2", "m3", "g1", "g3");
+        Map<String, Set<ScimGroup>> fromClosure = dao.getGroupsWithMembers(memberIds, true);
+        closure.setEnabled(false);
+        assertEquals(dao.getGroupsWithMembers(memberIds, true), fromClosure);
+
+        closure.setEnabled(true);
+        jdbcTemplate.update("delete from " + JdbcGroupMembershipClosure.CLOSURE_TABLE);
+        assertEquals(new HashSet<>(Arrays.asList("m1", "m2", "m3", "g1")), closure.verify(zoneId));
+        closure.rebuild(zoneId);
+        assertEquals(Collections.emptySet(), closure.verify(zoneId));
+    }
+
+    @Test
+    public void staleClosureIsRebuiltOnStartup() {
+        String zoneId = IdentityZone.getUaa().getId();
+        JdbcGroupMembershipClosure closure = enableClosure();
+        dao.addMember("g1", new ScimGroupMember("g2", ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember("g2", new ScimGroupMember("m2", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER));
+        // changed while the closure was not maintained
+        addMember("g3", "m2", "USER", "MEMBER");
+        assertEquals(Collections.singleton("m2"), closure.verify(zoneId));
+
+        closure.afterPropertiesSet();
+        assertEquals(Collections.emptySet(), closure.verify(zoneId));
+        validateUserGroups("m2", "test2", "test3", "test1.i");
+    }
+
+    @Test
+    public void closureIsRefreshedWhenAGroupIsDeleted() {
+        String zoneId = IdentityZone.getUaa().getId();
+        JdbcGroupMembershipClosure closure = enableClosure();
+        dao.addMember("g1", new ScimGroupMember("g2", ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember("g2", new ScimGroupMember("g3", ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember("g3", new ScimGroupMember("m2", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER));
+        validateUserGroups("m2", "test3", "test2.i", "test1.i");
+
+        gdao.delete("g2", -1);
+        assertEquals(Collections.emptySet(), closure.verify(zoneId));
+        validateUserGroups("m2", "test3");
+        assertEquals(Collections.emptySet(), dao.getGroupsWithMember("g3", true));
+    }
+
+    @Test
+    public void closureIsRemovedWithTheZone() {
+        JdbcGroupMembershipClosure closure = enableClosure();
+        IdentityZoneHolder.set(zone);
+        dao.addMember(zone.getId() + "-g1", new ScimGroupMember(zone.getId() + "-g2", ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember(zone.getId() + "-g2", new ScimGroupMember(zone.getId() + "-m1", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER));
+        IdentityZoneHolder.clear();
+        dao.addMember("g1", new ScimGroupMember("m1", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER));
+        assertEquals(Integer.valueOf(3), countClosureRows(zone.getId()));
+
+        gdao.onApplicationEvent(new EntityDeletedEvent<>(zone, null));
+        udao.onApplicationEvent(new EntityDeletedEvent<>(zone, null));
+        assertEquals(Integer.valueOf(0), countClosureRows(zone.getId()));
+        assertEquals(Integer.valueOf(1), countClosureRows(IdentityZone.getUaa().getId()));
+        assertEquals(Collections.emptySet(), closure.verify(IdentityZone.getUaa().getId()));
+    }
+
+    @Test
+    public void closureIsRefreshedWhenAProviderIsDeleted() {
+        String zoneId = IdentityZone.getUaa().getId();
+        JdbcGroupMembershipClosure closure = enableClosure();
+        jdbcTemplate.update("update users set origin=? where id=?", LOGIN_SERVER, "m1");
+        dao.addMember("g1", new ScimGroupMember("g2", ScimGroupMember.Type.GROUP, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember("g2", new ScimGroupMember("m1", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER));
+        dao.addMember("g2", new ScimGroupMember("m2", ScimGroupMember.Type.USER, ScimGroupMember.GROUP_MEMBER));
+        assertEquals(Integer.valueOf(5), countClosureRows(zoneId));
+
+        IdentityProvider loginServer =
+            new IdentityProvider()
+                .setOriginKey(LOGIN_SERVER)
+                .setIdentityZoneId(zoneId);
+        udao.onApplicationEvent(new EntityDeletedEvent<>(loginServer, null));
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("select count(*) from " + JdbcGroupMembershipClosure.CLOSURE_TABLE + " where member_id=?", Integer.class, "m1"));
+        assertEquals(Integer.valueOf(3), countClosureRows(zoneId));
+        validateUserGroups("m2", "test2", "test1.i");
+    }
+
+    private JdbcGroupMembershipClosure enableClosure() {
+        JdbcGroupMembershipClosure closure = new JdbcGroupMembershipClosure(jdbcTemplate);
+        closure.setTransactionManager(transactionManager);
+        closure.setEnabled(true);
+        dao.setMembershipClosure(closure);
+        gdao.setMembershipClosure(closure);
+        udao.setMembershipClosure(closure);
+        return closure;
+    }
+
+    private Integer countClosureRows(String zoneId) {
+        return jdbcTemplate.queryForObject("select count(*) from " + JdbcGroupMembershipClosure.CLOSURE_TABLE + " where identity_zone_id=?", Integer.class, zoneId);
+    }
+
+    @Test
+    public void canUpdateExternalMemberships() {
+        addMember("g1", "m1", "USER", "READER");
+        addMember("g2", "m1", "USER", "READER", "ldap");
+        addMember("g2", "m2", "USER", "READER", "ldap");
+
+        dao.updateExternalMemberships("m1", "ldap", Arrays.asList("TEST1", "test3", "uaa.user", "", "new-group"), false);
+        assertEquals(new HashSet<>(Arrays.asList("test1", "test3", "uaa.user")), getDisplayNames(dao.getGroupsWithMember("m1", false)));
+        assertEquals(UAA, dao.getMemberById("g1", "m1").getOrigin());
+        assertEquals("ldap", dao.getMemberById("g3", "m1").getOrigin());
+        assertEquals("ldap", dao.getMemberById("g2", "m2").getOrigin());
+        assertTrue(gdao.query("displayName eq \"new-group\"").isEmpty());
+
+        dao.updateExternalMemberships("m1", "ldap", Arrays.asList("test3", "new-group"), true);
+        assertEquals(new HashSet<>(Arrays.asList("test1", "test3", "new-group", "uaa.user")), getDisplayNames(dao.getGroupsWithMember("m1", false)));
+
+        dao.updateExternalMemberships("m1", UAA, Collections.<String>emptyList(), false);
+        assertEquals(new HashSet<>(Arrays.asList("test1", "test3", "new-group", "uaa.user")), getDisplayNames(dao.getGroupsWithMember("m1", false)));
+
+        dao.updateExternalMemberships("m1", "ldap", Collections.<String>emptyList(), false);
+        assertEquals(new HashSet<>(Arrays.asList("test1", "uaa.user")), getDisplayNames(dao.getGroupsWithMember("m1", false)));
+    }
+
+    private Set<String> getDisplayNames(Set<ScimGroup> groups) {
+        Set<String> names = new HashSet<>();
+        for (ScimGroup group : groups) {
+            names.add(group.getDisplayName());
+        }
+        return names;
+    }
+
     @Test
     public void canAddMember() throws Exception {
         validateCount(0);
@@ -55,7 +55,9 @@ public class JdbcScimGroupProvisioningTests extends JdbcTestBase {
     @Before
     public void initJdbcScimGroupProvisioningTests() {
         memberships = new JdbcScimGroupMembershipManager(jdbcTemplate, new JdbcPagingListFactory(jdbcTemplate, new DefaultLimitSqlAdapter()));
+        memberships.setTransactionManager(transactionManager);
         dao = new JdbcScimGroupProvisioning(jdbcTemplate, new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter));
+        dao.setTransactionManager(transactionManager);
         memberships.setScimGroupProvisioning(dao);
         users = mock(ScimUserProvisioning.class);
         memberships.setScimUserProvisioning(users);
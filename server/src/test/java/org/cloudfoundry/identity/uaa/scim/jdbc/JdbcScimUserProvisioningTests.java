@@ -15,6 +15,7 @@ package org.cloudfoundry.identity.uaa.scim.jdbc;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.jdbc.JdbcPagingListFactory;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
@@ -42,6 +43,7 @@ import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
+import org.springframework.util.StringUtils;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
@@ -49,6 +51,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -98,6 +101,7 @@ public class JdbcScimUserProvisioningTests extends JdbcTestBase {
     @Before
     public void initJdbcScimUserProvisioningTests() throws Exception {
         db = new JdbcScimUserProvisioning(jdbcTemplate, new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter));
+        db.setTransactionManager(transactionManager);
         zoneDb = new JdbcIdentityZoneProvisioning(jdbcTemplate);
         providerDb = new JdbcIdentityProviderProvisioning(jdbcTemplate);
         ScimSearchQueryConverter filterConverter = new ScimSearchQueryConverter();
@@ -304,6 +308,48 @@ public class JdbcScimUserProvisioningTests extends JdbcTestBase {
         assertEquals((created.getMeta().getCreated().getTime() / 1000l) * 1000l, created.getPasswordLastModified().getTime());
     }
 
+    @Test
+    public void canCreateUsersInOneBatch() {
+        ScimUser first = new ScimUser(null, "batch1@foo.com", "Batch", "One");
+        first.addEmail("batch1@foo.com");
+        ScimUser second = new ScimUser(null, "batch2@foo.com", "Batch", "Two");
+        second.addEmail("batch2@foo.com");
+        List<ScimUser> created = db.createUsers(Arrays.asList(first, second), Arrays.asList("j7hyqpassX", "j7hyqpassY"));
+        assertEquals(2, created.size());
+        for (ScimUser user : created) {
+            assertNotNull(user.getId());
+            assertEquals(OriginKeys.UAA, user.getOrigin());
+            ScimUser retrieved = db.retrieve(user.getId());
+            assertEquals(user.getUserName(), retrieved.getUserName());
+            assertEquals("uaa", retrieved.getZoneId());
+        }
+        assertTrue(db.checkPasswordMatches(created.get(1).getId(), "j7hyqpassY"));
+    }
+
+    @Test
+    public void createUsersIsAllOrNothing() {
+        ScimUser fresh = new ScimUser(null, "fresh@foo.com", "Fresh", "User");
+        fresh.addEmail("fresh@foo.com");
+        ScimUser duplicate = new ScimUser(null, "joe", "Joe", "User");
+        duplicate.addEmail("joe@joe.com");
+        try {
+            db.createUsers(Arrays.asList(fresh, duplicate), Arrays.asList("j7hyqpassX", "j7hyqpassY"));
+            fail("Duplicate username should fail the batch");
+        } catch (DuplicateKeyException expected) {
+        }
+        assertEquals(0, db.query("userName eq \"fresh@foo.com\"").size());
+    }
+
+    @Test
+    public void retrieveByEmailsAndOrigin() {
+        List<ScimUser> users = db.retrieveByEmailsAndOrigin(Arrays.asList("JOE@joe.com", "mabel@mabel.com", "nobody@nowhere.com"), UAA);
+        assertEquals(2, users.size());
+        assertTrue(db.retrieveByEmailsAndOrigin(Arrays.asList("joe@joe.com"), LOGIN_SERVER).isEmpty());
+
+        db.setMaxEmailsPerQuery(1);
+        assertEquals(2, db.retrieveByEmailsAndOrigin(Arrays.asList("joe@joe.com", "mabel@mabel.com"), UAA).size());
+    }
+
     @Test
     public void canModifyPassword() throws Exception {
         ScimUser user = new ScimUser(null, generator.generate()+ "@foo.com", "Jo", "User");
@@ -898,6 +944,45 @@ public class JdbcScimUserProvisioningTests extends JdbcTestBase {
         assertEquals(2 + existingUserCount, db.query("username pr", "emails.value", true).size());
     }
 
+    @Test
+    public void canPageThroughUsersWithCursor() {
+        for (int i = 0; i < 5; i++) {
+            addUser(UUID.randomUUID().toString(), "cursor" + i, "password", "cursor" + i + "@test.org", "Cursor", "User", "", defaultIdentityProviderId, "uaa");
+        }
+        for (String sortBy : Arrays.asList("username", "created", "")) {
+            for (boolean ascending : Arrays.asList(true, false)) {
+                List<String> expected = new ArrayList<>();
+                for (ScimUser user : db.query("username pr", StringUtils.hasText(sortBy) ? sortBy : "id", ascending)) {
+                    expected.add(user.getId());
+                }
+                List<String> paged = new ArrayList<>();
+                String cursor = "";
+                do {
+                    KeysetPage<ScimUser> page = db.queryPage("username pr", sortBy, ascending, cursor, 2, paged.isEmpty());
+                    assertTrue(page.getResources().size() <= 2);
+                    assertEquals(paged.isEmpty() ? expected.size() : KeysetPage.NOT_COUNTED, page.getTotalResults());
+                    for (ScimUser user : page.getResources()) {
+                        paged.add(user.getId());
+                    }
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
+                if ("created".equals(sortBy)) {
+                    assertEquals(new HashSet<>(expected), new HashSet<>(paged));
+                    assertEquals(expected.size(), paged.size());
+                } else {
+                    assertEquals(expected, paged);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotReuseCursorWithDifferentSort() {
+        String cursor = db.queryPage("username pr", "username", true, "", 1, false).getNextCursor();
+        assertNotNull(cursor);
+        db.queryPage("username pr", "username", false, cursor, 1, false);
+    }
+
     @Test
     public void canRetrieveUsersWithFilterBooleanAnd() {
         assertEquals(2, db.query("username pr and emails.value co \".com\"").size());
@@ -12,6 +12,7 @@
  *******************************************************************************/
 package org.cloudfoundry.identity.uaa.scim.jdbc;
 
+import org.cloudfoundry.identity.uaa.resources.AttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.SimpleAttributeNameMapper;
 import org.cloudfoundry.identity.uaa.resources.jdbc.SearchQueryConverter.ProcessedFilter;
 import org.junit.Before;
@@ -19,8 +20,11 @@ import org.junit.Test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 
 public class ScimSearchQueryConverterTests {
@@ -122,6 +126,44 @@ public class ScimSearchQueryConverterTests {
         validate(filterProcessor.convert("username eq 'joe' or emails.value co '.com'", null, false), "(LOWER(username) = LOWER(:__value_0) OR LOWER(email) LIKE LOWER(:__value_1))", 2);
     }
 
+    @Test
+    public void filtersOfTheSameShapeShareSql() {
+        ProcessedFilter joe = filterProcessor.convert("username eq \"joe\" and meta.version eq 0", "username", true);
+        ProcessedFilter bob = filterProcessor.convert("username eq \"bob\" and meta.version eq 3", "username", true);
+        assertEquals(joe.getSql(), bob.getSql());
+        assertEquals("joe", joe.getParams().get(joe.getParamPrefix() + "0"));
+        assertEquals("bob", bob.getParams().get(bob.getParamPrefix() + "0"));
+
+        ProcessedFilter collision = filterProcessor.convert("username eq \"__value_0\"", null, false);
+        assertNotEquals(joe.getParamPrefix(), collision.getParamPrefix());
+        assertFalse("__value_0".contains(collision.getParamPrefix()));
+    }
+
+    @Test
+    public void repeatedFiltersAreConvertedOnce() {
+        AtomicInteger conversions = new AtomicInteger();
+        filterProcessor = new ScimSearchQueryConverter() {
+            @Override
+            protected ProcessedFilter doConvert(String filter, String sortBy, boolean ascending, AttributeNameMapper mapper) {
+                conversions.incrementAndGet();
+                return super.doConvert(filter, sortBy, ascending, mapper);
+            }
+        };
+        ProcessedFilter first = filterProcessor.convert("displayName eq 'uaa.user'", null, false);
+        first.getParams().put("__identity_zone_id", "uaa");
+        ProcessedFilter second = filterProcessor.convert("displayName eq 'uaa.user'", null, false);
+        assertEquals(1, conversions.get());
+        assertEquals(first.getSql(), second.getSql());
+        assertEquals(1, second.getParams().size());
+
+        filterProcessor.convert("displayName eq 'uaa.user'", "displayName", false);
+        assertEquals(2, conversions.get());
+
+        filterProcessor.setCacheEnabled(false);
+        filterProcessor.convert("displayName eq 'uaa.user'", null, false);
+        assertEquals(3, conversions.get());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testIllegalUnquotedValueInFilter() throws Exception {
         filterProcessor.convert("username eq joe", null, false);
@@ -14,10 +14,15 @@
 package org.cloudfoundry.identity.uaa.scim.remote;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.cloudfoundry.identity.uaa.account.PasswordChangeRequest;
+import org.cloudfoundry.identity.uaa.resources.KeysetPage;
 import org.cloudfoundry.identity.uaa.scim.ScimUser;
 import org.junit.After;
 import org.junit.Before;
@@ -74,6 +79,28 @@ public class RemoteScimUserProvisioningTests {
         Mockito.verify(restTemplate).getForObject("http://base/Users?filter={filter}", List.class, "name eq \"foo\"");
     }
 
+    @Test
+    public void testQueryPageUsesStartIndexAsCursor() {
+        Map<String, Object> user = new HashMap<>();
+        user.put("id", "1234");
+        user.put("userName", "foo");
+        Map<String, Object> results = new HashMap<>();
+        results.put("resources", Arrays.asList(user));
+        results.put("totalResults", 3);
+        String url = "http://base/Users?filter={filter}&sortBy={sortBy}&sortOrder={sortOrder}&startIndex={startIndex}&count={count}";
+        Mockito.when(restTemplate.getForObject(url, Map.class, "id pr", "userName", "ascending", 1, 1)).thenReturn(results);
+        Mockito.when(restTemplate.getForObject(url, Map.class, "id pr", "userName", "ascending", 3, 1)).thenReturn(results);
+
+        KeysetPage<ScimUser> page = service.queryPage("id pr", "userName", true, "", 1, true);
+        assertEquals("1234", page.getResources().get(0).getId());
+        assertEquals(3, page.getTotalResults());
+        assertEquals("2", page.getNextCursor());
+
+        page = service.queryPage("id pr", "userName", true, "3", 1, false);
+        assertEquals(KeysetPage.NOT_COUNTED, page.getTotalResults());
+        assertNull(page.getNextCursor());
+    }
+
     @Test
     public void testCreateUser() {
         service.createUser(user, "password");
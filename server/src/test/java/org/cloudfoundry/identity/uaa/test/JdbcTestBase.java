@@ -19,6 +19,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.StringUtils;
 import org.springframework.web.context.support.XmlWebApplicationContext;
 
@@ -31,6 +32,7 @@ public class JdbcTestBase extends TestClassNullifier {
     protected JdbcTemplate jdbcTemplate;
     protected DataSource dataSource;
     protected LimitSqlAdapter limitSqlAdapter;
+    protected PlatformTransactionManager transactionManager;
     protected MockEnvironment environment;
 
     @Before
@@ -52,6 +54,7 @@ public class JdbcTestBase extends TestClassNullifier {
         jdbcTemplate = webApplicationContext.getBean(JdbcTemplate.class);
         dataSource = webApplicationContext.getBean(DataSource.class);
         limitSqlAdapter = webApplicationContext.getBean(LimitSqlAdapter.class);
+        transactionManager = webApplicationContext.getBean(PlatformTransactionManager.class);
     }
 
     @After
@@ -13,6 +13,9 @@
 package org.cloudfoundry.identity.uaa.user;
 
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
+import org.cloudfoundry.identity.uaa.scim.event.GroupModifiedEvent;
+import org.cloudfoundry.identity.uaa.scim.jdbc.JdbcGroupMembershipClosure;
+import org.cloudfoundry.identity.uaa.scim.event.UserModifiedEvent;
 import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
 import org.cloudfoundry.identity.uaa.test.TestUtils;
 import org.cloudfoundry.identity.uaa.zone.IdentityZone;
@@ -21,14 +24,20 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.cloudfoundry.identity.uaa.user.JdbcUaaUserDatabase.DEFAULT_CASE_INSENSITIVE_USER_BY_EMAIL_AND_ORIGIN_QUERY;
 import static org.cloudfoundry.identity.uaa.user.JdbcUaaUserDatabase.DEFAULT_CASE_INSENSITIVE_USER_BY_USERNAME_QUERY;
@@ -39,6 +48,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -248,6 +258,135 @@ public class JdbcUaaUserDatabaseTests extends JdbcTestBase {
         evaluateNestedJoe();
     }
 
+    @Test
+    public void nestedAuthoritiesAreReadFromTheClosureWhenEnabled() {
+        String directId = new RandomValueStringGenerator().generate();
+        String indirectId = new RandomValueStringGenerator().generate();
+        jdbcTemplate.update(ADD_GROUP_SQL, directId, "direct", IdentityZoneHolder.get().getId());
+        jdbcTemplate.update(ADD_GROUP_SQL, indirectId, "indirect", IdentityZoneHolder.get().getId());
+        jdbcTemplate.update(ADD_MEMBER_SQL, indirectId, directId, "GROUP", "MEMBER");
+        jdbcTemplate.update(ADD_MEMBER_SQL, directId, JOE_ID, "USER", "MEMBER");
+
+        JdbcGroupMembershipClosure closure = new JdbcGroupMembershipClosure(jdbcTemplate);
+        closure.setTransactionManager(transactionManager);
+        closure.setEnabled(true);
+        closure.rebuild(IdentityZoneHolder.get().getId());
+        db.setMembershipClosure(closure);
+        try {
+            evaluateNestedJoe();
+
+            // the closure is read instead of the memberships
+            jdbcTemplate.update("delete from group_membership where member_id=?", JOE_ID);
+            evaluateNestedJoe();
+
+            closure.setEnabled(false);
+            assertThat(db.retrieveUserById(JOE_ID).getAuthorities(),
+                       containsInAnyOrder(new SimpleGrantedAuthority("uaa.user")));
+        } finally {
+            TestUtils.deleteFrom(dataSource, JdbcGroupMembershipClosure.CLOSURE_TABLE);
+        }
+    }
+
+    @Test
+    public void nestedAuthoritiesAreLoadedOneLevelPerQuery() {
+        int depth = 8, width = 10;
+        List<SimpleGrantedAuthority> expected = new ArrayList<>();
+        expected.add(new SimpleGrantedAuthority("uaa.user"));
+        String[][] groupIds = new String[depth][width];
+        for (int level = 0; level < depth; level++) {
+            for (int i = 0; i < width; i++) {
+                groupIds[level][i] = new RandomValueStringGenerator().generate();
+                String displayName = "nested." + level + "." + i;
+                jdbcTemplate.update(ADD_GROUP_SQL, groupIds[level][i], displayName, IdentityZoneHolder.get().getId());
+                expected.add(new SimpleGrantedAuthority(displayName));
+                if (level == 0) {
+                    jdbcTemplate.update(ADD_MEMBER_SQL, groupIds[level][i], JOE_ID, "USER", "MEMBER");
+                } else {
+                    jdbcTemplate.update(ADD_MEMBER_SQL, groupIds[level][i], groupIds[level - 1][i], "GROUP", "MEMBER");
+                }
+            }
+        }
+        //close the loop from the deepest level back to the first
+        jdbcTemplate.update(ADD_MEMBER_SQL, groupIds[0][0], groupIds[depth - 1][0], "GROUP", "MEMBER");
+
+        AtomicInteger queries = new AtomicInteger();
+        JdbcTemplate countingTemplate = new JdbcTemplate(dataSource) {
+            @Override
+            public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) {
+                queries.incrementAndGet();
+                return super.query(psc, pss, rse);
+            }
+        };
+        db = new JdbcUaaUserDatabase(countingTemplate);
+        db.setDefaultAuthorities(Collections.singleton("uaa.user"));
+
+        UaaUser joe = db.retrieveUserById(JOE_ID);
+        assertThat(joe.getAuthorities(), containsInAnyOrder(expected.toArray()));
+        //one query for the user, one per nesting level and a final one that finds nothing new
+        assertEquals(1 + depth + 1, queries.get());
+
+        db.setMaxMembersPerQuery(3);
+        joe = db.retrieveUserById(JOE_ID);
+        assertThat(joe.getAuthorities(), containsInAnyOrder(expected.toArray()));
+    }
+
+    @Test
+    public void userForTokenValidationMatchesFullUser() {
+        addAuthority("dash.admin", JOE_ID);
+        template.update(addSaltSql, "salt", JOE_ID);
+        UaaUser full = db.retrieveUserById(JOE_ID);
+        UaaUser joe = db.retrieveUserForTokenValidation(JOE_ID);
+        assertEquals(full.getId(), joe.getId());
+        assertEquals(full.getUsername(), joe.getUsername());
+        assertEquals(full.getPassword(), joe.getPassword());
+        assertEquals(full.getEmail(), joe.getEmail());
+        assertEquals(full.getOrigin(), joe.getOrigin());
+        assertEquals(full.getZoneId(), joe.getZoneId());
+        assertEquals("salt", joe.getSalt());
+        assertEquals(full.getPasswordLastModified(), joe.getPasswordLastModified());
+        assertThat(joe.getAuthorities(), containsInAnyOrder(full.getAuthorities().toArray()));
+
+        IdentityZoneHolder.set(otherIdentityZone);
+        try {
+            db.retrieveUserForTokenValidation(JOE_ID);
+            fail("Joe is not in the other zone");
+        } catch (UsernameNotFoundException expected) {
+        }
+    }
+
+    @Test
+    public void userForTokenValidationIsCachedUntilChanged() {
+        db.setValidationCacheEnabled(true);
+        UaaUser joe = db.retrieveUserForTokenValidation(JOE_ID);
+        assertSame(joe, db.retrieveUserForTokenValidation(JOE_ID));
+
+        addAuthority("dash.admin", JOE_ID);
+        assertSame(joe, db.retrieveUserForTokenValidation(JOE_ID));
+        db.onApplicationEvent(GroupModifiedEvent.groupModified("dash-admin-id", "dash.admin", new String[] {JOE_ID}));
+        joe = db.retrieveUserForTokenValidation(JOE_ID);
+        assertTrue(joe.getAuthorities().contains(new SimpleGrantedAuthority("dash.admin")));
+
+        template.update(addSaltSql, "salt", JOE_ID);
+        db.onApplicationEvent(UserModifiedEvent.userModified(JOE_ID, "joe"));
+        joe = db.retrieveUserForTokenValidation(JOE_ID);
+        assertEquals("salt", joe.getSalt());
+
+        template.update(addSaltSql, "other-salt", JOE_ID);
+        db.retrieveUserById(JOE_ID);
+        assertEquals("salt", db.retrieveUserForTokenValidation(JOE_ID).getSalt());
+        db.invalidateValidationCache(JOE_ID);
+        assertEquals("other-salt", db.retrieveUserForTokenValidation(JOE_ID).getSalt());
+
+        IdentityZoneHolder.set(otherIdentityZone);
+        assertEquals(ALICE_ID, db.retrieveUserForTokenValidation(ALICE_ID).getId());
+        IdentityZoneHolder.clear();
+        try {
+            db.retrieveUserForTokenValidation(ALICE_ID);
+            fail("Alice is not in the default zone");
+        } catch (UsernameNotFoundException expected) {
+        }
+    }
+
     protected void evaluateNestedJoe() {
         UaaUser joe;
         joe = db.retrieveUserByName("joe", OriginKeys.UAA);
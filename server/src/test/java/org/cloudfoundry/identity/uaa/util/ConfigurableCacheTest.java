@@ -0,0 +1,69 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ConfigurableCacheTest {
+
+    @Test
+    public void hits_and_misses_are_counted() {
+        ConfigurableCache<String, String> cache = new ConfigurableCache<>(true, 10, 60);
+        assertNull(cache.getIfPresent("key"));
+        cache.put("key", "value");
+        assertEquals("value", cache.getIfPresent("key"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void unusable_values_are_dropped_and_count_as_misses() {
+        ConfigurableCache<String, String> cache = new ConfigurableCache<>(true, 10, ConfigurableCache.NO_EXPIRY);
+        cache.put("key", "stale");
+        assertNull(cache.getIfPresent("key", value -> !"stale".equals(value)));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void disabled_cache_stores_nothing() {
+        ConfigurableCache<String, String> cache = new ConfigurableCache<>(true, 10, 60);
+        cache.put("key", "value");
+        cache.setEnabled(false);
+        assertEquals(0, cache.size());
+        cache.put("key", "value");
+        assertNull(cache.getIfPresent("key"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void zero_expiry_keeps_nothing() {
+        ConfigurableCache<String, String> cache = new ConfigurableCache<>(true, 10, 0);
+        cache.put("key", "value");
+        assertNull(cache.getIfPresent("key"));
+    }
+
+    @Test
+    public void changing_the_size_drops_entries() {
+        ConfigurableCache<String, String> cache = new ConfigurableCache<>(true, 10, 60);
+        cache.put("key", "value");
+        cache.setMaxEntries(20);
+        assertNull(cache.getIfPresent("key"));
+        assertEquals(20, cache.getMaxEntries());
+    }
+}
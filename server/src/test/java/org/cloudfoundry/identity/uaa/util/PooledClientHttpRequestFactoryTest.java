@@ -0,0 +1,112 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PooledClientHttpRequestFactoryTest {
+
+    private HttpServer server;
+    private String destination;
+    private volatile int status = 200;
+    private PooledClientHttpRequestFactory requestFactory;
+    private RestTemplate restTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/info", exchange -> {
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        destination = "http://localhost:" + server.getAddress().getPort();
+        requestFactory = new PooledClientHttpRequestFactory();
+        restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        requestFactory.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void requests_are_counted_by_destination() {
+        restTemplate.getForObject(destination + "/info", String.class);
+        restTemplate.getForObject(destination + "/info", String.class);
+
+        assertEquals(Collections.singletonMap(destination, 2L), requestFactory.getRequestCounts());
+        assertEquals(Collections.singletonMap(destination, 0L), requestFactory.getErrorCounts());
+        assertEquals(2, requestFactory.getRequestCount());
+    }
+
+    @Test
+    public void connections_are_returned_to_the_pool() {
+        restTemplate.getForObject(destination + "/info", String.class);
+        restTemplate.getForObject(destination + "/info", String.class);
+
+        assertEquals(0, requestFactory.getLeasedConnections());
+        assertEquals(1, requestFactory.getAvailableConnections());
+    }
+
+    @Test
+    public void server_errors_are_counted() {
+        status = 503;
+        try {
+            restTemplate.getForObject(destination + "/info", String.class);
+            fail();
+        } catch (HttpServerErrorException e) {
+            assertEquals(1, requestFactory.getErrorCount());
+        }
+    }
+
+    @Test
+    public void unreachable_destinations_are_counted() {
+        server.stop(0);
+        try {
+            restTemplate.getForObject(destination + "/info", String.class);
+            fail();
+        } catch (ResourceAccessException e) {
+            assertEquals(Collections.singletonMap(destination, 1L), requestFactory.getErrorCounts());
+        }
+    }
+
+    @Test
+    public void destinations_beyond_the_limit_are_grouped() {
+        requestFactory.setMaxDestinations(1);
+        restTemplate.getForObject(destination + "/info", String.class);
+        restTemplate.getForObject("http://127.0.0.1:" + server.getAddress().getPort() + "/info", String.class);
+
+        assertEquals(1L, (long) requestFactory.getRequestCounts().get(destination));
+        assertEquals(1L, (long) requestFactory.getRequestCounts().get(PooledClientHttpRequestFactory.OTHER_DESTINATIONS));
+    }
+}
@@ -41,6 +41,8 @@ import static org.cloudfoundry.identity.uaa.util.UaaMapUtils.map;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -277,4 +279,13 @@ public class TokenValidationTest {
         assertThat(validation.getValidationErrors(), empty());
         assertTrue(validation.isValid());
     }
+
+    @Test
+    public void claimsViewIsBuiltFromParsedClaims() {
+        TokenValidation validation = validate(getToken());
+
+        assertEquals("marissa", validation.getClaimsView().getUserName());
+        assertEquals(Arrays.asList("acme.dev"), validation.getClaimsView().getScope());
+        assertThat(validation.getClaimsView(), sameInstance(validation.getClaimsView()));
+    }
 }
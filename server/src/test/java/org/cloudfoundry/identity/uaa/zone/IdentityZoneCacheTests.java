@@ -0,0 +1,79 @@
+/*******************************************************************************
+ *     Cloud Foundry
+ *     Copyright (c) [2009-2016] Pivotal Software, Inc. All Rights Reserved.
+ *
+ *     This product is licensed to you under the Apache License, Version 2.0 (the "License").
+ *     You may not use this product except in compliance with the License.
+ *
+ *     This product includes a number of subcomponents with
+ *     separate copyright notices and license terms. Your use of these
+ *     subcomponents is subject to the terms and conditions of the
+ *     subcomponent's license, as noted in the LICENSE file.
+ *******************************************************************************/
+package org.cloudfoundry.identity.uaa.zone;
+
+import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityZoneModifiedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IdentityZoneCacheTests {
+
+    private IdentityZoneProvisioning provisioning;
+    private IdentityZoneCache cache;
+    private IdentityZone zone;
+
+    @Before
+    public void setUp() {
+        provisioning = mock(IdentityZoneProvisioning.class);
+        cache = new IdentityZoneCache(provisioning);
+        zone = MultitenancyFixture.identityZone("zone-id", "MyZone");
+        when(provisioning.retrieveBySubdomain("myzone")).thenReturn(zone);
+        when(provisioning.retrieveBySubdomain("unknown")).thenThrow(new EmptyResultDataAccessException(1));
+    }
+
+    @Test
+    public void zones_are_cached_by_subdomain_and_id() {
+        assertSame(zone, cache.retrieveBySubdomain("myzone"));
+        assertSame(zone, cache.retrieveBySubdomain("MYZONE"));
+        assertSame(zone, cache.retrieve("zone-id"));
+        verify(provisioning, times(1)).retrieveBySubdomain("myzone");
+        verify(provisioning, never()).retrieve("zone-id");
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void unknown_subdomains_are_cached() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.retrieveBySubdomain("unknown");
+                fail();
+            } catch (EmptyResultDataAccessException expected) {
+            }
+        }
+        verify(provisioning, times(1)).retrieveBySubdomain("unknown");
+        assertEquals(1, cache.getMissingSize());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void zone_events_clear_the_cache() {
+        cache.retrieveBySubdomain("myzone");
+        cache.onApplicationEvent(IdentityZoneModifiedEvent.identityZoneModified(zone));
+        cache.retrieveBySubdomain("myzone");
+        cache.onApplicationEvent(new EntityDeletedEvent<>(zone, null));
+        cache.retrieveBySubdomain("myzone");
+        verify(provisioning, times(3)).retrieveBySubdomain("myzone");
+    }
+}
@@ -67,6 +67,28 @@ public class IdentityZoneResolvingFilterTests extends JdbcTestBase {
         assertFindsCorrectSubdomain("", "login.mycf.com", "uaa.mycf.com","login.mycf.com");
     }
 
+    @Test
+    public void holderIsSetWithLongestMatchingInternalHostname() throws Exception {
+        assertFindsCorrectSubdomain("myzone", "myzone.uaa.mycf.com", "mycf.com", "uaa.mycf.com");
+    }
+
+    @Test
+    public void zonesAreResolvedThroughTheCache() throws Exception {
+        IdentityZone identityZone = MultitenancyFixture.identityZone("cached", "cached");
+        dao.create(identityZone);
+        IdentityZoneCache cache = new IdentityZoneCache(dao);
+        IdentityZoneResolvingFilter filter = new IdentityZoneResolvingFilter();
+        filter.setIdentityZoneCache(cache);
+        filter.setAdditionalInternalHostnames(new HashSet<>(Arrays.asList("uaa.mycf.com")));
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setServerName("cached.uaa.mycf.com");
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
     @Test
     public void doNotThrowException_InCase_RetrievingZoneFails() throws Exception {
         MockHttpServletRequest request = new MockHttpServletRequest();
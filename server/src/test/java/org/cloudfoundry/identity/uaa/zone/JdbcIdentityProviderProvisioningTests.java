@@ -5,12 +5,15 @@ import org.cloudfoundry.identity.uaa.audit.event.EntityDeletedEvent;
 import org.cloudfoundry.identity.uaa.constants.OriginKeys;
 import org.cloudfoundry.identity.uaa.provider.AbstractIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.provider.IdentityProvider;
+import org.cloudfoundry.identity.uaa.provider.IdentityProviderCacheListener;
+import org.cloudfoundry.identity.uaa.provider.IdentityProviderSnapshot;
 import org.cloudfoundry.identity.uaa.provider.IdpAlreadyExistsException;
 import org.cloudfoundry.identity.uaa.provider.JdbcIdentityProviderProvisioning;
 import org.cloudfoundry.identity.uaa.provider.LdapIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.provider.UaaIdentityProviderDefinition;
 import org.cloudfoundry.identity.uaa.test.JdbcTestBase;
 import org.cloudfoundry.identity.uaa.util.JsonUtils;
+import org.cloudfoundry.identity.uaa.zone.event.IdentityProviderModifiedEvent;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -26,7 +29,10 @@ import static org.cloudfoundry.identity.uaa.constants.OriginKeys.UAA;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class JdbcIdentityProviderProvisioningTests extends JdbcTestBase {
 
@@ -293,4 +299,55 @@ public class JdbcIdentityProviderProvisioningTests extends JdbcTestBase {
         IdentityProvider idp1 = db.create(idp);
         db.retrieveByOrigin(idp1.getOriginKey(), identityZone2.getId());
     }
+
+    @Test
+    public void cachedProvidersAreDroppedOnChange() {
+        db.setCacheEnabled(true);
+        String zoneId = generator.generate();
+        IdentityZoneHolder.set(MultitenancyFixture.identityZone(zoneId, zoneId));
+        String originKey = RandomStringUtils.randomAlphabetic(6);
+        IdentityProvider idp = db.create(MultitenancyFixture.identityProvider(originKey, zoneId));
+
+        IdentityProviderSnapshot snapshot = db.retrieveSnapshot(zoneId);
+        assertEquals(idp.getId(), db.retrieveByOrigin(originKey, zoneId).getId());
+        assertEquals(1, db.retrieveActive(zoneId).size());
+        assertEquals(1, db.getSnapshotLoadCount());
+        assertEquals(2, db.getCacheHitCount());
+
+        idp.setActive(false);
+        db.update(idp);
+        assertEquals(0, db.retrieveActive(zoneId).size());
+        assertEquals(1, db.retrieveAll(false, zoneId).size());
+        assertTrue(db.retrieveSnapshot(zoneId).getVersion() > snapshot.getVersion());
+
+        long loads = db.getSnapshotLoadCount();
+        new IdentityProviderCacheListener(db).onApplicationEvent(IdentityProviderModifiedEvent.identityProviderModified(idp));
+        db.retrieveActive(zoneId);
+        assertEquals(loads + 1, db.getSnapshotLoadCount());
+
+        db.deleteByOrigin(originKey, zoneId);
+        try {
+            db.retrieveByOrigin(originKey, zoneId);
+            fail("Provider should have been deleted");
+        } catch (EmptyResultDataAccessException expected) {
+        }
+    }
+
+    @Test
+    public void cachedProvidersAreCopied() {
+        db.setCacheEnabled(true);
+        String zoneId = generator.generate();
+        IdentityZoneHolder.set(MultitenancyFixture.identityZone(zoneId, zoneId));
+        String originKey = RandomStringUtils.randomAlphabetic(6);
+        db.create(MultitenancyFixture.identityProvider(originKey, zoneId));
+
+        IdentityProvider retrieved = db.retrieveByOrigin(originKey, zoneId);
+        retrieved.setActive(false);
+        retrieved.setName("changed");
+
+        IdentityProvider again = db.retrieveByOrigin(originKey, zoneId);
+        assertTrue(again.isActive());
+        assertEquals(originKey + " name", again.getName());
+        assertFalse(db.retrieveActive(zoneId).isEmpty());
+    }
 }
@@ -20,6 +20,7 @@ import org.springframework.security.oauth2.provider.client.BaseClientDetails;
 
 import java.sql.Timestamp;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -32,6 +33,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 public class MultitenantJdbcClientDetailsServiceTests {
@@ -432,4 +434,58 @@ public class MultitenantJdbcClientDetailsServiceTests {
         assertEquals(IdentityZone.getUaa().getId(), identityZoneId.trim());
     }
 
+    @Test
+    public void cachedClientIsReturnedUntilItIsChanged() {
+        service.setCacheEnabled(true);
+        BaseClientDetails clientDetails = new BaseClientDetails("cachedClient", null, "foo,bar", "client_credentials", "uaa.none");
+        clientDetails.setAutoApproveScopes(Arrays.asList("foo"));
+        clientDetails.addAdditionalInformation("name", "cached");
+        service.addClientDetails(clientDetails);
+
+        ClientDetails loaded = service.loadClientByClientId("cachedClient");
+        assertEquals(0.0, service.getCacheHitRatio(IdentityZone.getUaa().getId()), 0.0);
+        jdbcTemplate.update("update oauth_client_details set scope='changed' where client_id=?", "cachedClient");
+        ClientDetails cached = service.loadClientByClientId("cachedClient");
+        assertEquals(loaded, cached);
+        assertTrue(cached.isAutoApprove("foo"));
+        assertEquals(0.5, service.getCacheHitRatio(IdentityZone.getUaa().getId()), 0.0);
+
+        ((BaseClientDetails) cached).addAdditionalInformation("name", "modified");
+        assertEquals("cached", service.loadClientByClientId("cachedClient").getAdditionalInformation().get("name"));
+
+        service.updateClientSecret("cachedClient", "secret");
+        assertEquals(Collections.singleton("changed"), service.loadClientByClientId("cachedClient").getScope());
+        assertEquals(2, service.getCacheHitCount());
+        assertEquals(2, service.getCacheMissCount());
+    }
+
+    @Test
+    public void cachedClientsAreZoneSpecific() {
+        service.setCacheEnabled(true);
+        service.addClientDetails(new BaseClientDetails("zoneClient", null, "foo", "client_credentials", "uaa.none"));
+        service.loadClientByClientId("zoneClient");
+        IdentityZoneHolder.set(otherIdentityZone);
+        try {
+            service.loadClientByClientId("zoneClient");
+            fail("Client must not be visible in another zone");
+        } catch (NoSuchClientException e) {
+        }
+        service.addClientDetails(new BaseClientDetails("zoneClient", null, "bar", "client_credentials", "uaa.none"));
+        assertEquals(Collections.singleton("bar"), service.loadClientByClientId("zoneClient").getScope());
+        assertEquals(2, service.getCacheSize());
+
+        service.deleteByIdentityZone(otherIdentityZone.getId());
+        assertEquals(1, service.getCacheSize());
+        assertEquals(-1, service.getCacheHitRatio(otherIdentityZone.getId()), 0.0);
+        IdentityZoneHolder.clear();
+        assertEquals(Collections.singleton("foo"), service.loadClientByClientId("zoneClient").getScope());
+
+        service.removeClientDetails("zoneClient");
+        try {
+            service.loadClientByClientId("zoneClient");
+            fail("Removed client must not be returned from the cache");
+        } catch (NoSuchClientException e) {
+        }
+    }
+
 }
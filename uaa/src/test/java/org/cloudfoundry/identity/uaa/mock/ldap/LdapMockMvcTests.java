@@ -72,6 +72,7 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.context.support.XmlWebApplicationContext;
 
 import javax.servlet.http.HttpSession;
@@ -212,6 +213,7 @@ public class LdapMockMvcTests extends TestClassNullifier {
         LimitSqlAdapter limitSqlAdapter = mainContext.getBean(LimitSqlAdapter.class);
         JdbcPagingListFactory pagingListFactory = new JdbcPagingListFactory(jdbcTemplate, limitSqlAdapter);
         gDB = new JdbcScimGroupProvisioning(jdbcTemplate, pagingListFactory);
+        gDB.setTransactionManager(mainContext.getBean(PlatformTransactionManager.class));
         uDB = new JdbcScimUserProvisioning(jdbcTemplate, pagingListFactory);
         userDatabase = mainContext.getBean(UaaUserDatabase.class);
     }